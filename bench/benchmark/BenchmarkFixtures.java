@@ -0,0 +1,162 @@
+package benchmark;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+import org.apache.jena.riot.Lang;
+import org.apache.jena.riot.RDFDataMgr;
+import org.apache.log4j.Level;
+import org.apache.log4j.Logger;
+
+import com.hp.hpl.jena.rdf.model.Model;
+import com.hp.hpl.jena.rdf.model.ModelFactory;
+import com.hp.hpl.jena.rdf.model.Property;
+import com.hp.hpl.jena.rdf.model.Resource;
+import com.hp.hpl.jena.vocabulary.RDF;
+import com.hp.hpl.jena.vocabulary.RDFS;
+
+import app.SolverProperties;
+
+/**
+ * @author Ben Griffiths
+ * BenchmarkFixtures
+ * Utility class providing the data from which the benchmarks build their fixtures: clue texts of a given number of words, and
+ * RDF graphs shaped like the neighbourhood of a band in DBpedia, of a given number of members. The graphs of every size used by
+ * the benchmarks are written to a single N-Triples file, from which the solver answers its queries in-process, so that the
+ * benchmarks measure the solver rather than the network. Debug logging is switched off, for the same reason.
+ */
+public class BenchmarkFixtures {
+	public static final String DBPEDIA_RESOURCE_NS = "http://dbpedia.org/resource/";
+	public static final String DBPEDIA_ONTOLOGY_NS = "http://dbpedia.org/ontology/";
+	public static final String ENG_LANG = "en";
+	public static final int[] MEMBER_STRUCTURE = {4, 6}; // the structure of the names of the members of each band
+	private static final String[] CLUE_WORDS = {"Member", "of", "the", "Beatles", "famous", "English", "rock", "band", "from",
+			"Liverpool", "who", "wrote", "songs", "with", "his", "partner"};
+	private static final String ALPHABET = "abcdefghijklmnopqrstuvwxyz";
+	private static File neighbourhoodFile;
+
+	/**
+	 * The only constructor is private; the BenchmarkFixtures class is not designed to be instantiated
+	 */
+	private BenchmarkFixtures() {
+
+	}
+
+	/**
+	 * clueText
+	 * @param words - the number of words in the clue
+	 * @return the text of a clue of the given number of words
+	 */
+	public static String clueText(int words) {
+		StringBuilder clueText = new StringBuilder();
+		for(int i = 0; i < words; i++)
+			clueText.append(i == 0 ? "" : " ").append(CLUE_WORDS[i % CLUE_WORDS.length]);
+		return clueText.toString();
+	}
+
+	/**
+	 * silenceLogging - switches off debug logging, which would otherwise take up much of the time measured
+	 */
+	public static void silenceLogging() {
+		Logger.getRootLogger().setLevel(Level.WARN);
+	}
+
+	/**
+	 * bandUri
+	 * @param members - the number of members of the band
+	 * @return the URI of the band of the given number of members, whose neighbourhood is held in the file written by
+	 * useLocalDataSource
+	 */
+	public static String bandUri(int members) {
+		return DBPEDIA_RESOURCE_NS + "The_" + name(members, 8);
+	}
+
+	/**
+	 * useLocalDataSource - writes the neighbourhoods of a band of each of the given numbers of members to a temporary file, and
+	 * directs the solver to answer its queries from that file, which it must do before the first query is made. Has no effect after
+	 * the first call
+	 * @param memberCounts - the numbers of members of the bands
+	 * @throws IOException - if the file cannot be written
+	 */
+	public static synchronized void useLocalDataSource(int... memberCounts) throws IOException {
+		if(neighbourhoodFile != null)
+			return;
+		silenceLogging();
+		Model model = createNeighbourhoods(memberCounts);
+		File file = File.createTempFile("neighbourhoods", ".nt");
+		file.deleteOnExit();
+		OutputStream out = new FileOutputStream(file);
+		try {
+			RDFDataMgr.write(out, model, Lang.NTRIPLES);
+		}
+		finally {
+			out.close();
+		}
+		System.setProperty(SolverProperties.DATA_SOURCE, SolverProperties.IN_MEMORY_DATA_SOURCE);
+		System.setProperty(SolverProperties.DATA_SOURCE_LOCATION, file.getPath());
+		neighbourhoodFile = file;
+	}
+
+	/**
+	 * createNeighbourhoods
+	 * @param memberCounts - the numbers of members of the bands
+	 * @return a model holding the neighbourhood of a band of each of the given numbers of members
+	 */
+	public static Model createNeighbourhoods(int... memberCounts) {
+		Model model = ModelFactory.createDefaultModel();
+		for(int members : memberCounts)
+			addNeighbourhood(model, members);
+		return model;
+	}
+
+	/**
+	 * bandName
+	 * @param members - the number of members of the band
+	 * @return the English label of the band of the given number of members
+	 */
+	public static String bandName(int members) {
+		return "The " + name(members, 8);
+	}
+
+	/**
+	 * addNeighbourhood - adds a band of the given number of members to the model, in the shape that DBpedia gives to such a band:
+	 * labels, types and their labels, and links from the band to each member and back
+	 */
+	private static void addNeighbourhood(Model model, int members) {
+		Property bandMember = model.createProperty(DBPEDIA_ONTOLOGY_NS + "bandMember");
+		Property associatedBand = model.createProperty(DBPEDIA_ONTOLOGY_NS + "associatedBand");
+		Resource bandType = model.createResource(DBPEDIA_ONTOLOGY_NS + "Band")
+				.addProperty(RDFS.label, "band", ENG_LANG);
+		Resource artistType = model.createResource(DBPEDIA_ONTOLOGY_NS + "MusicalArtist")
+				.addProperty(RDFS.label, "musical artist", ENG_LANG);
+		Resource band = model.createResource(bandUri(members))
+				.addProperty(RDFS.label, bandName(members), ENG_LANG)
+				.addProperty(RDF.type, bandType);
+		for(int i = 0; i < members; i++) {
+			String givenName = name(members * 31 + i, MEMBER_STRUCTURE[0]);
+			String surname = name(i, MEMBER_STRUCTURE[1]);
+			Resource member = model.createResource(DBPEDIA_RESOURCE_NS + givenName + "_" + surname)
+					.addProperty(RDFS.label, givenName + " " + surname, ENG_LANG)
+					.addProperty(RDFS.label, givenName + " " + surname, "de") // filtered out as a non-English label
+					.addProperty(RDF.type, artistType)
+					.addProperty(associatedBand, band);
+			band.addProperty(bandMember, member);
+		}
+	}
+
+	/**
+	 * name
+	 * @return a capitalised word of the given length, different for each value of index
+	 */
+	private static String name(int index, int length) {
+		char[] letters = new char[length];
+		for(int i = length - 1; i >= 0; i--) {
+			letters[i] = ALPHABET.charAt(index % ALPHABET.length());
+			index /= ALPHABET.length();
+		}
+		letters[0] = Character.toUpperCase(letters[0]);
+		return new String(letters);
+	}
+}
@@ -0,0 +1,27 @@
+package benchmark;
+
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * @author Ben Griffiths
+ * BenchmarkRunner
+ * Runs the benchmarks whose names match the regular expression given as the first command-line argument, or every benchmark if
+ * there is none. The working directory must be the root of the project, so that the benchmarks find the data directory
+ */
+public class BenchmarkRunner {
+
+	/**
+	 * main
+	 * @param args - an optional regular expression matching the names of the benchmarks to run, e.g. ClueBenchmark
+	 * @throws RunnerException - if a benchmark fails
+	 */
+	public static void main(String[] args) throws RunnerException {
+		Options options = new OptionsBuilder()
+				.include(args.length > 0 ? args[0] : BenchmarkRunner.class.getPackage().getName() + ".*")
+				.build();
+		new Runner(options).run();
+	}
+}
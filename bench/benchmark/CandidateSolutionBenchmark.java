@@ -0,0 +1,92 @@
+package benchmark;
+
+import java.util.ArrayList;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import exception.NoSolutionsException;
+
+import app.ClueImpl;
+import app.ClueQueryTask;
+import app.ClueSolverImpl;
+import app.ClueSolvingPipeline;
+import app.SolutionScorerImpl;
+
+import framework.Clue;
+import framework.Solution;
+import framework.SolutionScorer;
+
+/**
+ * @author Ben Griffiths
+ * CandidateSolutionBenchmark
+ * Measures each stage through which the candidate solutions to a clue pass once its entities have been recognised, around
+ * neighbourhoods of an increasing number of resources: their extraction from the inference model built around the recognised
+ * entity, the filtering of them against the structure of the solution, the resolution of the types and properties by which each is
+ * scored, and the ranking of the scored solutions. The neighbourhoods are built by BenchmarkFixtures and answered in-process
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CandidateSolutionBenchmark {
+	private static final int[] GRAPH_SIZES = {10, 100, 1000}; // must match the values of the graphSize parameter
+	@Param({"10", "100", "1000"})
+	private int graphSize;
+	private Clue clue;
+	private ArrayList<String> recognisedResourceUris;
+	private ArrayList<Solution> candidateSolutions;
+	private ArrayList<Solution> acceptedSolutions;
+
+	@Setup
+	public void setUp() throws Exception {
+		BenchmarkFixtures.useLocalDataSource(GRAPH_SIZES);
+		this.recognisedResourceUris = new ArrayList<String>();
+		this.recognisedResourceUris.add(BenchmarkFixtures.bandUri(this.graphSize));
+		this.clue = new ClueImpl("Member of " + BenchmarkFixtures.bandName(this.graphSize), BenchmarkFixtures.MEMBER_STRUCTURE);
+		this.candidateSolutions = this.extractCandidateSolutions();
+		this.acceptedSolutions = this.filterSolutions();
+		if(this.acceptedSolutions.size() < this.graphSize)
+			throw new IllegalStateException("Only " + this.acceptedSolutions.size() + " solutions found around " +
+					this.recognisedResourceUris);
+		Random random = new Random(this.graphSize);
+		for(Solution solution : this.acceptedSolutions)
+			solution.setScore(random.nextDouble());
+	}
+
+	@Benchmark
+	public ArrayList<Solution> extractCandidateSolutions() throws Exception {
+		return new ClueQueryTask(this.clue, this.recognisedResourceUris).call();
+	}
+
+	@Benchmark
+	public ArrayList<Solution> filterSolutions() throws NoSolutionsException {
+		return new ClueSolverImpl().getSolutions(this.clue, this.candidateSolutions);
+	}
+
+	@Benchmark
+	public void scoreSolutions(Blackhole blackhole) {
+		SolutionScorer solutionScorer = new SolutionScorerImpl();
+		for(Solution solution : this.acceptedSolutions)
+			blackhole.consume(solutionScorer.score(solution));
+	}
+
+	@Benchmark
+	public ArrayList<Solution> rankSolutions() {
+		return ClueSolvingPipeline.rankSolutions(new ArrayList<Solution>(this.acceptedSolutions)); // which sorts its argument
+	}
+}
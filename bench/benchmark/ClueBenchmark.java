@@ -0,0 +1,59 @@
+package benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import exception.InvalidClueException;
+
+import app.ClueImpl;
+import app.ModelLoader;
+
+import framework.Clue;
+
+/**
+ * @author Ben Griffiths
+ * ClueBenchmark
+ * Measures the construction of a clue, which parses its text and breaks it into the lattice of fragments against which candidate
+ * solutions are later matched, for clues of an increasing number of words
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ClueBenchmark {
+	@Param({"2", "4", "8", "16"})
+	private int clueWords;
+	private String clueText;
+	private String fillInTheBlankClueText;
+
+	@Setup
+	public void setUp() {
+		BenchmarkFixtures.silenceLogging();
+		ModelLoader.getCommonClueFragments(); // loaded once per process, so excluded from the measurement
+		this.clueText = BenchmarkFixtures.clueText(this.clueWords);
+		this.fillInTheBlankClueText = this.clueText.replaceFirst(" [^ ]+$", " _");
+	}
+
+	@Benchmark
+	public Clue constructClue() throws InvalidClueException {
+		return new ClueImpl(this.clueText, BenchmarkFixtures.MEMBER_STRUCTURE);
+	}
+
+	@Benchmark
+	public Clue constructFillInTheBlankClue() throws InvalidClueException {
+		return new ClueImpl(this.fillInTheBlankClueText, new int[] {BenchmarkFixtures.MEMBER_STRUCTURE[1]});
+	}
+}
@@ -0,0 +1,134 @@
+package benchmark;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.hp.hpl.jena.rdf.model.Model;
+import com.hp.hpl.jena.rdf.model.ModelFactory;
+import com.hp.hpl.jena.rdf.model.Resource;
+import com.hp.hpl.jena.util.FileManager;
+import com.hp.hpl.jena.vocabulary.RDF;
+
+import app.BinaryModelSnapshot;
+import app.KnowledgeBaseManager;
+import app.SolvedClue;
+import app.TdbKnowledgeBaseStore;
+
+import framework.CrosswordKB;
+import framework.KnowledgeBaseStore;
+
+/**
+ * @author Ben Griffiths
+ * KnowledgeBaseBenchmark
+ * Measures the loading of the crossword knowledge base, from RDF/XML and from its binary snapshot, the addition of batches of newly
+ * solved clues to it in a single write transaction, and the writing of it out to disk in full. Everything is written to temporary
+ * files, never to the data directory, so that running the benchmark leaves the knowledge base unchanged
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class KnowledgeBaseBenchmark {
+	private final String SNAPSHOT_FORMAT = "RDF/XML-ABBREV";
+	@Param({"1", "16"})
+	private int cluesPerBatch;
+	private Model knowledgeBase;
+	private File snapshotFile;
+	private File binarySnapshotFile;
+	private File tdbDirectory;
+	private KnowledgeBaseStore tdbStore;
+
+	@Setup
+	public void setUp() throws IOException {
+		BenchmarkFixtures.silenceLogging();
+		this.knowledgeBase = this.loadFromRdfXml();
+		this.snapshotFile = File.createTempFile("crosswordKB", ".xml");
+		this.binarySnapshotFile = File.createTempFile("crosswordKB", ".bin");
+		this.persist();
+		this.tdbDirectory = File.createTempFile("crosswordKB", "-tdb");
+		this.tdbDirectory.delete();
+		this.tdbStore = new TdbKnowledgeBaseStore(this.tdbDirectory.getPath()); // imports the knowledge base
+	}
+
+	@TearDown
+	public void tearDown() {
+		this.tdbStore.close();
+		this.snapshotFile.delete();
+		this.binarySnapshotFile.delete();
+		File[] tdbFiles = this.tdbDirectory.listFiles();
+		if(tdbFiles != null) {
+			for(File tdbFile : tdbFiles)
+				tdbFile.delete();
+		}
+		this.tdbDirectory.delete();
+	}
+
+	@Benchmark
+	public Model loadFromRdfXml() {
+		Model model = FileManager.get().loadModel(CrosswordKB.LOCAL_KNOWLEDGE_BASE_URI);
+		KnowledgeBaseManager.gatherSolvedClues(model);
+		return model;
+	}
+
+	@Benchmark
+	public ArrayList<SolvedClue> loadFromBinarySnapshot() {
+		return BinaryModelSnapshot.read(this.binarySnapshotFile, this.snapshotFile.length(), this.snapshotFile.lastModified())
+				.getSolvedClues();
+	}
+
+	@Benchmark
+	public void addToTdbKnowledgeBase() {
+		Model newStatements = ModelFactory.createDefaultModel();
+		for(int i = 0; i < this.cluesPerBatch; i++) {
+			Resource clueResource = newStatements.createResource(CrosswordKB.CROSSWORD_KB_URI + UUID.randomUUID());
+			Resource solutionResource = newStatements.createResource(CrosswordKB.CROSSWORD_KB_URI + UUID.randomUUID());
+			newStatements.add(clueResource, RDF.type, CrosswordKB.clue);
+			newStatements.add(clueResource, CrosswordKB.hasClueText, BenchmarkFixtures.clueText(4 + i % 4));
+			newStatements.add(clueResource, CrosswordKB.hasSolutionStructure, "[4, 6]");
+			newStatements.add(solutionResource, RDF.type, CrosswordKB.solution);
+			newStatements.add(solutionResource, CrosswordKB.hasSolutionText, "John Lennon");
+			newStatements.add(clueResource, CrosswordKB.solvedBy, solutionResource);
+		}
+		this.tdbStore.beginWrite();
+		try {
+			this.tdbStore.add(newStatements);
+			this.tdbStore.commit();
+		}
+		finally {
+			this.tdbStore.end();
+		}
+	}
+
+	@Benchmark
+	public void persist() throws IOException {
+		OutputStream out = new FileOutputStream(this.snapshotFile);
+		try {
+			this.knowledgeBase.write(out, this.SNAPSHOT_FORMAT);
+		}
+		finally {
+			out.close();
+		}
+		BinaryModelSnapshot.write(this.binarySnapshotFile, this.knowledgeBase, KnowledgeBaseManager.gatherSolvedClues(
+				this.knowledgeBase), this.snapshotFile.length(), this.snapshotFile.lastModified());
+	}
+}
@@ -0,0 +1,282 @@
+package benchmark;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.apache.jena.riot.RDFDataMgr;
+
+import com.hp.hpl.jena.query.Dataset;
+import com.hp.hpl.jena.query.DatasetFactory;
+
+import exception.InvalidClueException;
+
+import app.ClueImpl;
+import app.ClueSolvingPipeline;
+import app.ClueSolvingResult;
+import app.KnowledgeBaseManager;
+import app.ModelLoader;
+import app.SolverProperties;
+import app.SparqlQueryRunner;
+
+import framework.Clue;
+import framework.QueryClass;
+
+/**
+ * @author Ben Griffiths
+ * LoadBenchmark
+ * Contains a main method that drives the whole solving pipeline at a steady rate of arriving clues, against a
+ * SimulatedSparqlEndpoint, and reports the latency of solving a clue at the 50th, 95th and 99th percentiles, the throughput, the
+ * high-water mark of the heap and the number of queries made at each stage of solving. Clues arrive at random, independently of
+ * one another, whether or not earlier clues have been solved, and the latency of each is measured from its arrival, so that time
+ * spent queueing for a worker is included. The benchmark is configured by the following system properties:
+ * benchmark.load.rate - clues arriving per second (default 1)
+ * benchmark.load.durationSeconds - how long clues keep arriving (default 60)
+ * benchmark.load.workers - clues solved at once (default 8)
+ * benchmark.load.clues - a file of clues in the format read by BatchSolverRunner (by default, clues about the bands built by
+ * BenchmarkFixtures)
+ * benchmark.endpoint.data - comma-separated RDF files served by the endpoint, such as an extract of DBpedia (by default, the bands
+ * built by BenchmarkFixtures)
+ * benchmark.endpoint.capacity - queries answered at once by the endpoint (default 4)
+ * benchmark.endpoint.latencyMedianMillis, benchmark.endpoint.latencySigma - the log-normal delay of each query (default 50, 0.5)
+ * benchmark.endpoint.errorRate - the fraction of queries failing with 503 Service Unavailable (default 0.01)
+ * benchmark.seed - the seed of the arrivals, delays and failures (default 1)
+ * Unless semanticSolver.kb.backend is set, solutions are added to a temporary TDB knowledge base, so that the knowledge base in the
+ * data directory is left unchanged.
+ * Usage: LoadBenchmark, from the root of the project
+ */
+public class LoadBenchmark {
+	private static final String RATE = "benchmark.load.rate";
+	private static final String DURATION = "benchmark.load.durationSeconds";
+	private static final String WORKERS = "benchmark.load.workers";
+	private static final String CLUES = "benchmark.load.clues";
+	private static final String ENDPOINT_DATA = "benchmark.endpoint.data";
+	private static final String ENDPOINT_CAPACITY = "benchmark.endpoint.capacity";
+	private static final String ENDPOINT_LATENCY_MEDIAN_MILLIS = "benchmark.endpoint.latencyMedianMillis";
+	private static final String ENDPOINT_LATENCY_SIGMA = "benchmark.endpoint.latencySigma";
+	private static final String ENDPOINT_ERROR_RATE = "benchmark.endpoint.errorRate";
+	private static final String SEED = "benchmark.seed";
+	private static final int[] BAND_SIZES = {5, 10, 20, 50, 100}; // the bands about which clues are set by default
+	private static final Pattern CLUE_LINE = Pattern.compile("^(.*\\S)\\s*\\(([\\d,\\s-]+)\\)\\s*$");
+	private static final String COMMENT_MARKER = "#";
+	private static final long HEAP_SAMPLE_MILLIS = 50;
+	private static final long DRAIN_TIMEOUT_MINUTES = 10; // the longest wait for clues still being solved once arrivals stop
+	private static final double NANOSECONDS_IN_ONE_MILLISECOND = 1000000.0;
+	private static final double NANOSECONDS_IN_ONE_SECOND = 1e9;
+	private static final double BYTES_IN_ONE_MEGABYTE = 1024.0 * 1024.0;
+
+	/**
+	 * The only constructor is private; the LoadBenchmark class is not designed to be instantiated
+	 */
+	private LoadBenchmark() {
+
+	}
+
+	/**
+	 * readClues
+	 * @param fileName - the name of a file of clues, one per line followed by the structure of its solution in brackets, or null
+	 * @return the clues in the file, or clues about the bands built by BenchmarkFixtures if fileName is null
+	 * @throws IOException - if the file cannot be read
+	 */
+	private static List<Clue> readClues(String fileName) throws IOException {
+		List<Clue> clues = new ArrayList<Clue>();
+		try {
+			if(fileName == null) {
+				for(int members : BAND_SIZES)
+					clues.add(new ClueImpl("Member of " + BenchmarkFixtures.bandName(members), BenchmarkFixtures.MEMBER_STRUCTURE));
+				return clues;
+			}
+			BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(fileName), "UTF-8"));
+			try {
+				String line;
+				while((line = reader.readLine()) != null) {
+					Matcher matcher = CLUE_LINE.matcher(line.trim());
+					if(line.trim().startsWith(COMMENT_MARKER) || !matcher.matches())
+						continue;
+					clues.add(new ClueImpl(matcher.group(1), ClueSolvingPipeline.parseSolutionStructure(matcher.group(2))));
+				}
+			}
+			finally {
+				reader.close();
+			}
+		}
+		catch(InvalidClueException e) {
+			throw new IOException("Invalid clue in " + fileName + ": " + e.getMessage());
+		}
+		if(clues.isEmpty())
+			throw new IOException("No clues in " + fileName);
+		return clues;
+	}
+
+	/**
+	 * loadDataset
+	 * @param fileNames - comma-separated RDF files, or null
+	 * @return an in-memory dataset holding the content of the files, or the bands built by BenchmarkFixtures if fileNames is null
+	 */
+	private static Dataset loadDataset(String fileNames) {
+		Dataset dataset = DatasetFactory.createMem();
+		if(fileNames == null) {
+			dataset.getDefaultModel().add(BenchmarkFixtures.createNeighbourhoods(BAND_SIZES));
+			return dataset;
+		}
+		for(String fileName : fileNames.split(",")) {
+			if(!fileName.trim().isEmpty())
+				RDFDataMgr.read(dataset.getDefaultModel(), fileName.trim());
+		}
+		return dataset;
+	}
+
+	/**
+	 * percentile
+	 * @param sortedValues - values in ascending order
+	 * @param percentile - the percentile required, from 0 to 100
+	 * @return the value at the given percentile, by the nearest-rank method
+	 */
+	private static long percentile(long[] sortedValues, int percentile) {
+		if(sortedValues.length == 0)
+			return 0;
+		int rank = (int)Math.ceil(percentile / 100.0 * sortedValues.length);
+		return sortedValues[Math.max(0, rank - 1)];
+	}
+
+	public static void main(String[] args) throws IOException, InterruptedException {
+		BenchmarkFixtures.silenceLogging();
+		double rate = SolverProperties.getDouble(RATE, 1);
+		long durationNanos = (long)(SolverProperties.getDouble(DURATION, 60) * NANOSECONDS_IN_ONE_SECOND);
+		int numberOfWorkers = Math.max(1, SolverProperties.getInt(WORKERS, 8));
+		long seed = SolverProperties.getLong(SEED, 1);
+		List<Clue> clues = readClues(SolverProperties.getString(CLUES, null));
+
+		/* Start the endpoint, and direct the solver to it */
+		SimulatedSparqlEndpoint endpoint = new SimulatedSparqlEndpoint(loadDataset(SolverProperties.getString(ENDPOINT_DATA, null)),
+				SolverProperties.getInt(ENDPOINT_CAPACITY, 4), SolverProperties.getLong(ENDPOINT_LATENCY_MEDIAN_MILLIS, 50),
+				SolverProperties.getDouble(ENDPOINT_LATENCY_SIGMA, 0.5), SolverProperties.getDouble(ENDPOINT_ERROR_RATE, 0.01), seed);
+		endpoint.start();
+		System.setProperty(SolverProperties.DATA_SOURCE, SolverProperties.REMOTE_DATA_SOURCE);
+		System.setProperty(SolverProperties.DATA_SOURCE_LOCATION, endpoint.getUri());
+		if(SolverProperties.getString(SolverProperties.KB_BACKEND, null) == null) {
+			File knowledgeBaseDirectory = File.createTempFile("crosswordKB", "-tdb");
+			knowledgeBaseDirectory.delete();
+			System.setProperty(SolverProperties.KB_BACKEND, SolverProperties.TDB_BACKEND);
+			System.setProperty(SolverProperties.KB_TDB_LOCATION, knowledgeBaseDirectory.getPath());
+		}
+
+		/* Load the reasoner and the knowledge base before the clock starts */
+		ModelLoader.getReasoner();
+		KnowledgeBaseManager.getInstance();
+		SparqlQueryRunner runner = SparqlQueryRunner.getInstance();
+		long[] queriesBefore = new long[QueryClass.values().length];
+		for(QueryClass queryClass : QueryClass.values())
+			queriesBefore[queryClass.ordinal()] = runner.getExecutedCount(queryClass);
+		long coalescedBefore = runner.getCoalescedCount();
+		long retriedBefore = runner.getRetriedCount();
+		long fallbackBefore = runner.getFallbackCount();
+
+		/* Sample the heap throughout */
+		final AtomicLong heapHighWater = new AtomicLong();
+		ScheduledExecutorService heapSampler = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+			@Override
+			public Thread newThread(Runnable runnable) {
+				Thread thread = new Thread(runnable, "heap-sampler");
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+		heapSampler.scheduleAtFixedRate(new Runnable() {
+			@Override
+			public void run() {
+				long used = ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+				long highWater;
+				while(used > (highWater = heapHighWater.get()) && !heapHighWater.compareAndSet(highWater, used));
+			}
+		}, 0, HEAP_SAMPLE_MILLIS, TimeUnit.MILLISECONDS);
+
+		/* Clues arrive as a Poisson process until the duration has elapsed */
+		ExecutorService workers = Executors.newFixedThreadPool(numberOfWorkers);
+		final ClueSolvingPipeline pipeline = new ClueSolvingPipeline(workers);
+		final List<Long> latencies = Collections.synchronizedList(new ArrayList<Long>());
+		final AtomicLong solvedCount = new AtomicLong();
+		final AtomicLong failedCount = new AtomicLong();
+		Random random = new Random(seed);
+		int offeredCount = 0;
+		long startTime = System.nanoTime();
+		long arrivalTime = startTime;
+		while(arrivalTime - startTime < durationNanos) {
+			TimeUnit.NANOSECONDS.sleep(arrivalTime - System.nanoTime());
+			final long arrival = arrivalTime;
+			final Clue clue = clues.get(random.nextInt(clues.size()));
+			workers.execute(new Runnable() {
+				@Override
+				public void run() {
+					try {
+						ClueSolvingResult result = pipeline.solve(clue);
+						if(result.isSolved())
+							solvedCount.incrementAndGet();
+					}
+					catch(Exception e) {
+						failedCount.incrementAndGet();
+					}
+					finally {
+						latencies.add(System.nanoTime() - arrival);
+					}
+				}
+			});
+			offeredCount++;
+			arrivalTime += (long)(-Math.log(1 - random.nextDouble()) / rate * NANOSECONDS_IN_ONE_SECOND);
+		}
+		workers.shutdown();
+		boolean drained = workers.awaitTermination(DRAIN_TIMEOUT_MINUTES, TimeUnit.MINUTES);
+		long elapsedNanos = System.nanoTime() - startTime;
+		heapSampler.shutdown();
+		endpoint.stop();
+		KnowledgeBaseManager.getInstance().persistKnowledgeBase();
+
+		/* Report */
+		long[] sortedLatencies = new long[latencies.size()];
+		synchronized(latencies) {
+			for(int i = 0; i < sortedLatencies.length; i++)
+				sortedLatencies[i] = latencies.get(i);
+		}
+		Arrays.sort(sortedLatencies);
+		double elapsedSeconds = elapsedNanos / NANOSECONDS_IN_ONE_SECOND;
+		System.out.println(String.format("Clues offered: %d at %.2f/s, completed: %d, solved: %d, failed: %d, workers: %d%s",
+				offeredCount, rate, sortedLatencies.length, solvedCount.get(), failedCount.get(), numberOfWorkers,
+				drained ? "" : " (timed out waiting for the rest)"));
+		System.out.println(String.format("Elapsed: %.2fs, throughput: %.2f clues/s", elapsedSeconds,
+				sortedLatencies.length / Math.max(elapsedSeconds, 1e-9)));
+		if(sortedLatencies.length > 0)
+			System.out.println(String.format("Latency per clue (ms): p50 %.1f, p95 %.1f, p99 %.1f, max %.1f",
+					percentile(sortedLatencies, 50) / NANOSECONDS_IN_ONE_MILLISECOND,
+					percentile(sortedLatencies, 95) / NANOSECONDS_IN_ONE_MILLISECOND,
+					percentile(sortedLatencies, 99) / NANOSECONDS_IN_ONE_MILLISECOND,
+					sortedLatencies[sortedLatencies.length - 1] / NANOSECONDS_IN_ONE_MILLISECOND));
+		System.out.println(String.format("Heap high-water mark: %.1f MB", heapHighWater.get() / BYTES_IN_ONE_MEGABYTE));
+		StringBuilder queries = new StringBuilder("Queries:");
+		for(QueryClass queryClass : QueryClass.values()) {
+			long executed = runner.getExecutedCount(queryClass) - queriesBefore[queryClass.ordinal()];
+			queries.append(String.format(" %s %d (%.1f per clue),", queryClass, executed,
+					executed / (double)Math.max(1, sortedLatencies.length)));
+		}
+		queries.append(String.format(" coalesced %d, retried %d, fallbacks %d", runner.getCoalescedCount() - coalescedBefore,
+				runner.getRetriedCount() - retriedBefore, runner.getFallbackCount() - fallbackBefore));
+		System.out.println(queries);
+		System.out.println("Endpoint: " + endpoint.getRequestCount() + " requests, " + endpoint.getErrorCount() +
+				" failed on purpose");
+	}
+}
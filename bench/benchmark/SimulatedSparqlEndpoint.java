@@ -0,0 +1,235 @@
+package benchmark;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.jena.riot.Lang;
+import org.apache.jena.riot.RDFDataMgr;
+import org.apache.log4j.Logger;
+
+import com.hp.hpl.jena.query.Dataset;
+import com.hp.hpl.jena.query.Query;
+import com.hp.hpl.jena.query.QueryExecution;
+import com.hp.hpl.jena.query.QueryExecutionFactory;
+import com.hp.hpl.jena.query.QueryFactory;
+import com.hp.hpl.jena.query.QueryParseException;
+import com.hp.hpl.jena.query.ResultSetFormatter;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import app.FullTextContainsFunction;
+
+/**
+ * @author Ben Griffiths
+ * SimulatedSparqlEndpoint
+ * A stand-in for DBpedia's SPARQL endpoint, listening on the loopback interface, which answers select and construct queries
+ * against a local dataset, such as an extract of DBpedia or the graphs built by BenchmarkFixtures. Each query is delayed by a time
+ * drawn from a log-normal distribution, and a given fraction of queries fail with 503 Service Unavailable, as DBpedia's endpoint
+ * does under load. The number of queries answered at once is limited, so that queries queue at the endpoint once it is saturated
+ */
+public class SimulatedSparqlEndpoint {
+	private static Logger log = Logger.getLogger(SimulatedSparqlEndpoint.class);
+	private static final String PATH = "/sparql";
+	private static final String QUERY_PARAMETER = "query=";
+	private static final String CHARSET = "UTF-8";
+	private static final String SELECT_CONTENT_TYPE = "application/sparql-results+json";
+	private static final String CONSTRUCT_CONTENT_TYPE = "text/turtle";
+	private static final int STATUS_OK = 200;
+	private static final int STATUS_BAD_REQUEST = 400;
+	private static final int STATUS_INTERNAL_SERVER_ERROR = 500;
+	private static final int STATUS_SERVICE_UNAVAILABLE = 503;
+	private final HttpServer server;
+	private final ExecutorService handlerPool;
+	private final Dataset dataset;
+	private final long medianLatencyNanos;
+	private final double latencySigma;
+	private final double errorRate;
+	private final Random random;
+	private final AtomicLong requestCount = new AtomicLong();
+	private final AtomicLong errorCount = new AtomicLong();
+
+	/**
+	 * Constructor
+	 * @param dataset - the dataset against which queries are answered
+	 * @param capacity - the number of queries answered at once
+	 * @param medianLatencyMillis - the median time by which each query is delayed
+	 * @param latencySigma - the spread of the log-normal distribution of the delays, 0 for a constant delay
+	 * @param errorRate - the fraction of queries, from 0 to 1, that fail with 503 Service Unavailable
+	 * @param seed - the seed of the random delays and failures
+	 * @throws IOException - if the endpoint cannot listen on the loopback interface
+	 */
+	public SimulatedSparqlEndpoint(Dataset dataset, int capacity, long medianLatencyMillis, double latencySigma, double errorRate,
+			long seed) throws IOException {
+		this.dataset = dataset;
+		this.medianLatencyNanos = TimeUnit.MILLISECONDS.toNanos(medianLatencyMillis);
+		this.latencySigma = latencySigma;
+		this.errorRate = errorRate;
+		this.random = new Random(seed);
+		FullTextContainsFunction.register(); // for the entity recognition queries written for DBpedia's Virtuoso server
+		this.handlerPool = Executors.newFixedThreadPool(Math.max(1, capacity), new ThreadFactory() {
+			private final AtomicInteger threadCount = new AtomicInteger();
+
+			@Override
+			public Thread newThread(Runnable runnable) {
+				Thread thread = new Thread(runnable, "simulated-endpoint-" + this.threadCount.incrementAndGet());
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+		this.server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+		this.server.setExecutor(this.handlerPool);
+		this.server.createContext(PATH, new HttpHandler() {
+			@Override
+			public void handle(HttpExchange exchange) throws IOException {
+				handleQuery(exchange);
+			}
+		});
+	}
+
+	/**
+	 * start - begins answering queries
+	 */
+	public void start() {
+		this.server.start();
+		log.info("Simulated SPARQL endpoint listening at " + this.getUri());
+	}
+
+	/**
+	 * stop - stops answering queries, abandoning any in progress
+	 */
+	public void stop() {
+		this.server.stop(0);
+		this.handlerPool.shutdownNow();
+	}
+
+	/**
+	 * getUri
+	 * @return the URI to which queries are sent
+	 */
+	public String getUri() {
+		return "http://127.0.0.1:" + this.server.getAddress().getPort() + PATH;
+	}
+
+	/**
+	 * getRequestCount
+	 * @return the number of queries received
+	 */
+	public long getRequestCount() {
+		return this.requestCount.get();
+	}
+
+	/**
+	 * getErrorCount
+	 * @return the number of queries failed on purpose
+	 */
+	public long getErrorCount() {
+		return this.errorCount.get();
+	}
+
+	/**
+	 * handleQuery - answers a query sent by GET or by a form-encoded POST, after the simulated delay, unless the query is chosen to
+	 * fail
+	 */
+	private void handleQuery(HttpExchange exchange) throws IOException {
+		this.requestCount.incrementAndGet();
+		try {
+			String queryString = this.readQuery(exchange);
+			long latencyNanos;
+			boolean failing;
+			synchronized(this.random) {
+				latencyNanos = (long)(this.medianLatencyNanos * Math.exp(this.latencySigma * this.random.nextGaussian()));
+				failing = this.random.nextDouble() < this.errorRate;
+			}
+			TimeUnit.NANOSECONDS.sleep(latencyNanos);
+			if(failing) {
+				this.errorCount.incrementAndGet();
+				this.respond(exchange, STATUS_SERVICE_UNAVAILABLE, "text/plain", "Simulated overload".getBytes(CHARSET));
+				return;
+			}
+			if(queryString == null) {
+				this.respond(exchange, STATUS_BAD_REQUEST, "text/plain", "No query".getBytes(CHARSET));
+				return;
+			}
+			Query query = QueryFactory.create(queryString);
+			QueryExecution queryExecution = QueryExecutionFactory.create(query, this.dataset);
+			ByteArrayOutputStream result = new ByteArrayOutputStream();
+			try {
+				if(query.isSelectType()) {
+					ResultSetFormatter.outputAsJSON(result, queryExecution.execSelect());
+					this.respond(exchange, STATUS_OK, SELECT_CONTENT_TYPE, result.toByteArray());
+				}
+				else if(query.isConstructType()) {
+					RDFDataMgr.write(result, queryExecution.execConstruct(), Lang.TURTLE);
+					this.respond(exchange, STATUS_OK, CONSTRUCT_CONTENT_TYPE, result.toByteArray());
+				}
+				else this.respond(exchange, STATUS_BAD_REQUEST, "text/plain", "Unsupported query".getBytes(CHARSET));
+			}
+			finally {
+				queryExecution.close();
+			}
+		}
+		catch(QueryParseException e) {
+			this.respond(exchange, STATUS_BAD_REQUEST, "text/plain", e.getMessage().getBytes(CHARSET));
+		}
+		catch(InterruptedException e) { // the endpoint is stopping
+			exchange.close();
+		}
+		catch(RuntimeException e) {
+			log.debug("Failed to answer a query: " + e);
+			this.respond(exchange, STATUS_INTERNAL_SERVER_ERROR, "text/plain", String.valueOf(e).getBytes(CHARSET));
+		}
+	}
+
+	/**
+	 * readQuery
+	 * @return the text of the query sent in the URI or in the form-encoded body of the request, or null if there is none
+	 */
+	private String readQuery(HttpExchange exchange) throws IOException {
+		String parameters = exchange.getRequestURI().getRawQuery();
+		if(exchange.getRequestMethod().equalsIgnoreCase("POST")) {
+			ByteArrayOutputStream body = new ByteArrayOutputStream();
+			InputStream in = exchange.getRequestBody();
+			byte[] buffer = new byte[8192];
+			int length;
+			while((length = in.read(buffer)) > 0)
+				body.write(buffer, 0, length);
+			parameters = body.toString(CHARSET);
+		}
+		if(parameters == null)
+			return null;
+		for(String parameter : parameters.split("&")) {
+			if(parameter.startsWith(QUERY_PARAMETER))
+				return URLDecoder.decode(parameter.substring(QUERY_PARAMETER.length()), CHARSET);
+		}
+		return null;
+	}
+
+	/**
+	 * respond - sends a response with the given status and body, and completes the exchange
+	 */
+	private void respond(HttpExchange exchange, int status, String contentType, byte[] body) throws IOException {
+		try {
+			exchange.getResponseHeaders().set("Content-Type", contentType);
+			exchange.sendResponseHeaders(status, body.length);
+			OutputStream out = exchange.getResponseBody();
+			out.write(body);
+			out.close();
+		}
+		finally {
+			exchange.close();
+		}
+	}
+}
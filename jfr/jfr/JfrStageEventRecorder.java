@@ -0,0 +1,142 @@
+package jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+import framework.Stage;
+import framework.StageEventRecorder;
+
+/**
+ * @author Ben Griffiths
+ * JfrStageEventRecorder
+ * Reports each stage of solving a clue to Java Flight Recorder as a custom event, in the Semantic Solver category, carrying the
+ * identifier of the clue, the subject of the stage, such as the resource around which a graph was constructed, and the number of
+ * triples, candidate solutions or updates it produced, so that a recording can be searched for the clues and resources behind a
+ * long pause or a burst of allocation. Needs Java 11 or later; the events are only created while a recording that enables them is
+ * running, e.g. one started with -XX:StartFlightRecording. Loaded by app.StageMeasurement unless the semanticSolver.events.recorder
+ * system property names another recorder.
+ * @implements framework.StageEventRecorder
+ */
+public class JfrStageEventRecorder implements StageEventRecorder {
+
+	/**
+	 * StageEvent - the fields shared by the events of every stage. A stage event is begun and ended on the thread doing the work, so
+	 * no stack trace is taken, which keeps the cost of recording each event small
+	 */
+	@Category("Semantic Solver")
+	@StackTrace(false)
+	private static abstract class StageEvent extends jdk.jfr.Event implements StageEventRecorder.Event {
+		@Label("Clue Id")
+		@Description("Identifier of the clue being solved, or 0 for work not done for a single clue")
+		long clueId;
+
+		@Label("Subject")
+		@Description("Clue fragment, resource URI or candidate solution that is the subject of the stage")
+		String subject;
+
+		@Label("Size")
+		@Description("Number of triples, candidate solutions or updates produced by the stage")
+		long size;
+
+		@Override
+		public void end(long size) {
+			this.size = size;
+			super.end();
+			this.commit();
+		}
+	}
+
+	@Name("semanticSolver.EntityRecognition")
+	@Label("Entity Recognition")
+	@Description("Look-up on DBpedia of the resources named by one fragment of a clue; size is the number of resources found")
+	private static class EntityRecognitionEvent extends StageEvent {
+	}
+
+	@Name("semanticSolver.NeighbourhoodConstruction")
+	@Label("Neighbourhood Construction")
+	@Description("Construction of the graph around one recognised resource; size is the number of triples fetched")
+	private static class NeighbourhoodConstructionEvent extends StageEvent {
+	}
+
+	@Name("semanticSolver.Reasoning")
+	@Label("Reasoning")
+	@Description("Creation of the inference model over one constructed graph; size is the number of triples reasoned over")
+	private static class ReasoningEvent extends StageEvent {
+	}
+
+	@Name("semanticSolver.Extraction")
+	@Label("Candidate Extraction")
+	@Description("Search of one inference model for candidate solutions; size is the number of candidates found")
+	private static class ExtractionEvent extends StageEvent {
+	}
+
+	@Name("semanticSolver.Scoring")
+	@Label("Scoring")
+	@Description("Scoring of one candidate solution, including its queries")
+	private static class ScoringEvent extends StageEvent {
+	}
+
+	@Name("semanticSolver.Ranking")
+	@Label("Ranking")
+	@Description("Ranking of the scored solutions to a clue; size is the number of solutions")
+	private static class RankingEvent extends StageEvent {
+	}
+
+	@Name("semanticSolver.KnowledgeBaseUpdate")
+	@Label("Knowledge Base Update")
+	@Description("Writing of one batch of updates to the knowledge base; size is the number of updates")
+	private static class KnowledgeBaseUpdateEvent extends StageEvent {
+	}
+
+	@Name("semanticSolver.KnowledgeBasePersistence")
+	@Label("Knowledge Base Persistence")
+	@Description("Persisting of the knowledge base at shutdown; size is the number of triples persisted, or 0 for a store on disk")
+	private static class KnowledgeBasePersistenceEvent extends StageEvent {
+	}
+
+	/**
+	 * begin
+	 * @override framework.StageEventRecorder.begin
+	 */
+	@Override
+	public StageEventRecorder.Event begin(Stage stage, long clueId, String subject) {
+		StageEvent event = createEvent(stage);
+		if(!event.isEnabled())
+			return null;
+		event.clueId = clueId;
+		event.subject = subject;
+		event.begin();
+		return event;
+	}
+
+	/**
+	 * createEvent
+	 * @param stage - a stage of solving a clue
+	 * @return a new event of the stage
+	 */
+	private static StageEvent createEvent(Stage stage) {
+		switch(stage) {
+		case ENTITY_RECOGNITION:
+			return new EntityRecognitionEvent();
+		case NEIGHBOURHOOD_CONSTRUCTION:
+			return new NeighbourhoodConstructionEvent();
+		case REASONING:
+			return new ReasoningEvent();
+		case EXTRACTION:
+			return new ExtractionEvent();
+		case SCORING:
+			return new ScoringEvent();
+		case RANKING:
+			return new RankingEvent();
+		case KNOWLEDGE_BASE_UPDATE:
+			return new KnowledgeBaseUpdateEvent();
+		case KNOWLEDGE_BASE_PERSISTENCE:
+			return new KnowledgeBasePersistenceEvent();
+		default:
+			throw new IllegalArgumentException("No event for the stage " + stage);
+		}
+	}
+}
@@ -0,0 +1,266 @@
+package app;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.apache.log4j.Level;
+import org.apache.log4j.Logger;
+import org.apache.log4j.PropertyConfigurator;
+
+import exception.InvalidClueException;
+
+import framework.Clue;
+import framework.Solution;
+
+/**
+ * @author Ben Griffiths
+ * BatchSolverRunner
+ * Contains a main method that solves a file of clues without a user interface. Each line of the input file holds the text of a clue
+ * followed by the structure of its solution in brackets, e.g. "member of the Beatles (4, 6)"; blank lines and lines beginning with
+ * # are ignored. The clues are solved concurrently by a pool of worker threads sharing a single ClueSolvingPipeline, and therefore
+ * the same caches and knowledge base, and the ranked solutions to each clue are written, in the order of the input file, as JSON
+ * Lines or CSV. The time taken to solve each clue and the overall throughput are reported when the batch is complete, followed by
+ * the measurements of the SolverMetrics, such as the time taken by each stage of solving. If the semanticSolver.solve.deadlineMillis
+ * system property is set, each clue is given that long, from when a worker begins to solve it, after which the best solutions found
+ * so far are written, marked as incomplete.
+ * Usage: BatchSolverRunner inputFile outputFile [jsonl|csv] [numberOfWorkers]
+ */
+public class BatchSolverRunner {
+	private static Logger log = Logger.getLogger(BatchSolverRunner.class);
+	private static final Charset CHARSET = Charset.forName("UTF-8");
+	private static final Pattern CLUE_LINE = Pattern.compile("^(.*\\S)\\s*\\(([\\d,\\s-]+)\\)\\s*$");
+	private static final String COMMENT_MARKER = "#";
+	private static final String JSON_LINES_FORMAT = "jsonl";
+	private static final String CSV_FORMAT = "csv";
+	private static final String CSV_HEADER = "clue,structure,rank,solution,confidence,latencyMs,message,complete";
+	private static final int DEFAULT_NUMBER_OF_WORKERS = 4;
+	private static final double NANOSECONDS_IN_ONE_MILLISECOND = 1000000.0;
+
+	/**
+	 * The only constructor is private; the BatchSolverRunner class is not designed to be instantiated
+	 */
+	private BatchSolverRunner() {
+
+	}
+
+	/**
+	 * parseClue
+	 * @param line - a line of the input file
+	 * @return a Clue constructed from the line
+	 * @throws InvalidClueException - if the line does not hold a valid clue and solution structure
+	 */
+	private static Clue parseClue(String line) throws InvalidClueException {
+		Matcher matcher = CLUE_LINE.matcher(line);
+		if(!matcher.matches())
+			throw new InvalidClueException("No solution structure given for the clue " + line);
+		int[] solutionStructure = ClueSolvingPipeline.parseSolutionStructure(matcher.group(2));
+		return new ClueImpl(matcher.group(1), solutionStructure);
+	}
+
+	/**
+	 * quoteCsv
+	 * @return the given value as a CSV field, in double quotes if it contains a comma, quote or line break
+	 */
+	private static String quoteCsv(String value) {
+		if(value == null)
+			return "";
+		if(value.contains(",") || value.contains("\"") || value.contains("\n") || value.contains("\r"))
+			return "\"" + value.replace("\"", "\"\"") + "\"";
+		return value;
+	}
+
+	/**
+	 * formatResult
+	 * @param clueText - the text of the clue as it appears in the input file
+	 * @param structure - the structure of the solution, as a String
+	 * @param result - the result of solving the clue, or null if the clue could not be solved
+	 * @param message - a message to report in place of a result, or null
+	 * @param format - JSON_LINES_FORMAT or CSV_FORMAT
+	 * @return the lines to be written to the output file for the clue
+	 */
+	private static String formatResult(String clueText, String structure, ClueSolvingResult result, String message,
+			String format) {
+		ArrayList<Solution> solutions = (result == null) ? new ArrayList<Solution>() : result.getSolutions();
+		String latency = (result == null) ? "" : String.format(Locale.ROOT, "%.1f", result.getLatencyNanos() / NANOSECONDS_IN_ONE_MILLISECOND);
+		String complete = (result == null) ? "" : String.valueOf(result.isComplete());
+		if(result != null && message == null)
+			message = result.getMessage();
+		StringBuilder output = new StringBuilder();
+		if(format.equals(CSV_FORMAT)) {
+			String prefix = quoteCsv(clueText) + "," + quoteCsv(structure) + ",";
+			if(solutions.isEmpty())
+				output.append(prefix).append(",,,").append(latency).append(",").append(quoteCsv(message)).append(",")
+					.append(complete).append("\n");
+			for(int i = 0; i < solutions.size(); i++)
+				output.append(prefix).append(i + 1).append(",").append(quoteCsv(solutions.get(i).getSolutionText())).append(",")
+					.append(solutions.get(i).getConfidence()).append(",").append(latency).append(",,").append(complete).append("\n");
+			return output.toString();
+		}
+		output.append("{").append(JsonFormatter.field("clue", JsonFormatter.quote(clueText))).append(",");
+		output.append(JsonFormatter.field("structure", JsonFormatter.quote(structure))).append(",");
+		output.append(JsonFormatter.field("solutions", JsonFormatter.solutions(solutions))).append(",");
+		if(result != null && !result.getSimilarClues().isEmpty())
+			output.append(JsonFormatter.field("similarClues", JsonFormatter.similarClues(result.getSimilarClues()))).append(",");
+		output.append(JsonFormatter.field("latencyMs", latency.isEmpty() ? "null" : latency)).append(",");
+		output.append(JsonFormatter.field("complete", complete.isEmpty() ? "null" : complete)).append(",");
+		output.append(JsonFormatter.field("message", JsonFormatter.quote(message))).append("}\n");
+		return output.toString();
+	}
+
+	/**
+	 * percentile
+	 * @param sortedValues - values in ascending order
+	 * @param percentile - the percentile required, from 0 to 100
+	 * @return the value at the given percentile, by the nearest-rank method
+	 */
+	private static long percentile(long[] sortedValues, int percentile) {
+		if(sortedValues.length == 0)
+			return 0;
+		int rank = (int)Math.ceil(percentile / 100.0 * sortedValues.length);
+		return sortedValues[Math.max(0, rank - 1)];
+	}
+
+	public static void main(String[] args) throws IOException, InterruptedException {
+		if(args.length < 2) {
+			System.err.println("Usage: BatchSolverRunner inputFile outputFile [" + JSON_LINES_FORMAT + "|" + CSV_FORMAT +
+					"] [numberOfWorkers]");
+			System.exit(1);
+		}
+		/* log4j logging configuration */
+		Logger.getRootLogger().setLevel(Level.INFO);
+		PropertyConfigurator.configure("log4j.properties");
+
+		final String format = (args.length > 2 && args[2].equalsIgnoreCase(CSV_FORMAT)) ? CSV_FORMAT : JSON_LINES_FORMAT;
+		int numberOfWorkers = DEFAULT_NUMBER_OF_WORKERS;
+		if(args.length > 3) {
+			try {
+				numberOfWorkers = Math.max(1, Integer.parseInt(args[3]));
+			}
+			catch(NumberFormatException e) {
+				log.debug("Ignoring invalid number of workers " + args[3]);
+			}
+		}
+
+		/* Read the clues */
+		ArrayList<String> lines = new ArrayList<String>();
+		BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(args[0]), CHARSET));
+		try {
+			String line;
+			while((line = reader.readLine()) != null) {
+				if(!line.trim().isEmpty() && !line.trim().startsWith(COMMENT_MARKER))
+					lines.add(line.trim());
+			}
+		}
+		finally {
+			reader.close();
+		}
+
+		ExecutorService workers = Executors.newFixedThreadPool(numberOfWorkers);
+		final ClueSolvingPipeline pipeline = new ClueSolvingPipeline(workers);
+		KnowledgeBaseManager.getInstance(); // load the knowledge base before the clock starts
+		final long[] latencies = new long[lines.size()];
+		final boolean[] solved = new boolean[lines.size()];
+		final boolean[] stopped = new boolean[lines.size()]; // at the deadline
+		final long deadlineMillis = SolverProperties.getLong(SolverProperties.SOLVE_DEADLINE, 0);
+		ArrayList<Future<String>> outputs = new ArrayList<Future<String>>();
+		long startTime = System.nanoTime();
+		for(int i = 0; i < lines.size(); i++) {
+			final int index = i;
+			final String line = lines.get(i);
+			outputs.add(workers.submit(new Callable<String>() {
+				@Override
+				public String call() throws Exception {
+					Clue clue;
+					try {
+						clue = parseClue(line);
+					}
+					catch(InvalidClueException e) {
+						return formatResult(line, "", null, e.getMessage(), format);
+					}
+					SolveContext solveContext = new SolveContext();
+					if(deadlineMillis > 0)
+						solveContext.setDeadline(deadlineMillis);
+					ClueSolvingResult result = pipeline.solve(clue, null, solveContext);
+					latencies[index] = result.getLatencyNanos();
+					solved[index] = result.isSolved();
+					stopped[index] = !result.isComplete();
+					/* only the formatted output is kept, so that the inference models behind the solutions can be collected */
+					return formatResult(clue.getSourceClue(), clue.getSolutionStructureAsString(), result, null, format);
+				}
+			}));
+		}
+
+		/* Write the results in the order of the input file, each as soon as it and every result before it is ready */
+		Writer writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(args[1]), CHARSET));
+		try {
+			if(format.equals(CSV_FORMAT))
+				writer.write(CSV_HEADER + "\n");
+			for(int i = 0; i < outputs.size(); i++) {
+				try {
+					writer.write(outputs.get(i).get());
+				}
+				catch(ExecutionException e) {
+					log.debug("Failed to solve " + lines.get(i) + ": " + e.getCause());
+					writer.write(formatResult(lines.get(i), "", null, String.valueOf(e.getCause()), format));
+				}
+				writer.flush();
+			}
+		}
+		finally {
+			writer.close();
+			workers.shutdown();
+		}
+		long elapsedNanos = System.nanoTime() - startTime;
+		KnowledgeBaseManager.getInstance().persistKnowledgeBase();
+
+		/* Report latency and throughput */
+		int solvedCount = 0;
+		int stoppedCount = 0;
+		ArrayList<Long> measuredLatencies = new ArrayList<Long>();
+		for(int i = 0; i < lines.size(); i++) {
+			if(solved[i])
+				solvedCount++;
+			if(stopped[i])
+				stoppedCount++;
+			if(latencies[i] > 0)
+				measuredLatencies.add(latencies[i]);
+		}
+		long[] sortedLatencies = new long[measuredLatencies.size()];
+		long totalLatency = 0;
+		for(int i = 0; i < sortedLatencies.length; i++) {
+			sortedLatencies[i] = measuredLatencies.get(i);
+			totalLatency += sortedLatencies[i];
+		}
+		Arrays.sort(sortedLatencies);
+		double elapsedSeconds = elapsedNanos / 1e9;
+		System.out.println("Clues: " + lines.size() + ", solved: " + solvedCount + ", workers: " + numberOfWorkers);
+		if(deadlineMillis > 0)
+			System.out.println("Deadline: " + deadlineMillis + "ms, stopped at the deadline: " + stoppedCount);
+		System.out.println(String.format("Elapsed: %.2fs, throughput: %.2f clues/s", elapsedSeconds,
+				lines.size() / Math.max(elapsedSeconds, 1e-9)));
+		if(sortedLatencies.length > 0)
+			System.out.println(String.format("Latency per clue (ms): mean %.1f, p50 %.1f, p95 %.1f, max %.1f",
+					totalLatency / NANOSECONDS_IN_ONE_MILLISECOND / sortedLatencies.length,
+					percentile(sortedLatencies, 50) / NANOSECONDS_IN_ONE_MILLISECOND,
+					percentile(sortedLatencies, 95) / NANOSECONDS_IN_ONE_MILLISECOND,
+					sortedLatencies[sortedLatencies.length - 1] / NANOSECONDS_IN_ONE_MILLISECOND));
+		System.out.print(SolverMetrics.getInstance().dump());
+	}
+}
@@ -0,0 +1,296 @@
+package app;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.BufferUnderflowException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.log4j.Logger;
+
+import lombok.AccessLevel;
+import lombok.Getter;
+import lombok.Setter;
+
+import com.hp.hpl.jena.datatypes.TypeMapper;
+import com.hp.hpl.jena.graph.Graph;
+import com.hp.hpl.jena.graph.Node;
+import com.hp.hpl.jena.graph.NodeFactory;
+import com.hp.hpl.jena.graph.Triple;
+import com.hp.hpl.jena.rdf.model.AnonId;
+import com.hp.hpl.jena.rdf.model.Model;
+import com.hp.hpl.jena.rdf.model.ModelFactory;
+import com.hp.hpl.jena.util.iterator.ExtendedIterator;
+
+/**
+ * @author Ben Griffiths
+ * BinaryModelSnapshot
+ * A compact binary copy of a model loaded from an RDF/XML file, used to avoid parsing the RDF/XML on every start-up. Each distinct
+ * RDF term is written once to a dictionary, and each triple is written as three indexes into that dictionary. A snapshot of the
+ * crossword knowledge base also carries the list of solved clues held in the knowledge base. The length and modification time of
+ * the RDF/XML file from which the model was loaded are recorded in the snapshot, which is ignored if either no longer matches.
+ */
+public class BinaryModelSnapshot {
+	private static Logger log = Logger.getLogger(BinaryModelSnapshot.class);
+	private static final int MAGIC_NUMBER = 0x53534B42;
+	private static final int FORMAT_VERSION = 1;
+	private static final byte URI_TERM = 0;
+	private static final byte BLANK_TERM = 1;
+	private static final byte LITERAL_TERM = 2;
+	private static final int NULL_STRING_LENGTH = -1;
+	private static final int NO_SOLVED_CLUES = -1;
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+	private static final String TEMPORARY_FILE_SUFFIX = ".tmp";
+	@Getter(AccessLevel.PUBLIC) @Setter(AccessLevel.PRIVATE) private Model model;
+	@Getter(AccessLevel.PUBLIC) @Setter(AccessLevel.PRIVATE) private ArrayList<SolvedClue> solvedClues;
+
+	/**
+	 * Constructor - the only constructor is private; snapshots are obtained by calling read
+	 */
+	private BinaryModelSnapshot(Model model, ArrayList<SolvedClue> solvedClues) {
+		this.setModel(model);
+		this.setSolvedClues(solvedClues);
+	}
+
+	/**
+	 * writeString - writes a String as its length in UTF-8 bytes followed by those bytes
+	 */
+	private static void writeString(DataOutputStream out, String text) throws IOException {
+		if(text == null) {
+			out.writeInt(NULL_STRING_LENGTH);
+			return;
+		}
+		byte[] bytes = text.getBytes(UTF8);
+		out.writeInt(bytes.length);
+		out.write(bytes);
+	}
+
+	/**
+	 * readString - reads a String written by writeString
+	 */
+	private static String readString(MappedByteBuffer buffer) {
+		int length = buffer.getInt();
+		if(length == NULL_STRING_LENGTH)
+			return null;
+		byte[] bytes = new byte[length];
+		buffer.get(bytes);
+		return new String(bytes, UTF8);
+	}
+
+	/**
+	 * writeTerm - writes a single RDF term to the dictionary
+	 */
+	private static void writeTerm(DataOutputStream out, Node term) throws IOException {
+		if(term.isURI()) {
+			out.writeByte(URI_TERM);
+			writeString(out, term.getURI());
+		}
+		else if(term.isBlank()) {
+			out.writeByte(BLANK_TERM);
+			writeString(out, term.getBlankNodeLabel());
+		}
+		else {
+			out.writeByte(LITERAL_TERM);
+			writeString(out, term.getLiteralLexicalForm());
+			String language = term.getLiteralLanguage();
+			writeString(out, (language == null || language.isEmpty()) ? null : language);
+			writeString(out, term.getLiteralDatatypeURI());
+		}
+	}
+
+	/**
+	 * readTerm - reads a single RDF term written by writeTerm
+	 */
+	private static Node readTerm(MappedByteBuffer buffer) throws IOException {
+		byte kind = buffer.get();
+		switch(kind) {
+			case URI_TERM:
+				return NodeFactory.createURI(readString(buffer));
+			case BLANK_TERM:
+				return NodeFactory.createAnon(new AnonId(readString(buffer)));
+			case LITERAL_TERM:
+				String lexicalForm = readString(buffer);
+				String language = readString(buffer);
+				String datatypeUri = readString(buffer);
+				if(datatypeUri == null)
+					return NodeFactory.createLiteral(lexicalForm, language, false);
+				return NodeFactory.createLiteral(lexicalForm, language, TypeMapper.getInstance().getSafeTypeByName(datatypeUri));
+			default:
+				throw new IOException("Unknown term type " + kind);
+		}
+	}
+
+	/**
+	 * termIndex - returns the index of the given term in the dictionary, adding it to the dictionary if it is not yet present
+	 */
+	private static int termIndex(Node term, Map<Node, Integer> dictionary, List<Node> terms) {
+		Integer index = dictionary.get(term);
+		if(index == null) {
+			index = terms.size();
+			dictionary.put(term, index);
+			terms.add(term);
+		}
+		return index;
+	}
+
+	/**
+	 * read - maps the snapshot file into memory and decodes it
+	 * @param snapshotFile - the file holding the snapshot
+	 * @param sourceLength - the current length of the RDF/XML file from which the snapshot was taken
+	 * @param sourceLastModified - the current modification time of the RDF/XML file from which the snapshot was taken
+	 * @return the decoded snapshot, or null if the snapshot does not exist, cannot be read, or is stale
+	 */
+	public static BinaryModelSnapshot read(File snapshotFile, long sourceLength, long sourceLastModified) {
+		if(!snapshotFile.exists())
+			return null;
+		try {
+			RandomAccessFile file = new RandomAccessFile(snapshotFile, "r");
+			try {
+				FileChannel channel = file.getChannel();
+				MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+				if(buffer.getInt() != MAGIC_NUMBER || buffer.getInt() != FORMAT_VERSION) {
+					log.debug(snapshotFile.getPath() + " is not a snapshot in the current format");
+					return null;
+				}
+				if(buffer.getLong() != sourceLength || buffer.getLong() != sourceLastModified) {
+					log.debug(snapshotFile.getPath() + " is stale");
+					return null;
+				}
+				Model model = ModelFactory.createDefaultModel();
+				int prefixCount = buffer.getInt();
+				for(int i = 0; i < prefixCount; i++) {
+					String prefix = readString(buffer);
+					model.setNsPrefix(prefix, readString(buffer));
+				}
+				Node[] terms = new Node[buffer.getInt()];
+				for(int i = 0; i < terms.length; i++)
+					terms[i] = readTerm(buffer);
+				int[] triples = new int[buffer.getInt() * 3];
+				buffer.asIntBuffer().get(triples);
+				buffer.position(buffer.position() + (triples.length * 4));
+				Graph graph = model.getGraph();
+				for(int i = 0; i < triples.length; i += 3)
+					graph.add(new Triple(terms[triples[i]], terms[triples[i + 1]], terms[triples[i + 2]]));
+				ArrayList<SolvedClue> solvedClues = null;
+				int solvedClueCount = buffer.getInt();
+				if(solvedClueCount != NO_SOLVED_CLUES) {
+					solvedClues = new ArrayList<SolvedClue>(solvedClueCount);
+					for(int i = 0; i < solvedClueCount; i++) {
+						String clueText = readString(buffer);
+						String solutionStructure = readString(buffer);
+						SolvedClue solvedClue = new SolvedClue(clueText, solutionStructure, readString(buffer));
+						int solutionTextCount = buffer.getInt();
+						for(int j = 0; j < solutionTextCount; j++)
+							solvedClue.getSolutionTexts().add(readString(buffer));
+						solvedClues.add(solvedClue);
+					}
+				}
+				log.debug(model.size() + " triples read from " + snapshotFile.getPath());
+				return new BinaryModelSnapshot(model, solvedClues);
+			}
+			finally {
+				file.close();
+			}
+		}
+		catch(IOException e) {
+			log.debug("Failed to read " + snapshotFile.getPath());
+			log.debug(e.getMessage());
+		}
+		catch(BufferUnderflowException e) {
+			log.debug(snapshotFile.getPath() + " is truncated");
+		}
+		return null;
+	}
+
+	/**
+	 * write - writes a snapshot of the model argument to disk. The snapshot is written to a temporary file first, so that a failure
+	 * part way through writing leaves any previous snapshot intact
+	 * @param snapshotFile - the file to which the snapshot is to be written
+	 * @param model - the model of which a snapshot is to be taken
+	 * @param solvedClues - the solved clues held in the model, or null if the model is not a crossword knowledge base
+	 * @param sourceLength - the length of the RDF/XML file holding the same triples as the model
+	 * @param sourceLastModified - the modification time of the RDF/XML file holding the same triples as the model
+	 */
+	public static void write(File snapshotFile, Model model, List<SolvedClue> solvedClues, long sourceLength,
+			long sourceLastModified) {
+		File temporaryFile = new File(snapshotFile.getPath() + TEMPORARY_FILE_SUFFIX);
+		Map<Node, Integer> dictionary = new HashMap<Node, Integer>();
+		List<Node> terms = new ArrayList<Node>();
+		int[] triples = new int[(int)model.size() * 3];
+		int tripleCount = 0;
+		ExtendedIterator<Triple> modelTriples = model.getGraph().find(Node.ANY, Node.ANY, Node.ANY);
+		while(modelTriples.hasNext()) {
+			Triple triple = modelTriples.next();
+			if(tripleCount * 3 == triples.length) { // the graph has grown since its size was read
+				int[] largerTriples = new int[triples.length * 2 + 3];
+				System.arraycopy(triples, 0, largerTriples, 0, triples.length);
+				triples = largerTriples;
+			}
+			triples[tripleCount * 3] = termIndex(triple.getSubject(), dictionary, terms);
+			triples[tripleCount * 3 + 1] = termIndex(triple.getPredicate(), dictionary, terms);
+			triples[tripleCount * 3 + 2] = termIndex(triple.getObject(), dictionary, terms);
+			tripleCount++;
+		}
+		try {
+			DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temporaryFile)));
+			try {
+				out.writeInt(MAGIC_NUMBER);
+				out.writeInt(FORMAT_VERSION);
+				out.writeLong(sourceLength);
+				out.writeLong(sourceLastModified);
+				Map<String, String> prefixes = model.getNsPrefixMap();
+				out.writeInt(prefixes.size());
+				for(Map.Entry<String, String> prefix : prefixes.entrySet()) {
+					writeString(out, prefix.getKey());
+					writeString(out, prefix.getValue());
+				}
+				out.writeInt(terms.size());
+				for(Node term : terms)
+					writeTerm(out, term);
+				out.writeInt(tripleCount);
+				for(int i = 0; i < tripleCount * 3; i++)
+					out.writeInt(triples[i]);
+				if(solvedClues == null)
+					out.writeInt(NO_SOLVED_CLUES);
+				else {
+					out.writeInt(solvedClues.size());
+					for(SolvedClue solvedClue : solvedClues) {
+						writeString(out, solvedClue.getClueText());
+						writeString(out, solvedClue.getSolutionStructure());
+						writeString(out, solvedClue.getClueResourceUri());
+						out.writeInt(solvedClue.getSolutionTexts().size());
+						for(String solutionText : solvedClue.getSolutionTexts())
+							writeString(out, solutionText);
+					}
+				}
+			}
+			finally {
+				out.close();
+			}
+			try {
+				Files.move(temporaryFile.toPath(), snapshotFile.toPath(), StandardCopyOption.REPLACE_EXISTING,
+						StandardCopyOption.ATOMIC_MOVE);
+			}
+			catch(AtomicMoveNotSupportedException e) {
+				Files.move(temporaryFile.toPath(), snapshotFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+			}
+			log.debug(tripleCount + " triples written to " + snapshotFile.getPath());
+		}
+		catch(IOException e) {
+			log.debug("Failed to write " + snapshotFile.getPath());
+			log.debug(e.getMessage());
+		}
+	}
+}
@@ -0,0 +1,116 @@
+package app;
+
+import java.util.concurrent.TimeUnit;
+
+import org.apache.log4j.Logger;
+
+/**
+ * @author Ben Griffiths
+ * CircuitBreaker
+ * Stops queries being sent to an endpoint that has repeatedly failed to answer them, so that clues are solved from cached or
+ * degraded results at once instead of each query waiting out its own retries and timeouts. The breaker opens after a run of
+ * consecutive failures, rejects every query while open, and after a cooling-off period lets a single probe query through; the
+ * breaker closes again if the probe succeeds and reopens if it fails.
+ */
+public class CircuitBreaker {
+	private static Logger log = Logger.getLogger(CircuitBreaker.class);
+	private final int failureThreshold;
+	private final long openNanos;
+	private State state = State.CLOSED;
+	private int consecutiveFailures;
+	private long openedNanos;
+	private long probeStartedNanos;
+	private boolean probeInFlight;
+	private long rejectedCount;
+	private long openedCount;
+
+	/**
+	 * The states of the breaker
+	 */
+	public enum State {
+		CLOSED, // queries are sent as normal
+		OPEN, // queries are rejected until the cooling-off period has passed
+		HALF_OPEN // a single probe query is allowed through to test whether the endpoint has recovered
+	}
+
+	/**
+	 * Constructor
+	 * @param failureThreshold - the number of consecutive failures after which the breaker opens
+	 * @param openMillis - the cooling-off period in milliseconds before a probe query is allowed through an open breaker
+	 */
+	public CircuitBreaker(int failureThreshold, long openMillis) {
+		this.failureThreshold = Math.max(1, failureThreshold);
+		this.openNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(0, openMillis));
+	}
+
+	/**
+	 * allowRequest - decides whether a query may be sent
+	 * @return true if the query may be sent, in which case recordSuccess or recordFailure should be called with its outcome
+	 */
+	public synchronized boolean allowRequest() {
+		long now = System.nanoTime();
+		if(this.state == State.OPEN && now - this.openedNanos >= this.openNanos) {
+			this.state = State.HALF_OPEN;
+			this.probeInFlight = false;
+		}
+		/* A probe whose outcome is never recorded, because its solve was cancelled, is replaced after another cooling-off period */
+		if(this.state == State.HALF_OPEN && (!this.probeInFlight || now - this.probeStartedNanos >= this.openNanos)) {
+			this.probeInFlight = true;
+			this.probeStartedNanos = now;
+			return true;
+		}
+		if(this.state == State.CLOSED)
+			return true;
+		this.rejectedCount++;
+		return false;
+	}
+
+	/**
+	 * recordSuccess - records that the endpoint answered a query, closing the breaker
+	 */
+	public synchronized void recordSuccess() {
+		if(this.state != State.CLOSED)
+			log.debug("Closing the circuit breaker as the endpoint has recovered");
+		this.state = State.CLOSED;
+		this.consecutiveFailures = 0;
+		this.probeInFlight = false;
+	}
+
+	/**
+	 * recordFailure - records that the endpoint failed to answer a query, opening the breaker if the failure is one too many
+	 */
+	public synchronized void recordFailure() {
+		this.consecutiveFailures++;
+		if(this.state == State.HALF_OPEN || (this.state == State.CLOSED && this.consecutiveFailures >= this.failureThreshold)) {
+			log.debug("Opening the circuit breaker after " + this.consecutiveFailures + " consecutive failures");
+			this.state = State.OPEN;
+			this.openedNanos = System.nanoTime();
+			this.probeInFlight = false;
+			this.openedCount++;
+		}
+	}
+
+	/**
+	 * getState
+	 * @return the current state of the breaker
+	 */
+	public synchronized State getState() {
+		return this.state;
+	}
+
+	/**
+	 * getRejectedCount
+	 * @return the number of queries rejected because the breaker was open
+	 */
+	public synchronized long getRejectedCount() {
+		return this.rejectedCount;
+	}
+
+	/**
+	 * getOpenedCount
+	 * @return the number of times the breaker has opened
+	 */
+	public synchronized long getOpenedCount() {
+		return this.openedCount;
+	}
+}
@@ -0,0 +1,365 @@
+package app;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import lombok.AccessLevel;
+import lombok.Getter;
+import lombok.Setter;
+
+import framework.ClueFragmentLattice;
+
+/**
+ * @author Ben Griffiths
+ * ClueFragmentLatticeImpl
+ * An implementation of framework.ClueFragmentLattice. Each sequence of words added to the lattice is held as a row of tokens, and
+ * every contiguous span of tokens in the row becomes a fragment, recorded only as a (row, start, end) triple. The hash of each span
+ * is computed incrementally from the hashes of its tokens, and is the same as the hash of the text the span stands for, so duplicate
+ * fragments are found through a hash table without building their text; the text of a fragment is only built when it is first asked
+ * for. The spans from each start stand for the texts the clue's words were always fragmented into, by appending one word at a time
+ * to a growing text: whenever the text is not yet a fragment, a trailing comma is removed from it and, if its parentheses are
+ * unbalanced, all of its parentheses are removed, and the text is carried on, so altered, to the longer spans from the same start.
+ * @implements framework.ClueFragmentLattice
+ */
+public class ClueFragmentLatticeImpl implements ClueFragmentLattice {
+	private final int INITIAL_CAPACITY = 32;
+	private final int HASH_MULTIPLIER = 31; // as used by java.lang.String.hashCode
+	private final char SEPARATOR = ' ';
+	private final int LITERAL_ROW = -1; // the row of a fragment taken as a whole
+	private final int TEXT_ONLY = -1; // the stripped end of a span whose text could only be held as a String
+	private final String COMMA = ",";
+	private final String OPEN_BRACKET = "(";
+	private final String CLOSE_BRACKET = ")";
+	/* the forms of each token of a row: as the first word of a span, as a later word, and each with parentheses removed */
+	private final int LEADING = 0;
+	private final int FOLLOWING = 1;
+	private final int STRIPPED = 2; // added to LEADING or FOLLOWING
+	private final int FORM_COUNT = 4;
+	@Getter(AccessLevel.PRIVATE) @Setter(AccessLevel.PRIVATE) private Set<String> ignoredFragments;
+	@Getter(AccessLevel.PRIVATE) @Setter(AccessLevel.PRIVATE) private ArrayList<String[][]> rows; // indexed by form, then by token
+	/* the fragments, in the order in which they were added */
+	@Getter(AccessLevel.PRIVATE) @Setter(AccessLevel.PRIVATE) private int[] fragmentRows;
+	@Getter(AccessLevel.PRIVATE) @Setter(AccessLevel.PRIVATE) private int[] fragmentStarts;
+	@Getter(AccessLevel.PRIVATE) @Setter(AccessLevel.PRIVATE) private int[] fragmentEnds; // exclusive
+	/* the tokens of a span before its stripped end stand with their parentheses removed */
+	@Getter(AccessLevel.PRIVATE) @Setter(AccessLevel.PRIVATE) private int[] fragmentStrippedEnds;
+	@Getter(AccessLevel.PRIVATE) @Setter(AccessLevel.PRIVATE) private String[] fragmentTexts; // built on demand
+	@Getter(AccessLevel.PRIVATE) @Setter(AccessLevel.PRIVATE) private int fragmentCount;
+	/* the positions of the fragments with each hash */
+	@Getter(AccessLevel.PRIVATE) @Setter(AccessLevel.PRIVATE) private Map<Integer, int[]> fragmentsByHash;
+
+	/**
+	 * Constructor - instantiates an empty ClueFragmentLatticeImpl
+	 * @param ignoredFragments - single-word fragments, such as punctuation marks, that are never to be added to the lattice
+	 */
+	public ClueFragmentLatticeImpl(String[] ignoredFragments) {
+		this.setIgnoredFragments(new HashSet<String>(Arrays.asList(ignoredFragments)));
+		this.setRows(new ArrayList<String[][]>());
+		this.setFragmentRows(new int[this.INITIAL_CAPACITY]);
+		this.setFragmentStarts(new int[this.INITIAL_CAPACITY]);
+		this.setFragmentEnds(new int[this.INITIAL_CAPACITY]);
+		this.setFragmentStrippedEnds(new int[this.INITIAL_CAPACITY]);
+		this.setFragmentTexts(new String[this.INITIAL_CAPACITY]);
+		this.setFragmentCount(0);
+		this.setFragmentsByHash(new HashMap<Integer, int[]>());
+	}
+
+	/**
+	 * powerOfMultiplier
+	 * @param exponent - the length of a String
+	 * @return HASH_MULTIPLIER raised to the power of the exponent, with int overflow, as String.hashCode would apply it
+	 */
+	private int powerOfMultiplier(int exponent) {
+		int power = 1;
+		for(int i = 0; i < exponent; i++)
+			power *= this.HASH_MULTIPLIER;
+		return power;
+	}
+
+	/**
+	 * appendHash
+	 * @return the hash of the text with the given hash followed by the separator and the given token, i.e.
+	 * hash(a + " " + b) = (hash(a) * 31 + ' ') * 31^length(b) + hash(b)
+	 */
+	private int appendHash(int hash, String token) {
+		return (hash * this.HASH_MULTIPLIER + this.SEPARATOR) * this.powerOfMultiplier(token.length()) + token.hashCode();
+	}
+
+	/**
+	 * withoutTrailingComma
+	 * @return the token without its trailing comma, if it ends with one and is longer than the given minimum length
+	 */
+	private String withoutTrailingComma(String token, int minimumLength) {
+		if(token.length() > minimumLength && token.endsWith(this.COMMA))
+			return token.substring(0, token.length() - 1);
+		return token;
+	}
+
+	/**
+	 * withoutParentheses
+	 * @return the text with all parentheses removed
+	 */
+	private String withoutParentheses(String text) {
+		return text.replace(this.OPEN_BRACKET, "").replace(this.CLOSE_BRACKET, "");
+	}
+
+	/**
+	 * unbalancedParentheses
+	 * @return true if the number of opening brackets in the text is not equal to the number of closing brackets
+	 */
+	private boolean unbalancedParentheses(String text) {
+		int balance = 0;
+		for(int i = 0; i < text.length(); i++) {
+			if(text.charAt(i) == this.OPEN_BRACKET.charAt(0))
+				balance++;
+			else if(text.charAt(i) == this.CLOSE_BRACKET.charAt(0))
+				balance--;
+		}
+		return balance != 0;
+	}
+
+	/**
+	 * tokenAt
+	 * @return the form of the token at the given position of the given row, in the span with the given start and stripped end
+	 */
+	private String tokenAt(int row, int start, int strippedEnd, int position) {
+		int form = (position == start) ? this.LEADING : this.FOLLOWING;
+		if(position < strippedEnd)
+			form += this.STRIPPED;
+		return this.getRows().get(row)[form][position];
+	}
+
+	/**
+	 * buildText
+	 * @return the text of the span of the given row from start (inclusive) to end (exclusive), whose tokens before strippedEnd
+	 * stand with their parentheses removed
+	 */
+	private String buildText(int row, int start, int end, int strippedEnd) {
+		StringBuilder text = new StringBuilder(this.tokenAt(row, start, strippedEnd, start));
+		for(int i = start + 1; i < end; i++)
+			text.append(this.SEPARATOR).append(this.tokenAt(row, start, strippedEnd, i));
+		return text.toString();
+	}
+
+	/**
+	 * spanEquals
+	 * @return true if the fragment at the given index has the same text as the given span
+	 */
+	private boolean spanEquals(int index, int row, int start, int end, int strippedEnd) {
+		if(this.getFragmentRows()[index] == this.LITERAL_ROW || this.getFragmentStrippedEnds()[index] == this.TEXT_ONLY ||
+				this.getFragmentEnds()[index] - this.getFragmentStarts()[index] != end - start)
+			return this.getFragment(index).equals(this.buildText(row, start, end, strippedEnd));
+		int otherRow = this.getFragmentRows()[index];
+		int otherStart = this.getFragmentStarts()[index];
+		int otherStrippedEnd = this.getFragmentStrippedEnds()[index];
+		for(int i = 0; i < end - start; i++) {
+			if(!this.tokenAt(row, start, strippedEnd, start + i).equals(
+					this.tokenAt(otherRow, otherStart, otherStrippedEnd, otherStart + i)))
+				return this.getFragment(index).equals(this.buildText(row, start, end, strippedEnd)); // tokens may be empty
+		}
+		return true;
+	}
+
+	/**
+	 * findSpan
+	 * @return true if the lattice already holds a fragment with the same text as the given span
+	 */
+	private boolean findSpan(int hash, int row, int start, int end, int strippedEnd) {
+		int[] candidates = this.getFragmentsByHash().get(hash);
+		if(candidates == null)
+			return false;
+		for(int candidate : candidates) {
+			if(this.spanEquals(candidate, row, start, end, strippedEnd))
+				return true;
+		}
+		return false;
+	}
+
+	/**
+	 * record - appends a fragment to the lattice
+	 */
+	private void record(int hash, int row, int start, int end, int strippedEnd, String text) {
+		int index = this.getFragmentCount();
+		if(index == this.getFragmentRows().length) {
+			int newCapacity = index * 2;
+			this.setFragmentRows(Arrays.copyOf(this.getFragmentRows(), newCapacity));
+			this.setFragmentStarts(Arrays.copyOf(this.getFragmentStarts(), newCapacity));
+			this.setFragmentEnds(Arrays.copyOf(this.getFragmentEnds(), newCapacity));
+			this.setFragmentStrippedEnds(Arrays.copyOf(this.getFragmentStrippedEnds(), newCapacity));
+			this.setFragmentTexts(Arrays.copyOf(this.getFragmentTexts(), newCapacity));
+		}
+		this.getFragmentRows()[index] = row;
+		this.getFragmentStarts()[index] = start;
+		this.getFragmentEnds()[index] = end;
+		this.getFragmentStrippedEnds()[index] = strippedEnd;
+		this.getFragmentTexts()[index] = text;
+		this.setFragmentCount(index + 1);
+		int[] fragmentsWithHash = this.getFragmentsByHash().get(hash);
+		if(fragmentsWithHash == null)
+			fragmentsWithHash = new int[] {index};
+		else {
+			fragmentsWithHash = Arrays.copyOf(fragmentsWithHash, fragmentsWithHash.length + 1);
+			fragmentsWithHash[fragmentsWithHash.length - 1] = index;
+		}
+		this.getFragmentsByHash().put(hash, fragmentsWithHash);
+	}
+
+	/**
+	 * addLiteral - adds a fragment taken as a whole to the lattice, unless the lattice already holds a fragment with the same text
+	 * @param fragment - the text of the fragment
+	 */
+	public void addLiteral(String fragment) {
+		if(this.contains(fragment))
+			return;
+		this.record(fragment.hashCode(), this.LITERAL_ROW, 0, 1, 0, fragment);
+	}
+
+	/**
+	 * addTokens - adds to the lattice every contiguous span of the given tokens that the lattice does not already hold, in order of
+	 * start and then of end. The text of each span is the text of the next shorter span from the same start, as carried on, followed
+	 * by its last token; unless the lattice already holds that text, a trailing comma is removed from it (if it is longer than one
+	 * character) and, if its parentheses are unbalanced, all of its parentheses are removed, and it is added and carried on as
+	 * altered. Ignored single-word fragments are not added
+	 * @param tokens - the non-empty words of a clue, or of a part of a clue, in order
+	 */
+	public void addTokens(String[] tokens) {
+		int row = this.getRows().size();
+		int tokenCount = tokens.length;
+		String[][] forms = new String[this.FORM_COUNT][tokenCount];
+		int[] openBrackets = new int[tokenCount + 1], closeBrackets = new int[tokenCount + 1]; // prefix counts
+		for(int i = 0; i < tokenCount; i++) {
+			forms[this.LEADING][i] = this.withoutTrailingComma(tokens[i], 1); // a lone comma is left as it is
+			forms[this.FOLLOWING][i] = this.withoutTrailingComma(tokens[i], 0); // the span is longer than one character
+			forms[this.LEADING + this.STRIPPED][i] = this.withoutParentheses(forms[this.LEADING][i]);
+			forms[this.FOLLOWING + this.STRIPPED][i] = this.withoutParentheses(forms[this.FOLLOWING][i]);
+			int opens = 0, closes = 0;
+			for(int c = 0; c < tokens[i].length(); c++) {
+				if(tokens[i].charAt(c) == this.OPEN_BRACKET.charAt(0))
+					opens++;
+				else if(tokens[i].charAt(c) == this.CLOSE_BRACKET.charAt(0))
+					closes++;
+			}
+			openBrackets[i + 1] = openBrackets[i] + opens;
+			closeBrackets[i + 1] = closeBrackets[i] + closes;
+		}
+		this.getRows().add(forms);
+
+		for(int start = 0; start < tokenCount; start++) {
+			int hash = 0, strippedHash = 0; // of the text carried on, and of that text with all parentheses removed
+			int strippedEnd = start; // the carried text has no parentheses before this token
+			String carriedText = null; // set once the carried text cannot be held as a span
+			for(int end = start + 1; end <= tokenCount; end++) {
+				int last = end - 1;
+				if(carriedText != null) {
+					carriedText = this.addText(carriedText + this.SEPARATOR + tokens[last], row, start, end);
+					continue;
+				}
+				int form = (end == start + 1) ? this.LEADING : this.FOLLOWING;
+				String token = forms[form][last], strippedToken = forms[form + this.STRIPPED][last];
+				int spanHash = (end == start + 1) ? token.hashCode() : this.appendHash(hash, token);
+				strippedHash = (end == start + 1) ? strippedToken.hashCode() : this.appendHash(strippedHash, strippedToken);
+				boolean unbalanced = (openBrackets[end] - openBrackets[strippedEnd]) != (closeBrackets[end] - closeBrackets[strippedEnd]);
+				if(unbalanced || !token.equals(tokens[last])) {
+					/* the text is only altered if the lattice does not already hold it as it stands */
+					String text = (end == start + 1) ? tokens[last] :
+						this.buildText(row, start, last, strippedEnd) + this.SEPARATOR + tokens[last];
+					if(this.contains(text)) {
+						carriedText = text;
+						continue;
+					}
+					if(unbalanced) {
+						strippedEnd = end;
+						spanHash = strippedHash;
+					}
+				}
+				hash = spanHash;
+				if(end == start + 1 && this.getIgnoredFragments().contains(this.tokenAt(row, start, strippedEnd, start)))
+					continue;
+				if(!this.findSpan(spanHash, row, start, end, strippedEnd))
+					this.record(spanHash, row, start, end, strippedEnd, null);
+			}
+		}
+	}
+
+	/**
+	 * addText - adds the text of a span that cannot be held as a span of the tokens of its row, as addTokens would alter it
+	 * @param text - the text of the next shorter span, as carried on, followed by the last token of the span
+	 * @return the text to be carried on to the next longer span
+	 */
+	private String addText(String text, int row, int start, int end) {
+		if(this.contains(text))
+			return text;
+		text = this.withoutTrailingComma(text, 1);
+		if(this.unbalancedParentheses(text))
+			text = this.withoutParentheses(text);
+		if(!this.getIgnoredFragments().contains(text) && !this.contains(text))
+			this.record(text.hashCode(), row, start, end, this.TEXT_ONLY, text);
+		return text;
+	}
+
+	/**
+	 * size
+	 * @override framework.ClueFragmentLattice.size
+	 */
+	@Override
+	public int size() {
+		return this.getFragmentCount();
+	}
+
+	/**
+	 * getFragment
+	 * @override framework.ClueFragmentLattice.getFragment
+	 */
+	@Override
+	public String getFragment(int index) {
+		if(index < 0 || index >= this.getFragmentCount())
+			throw new IndexOutOfBoundsException("No clue fragment at position " + index);
+		if(this.getFragmentTexts()[index] == null)
+			this.getFragmentTexts()[index] = this.buildText(this.getFragmentRows()[index], this.getFragmentStarts()[index],
+					this.getFragmentEnds()[index], this.getFragmentStrippedEnds()[index]);
+		return this.getFragmentTexts()[index];
+	}
+
+	/**
+	 * getWordCount
+	 * @override framework.ClueFragmentLattice.getWordCount
+	 */
+	@Override
+	public int getWordCount(int index) {
+		if(index < 0 || index >= this.getFragmentCount())
+			throw new IndexOutOfBoundsException("No clue fragment at position " + index);
+		return this.getFragmentEnds()[index] - this.getFragmentStarts()[index];
+	}
+
+	/**
+	 * contains
+	 * @override framework.ClueFragmentLattice.contains
+	 */
+	@Override
+	public boolean contains(String fragment) {
+		int[] candidates = this.getFragmentsByHash().get(fragment.hashCode());
+		if(candidates == null)
+			return false;
+		for(int candidate : candidates) {
+			if(this.getFragment(candidate).equals(fragment))
+				return true;
+		}
+		return false;
+	}
+
+	/**
+	 * getFragments
+	 * @override framework.ClueFragmentLattice.getFragments
+	 */
+	@Override
+	public ArrayList<String> getFragments() {
+		ArrayList<String> fragments = new ArrayList<String>(this.getFragmentCount());
+		for(int i = 0; i < this.getFragmentCount(); i++)
+			fragments.add(this.getFragment(i));
+		return fragments;
+	}
+}
@@ -0,0 +1,137 @@
+package app;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import lombok.AccessLevel;
+import lombok.Getter;
+import lombok.Setter;
+
+import framework.Clue;
+import framework.ClueFragmentLattice;
+
+/**
+ * @author Ben Griffiths
+ * ClueFragmentScorer
+ * Ranks the fragments of a clue by how likely each is to be the name of an entity, so that entity recognition can spend its queries
+ * on the most promising fragments first. A fragment scores highly if its words were capitalised in the text of the clue, if it is
+ * short, if few of its words are common English words (and, in particular, if it neither ends with one nor begins with one other
+ * than "the"), if its words have often been recognised as parts of entity names before, and if it is the solution to a clue in the
+ * knowledge base.
+ */
+public class ClueFragmentScorer {
+	private final double CAPITALISATION_WEIGHT = 2.0;
+	private final double LENGTH_WEIGHT = 1.0;
+	private final double EXCESS_LENGTH_PENALTY = 0.5; // per word beyond PREFERRED_MAXIMUM_WORDS
+	private final double STOPWORD_WEIGHT = 2.0;
+	private final double BOUNDARY_STOPWORD_PENALTY = 2.0; // for fragments such as "Of The" or "Side Of"
+	private final double HIT_RATE_WEIGHT = 2.0;
+	private final double KNOWN_SOLUTION_BONUS = 3.0;
+	private final double PRIOR_HIT_RATE = 0.5; // assumed for words never looked up before
+	private final int PREFERRED_MAXIMUM_WORDS = 3; // entity names are rarely longer
+	private final String DEFINITE_ARTICLE = "the"; // begins many entity names, such as "The Beatles"
+	@Getter(AccessLevel.PRIVATE) @Setter(AccessLevel.PRIVATE) private Map<String, Boolean> commonClueFragments;
+	@Getter(AccessLevel.PRIVATE) @Setter(AccessLevel.PRIVATE) private Set<String> capitalisedWords; // as written in the clue
+	@Getter(AccessLevel.PRIVATE) @Setter(AccessLevel.PRIVATE) private Set<String> knownSolutionTexts;
+	@Getter(AccessLevel.PRIVATE) @Setter(AccessLevel.PRIVATE) private EntityRecognitionCache cache;
+
+	/**
+	 * Constructor
+	 * @param clue - the clue whose fragments are to be scored
+	 * @param commonClueFragments - the most common English words, in lower case
+	 * @param knownSolutionTexts - the texts, in lower case, of solutions held in the knowledge base
+	 * @param cache - the cache holding the history of entity recognition lookups
+	 */
+	public ClueFragmentScorer(Clue clue, Map<String, Boolean> commonClueFragments, Set<String> knownSolutionTexts,
+			EntityRecognitionCache cache) {
+		this.setCommonClueFragments(commonClueFragments);
+		this.setKnownSolutionTexts(knownSolutionTexts);
+		this.setCache(cache);
+		this.setCapitalisedWords(new HashSet<String>());
+		String[] words = clue.getSourceClue().split("[\\s\"]+");
+		boolean firstWord = true;
+		for(String word : words) {
+			String strippedWord = word.replaceAll("[^\\p{L}\\p{N}']", "");
+			if(strippedWord.isEmpty())
+				continue;
+			/* the first word of a clue is capitalised as a matter of course, so says nothing about whether it names an entity */
+			if(!firstWord && Character.isUpperCase(strippedWord.charAt(0)))
+				this.getCapitalisedWords().add(strippedWord.toLowerCase());
+			firstWord = false;
+		}
+	}
+
+	/**
+	 * isStopword
+	 * @return true if the given word is one of the most common English words
+	 */
+	private boolean isStopword(String word) {
+		return this.getCommonClueFragments().containsKey(word);
+	}
+
+	/**
+	 * score
+	 * @param fragment - the text of a fragment of the clue
+	 * @return a score for the fragment; the higher the score, the more likely the fragment is to name an entity
+	 */
+	public double score(String fragment) {
+		String[] words = fragment.toLowerCase().replaceAll("[^\\p{L}\\p{N}' ]", "").trim().split("\\s+");
+		int wordCount = words.length;
+		int capitalised = 0, stopwords = 0;
+		double hitRate = 0;
+		for(String word : words) {
+			if(this.getCapitalisedWords().contains(word))
+				capitalised++;
+			if(this.isStopword(word))
+				stopwords++;
+			hitRate += this.getCache().getWordHitRate(word, this.PRIOR_HIT_RATE);
+		}
+		double score = this.CAPITALISATION_WEIGHT * capitalised / wordCount;
+		score += this.LENGTH_WEIGHT - this.EXCESS_LENGTH_PENALTY * Math.max(0, wordCount - this.PREFERRED_MAXIMUM_WORDS);
+		score -= this.STOPWORD_WEIGHT * stopwords / wordCount;
+		boolean stopwordAtStart = this.isStopword(words[0]) && !words[0].equals(this.DEFINITE_ARTICLE);
+		if(wordCount > 1 && (stopwordAtStart || this.isStopword(words[wordCount - 1])))
+			score -= this.BOUNDARY_STOPWORD_PENALTY;
+		score += this.HIT_RATE_WEIGHT * hitRate / wordCount;
+		if(this.getKnownSolutionTexts() != null && this.getKnownSolutionTexts().contains(fragment.toLowerCase()))
+			score += this.KNOWN_SOLUTION_BONUS;
+		return score;
+	}
+
+	/**
+	 * rank
+	 * @param lattice - the fragments of the clue
+	 * @return the fragments in the lattice that are not common English words, in descending order of score. Fragments with equal
+	 * scores keep the order in which they appear in the lattice
+	 */
+	public ArrayList<String> rank(ClueFragmentLattice lattice) {
+		final ArrayList<String> fragments = new ArrayList<String>();
+		final ArrayList<Double> scores = new ArrayList<Double>();
+		for(int i = 0; i < lattice.size(); i++) {
+			String fragment = lattice.getFragment(i);
+			if(this.getCommonClueFragments().containsKey(fragment.toLowerCase()))
+				continue;
+			fragments.add(fragment);
+			scores.add(this.score(fragment));
+		}
+		ArrayList<Integer> order = new ArrayList<Integer>();
+		for(int i = 0; i < fragments.size(); i++)
+			order.add(i);
+
+		class ScoreComparator implements Comparator<Integer> {
+		    @Override
+		    public int compare(Integer firstIndex, Integer secondIndex) {
+		        return Double.compare(scores.get(secondIndex), scores.get(firstIndex));
+		    }
+		}
+		Collections.sort(order, new ScoreComparator()); // a stable sort
+		ArrayList<String> rankedFragments = new ArrayList<String>();
+		for(int index : order)
+			rankedFragments.add(fragments.get(index));
+		return rankedFragments;
+	}
+}
@@ -26,7 +26,8 @@ public class ClueImpl implements Clue {
 	private final String S_APOSTROPHE_SEQUENCE = "s'"; // if present in a clue, requires further special transformation
 	private final String FILL_IN_THE_BLANK_MARKER = "_"; // the presence of this marker in the text of a clue signifies a FITB-type clue
 	private final String[] PUNCTUATION = {":", ";", ",", ".", "-"}; // common punctuation marks used in the text of clues
-	@Getter(AccessLevel.PUBLIC) @Setter(AccessLevel.PRIVATE) private ArrayList<String> clueFragments;
+	@Getter(AccessLevel.PUBLIC) @Setter(AccessLevel.PRIVATE) private ClueFragmentLatticeImpl clueFragmentLattice;
+	@Setter(AccessLevel.PRIVATE) private ArrayList<String> clueFragments; // built from the lattice when first asked for
 	@Getter(AccessLevel.PUBLIC) @Setter(AccessLevel.PRIVATE) private String sourceClue;
 	/* Each element of the solutionStructure represents a word in the solution, with the value of that element representing the number
 	 * of letters in that word
@@ -57,7 +58,7 @@ public class ClueImpl implements Clue {
 				String sequenceBeforeQuotation = textToBeFragmented.substring(0, indexOfStartQuote);
 				String sequenceAfterQuotation = textToBeFragmented.substring(indexOfEndQuote + 1, textToBeFragmented.length());
 
-				this.getClueFragments().add(quotedSequence);
+				this.getClueFragmentLattice().addLiteral(quotedSequence);
 				textToBeFragmented = sequenceBeforeQuotation + sequenceAfterQuotation;
 			}
 		}
@@ -75,61 +76,33 @@ public class ClueImpl implements Clue {
 	}
 	
 	/**
-	 * addStandardClueFragments - splits the clueText argument into fragments and adds these to the clueFragments list member. Called if
-	 * the clue being constructed is of standard (i.e. non-FITB) type
+	 * tokenise
+	 * @param clueText - the text of the clue, or part of a clue, to be split into words
+	 * @return the non-empty words of the clueText argument, each in proper case
+	 */
+	private String[] tokenise(String clueText) {
+		ArrayList<String> tokens = new ArrayList<String>();
+		for(String word : clueText.split(" ")) {
+			if(!word.isEmpty())
+				tokens.add(this.toProperCase(word));
+		}
+		return tokens.toArray(new String[tokens.size()]);
+	}
+	
+	/**
+	 * addStandardClueFragments - adds every sequence of consecutive words in the clueText argument to the clue fragment lattice, 
+	 * and then does the same for the clue text with "'s" and then with "s'" removed, if it contains them. Called if the clue being
+	 * constructed is of standard (i.e. non-FITB) type
 	 * @param clueText - the text of the clue to be fragmented
 	 */
     private void addStandardClueFragments(String clueText) {
     	// firstly, remove any FITB markers, since we are treating this text as not being part of a FITB sequence
     	clueText = clueText.replace(this.FILL_IN_THE_BLANK_MARKER, "");
-		String[] wordsInClueText = clueText.split(" ");
-		
-		for(int i = 0; i < wordsInClueText.length; i++) {
-			String thisWord = wordsInClueText[i];
-
-			if(wordsInClueText[i].isEmpty())
-				continue;
-			thisWord = this.toProperCase(wordsInClueText[i]);
-			
-			if(!this.getClueFragments().contains(thisWord)) {
-				/* if the word ends with a comma, remove the comma before adding the word as a clue fragment */
-				if(thisWord.length() > 1 && (thisWord.substring(thisWord.length() - 1, thisWord.length()).equals(",")))
-						thisWord = thisWord.substring(0, thisWord.length() - 1);
-				/* if the word contains unbalanced parentheses, remove all parentheses */
-				if(this.imbalancedParentheses(thisWord)) {
-					thisWord = thisWord.replace("(", "");
-					thisWord = thisWord.replace(")", "");
-				}
-				if(this.notSolelyPunctuation(thisWord))
-					this.getClueFragments().add(thisWord);
-			}
-			for(int j = i + 1; j < wordsInClueText.length; j++) {
-				String wordToAppend = wordsInClueText[j];
-				if(!wordToAppend.isEmpty())
-					thisWord = thisWord + " " + this.toProperCase(wordToAppend);
-				if(!this.getClueFragments().contains(thisWord)) {
-					/* if the word ends with a comma, remove the comma before adding the word as a clue fragment */
-					if(thisWord.length() > 1 && (thisWord.substring(thisWord.length() - 1, thisWord.length()).equals(",")))
-							thisWord = thisWord.substring(0, thisWord.length() - 1);
-					/* if the word contains unbalanced parentheses, remove all parentheses */
-					if(this.imbalancedParentheses(thisWord)) {
-						thisWord = thisWord.replace("(", "");
-						thisWord = thisWord.replace(")", "");
-					}
-					if(this.notSolelyPunctuation(thisWord))
-						this.getClueFragments().add(thisWord);
-				}
-			}
-		}
-
-		if(clueText.contains(this.APOSTROPHE_S_SEQUENCE)) {
-			String transformedClueText = clueText.replace(this.APOSTROPHE_S_SEQUENCE, "");
-			this.addStandardClueFragments(transformedClueText);
-		}
-		if(clueText.contains(this.S_APOSTROPHE_SEQUENCE)) {
-			String transformedClueText = clueText.replace(this.S_APOSTROPHE_SEQUENCE, "");
-			this.addStandardClueFragments(transformedClueText);
-		}
+    	this.getClueFragmentLattice().addTokens(this.tokenise(clueText));
+		if(clueText.contains(this.APOSTROPHE_S_SEQUENCE))
+			this.addStandardClueFragments(clueText.replace(this.APOSTROPHE_S_SEQUENCE, ""));
+		if(clueText.contains(this.S_APOSTROPHE_SEQUENCE))
+			this.addStandardClueFragments(clueText.replace(this.S_APOSTROPHE_SEQUENCE, ""));
 	}
     
 	/**
@@ -183,15 +156,15 @@ public class ClueImpl implements Clue {
     		String[] fragmentsOfFITBsection = fragment.split(FILL_IN_THE_BLANK_MARKER);
     		for(int i = 0; i < fragmentsOfFITBsection.length; i++) {
 				String thisFragment = fragmentsOfFITBsection[i];
-				if(!this.getClueFragments().contains(thisFragment)) {
-					this.getClueFragments().add(thisFragment);
+				if(!this.getClueFragmentLattice().contains(thisFragment)) {
+					this.getClueFragmentLattice().addLiteral(thisFragment);
 					/* if the fragment ends with a comma or closing bracket, add the fragment without the comma/bracket too */
 					if(thisFragment.length() > 1 && (thisFragment.substring(thisFragment.length() - 1, thisFragment.length()).equals(",")
 							|| thisFragment.substring(thisFragment.length() - 1, thisFragment.length()).equals(")")))
-						this.getClueFragments().add(thisFragment.substring(0, thisFragment.length() - 1));
+						this.getClueFragmentLattice().addLiteral(thisFragment.substring(0, thisFragment.length() - 1));
 					/* if the fragment begins with a (, add the fragment without the ( too */
 					if(thisFragment.length() > 1 && thisFragment.substring(0, 1).equals("("))
-						this.getClueFragments().add(thisFragment.substring(1, thisFragment.length()));
+						this.getClueFragmentLattice().addLiteral(thisFragment.substring(1, thisFragment.length()));
 				}
     		}
     	}
@@ -266,7 +239,7 @@ public class ClueImpl implements Clue {
 				throw new InvalidClueException("Invalid specification of solution structure");
 		}
 		this.setSolutionStructure(solutionStructure);
-		this.setClueFragments(new ArrayList<String>());
+		this.setClueFragmentLattice(new ClueFragmentLatticeImpl(this.PUNCTUATION));
 		
 		if(clueText.contains(FILL_IN_THE_BLANK_MARKER))
 			this.setFillInTheBlank(true);
@@ -278,10 +251,23 @@ public class ClueImpl implements Clue {
 		this.parseClueText(clueText);
 
 		/* Logging */
-		log.debug("Clue text = " + this.getSourceClue());
-		log.debug("Clue fragments generated:");
-		for(String f : this.getClueFragments())
-			log.debug(f);
+		if(log.isDebugEnabled()) {
+			log.debug("Clue text = " + this.getSourceClue());
+			log.debug("Clue fragments generated:");
+			for(String f : this.getClueFragments())
+				log.debug(f);
+		}
+	}
+	
+	/**
+	 * getClueFragments
+	 * @override framework.Clue.getClueFragments
+	 */
+	@Override
+	public ArrayList<String> getClueFragments() {
+		if(this.clueFragments == null)
+			this.setClueFragments(this.getClueFragmentLattice().getFragments());
+		return this.clueFragments;
 	}
 
 	/**
@@ -2,19 +2,12 @@ package app;
 
 import java.util.ArrayList;
 
-import javax.swing.SwingWorker;
-
 import org.apache.log4j.Logger;
 
 import lombok.AccessLevel;
 import lombok.Getter;
 import lombok.Setter;
 
-import com.hp.hpl.jena.query.Query;
-import com.hp.hpl.jena.query.QueryExecution;
-import com.hp.hpl.jena.query.QueryExecutionFactory;
-import com.hp.hpl.jena.query.QueryFactory;
-
 import com.hp.hpl.jena.rdf.model.InfModel;
 import com.hp.hpl.jena.rdf.model.Literal;
 import com.hp.hpl.jena.rdf.model.LiteralRequiredException;
@@ -28,7 +21,6 @@ import com.hp.hpl.jena.rdf.model.SimpleSelector;
 import com.hp.hpl.jena.rdf.model.Statement;
 import com.hp.hpl.jena.rdf.model.StmtIterator;
 import com.hp.hpl.jena.reasoner.Reasoner;
-import com.hp.hpl.jena.reasoner.ReasonerRegistry;
 
 import com.hp.hpl.jena.vocabulary.RDFS;
 
@@ -37,7 +29,9 @@ import com.hp.hpl.jena.sparql.engine.http.QueryExceptionHTTP;
 import exception.NoResourcesSelectedException;
 import framework.Clue;
 import framework.Pop;
+import framework.QueryClass;
 import framework.Solution;
+import framework.Stage;
 
 /**
  * @author Ben Griffiths
@@ -46,30 +40,50 @@ import framework.Solution;
  * a graph of RDF triples around each named entity. It then searches within each knowledge graph for resources that are semantically 
  * related to the recognised entity around which the graph is constructed, and builds a list of Solution objects representing potential
  * solutions to the clue, based on relationships defined in the pop ontology.
- * @extends javax.swing.SwingWorker
+ * @extends app.ProgressReportingTask
  */
 
-public class ClueQueryTask extends SwingWorker<ArrayList<Solution>, Void> {
+public class ClueQueryTask extends ProgressReportingTask<ArrayList<Solution>> {
 	private static Logger log = Logger.getLogger(ClueQueryTask.class);
 	private final int LANGUAGE_TAG_LENGTH = 3;
 	private final String LANGUAGE_TAG = "@";
 	private final String ENG_LANG = "en";
+	private final long MAXIMUM_RESULTS = 50000; // of the query constructing the graph around a resource
+	/* each result of that query yields at most the link to or from the resource, a label or name, a type and the type's label */
+	private final long TRIPLES_PER_RESULT = 4;
 	@Getter(AccessLevel.PRIVATE) @Setter(AccessLevel.PRIVATE) private Model schema;
 	@Getter(AccessLevel.PRIVATE) @Setter(AccessLevel.PRIVATE) private Reasoner reasoner;
 	@Getter(AccessLevel.PRIVATE) @Setter(AccessLevel.PRIVATE) private InfModel infModel;
 	@Getter(AccessLevel.PRIVATE) @Setter(AccessLevel.PRIVATE) private ArrayList<String> recognisedResourceUris;
 	@Getter(AccessLevel.PUBLIC) @Setter(AccessLevel.PRIVATE) private  ArrayList<Solution> solutions;
 	@Getter(AccessLevel.PUBLIC) @Setter(AccessLevel.PRIVATE) private Clue clue;
+	@Getter(AccessLevel.PRIVATE) @Setter(AccessLevel.PRIVATE) private SolveContext solveContext;
+	@Getter(AccessLevel.PRIVATE) @Setter(AccessLevel.PRIVATE) private boolean releasingGraphs;
 	
 	/**
 	 * constructModelFromRemoteStore
 	 * @param resourceUri - the URI of a resource around which to construct an RDF graph by performing a SPARQL query against
 	 * DBpedia's SPARQL endpoint
+	 * @param reserved - the triples reserved for the graph by the GraphAdmission, or GraphAdmission.FULL if none were; a graph within
+	 * its reservation is fetched in full, and one larger is cut to it once fetched
+	 * @param degraded - true if only triples whose predicates are relational properties are to be fetched, because the resource has
+	 * more triples than were reserved for it; the results fetched are then also limited so that they cannot yield many more triples
+	 * than were reserved
 	 * @return an instance of com.hp.hpl.jena.rdf.model.Model representing the constructed RDF graph
 	 * @throws com.hp.hpl.jena.sparql.engine.http.QueryExceptionHTTP - if either of two SPARQL queries generated result in this 
 	 * exception being thrown
 	 */
-	private Model constructModelFromRemoteStore(String resourceUri) throws QueryExceptionHTTP {
+	private Model constructModelFromRemoteStore(String resourceUri, long reserved, boolean degraded) throws QueryExceptionHTTP {
+		String predicateFilter = "";
+		String anotherPredicateFilter = "";
+		long limit = this.MAXIMUM_RESULTS;
+		if(degraded) {
+			if(reserved != GraphAdmission.FULL)
+				limit = Math.max(1, Math.min(limit, reserved / this.TRIPLES_PER_RESULT));
+			String relationalProperties = this.relationalPropertyList();
+			predicateFilter = " FILTER(?predicate IN (" + relationalProperties + "))";
+			anotherPredicateFilter = " FILTER(?anotherPredicate IN (" + relationalProperties + "))";
+		}
 		String sparqlQuery = Pop.RDFS_PREFIX_DECLARATION + " " +
 				Pop.RDF_PREFIX_DECLARATION + " " +
 				Pop.DBPEDIA_PROPERTY_PREFIX_DECLARATION +
@@ -88,33 +102,29 @@ public class ClueQueryTask extends SwingWorker<ArrayList<Solution>, Void> {
 				" {<" + resourceUri + "> ?predicate ?object." +
 				"  ?object rdfs:label ?label." +
 				"  ?object rdf:type ?objectType." +
-				"  ?objectType rdfs:label ?objectTypeLabel.}" +
+				"  ?objectType rdfs:label ?objectTypeLabel." + predicateFilter + "}" +
 				" UNION" +
 				" {<" + resourceUri + "> ?predicate ?object." +
 				"  ?object dbpprop:name ?name." +
 				"  ?object rdf:type ?objectType." +
-				"  ?objectType rdfs:label ?objectTypeLabel.}" +
+				"  ?objectType rdfs:label ?objectTypeLabel." + predicateFilter + "}" +
 				" UNION" +
 				" {?subject ?anotherPredicate <" + resourceUri + ">." +
 				" ?subject rdfs:label ?anotherLabel. " +
 				" ?subject rdf:type ?subjectType." +
-				" ?subjectType rdfs:label ?subjectTypeLabel.}" +
+				" ?subjectType rdfs:label ?subjectTypeLabel." + anotherPredicateFilter + "}" +
 				" UNION" +
 				" {?subject ?anotherPredicate <" + resourceUri + ">." +
 				" ?subject dbpprop:name ?anotherName. " +
 				" ?subject rdf:type ?subjectType." +
-				" ?subjectType rdfs:label ?subjectTypeLabel.}" +
+				" ?subjectType rdfs:label ?subjectTypeLabel." + anotherPredicateFilter + "}" +
 				"}" +
-				"LIMIT 50000";
+				"LIMIT " + limit;
 		 
 		log.debug("Constructing model around " + resourceUri);
 		
-		Query query = QueryFactory.create(sparqlQuery);
-		QueryExecution queryExecution = QueryExecutionFactory.sparqlService(Pop.ENDPOINT_URI, query);
-		
-		Model model = queryExecution.execConstruct();
-		
-		queryExecution.close();
+		Model model = SparqlQueryRunner.getInstance().construct(QueryClass.NEIGHBOURHOOD, sparqlQuery,
+				this.getSolveContext());
 		
 		/* Construct a second model to gather labels of the recognised resource */
 		String secondSparqlQuery = Pop.FOAF_PREFIX_DECLARATION + " " +
@@ -135,14 +145,10 @@ public class ClueQueryTask extends SwingWorker<ArrayList<Solution>, Void> {
 				"	 {<" + resourceUri + "> dbpprop:name ?name.}" +
 				"}";
 		
-		Query secondQuery = QueryFactory.create(secondSparqlQuery);
-		QueryExecution secondQueryExecution = QueryExecutionFactory.sparqlService(Pop.ENDPOINT_URI, secondQuery);
-		
 		log.debug("Constructing second model around " + resourceUri);
 		
-		Model secondModel = secondQueryExecution.execConstruct();
-		
-		secondQueryExecution.close();
+		Model secondModel = SparqlQueryRunner.getInstance().construct(QueryClass.NEIGHBOURHOOD,
+				secondSparqlQuery, this.getSolveContext());
 		
 		Model mergedModel = model.union(secondModel);
 		model = null;
@@ -150,6 +156,20 @@ public class ClueQueryTask extends SwingWorker<ArrayList<Solution>, Void> {
 		return mergedModel;
 	}
 	
+	/**
+	 * relationalPropertyList
+	 * @return the relational properties of the data, as a comma-separated list of IRIs for a SPARQL IN expression
+	 */
+	private String relationalPropertyList() {
+		StringBuilder propertyList = new StringBuilder();
+		for(String propertyUri : ModelLoader.getRelationalPropertyUris()) {
+			if(propertyList.length() > 0)
+				propertyList.append(", ");
+			propertyList.append("<").append(propertyUri).append(">");
+		}
+		return propertyList.toString();
+	}
+	
 	/**
 	 * extractCandidateSolutions - searches the inference model most recently constructed for candidate solutions to the clue with which
 	 * the ClueQueryTask was initialised
@@ -164,6 +184,7 @@ public class ClueQueryTask extends SwingWorker<ArrayList<Solution>, Void> {
 		StmtIterator statements = this.getInfModel().listStatements(propertiesOfInterestSelector);
 		
 		while(statements.hasNext()) {
+			this.getSolveContext().checkCancelled();
 			Statement thisStatement = statements.nextStatement();
 			Resource subjectOfStatement = thisStatement.getSubject();
 			RDFNode objectOfStatement = thisStatement.getObject();
@@ -185,7 +206,7 @@ public class ClueQueryTask extends SwingWorker<ArrayList<Solution>, Void> {
 						RDFNode predicateLabelValue = labelProperties.nextStatement().getObject();
 						String rawPredicateLabel = predicateLabelValue.toString();
 						String predicateLabel = stripLanguageTag(rawPredicateLabel);
-						if(this.getClue().getClueFragments().contains(this.getClue().toProperCase(predicateLabel))) {
+						if(this.getClue().getClueFragmentLattice().contains(this.getClue().toProperCase(predicateLabel))) {
 							Resource r = thisStatement.getResource();
 							RDFNode objectOfInterest = thisStatement.getObject();
 							/*
@@ -298,7 +319,9 @@ public class ClueQueryTask extends SwingWorker<ArrayList<Solution>, Void> {
 					return;
 				if(!clueResourceNameSpace.contains(Pop.DBPEDIA_RESOURCE_NS))
 					return;
-				log.debug("Constructing solution with label " + candidateLabel + " and solutionResource " + solutionResource.getURI());
+				if(log.isDebugEnabled())
+					log.debug("Constructing solution with label " + candidateLabel + " and solutionResource " +
+							solutionResource.getURI());
 				this.constructSolution(candidateLabel, solutionResource, clueResource);
 			}
 	}
@@ -353,63 +376,165 @@ public class ClueQueryTask extends SwingWorker<ArrayList<Solution>, Void> {
 	 * @param recognisedResourceUris - an ArrayList<String> of URIs of recognised entities in the clue text
 	 */
 	public ClueQueryTask(Clue clue, ArrayList<String> recognisedResourceUris) {
+		this(clue, recognisedResourceUris, new SolveContext());
+		this.setReleasingGraphs(true); // no one else holds the context, so its graphs are released once the task is complete
+	}
+	
+	/**
+	 * Constructor - instantiates a ClueQueryTask object for the given clue and list of URIs of recognised entities in the clue text,
+	 * which stops making queries as soon as the given SolveContext is cancelled
+	 * @param clue - the clue for which the ClueQueryTask will search for a solution
+	 * @param recognisedResourceUris - an ArrayList<String> of URIs of recognised entities in the clue text
+	 * @param solveContext - the context of the solving of the clue
+	 */
+	public ClueQueryTask(Clue clue, ArrayList<String> recognisedResourceUris, SolveContext solveContext) {
 		super();
 		this.setClue(clue);
+		this.setSolveContext(solveContext);
 		this.setRecognisedResourceUris(recognisedResourceUris);
 		this.setSolutions(new ArrayList<Solution>());
 		this.setSchema(ModelLoader.getModel()); // retrieve a reference to the pop ontology
-		Reasoner reasoner = ReasonerRegistry.getOWLMicroReasoner();
-	    this.setReasoner(reasoner.bindSchema(this.getSchema()));
+		this.setReasoner(ModelLoader.getReasoner()); // the OWL Micro reasoner, already bound to the pop ontology
 	}
 	
 	/**
-	 * doInBackground - constucts an RDF graph around each resource specified in the recognisedResourceUris list held by this
+	 * call - constucts an RDF graph around each resource specified in the recognisedResourceUris list held by this
 	 * ClueQueryTask. Then constructs an instance of com.hp.hpl.jena.rdf.model.InfModel by binding the constructed graph to an instance
 	 * of com.hp.hpl.jena.reasoner.Reasoner that has been instantiated with the pop ontology as its schema.
-	 * A list of candidate solutions is then built by querying each such inference model.
-	 * @override javax.swing.SwingWorker.doInBackground
+	 * A list of candidate solutions is then built by querying each such inference model. The graphs fetched are charged to the
+	 * SolveContext of the task, and stay charged until whoever passed in the context releases it from the GraphAdmission, since the
+	 * candidate solutions hold their inference models until they have been scored.
+	 * @override java.util.concurrent.Callable.call
 	 * @throws exception.NoResourcesSelectedException if the list of recognisedResourceUris held by this ClueQueryTask is empty
+	 * @throws java.util.concurrent.CancellationException if the SolveContext of the task is cancelled
 	 */
 	@Override
-	protected ArrayList<Solution> doInBackground() throws Exception {
+	public ArrayList<Solution> call() throws Exception {
+		try {
+			return this.queryRecognisedResources();
+		}
+		finally {
+			if(this.isReleasingGraphs())
+				GraphAdmission.getInstance().release(this.getSolveContext());
+		}
+	}
+
+	/**
+	 * queryResource - constructs the graph around a recognised resource, binds it to the reasoner, and adds any candidate solutions
+	 * found in the inference model to the solutions list. The triples reserved for the graph are settled once it has been fetched,
+	 * or has failed to be
+	 * @param resourceUri - the URI of the resource
+	 * @param reserved - the triples reserved for the graph by the GraphAdmission, or GraphAdmission.FULL if none were
+	 * @return how the graph was admitted, for the trace: "degraded, " and/or "cut, ", or an empty String if it was fetched in full
+	 * @throws com.hp.hpl.jena.sparql.engine.http.QueryExceptionHTTP - if DBpedia fails to answer a query
+	 */
+	private String queryResource(String resourceUri, long reserved) throws QueryExceptionHTTP {
+		GraphAdmission admission = GraphAdmission.getInstance();
+		String admissionOutcome = "";
+		int solutionCount = this.getSolutions().size();
+		Model data = null;
+		long keptTriples;
+		StageMeasurement measurement = StageMeasurement.start(Stage.NEIGHBOURHOOD_CONSTRUCTION,
+				this.getSolveContext(), resourceUri);
+		try {
+			if(admission.mustDegrade(resourceUri, reserved, this.getSolveContext()))
+				admissionOutcome += "degraded, ";
+			data = this.constructModelFromRemoteStore(resourceUri, reserved, !admissionOutcome.isEmpty()); // Query DBpedia
+		}
+		finally {
+			keptTriples = admission.settle(this.getSolveContext(), reserved, data == null ? 0 : data.size());
+		}
+		if(data.size() > keptTriples) {
+			admissionOutcome += "cut, ";
+			data = this.cutModel(data, resourceUri, keptTriples);
+		}
+		measurement.stop(data.size());
+		measurement = StageMeasurement.start(Stage.REASONING, this.getSolveContext(), resourceUri);
+		this.setInfModel(ModelFactory.createInfModel(this.getReasoner(), data));
+		this.getInfModel().prepare(); // runs the forward rules now, rather than on the first search of the model
+		measurement.stop(data.size());
+		measurement = StageMeasurement.start(Stage.EXTRACTION, this.getSolveContext(), resourceUri);
+		this.extractCandidateSolutions(resourceUri); // adds any candidate solutions from the model to the solutions list
+		measurement.stop(this.getSolutions().size() - solutionCount);
+		return admissionOutcome;
+	}
+
+	/**
+	 * cutModel
+	 * @param model - the graph constructed around a resource
+	 * @param resourceUri - the URI of the resource
+	 * @param triples - the number of triples to be kept
+	 * @return a new model holding that number of the triples of the given model: first those giving literals of the resource, such
+	 * as its labels, and then the rest in the order in which the model lists them
+	 */
+	private Model cutModel(Model model, String resourceUri, long triples) {
+		Model cutModel = ModelFactory.createDefaultModel();
+		StmtIterator statements = model.listStatements(model.getResource(resourceUri), null, (RDFNode)null);
+		while(statements.hasNext() && cutModel.size() < triples) {
+			Statement statement = statements.nextStatement();
+			if(statement.getObject().isLiteral())
+				cutModel.add(statement);
+		}
+		statements.close();
+		statements = model.listStatements();
+		while(statements.hasNext() && cutModel.size() < triples)
+			cutModel.add(statements.nextStatement());
+		statements.close();
+		return cutModel;
+	}
+
+	/**
+	 * queryRecognisedResources - the body of call
+	 */
+	private ArrayList<Solution> queryRecognisedResources() throws Exception {
 		int progress = 0;
-        this.setProgress(progress); // Initialise progress property of SwingWorker
+        this.setProgress(progress);
  
         int combinedLengthOfQueries = this.getRecognisedResourceUris().size();
         
         int taskLength = 0;
         try {
-        	taskLength = (100 / combinedLengthOfQueries);
+        	taskLength = (PROGRESS_MAXIMUM / combinedLengthOfQueries);
         }
         catch(ArithmeticException e) { // will be thrown if combinedLengthOfQueries is 0
         	throw new NoResourcesSelectedException("No entities were recognised in the clue");
         }
         
         for(String resourceUri : this.getRecognisedResourceUris()) {
-        	
-			Model data;
+        	this.getSolveContext().checkCancelled();
+        	if(this.getSolveContext().checkDeadline())
+        		break; // the resources are in the order in which they were recognised, so the rest are the least promising
+			SolverMetrics metrics = SolverMetrics.getInstance();
+			SolveTrace trace = this.getSolveContext().getTrace();
+			GraphAdmission admission = GraphAdmission.getInstance();
+			int solutionCount = this.getSolutions().size();
+			String admissionOutcome = "";
+			trace.startSpan("resource", resourceUri);
 			try {
-				data = this.constructModelFromRemoteStore(resourceUri); // Query DBpedia for triples that include this resource
-				this.setInfModel(ModelFactory.createInfModel(reasoner, data));
-			    this.extractCandidateSolutions(resourceUri); // adds any candidate solutions from the model to the solutions list
-			    this.setInfModel(null); // allow the model to be garbage-collected
+				long reserved = admission.reserve(this.getSolveContext());
+				if(reserved == 0) {
+					admissionOutcome = "over budget, ";
+					log.debug("Skipping <" + resourceUri + ">: the budget of triples has been spent");
+				}
+				else {
+					admissionOutcome = this.queryResource(resourceUri, reserved);
+					metrics.increment(SolverMetrics.Count.CANDIDATE_SOLUTIONS, this.getSolutions().size() - solutionCount);
+				}
 			}
 			catch(QueryExceptionHTTP e) {
+				this.getSolveContext().checkCancelled();
 				log.debug("Extraction of recognised resource <" + resourceUri + "> from DBpedia failed.");
 				log.debug(e.getResponseMessage());
 			}
+			finally {
+				this.setInfModel(null); // allow the model to be garbage-collected
+				trace.endSpan(admissionOutcome + (this.getSolutions().size() - solutionCount) + " candidates");
+			}
 			
         	progress += taskLength;
             this.setProgress(progress); // one query has been completed
         }
+        this.setProgress(PROGRESS_MAXIMUM);
         return this.getSolutions();
 	}
-	
-	/**
-	 * @override javax.swing.SwingWorker.done
-	 */
-    @Override
-    public void done() {
-    	this.setProgress(100);
-    }
 }
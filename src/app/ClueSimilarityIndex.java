@@ -0,0 +1,250 @@
+package app;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import lombok.AccessLevel;
+import lombok.Getter;
+import lombok.Setter;
+
+/**
+ * @author Ben Griffiths
+ * ClueSimilarityIndex
+ * An in-memory index of the texts of previously solved clues that finds clues whose text is nearly the same as that of a new clue,
+ * differing only in case, punctuation, apostrophes, articles or the odd character. Each clue text is normalised and broken into
+ * overlapping character shingles; the set of shingles is summarised by a MinHash signature, and the signature is split into bands,
+ * each of which is hashed into a bucket (locality-sensitive hashing). Two clues whose shingle sets are similar are very likely to
+ * share at least one bucket, so a lookup need only compare the new clue against the few clues in its own buckets. Buckets are kept
+ * separately for each solution structure, since a clue can only share its solutions with clues of the same solution structure.
+ */
+public class ClueSimilarityIndex {
+	private final int SHINGLE_LENGTH = 3;
+	private final int NUMBER_OF_BANDS = 16;
+	private final int ROWS_PER_BAND = 4; // the signature holds NUMBER_OF_BANDS * ROWS_PER_BAND hash values
+	private final long HASH_SEED = 20130501L; // fixed, so that signatures are comparable across runs
+	private final long MERSENNE_PRIME = (1L << 31) - 1;
+	private final String[] IGNORED_WORDS = {"the", "a", "an"};
+	@Getter(AccessLevel.PRIVATE) @Setter(AccessLevel.PRIVATE) private long[] hashMultipliers;
+	@Getter(AccessLevel.PRIVATE) @Setter(AccessLevel.PRIVATE) private long[] hashIncrements;
+	@Getter(AccessLevel.PRIVATE) @Setter(AccessLevel.PRIVATE) private Set<String> ignoredWords;
+	@Getter(AccessLevel.PUBLIC) @Setter(AccessLevel.PRIVATE) private double minimumSimilarity;
+	@Getter(AccessLevel.PRIVATE) @Setter(AccessLevel.PRIVATE) private ReentrantReadWriteLock lock;
+	/* clues indexed by their solution structure and normalised text */
+	@Getter(AccessLevel.PRIVATE) @Setter(AccessLevel.PRIVATE) private Map<String, IndexedClue> indexedClues;
+	/* for each solution structure, one map from bucket to clues per band */
+	@Getter(AccessLevel.PRIVATE) @Setter(AccessLevel.PRIVATE) private Map<String, List<Map<Integer, List<IndexedClue>>>> buckets;
+
+	/**
+	 * IndexedClue - a clue held in the index, together with its MinHash signature and the solutions recorded for it. Clues whose
+	 * normalised texts are identical share a single IndexedClue
+	 */
+	private class IndexedClue {
+		@Getter(AccessLevel.PRIVATE) @Setter(AccessLevel.PRIVATE) private String clueText;
+		@Getter(AccessLevel.PRIVATE) @Setter(AccessLevel.PRIVATE) private String solutionStructure;
+		@Getter(AccessLevel.PRIVATE) @Setter(AccessLevel.PRIVATE) private int[] signature;
+		@Getter(AccessLevel.PRIVATE) @Setter(AccessLevel.PRIVATE) private ArrayList<String> solutionTexts;
+
+		private IndexedClue(String clueText, String solutionStructure, int[] signature) {
+			this.setClueText(clueText);
+			this.setSolutionStructure(solutionStructure);
+			this.setSignature(signature);
+			this.setSolutionTexts(new ArrayList<String>());
+		}
+	}
+
+	/**
+	 * Constructor - instantiates a new, empty ClueSimilarityIndex
+	 * @param minimumSimilarity - the estimated Jaccard similarity, between 0 and 1, below which a clue in the index is not reported
+	 * as similar to the clue being looked up
+	 */
+	public ClueSimilarityIndex(double minimumSimilarity) {
+		this.setMinimumSimilarity(minimumSimilarity);
+		this.setLock(new ReentrantReadWriteLock());
+		this.setIndexedClues(new HashMap<String, IndexedClue>());
+		this.setBuckets(new HashMap<String, List<Map<Integer, List<IndexedClue>>>>());
+		this.setIgnoredWords(new HashSet<String>(Arrays.asList(this.IGNORED_WORDS)));
+		int signatureLength = this.NUMBER_OF_BANDS * this.ROWS_PER_BAND;
+		this.setHashMultipliers(new long[signatureLength]);
+		this.setHashIncrements(new long[signatureLength]);
+		Random random = new Random(this.HASH_SEED);
+		for(int i = 0; i < signatureLength; i++) {
+			this.getHashMultipliers()[i] = 1 + random.nextInt(Integer.MAX_VALUE - 1);
+			this.getHashIncrements()[i] = random.nextInt(Integer.MAX_VALUE);
+		}
+	}
+
+	/**
+	 * normalise
+	 * @param clueText - the text of a clue
+	 * @return the clue text in lower case, with apostrophes removed, any other character that is not a letter or digit replaced by
+	 * a space, articles removed, and runs of spaces collapsed
+	 */
+	private String normalise(String clueText) {
+		String simplifiedText = clueText.toLowerCase().replaceAll("['\\u2019]", "").replaceAll("[^a-z0-9]+", " ");
+		StringBuilder normalisedText = new StringBuilder();
+		for(String word : simplifiedText.trim().split(" ")) {
+			if(word.isEmpty() || this.getIgnoredWords().contains(word))
+				continue;
+			if(normalisedText.length() > 0)
+				normalisedText.append(' ');
+			normalisedText.append(word);
+		}
+		return normalisedText.toString();
+	}
+
+	/**
+	 * computeSignature
+	 * @param normalisedText - the normalised text of a clue
+	 * @return the MinHash signature of the set of character shingles of the normalised text
+	 */
+	private int[] computeSignature(String normalisedText) {
+		String paddedText = " " + normalisedText + " "; // so that short words and word boundaries form shingles too
+		int signatureLength = this.getHashMultipliers().length;
+		int[] signature = new int[signatureLength];
+		Arrays.fill(signature, Integer.MAX_VALUE);
+		for(int start = 0; start + this.SHINGLE_LENGTH <= paddedText.length(); start++) {
+			long shingleHash = paddedText.substring(start, start + this.SHINGLE_LENGTH).hashCode() & 0x7fffffffL;
+			for(int i = 0; i < signatureLength; i++) {
+				int hash = (int)((this.getHashMultipliers()[i] * shingleHash + this.getHashIncrements()[i]) % this.MERSENNE_PRIME);
+				if(hash < signature[i])
+					signature[i] = hash;
+			}
+		}
+		return signature;
+	}
+
+	/**
+	 * bucketOf
+	 * @param signature - a MinHash signature
+	 * @param band - the index of a band of the signature
+	 * @return the bucket into which the given band of the signature is hashed
+	 */
+	private int bucketOf(int[] signature, int band) {
+		int from = band * this.ROWS_PER_BAND;
+		return Arrays.hashCode(Arrays.copyOfRange(signature, from, from + this.ROWS_PER_BAND));
+	}
+
+	/**
+	 * estimateSimilarity
+	 * @return the fraction of positions at which the two signatures agree, an estimate of the Jaccard similarity of the two sets
+	 * of shingles from which they were computed
+	 */
+	private double estimateSimilarity(int[] firstSignature, int[] secondSignature) {
+		int agreements = 0;
+		for(int i = 0; i < firstSignature.length; i++) {
+			if(firstSignature[i] == secondSignature[i])
+				agreements++;
+		}
+		return (double)agreements / firstSignature.length;
+	}
+
+	/**
+	 * add - records solutions to a clue in the index, adding the clue to the index if no clue with the same normalised text and
+	 * solution structure is yet present
+	 * @param clueText - the text of the solved clue
+	 * @param solutionStructure - a String representing the structure of the solution of the clue
+	 * @param solutionTexts - the texts of solutions to the clue
+	 */
+	public void add(String clueText, String solutionStructure, Collection<String> solutionTexts) {
+		String normalisedText = this.normalise(clueText);
+		String key = solutionStructure + "|" + normalisedText;
+		this.getLock().writeLock().lock();
+		try {
+			IndexedClue indexedClue = this.getIndexedClues().get(key);
+			if(indexedClue == null) {
+				indexedClue = new IndexedClue(clueText, solutionStructure, this.computeSignature(normalisedText));
+				this.getIndexedClues().put(key, indexedClue);
+				List<Map<Integer, List<IndexedClue>>> bands = this.getBuckets().get(solutionStructure);
+				if(bands == null) {
+					bands = new ArrayList<Map<Integer, List<IndexedClue>>>();
+					for(int band = 0; band < this.NUMBER_OF_BANDS; band++)
+						bands.add(new HashMap<Integer, List<IndexedClue>>());
+					this.getBuckets().put(solutionStructure, bands);
+				}
+				for(int band = 0; band < this.NUMBER_OF_BANDS; band++) {
+					int bucket = this.bucketOf(indexedClue.getSignature(), band);
+					List<IndexedClue> bucketContents = bands.get(band).get(bucket);
+					if(bucketContents == null) {
+						bucketContents = new ArrayList<IndexedClue>(1);
+						bands.get(band).put(bucket, bucketContents);
+					}
+					bucketContents.add(indexedClue);
+				}
+			}
+			for(String solutionText : solutionTexts) {
+				if(!indexedClue.getSolutionTexts().contains(solutionText))
+					indexedClue.getSolutionTexts().add(solutionText);
+			}
+		}
+		finally {
+			this.getLock().writeLock().unlock();
+		}
+	}
+
+	/**
+	 * findSimilarClues
+	 * @param clueText - the text of a clue
+	 * @param solutionStructure - a String representing the structure of the solution of the clue
+	 * @return a list of the previously solved clues in the index with the same solution structure and an estimated similarity to
+	 * the given clue of at least the minimum similarity, in descending order of similarity
+	 */
+	public ArrayList<SimilarClue> findSimilarClues(String clueText, String solutionStructure) {
+		ArrayList<SimilarClue> similarClues = new ArrayList<SimilarClue>();
+		String normalisedText = this.normalise(clueText);
+		int[] signature = this.computeSignature(normalisedText);
+		this.getLock().readLock().lock();
+		try {
+			List<Map<Integer, List<IndexedClue>>> bands = this.getBuckets().get(solutionStructure);
+			if(bands == null)
+				return similarClues;
+			Set<IndexedClue> candidates = new HashSet<IndexedClue>();
+			for(int band = 0; band < this.NUMBER_OF_BANDS; band++) {
+				List<IndexedClue> bucketContents = bands.get(band).get(this.bucketOf(signature, band));
+				if(bucketContents != null)
+					candidates.addAll(bucketContents);
+			}
+			for(IndexedClue candidate : candidates) {
+				double similarity = this.estimateSimilarity(signature, candidate.getSignature());
+				if(similarity >= this.getMinimumSimilarity())
+					similarClues.add(new SimilarClue(candidate.getClueText(), candidate.getSolutionStructure(),
+							new ArrayList<String>(candidate.getSolutionTexts()), similarity));
+			}
+		}
+		finally {
+			this.getLock().readLock().unlock();
+		}
+
+		class SimilarityComparator implements Comparator<SimilarClue> {
+		    @Override
+		    public int compare(SimilarClue firstClue, SimilarClue secondClue) {
+		        return Double.compare(secondClue.getSimilarity(), firstClue.getSimilarity());
+		    }
+		}
+		Collections.sort(similarClues, new SimilarityComparator());
+		return similarClues;
+	}
+
+	/**
+	 * size
+	 * @return the number of distinct clues held in the index
+	 */
+	public int size() {
+		this.getLock().readLock().lock();
+		try {
+			return this.getIndexedClues().size();
+		}
+		finally {
+			this.getLock().readLock().unlock();
+		}
+	}
+}
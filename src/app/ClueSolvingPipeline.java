@@ -0,0 +1,393 @@
+package app;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.ThreadPoolExecutor;
+
+import lombok.AccessLevel;
+import lombok.Getter;
+import lombok.Setter;
+
+import org.apache.log4j.Logger;
+
+import exception.NoResourcesSelectedException;
+import exception.NoSolutionsException;
+
+import framework.Clue;
+import framework.ProgressListener;
+import framework.Solution;
+import framework.SolutionScorer;
+import framework.Stage;
+
+/**
+ * @author Ben Griffiths
+ * ClueSolvingPipeline
+ * Solves a clue from start to finish with no dependency on a user interface: entity recognition, querying of the recognised
+ * entities, filtering, scoring and ranking of the candidate solutions, and the queueing of new solutions for the knowledge base.
+ * A clue may be solved on the calling thread with solve, or submitted to the ExecutorService with which the pipeline was created;
+ * either way, progress is reported to an optional ProgressListener. Holds no state of its own between clues, so a single
+ * ClueSolvingPipeline may be used to solve many clues at once from different threads, all of which share the process-wide caches
+ * and the knowledge base.
+ */
+public class ClueSolvingPipeline {
+	private static Logger log = Logger.getLogger(ClueSolvingPipeline.class);
+	private final String NO_ENTITIES_MESSAGE = "No entities were recognised in the clue";
+	private final String NO_SOLUTIONS_MESSAGE = "No solutions found";
+	private final String DEADLINE_MESSAGE = "The deadline was reached before any entity was recognised in the clue";
+	private final String ENTITY_RECOGNITION_STAGE = "Searching for entities on DBpedia";
+	private final String QUERY_STAGE = "Searching for solutions on DBpedia";
+	private final String SCORING_STAGE = "Calculating confidence levels for solutions";
+	@Getter(AccessLevel.PUBLIC) @Setter(AccessLevel.PRIVATE) private ExecutorService executor;
+
+	/**
+	 * Constructor
+	 * @param executor - the ExecutorService on which clues passed to submit are solved
+	 */
+	public ClueSolvingPipeline(ExecutorService executor) {
+		this.setExecutor(executor);
+	}
+
+	/**
+	 * sortByConfidenceLevel
+	 * @param solutions - an ArrayList of Solution objects, each of which has had its score field set prior to calling
+	 * @return - the solutions list, sorted in descending order of confidence level
+	 */
+	private static ArrayList<Solution> sortByConfidenceLevel(ArrayList<Solution> solutions) {
+
+		class SolutionConfidenceComparator implements Comparator<Solution> {
+		    @Override
+		    public int compare(Solution firstSolution, Solution secondSolution) {
+		        return secondSolution.getConfidence() - firstSolution.getConfidence();
+		    }
+		}
+		Collections.sort(solutions, new SolutionConfidenceComparator());
+		return solutions;
+	}
+
+	/**
+	 * rankSolutions
+	 * @param solutions - an ArrayList of Solution objects, each of which has had its score field set prior to calling
+	 * @return - the solutions list with any duplicate solutions removed, sorted in descending order of confidence level
+	 */
+	public static ArrayList<Solution> rankSolutions(ArrayList<Solution> solutions) {
+		ArrayList<Solution> sortedSolutions = sortByConfidenceLevel(solutions);
+		ArrayList<Solution> filteredSolutions = new ArrayList<Solution>();
+		ArrayList<String> filteredSolutionTexts = new ArrayList<String>();
+		for(int i = 0; i < sortedSolutions.size(); i++) {
+			Solution thisSolution = sortedSolutions.get(i);
+			if(!filteredSolutionTexts.contains(thisSolution.getSolutionText())) {
+				filteredSolutions.add(thisSolution);
+				filteredSolutionTexts.add(thisSolution.getSolutionText());
+			}
+		}
+		return filteredSolutions;
+	}
+
+	/**
+	 * parseSolutionStructure
+	 * @param structure - the lengths of the words of a solution, separated by commas, hyphens or spaces, e.g. "4, 6"
+	 * @return the lengths of the words of the solution
+	 * @throws NumberFormatException - if any of the lengths is not a valid integer
+	 */
+	public static int[] parseSolutionStructure(String structure) {
+		ArrayList<Integer> lengths = new ArrayList<Integer>();
+		for(String length : structure.split("[,\\s-]+")) {
+			if(!length.isEmpty())
+				lengths.add(Integer.parseInt(length));
+		}
+		int[] solutionStructure = new int[lengths.size()];
+		for(int i = 0; i < solutionStructure.length; i++)
+			solutionStructure[i] = lengths.get(i);
+		return solutionStructure;
+	}
+
+	/**
+	 * stageStarted - notifies the progress listener, if there is one, that a new stage has begun
+	 */
+	private void stageStarted(ProgressListener progressListener, String description) {
+		if(progressListener != null)
+			progressListener.stageStarted(description);
+	}
+
+	/**
+	 * recogniseEntities - runs an EntityRecogniserTask for the clue on the calling thread
+	 * @param clue - the clue to be solved
+	 * @param progressListener - notified of the progress of entity recognition; may be null
+	 * @param solveContext - the context of the solving of the clue
+	 * @return the URIs of the entities recognised in the text of the clue
+	 * @throws CancellationException - if the solveContext is cancelled
+	 */
+	public ArrayList<String> recogniseEntities(Clue clue, ProgressListener progressListener, SolveContext solveContext)
+			throws CancellationException {
+		solveContext.checkCancelled();
+		solveContext.beginTrace(clue.getSourceClue());
+		this.stageStarted(progressListener, this.ENTITY_RECOGNITION_STAGE);
+		EntityRecogniserTask entityRecogniserTask = new EntityRecogniserTask(clue, solveContext);
+		entityRecogniserTask.addProgressListener(progressListener);
+		ArrayList<String> recognisedResourceUris = null;
+		try {
+			recognisedResourceUris = entityRecogniserTask.call();
+			return recognisedResourceUris;
+		}
+		catch(RuntimeException e) {
+			solveContext.checkCancelled(); // an aborted query may fail with any exception
+			throw e;
+		}
+		finally {
+			if(recognisedResourceUris == null || recognisedResourceUris.isEmpty()) // no solutions will be sought
+				solveContext.getTrace().finish(recognisedResourceUris == null ? this.outcomeOf(null, solveContext) :
+					this.NO_ENTITIES_MESSAGE);
+		}
+	}
+
+	/**
+	 * queryEntities - runs a ClueQueryTask for the clue on the calling thread
+	 * @param clue - the clue to be solved
+	 * @param recognisedResourceUris - the URIs of the entities recognised in the text of the clue
+	 * @param progressListener - notified of the progress of the queries; may be null
+	 * @param solveContext - the context of the solving of the clue
+	 * @return the candidate solutions found around the recognised entities, or null if none could be found
+	 * @throws CancellationException - if the solveContext is cancelled
+	 */
+	private ArrayList<Solution> queryEntities(Clue clue, ArrayList<String> recognisedResourceUris,
+			ProgressListener progressListener, SolveContext solveContext) throws CancellationException {
+		this.stageStarted(progressListener, this.QUERY_STAGE);
+		ClueQueryTask clueQueryTask = new ClueQueryTask(clue, recognisedResourceUris, solveContext);
+		clueQueryTask.addProgressListener(progressListener);
+		try {
+			return clueQueryTask.call();
+		}
+		catch(NoResourcesSelectedException e) {
+			return null;
+		}
+		catch(CancellationException e) {
+			throw e;
+		}
+		catch(Exception e) {
+			solveContext.checkCancelled(); // an aborted query may fail with any exception
+			log.debug(e.getMessage());
+			return null;
+		}
+	}
+
+	/**
+	 * prioritiseSolutions - orders the solutions so that those given previously as solutions to similar clues, which are the most
+	 * likely to be correct, are scored first, and otherwise leaves them in the order in which they were found
+	 * @param solutions - the solutions to be scored
+	 * @param similarClues - previously solved clues similar to the clue
+	 * @return the solutions in the order in which they are to be scored
+	 */
+	private static ArrayList<Solution> prioritiseSolutions(ArrayList<Solution> solutions, ArrayList<SimilarClue> similarClues) {
+		final Set<String> knownSolutionTexts = new HashSet<String>();
+		for(SimilarClue similarClue : similarClues) {
+			for(String solutionText : similarClue.getSolutionTexts())
+				knownSolutionTexts.add(solutionText.trim().toLowerCase());
+		}
+		class KnownSolutionComparator implements Comparator<Solution> {
+		    @Override
+		    public int compare(Solution firstSolution, Solution secondSolution) {
+		    	return isKnown(secondSolution) - isKnown(firstSolution);
+		    }
+
+		    private int isKnown(Solution solution) {
+		    	return knownSolutionTexts.contains(solution.getSolutionText().trim().toLowerCase()) ? 1 : 0;
+		    }
+		}
+		ArrayList<Solution> prioritisedSolutions = new ArrayList<Solution>(solutions);
+		Collections.sort(prioritisedSolutions, new KnownSolutionComparator()); // a stable sort
+		return prioritisedSolutions;
+	}
+
+	/**
+	 * scoreSolutions - scores each of the solutions on the calling thread, in the order given, until the deadline of the
+	 * solveContext, if it has one, has passed
+	 * @param solutions - the solutions to be scored
+	 * @param solveContext - the context of the solving of the clue
+	 * @return the solutions that were scored
+	 * @throws CancellationException - if the solveContext is cancelled
+	 */
+	private ArrayList<Solution> scoreSolutions(ArrayList<Solution> solutions, SolveContext solveContext)
+			throws CancellationException {
+		SolutionScorer solutionScorer = new SolutionScorerImpl(solveContext);
+		SolveTrace trace = solveContext.getTrace();
+		ArrayList<Solution> scoredSolutions = new ArrayList<Solution>();
+		try {
+			for(Solution solution : solutions) {
+				if(solveContext.checkDeadline())
+					break; // an unscored solution has no meaningful confidence, so is left out of the results
+				StageMeasurement measurement = StageMeasurement.start(Stage.SCORING, solveContext,
+						solution.getSolutionText());
+				trace.startSpan("candidate", solution.getSolutionText());
+				try {
+					solution.setScore(solutionScorer.score(solution));
+				}
+				finally {
+					trace.endSpan(trace.isEnabled() ? String.format(Locale.ROOT, "score %.3g", solution.getScore()) : null);
+				}
+				measurement.stop(0);
+				scoredSolutions.add(solution);
+			}
+		}
+		catch(RuntimeException e) {
+			solveContext.checkCancelled(); // an aborted query may fail with any exception
+			throw e;
+		}
+		return scoredSolutions;
+	}
+
+	/**
+	 * findSolutions - finds, scores and ranks solutions to the clue around entities already recognised in its text, and queues any
+	 * solutions found to be added to the knowledge base
+	 * @param clue - the clue to be solved
+	 * @param recognisedResourceUris - the URIs of the entities recognised in the text of the clue
+	 * @param progressListener - notified of the progress of each stage; may be null
+	 * @param solveContext - the context of the solving of the clue
+	 * @return a ClueSolvingResult holding the ranked solutions found for the clue
+	 * @throws InterruptedException - if the calling thread is interrupted while the solutions are being queued
+	 * @throws CancellationException - if the solveContext is cancelled
+	 */
+	public ClueSolvingResult findSolutions(Clue clue, ArrayList<String> recognisedResourceUris,
+			ProgressListener progressListener, SolveContext solveContext) throws InterruptedException, CancellationException {
+		return this.findSolutions(clue, recognisedResourceUris, KnowledgeBaseManager.getInstance().findSimilarClues(clue),
+				System.nanoTime(), progressListener, solveContext);
+	}
+
+	/**
+	 * findSolutions - releases the graphs of the clue and finishes its trace once its solutions have been found
+	 * @param similarClues - previously solved clues similar to the clue
+	 * @param startTime - the value of System.nanoTime when solving of the clue began
+	 */
+	private ClueSolvingResult findSolutions(Clue clue, ArrayList<String> recognisedResourceUris,
+			ArrayList<SimilarClue> similarClues, long startTime, ProgressListener progressListener, SolveContext solveContext)
+			throws InterruptedException, CancellationException {
+		solveContext.beginTrace(clue.getSourceClue()); // unless entities were recognised in this context
+		ClueSolvingResult result = null;
+		try {
+			result = this.findAndRankSolutions(clue, recognisedResourceUris, similarClues, startTime, progressListener,
+					solveContext);
+			return result;
+		}
+		finally {
+			GraphAdmission.getInstance().release(solveContext); // the graphs of the clue are no longer needed
+			solveContext.getTrace().finish(this.outcomeOf(result, solveContext));
+		}
+	}
+
+	/**
+	 * outcomeOf
+	 * @param result - the result of solving a clue, or null if no result was reached
+	 * @return a summary of the result for the trace of the clue
+	 */
+	private String outcomeOf(ClueSolvingResult result, SolveContext solveContext) {
+		if(result == null)
+			return solveContext.isCancelled() ? "cancelled" : "failed";
+		String outcome = result.isSolved() ? result.getSolutions().size() + " solutions" : result.getMessage();
+		return result.isComplete() ? outcome : outcome + ", stopped at the deadline";
+	}
+
+	/**
+	 * findAndRankSolutions
+	 * @param similarClues - previously solved clues similar to the clue
+	 * @param startTime - the value of System.nanoTime when solving of the clue began
+	 */
+	private ClueSolvingResult findAndRankSolutions(Clue clue, ArrayList<String> recognisedResourceUris,
+			ArrayList<SimilarClue> similarClues, long startTime, ProgressListener progressListener, SolveContext solveContext)
+			throws InterruptedException, CancellationException {
+		ArrayList<Solution> proposedSolutions = this.queryEntities(clue, recognisedResourceUris, progressListener, solveContext);
+		ArrayList<Solution> solutions;
+		try {
+			solutions = new ClueSolverImpl().getSolutions(clue, proposedSolutions);
+		}
+		catch(NoSolutionsException e) {
+			return new ClueSolvingResult(clue, new ArrayList<Solution>(), similarClues, System.nanoTime() - startTime,
+					e.getMessage(), !solveContext.isDeadlineReached());
+		}
+
+		this.stageStarted(progressListener, this.SCORING_STAGE);
+		if(solveContext.hasDeadline())
+			solutions = prioritiseSolutions(solutions, similarClues);
+		solutions = this.scoreSolutions(solutions, solveContext);
+		StageMeasurement measurement = StageMeasurement.start(Stage.RANKING, solveContext, clue.getSourceClue());
+		ArrayList<Solution> rankedSolutions = rankSolutions(solutions);
+		measurement.stop(rankedSolutions.size());
+		solveContext.checkCancelled(); // the solutions of a cancelled clue are not added to the knowledge base
+		try {
+			KnowledgeBaseManager.getInstance().addToKnowledgeBase(clue, solutions);
+		}
+		catch(IllegalStateException e) {
+			log.debug(e.getMessage()); // the knowledge base has already been persisted
+		}
+		return new ClueSolvingResult(clue, rankedSolutions, similarClues, System.nanoTime() - startTime,
+				rankedSolutions.isEmpty() ? this.NO_SOLUTIONS_MESSAGE : null, !solveContext.isDeadlineReached());
+	}
+
+	/**
+	 * solve - solves the given clue on the calling thread, and queues any solutions found to be added to the knowledge base
+	 * @param clue - the clue to be solved
+	 * @return a ClueSolvingResult holding the ranked solutions found for the clue
+	 * @throws InterruptedException - if the calling thread is interrupted while the clue is being solved
+	 */
+	public ClueSolvingResult solve(Clue clue) throws InterruptedException {
+		return this.solve(clue, null, new SolveContext());
+	}
+
+	/**
+	 * solve - solves the given clue on the calling thread, and queues any solutions found to be added to the knowledge base
+	 * @param clue - the clue to be solved
+	 * @param progressListener - notified of the progress of each stage; may be null
+	 * @param solveContext - the context of the solving of the clue, through which the solving may be cancelled from another thread
+	 * @return a ClueSolvingResult holding the ranked solutions found for the clue
+	 * @throws InterruptedException - if the calling thread is interrupted while the solutions are being queued
+	 * @throws CancellationException - if the solveContext is cancelled, or the calling thread interrupted, while the clue is being
+	 * solved
+	 */
+	public ClueSolvingResult solve(Clue clue, ProgressListener progressListener, SolveContext solveContext)
+			throws InterruptedException, CancellationException {
+		long startTime = System.nanoTime();
+		ArrayList<SimilarClue> similarClues = KnowledgeBaseManager.getInstance().findSimilarClues(clue);
+
+		ArrayList<String> recognisedResourceUris = this.recogniseEntities(clue, progressListener, solveContext);
+		if(recognisedResourceUris == null || recognisedResourceUris.isEmpty())
+			return new ClueSolvingResult(clue, new ArrayList<Solution>(), similarClues, System.nanoTime() - startTime,
+					solveContext.isDeadlineReached() ? this.DEADLINE_MESSAGE : this.NO_ENTITIES_MESSAGE,
+					!solveContext.isDeadlineReached());
+		return this.findSolutions(clue, recognisedResourceUris, similarClues, startTime, progressListener, solveContext);
+	}
+
+	/**
+	 * submit - submits the given clue to be solved on the ExecutorService of this pipeline. Cancelling the returned Future cancels
+	 * the solving of the clue: a clue still waiting for a thread is dropped, and the queries of a clue being solved are aborted
+	 * @param clue - the clue to be solved
+	 * @param progressListener - notified of the progress of each stage; may be null
+	 * @return a Future through which the ClueSolvingResult may be retrieved once the clue is solved
+	 */
+	public Future<ClueSolvingResult> submit(final Clue clue, final ProgressListener progressListener) {
+		final SolveContext solveContext = new SolveContext();
+		FutureTask<ClueSolvingResult> solvingTask = new FutureTask<ClueSolvingResult>(new Callable<ClueSolvingResult>() {
+			@Override
+			public ClueSolvingResult call() throws Exception {
+				return solve(clue, progressListener, solveContext);
+			}
+		}) {
+			@Override
+			public boolean cancel(boolean mayInterruptIfRunning) {
+				solveContext.cancel();
+				boolean cancelled = super.cancel(mayInterruptIfRunning);
+				if(getExecutor() instanceof ThreadPoolExecutor)
+					((ThreadPoolExecutor)getExecutor()).remove(this); // drop the clue if it is still queued
+				return cancelled;
+			}
+		};
+		this.getExecutor().execute(solvingTask);
+		return solvingTask;
+	}
+}
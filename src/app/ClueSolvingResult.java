@@ -0,0 +1,67 @@
+package app;
+
+import java.util.ArrayList;
+
+import lombok.AccessLevel;
+import lombok.Getter;
+import lombok.Setter;
+
+import framework.Clue;
+import framework.Solution;
+
+/**
+ * @author Ben Griffiths
+ * ClueSolvingResult
+ * The outcome of solving a single clue with the ClueSolvingPipeline: the ranked solutions found for the clue, any previously solved
+ * clues similar to it, how long the clue took to solve, whether the search was completed or stopped at the deadline of the clue with
+ * the best solutions found so far, and, if no solutions were found, a message saying why.
+ */
+public class ClueSolvingResult {
+	@Getter(AccessLevel.PUBLIC) @Setter(AccessLevel.PRIVATE) private Clue clue;
+	@Getter(AccessLevel.PUBLIC) @Setter(AccessLevel.PRIVATE) private ArrayList<Solution> solutions; // in descending order of confidence
+	@Getter(AccessLevel.PUBLIC) @Setter(AccessLevel.PRIVATE) private ArrayList<SimilarClue> similarClues;
+	@Getter(AccessLevel.PUBLIC) @Setter(AccessLevel.PRIVATE) private long latencyNanos;
+	@Getter(AccessLevel.PUBLIC) @Setter(AccessLevel.PRIVATE) private String message; // null if solutions were found
+	@Getter(AccessLevel.PUBLIC) @Setter(AccessLevel.PRIVATE) private boolean complete; // false if stopped at the deadline
+
+	/**
+	 * Constructor
+	 * @param clue - the clue that was solved
+	 * @param solutions - the solutions found, in descending order of confidence; empty if none were found
+	 * @param similarClues - previously solved clues similar to the clue
+	 * @param latencyNanos - the time taken to solve the clue, in nanoseconds
+	 * @param message - a message explaining why no solutions were found, or null
+	 */
+	public ClueSolvingResult(Clue clue, ArrayList<Solution> solutions, ArrayList<SimilarClue> similarClues, long latencyNanos,
+			String message) {
+		this(clue, solutions, similarClues, latencyNanos, message, true);
+	}
+
+	/**
+	 * Constructor
+	 * @param clue - the clue that was solved
+	 * @param solutions - the solutions found, in descending order of confidence; empty if none were found
+	 * @param similarClues - previously solved clues similar to the clue
+	 * @param latencyNanos - the time taken to solve the clue, in nanoseconds
+	 * @param message - a message explaining why no solutions were found, or null
+	 * @param complete - false if work was skipped because the deadline of the clue had passed, so that the solutions are the best
+	 * found so far
+	 */
+	public ClueSolvingResult(Clue clue, ArrayList<Solution> solutions, ArrayList<SimilarClue> similarClues, long latencyNanos,
+			String message, boolean complete) {
+		this.setClue(clue);
+		this.setSolutions(solutions);
+		this.setSimilarClues(similarClues);
+		this.setLatencyNanos(latencyNanos);
+		this.setMessage(message);
+		this.setComplete(complete);
+	}
+
+	/**
+	 * isSolved
+	 * @return true if at least one solution was found for the clue
+	 */
+	public boolean isSolved() {
+		return !this.getSolutions().isEmpty();
+	}
+}
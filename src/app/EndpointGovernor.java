@@ -0,0 +1,270 @@
+package app;
+
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.log4j.Logger;
+
+import framework.QueryClass;
+
+
+/**
+ * @author Ben Griffiths
+ * EndpointGovernor
+ * Limits the load that the solver places on DBpedia's SPARQL endpoint. A query must be granted a permit before it is sent, and a
+ * permit is granted only while fewer queries are in flight than the current concurrency limit and a token is available from a
+ * token bucket that caps the rate at which queries are sent. The concurrency limit adapts to the endpoint in the manner of AIMD
+ * congestion control: it grows by roughly one for each full window of fast, successful queries, and is cut multiplicatively when
+ * the endpoint signals overload, either by failing with a status such as 429 or 503, by failing to respond at all, or by answering
+ * much more slowly than usual for the class of query. Implemented as a Singleton class.
+ */
+public class EndpointGovernor {
+	private static Logger log = Logger.getLogger(EndpointGovernor.class);
+	private static EndpointGovernor instance;
+	private final int DEFAULT_INITIAL_CONCURRENCY = 4;
+	private final int DEFAULT_MAXIMUM_CONCURRENCY = 16;
+	private final int MINIMUM_CONCURRENCY = 1;
+	private final double DEFAULT_RATE_PER_SECOND = 20.0;
+	private final double OVERLOAD_DECREASE_RATIO = 0.5; // applied to the limit when the endpoint fails under load
+	private final double LATENCY_DECREASE_RATIO = 0.9; // applied to the limit when the endpoint slows down
+	private final double LATENCY_TOLERANCE = 2.0; // multiple of the usual latency above which a query counts as slow
+	private final double BASELINE_DRIFT = 0.05; // rate at which the usual latency of a class of query rises to meet slower queries
+	private final long WAIT_POLL_MILLIS = 100; // how often a caller waiting for a permit checks whether it is cancelled
+	private final double NANOSECONDS_IN_ONE_SECOND = 1e9;
+	private final int maximumLimit;
+	private final double ratePerSecond; // zero or less for no cap on the rate
+	private final double burst;
+	private final long[] baselineLatencyNanos = new long[QueryClass.values().length];
+	private double limit;
+	private int inFlight;
+	private int waiting;
+	private double tokens;
+	private long lastRefillNanos;
+	private long lastDecreaseNanos;
+	private long grantedCount;
+	private long overloadCount;
+	private long slowCount;
+
+	/**
+	 * The outcomes of a query, from which the governor learns how much load the endpoint can bear
+	 */
+	public enum Outcome {
+		SUCCESS, // the endpoint answered the query
+		OVERLOAD, // the endpoint was unavailable, refused the query as too many, or failed to respond
+		FAILURE, // the query failed for a reason that says nothing about the load on the endpoint
+		CANCELLED // the query was abandoned by the solver
+	}
+
+	/**
+	 * Constructor - the only constructor is private
+	 */
+	private EndpointGovernor() {
+		this.maximumLimit = Math.max(MINIMUM_CONCURRENCY,
+				SolverProperties.getInt(SolverProperties.ENDPOINT_MAX_CONCURRENCY, DEFAULT_MAXIMUM_CONCURRENCY));
+		int initialLimit = SolverProperties.getInt(SolverProperties.ENDPOINT_INITIAL_CONCURRENCY, DEFAULT_INITIAL_CONCURRENCY);
+		this.limit = Math.max(MINIMUM_CONCURRENCY, Math.min(this.maximumLimit, initialLimit));
+		this.ratePerSecond = SolverProperties.getDouble(SolverProperties.ENDPOINT_RATE, DEFAULT_RATE_PER_SECOND);
+		this.burst = Math.max(1.0, SolverProperties.getDouble(SolverProperties.ENDPOINT_BURST, this.ratePerSecond));
+		this.tokens = this.burst;
+		this.lastRefillNanos = System.nanoTime();
+		this.lastDecreaseNanos = this.lastRefillNanos;
+		log.debug("Endpoint concurrency limit " + (int)this.limit + " of at most " + this.maximumLimit + ", rate " +
+				(this.ratePerSecond > 0 ? this.ratePerSecond + " queries per second" : "uncapped"));
+		this.registerGauges();
+	}
+
+	/**
+	 * registerGauges - publishes the state of the governor through the SolverMetrics
+	 */
+	private void registerGauges() {
+		SolverMetrics metrics = SolverMetrics.getInstance();
+		metrics.registerGauge("endpointConcurrencyLimit", new SolverMetrics.Gauge() {
+			@Override
+			public long getValue() {
+				return getLimit();
+			}
+		});
+		metrics.registerGauge("endpointQueriesInFlight", new SolverMetrics.Gauge() {
+			@Override
+			public long getValue() {
+				return getInFlight();
+			}
+		});
+		metrics.registerGauge("endpointQueriesWaiting", new SolverMetrics.Gauge() {
+			@Override
+			public long getValue() {
+				return getWaiting();
+			}
+		});
+		metrics.registerGauge("endpointPermitsGranted", new SolverMetrics.Gauge() {
+			@Override
+			public long getValue() {
+				return getGrantedCount();
+			}
+		});
+		metrics.registerGauge("endpointOverloads", new SolverMetrics.Gauge() {
+			@Override
+			public long getValue() {
+				return getOverloadCount();
+			}
+		});
+		metrics.registerGauge("endpointSlowQueries", new SolverMetrics.Gauge() {
+			@Override
+			public long getValue() {
+				return getSlowCount();
+			}
+		});
+	}
+
+	/**
+	 * getInstance - returns the unique instance of the EndpointGovernor class
+	 * @return the unique instance of the EndpointGovernor class
+	 */
+	public static synchronized EndpointGovernor getInstance() {
+		if(instance == null)
+			instance = new EndpointGovernor();
+		return instance;
+	}
+
+	/**
+	 * acquire - waits until a query may be sent to the endpoint
+	 * @param solveContext - the context of the solving of the clue for which the query is made
+	 * @return the time at which the permit was granted, to be passed to release once the query is complete
+	 * @throws CancellationException - if the solveContext is cancelled while waiting, in which case no permit is held
+	 */
+	public synchronized long acquire(SolveContext solveContext) throws CancellationException {
+		this.waiting++;
+		try {
+			while(true) {
+				solveContext.checkCancelled();
+				long waitNanos = TimeUnit.MILLISECONDS.toNanos(WAIT_POLL_MILLIS);
+				if(this.inFlight < (int)this.limit) {
+					long tokenWaitNanos = this.takeToken();
+					if(tokenWaitNanos == 0) {
+						this.inFlight++;
+						this.grantedCount++;
+						return System.nanoTime();
+					}
+					waitNanos = Math.min(waitNanos, tokenWaitNanos);
+				}
+				try {
+					this.wait(Math.max(1, waitNanos / 1000000L));
+				}
+				catch(InterruptedException e) {
+					Thread.currentThread().interrupt(); // checkCancelled then cancels the context
+				}
+			}
+		}
+		finally {
+			this.waiting--;
+		}
+	}
+
+	/**
+	 * release - returns the permit of a completed query and adjusts the concurrency limit according to its outcome
+	 * @param grantedNanos - the value returned by acquire when the permit was granted
+	 * @param queryClass - the class of the query
+	 * @param outcome - the outcome of the query
+	 */
+	public synchronized void release(long grantedNanos, QueryClass queryClass, Outcome outcome) {
+		long now = System.nanoTime();
+		boolean saturated = this.inFlight >= (int)this.limit;
+		this.inFlight--;
+		if(outcome == Outcome.OVERLOAD) {
+			this.overloadCount++;
+			this.decrease(grantedNanos, now, OVERLOAD_DECREASE_RATIO, "the endpoint is overloaded");
+		}
+		else if(outcome == Outcome.SUCCESS) {
+			long latencyNanos = now - grantedNanos;
+			long baselineNanos = this.baselineLatencyNanos[queryClass.ordinal()];
+			if(baselineNanos == 0 || latencyNanos < baselineNanos)
+				this.baselineLatencyNanos[queryClass.ordinal()] = latencyNanos;
+			else this.baselineLatencyNanos[queryClass.ordinal()] += (long)((latencyNanos - baselineNanos) * BASELINE_DRIFT);
+			if(baselineNanos > 0 && latencyNanos > baselineNanos * LATENCY_TOLERANCE) {
+				this.slowCount++;
+				this.decrease(grantedNanos, now, LATENCY_DECREASE_RATIO, "the endpoint is slowing down");
+			}
+			/* Only a limit that is actually being reached is raised, or a lightly loaded solver would raise it without bound */
+			else if(saturated && this.limit < this.maximumLimit)
+				this.limit = Math.min(this.maximumLimit, this.limit + 1.0 / this.limit);
+		}
+		this.notifyAll();
+	}
+
+	/**
+	 * getLimit
+	 * @return the number of queries currently allowed in flight at once
+	 */
+	public synchronized int getLimit() {
+		return (int)this.limit;
+	}
+
+	/**
+	 * getInFlight
+	 * @return the number of queries currently holding a permit
+	 */
+	public synchronized int getInFlight() {
+		return this.inFlight;
+	}
+
+	/**
+	 * getWaiting
+	 * @return the number of callers currently waiting for a permit
+	 */
+	public synchronized int getWaiting() {
+		return this.waiting;
+	}
+
+	/**
+	 * getGrantedCount
+	 * @return the number of permits granted
+	 */
+	public synchronized long getGrantedCount() {
+		return this.grantedCount;
+	}
+
+	/**
+	 * getOverloadCount
+	 * @return the number of queries that failed because the endpoint was overloaded
+	 */
+	public synchronized long getOverloadCount() {
+		return this.overloadCount;
+	}
+
+	/**
+	 * getSlowCount
+	 * @return the number of queries answered much more slowly than usual for their class
+	 */
+	public synchronized long getSlowCount() {
+		return this.slowCount;
+	}
+
+	/**
+	 * decrease - cuts the concurrency limit, at most once for each round of queries, since the queries already in flight when the
+	 * endpoint first signals overload are likely to signal it too
+	 */
+	private void decrease(long grantedNanos, long now, double ratio, String reason) {
+		if(grantedNanos < this.lastDecreaseNanos)
+			return;
+		this.limit = Math.max(MINIMUM_CONCURRENCY, this.limit * ratio);
+		this.lastDecreaseNanos = now;
+		log.debug("Reduced the endpoint concurrency limit to " + (int)this.limit + " as " + reason);
+	}
+
+	/**
+	 * takeToken - refills the token bucket and takes a token from it if one is available
+	 * @return zero if a token was taken, otherwise the time in nanoseconds until the next token is available
+	 */
+	private long takeToken() {
+		if(this.ratePerSecond <= 0)
+			return 0;
+		long now = System.nanoTime();
+		this.tokens = Math.min(this.burst, this.tokens + (now - this.lastRefillNanos) / NANOSECONDS_IN_ONE_SECOND * this.ratePerSecond);
+		this.lastRefillNanos = now;
+		if(this.tokens >= 1.0) {
+			this.tokens -= 1.0;
+			return 0;
+		}
+		return Math.max(1, (long)((1.0 - this.tokens) / this.ratePerSecond * NANOSECONDS_IN_ONE_SECOND));
+	}
+}
@@ -1,18 +1,12 @@
 package app;
 
 import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
 
-import javax.swing.SwingWorker;
-
 import org.apache.log4j.Logger;
 
-import com.hp.hpl.jena.query.Query;
-import com.hp.hpl.jena.query.QueryExecution;
-import com.hp.hpl.jena.query.QueryExecutionFactory;
-import com.hp.hpl.jena.query.QueryFactory;
 import com.hp.hpl.jena.query.QuerySolution;
-import com.hp.hpl.jena.query.ResultSet;
 import com.hp.hpl.jena.rdf.model.ResIterator;
 import com.hp.hpl.jena.rdf.model.Resource;
 import com.hp.hpl.jena.rdf.model.StmtIterator;
@@ -24,34 +18,40 @@ import lombok.Setter;
 
 import framework.Clue;
 import framework.Pop;
+import framework.QueryClass;
+import framework.Stage;
 
 /**
  * @author Ben Griffiths
  * EntityRecogniserTask
  * The EntityRecogniserTask queries DBpedia's SPARQL endpoint in order to compile a list of URIS of resources whose labels match fragments
  * of the clue text of the clue with which it is initialised.
- * @extends javax.swing.SwingWorker
+ * @extends app.ProgressReportingTask
  */
-public class EntityRecogniserTask extends SwingWorker<ArrayList<String>, Void> {
+public class EntityRecogniserTask extends ProgressReportingTask<ArrayList<String>> {
 	private static Logger log = Logger.getLogger(EntityRecogniserTask.class);
 	private final String LANG = "@en";
 	private final int RESULT_LIMIT = 200;
 	private final int FITB_RESULT_LIMIT = 100;
+	private final int DEFAULT_QUERY_BUDGET = 25;
 	@Getter(AccessLevel.PRIVATE) @Setter(AccessLevel.PRIVATE) private Clue clue;
 	@Getter(AccessLevel.PRIVATE) @Setter(AccessLevel.PRIVATE) private StmtIterator statementsIterator;
 	@Getter(AccessLevel.PRIVATE) @Setter(AccessLevel.PRIVATE) private ResIterator propertiesIterator;
 	@Getter(AccessLevel.PRIVATE) @Setter(AccessLevel.PRIVATE) private ArrayList<String> recognisedResourceUris;
 	@Getter(AccessLevel.PRIVATE) @Setter(AccessLevel.PRIVATE) private Map<String, Boolean> commonClueFragments;
+	@Getter(AccessLevel.PRIVATE) @Setter(AccessLevel.PRIVATE) private EntityRecognitionCache cache;
+	@Getter(AccessLevel.PRIVATE) @Setter(AccessLevel.PRIVATE) private int queryBudget; // DBpedia queries per clue; 0 for no limit
+	@Getter(AccessLevel.PRIVATE) @Setter(AccessLevel.PRIVATE) private SolveContext solveContext;
 	
 	/**
 	 * extractEntities - constructs a list of URIs of resources in the DBpedia knowledge base whose labels match exactly
 	 * the given clue fragment
 	 * @param clueFragment - the fragment of clue text with which to try to find resources on DBpedia with matching labels
+	 * @return the URIs of the resources found
 	 * @throws com.hp.hpl.jena.sparql.engine.http.QueryExceptionHTTP - if any of the generated SPARQL queries throw this exception
 	 */
-	private void extractEntities(String clueFragment) throws QueryExceptionHTTP {
-    	if(this.getCommonClueFragments().containsKey(clueFragment.toLowerCase()))
-    		return;	// do not construct models around the most commonly occurring English words, as defined in the commonClueFragments list
+	private ArrayList<String> extractEntities(String clueFragment) throws QueryExceptionHTTP {
+		 ArrayList<String> resourceUris = new ArrayList<String>();
 	     String wrappedClueFragment = "\"" + clueFragment + "\"" + LANG; // wrap with escaped quotes and append a language tag
 	
 	     String SPARQLquery = Pop.RDFS_PREFIX_DECLARATION + " " +
@@ -99,38 +99,31 @@ public class EntityRecogniserTask extends SwingWorker<ArrayList<String>, Void> {
 	                     " }" +
 	                     " LIMIT " + this.RESULT_LIMIT;
 	
-	     Query query = QueryFactory.create(SPARQLquery);
-	     QueryExecution queryExecution = QueryExecutionFactory.sparqlService(Pop.ENDPOINT_URI, query);
-	     try {
-	              ResultSet resultSet = queryExecution.execSelect();
-	              while(resultSet.hasNext()) {
-	                       QuerySolution querySolution = resultSet.nextSolution();
-	                       Resource thisResource = querySolution.getResource("?resource");
-	                       String nameSpace = thisResource.getNameSpace();
-	                       /* We only want to consider resources in the BDpedia namespace */
-	                       if(!nameSpace.contains(Pop.DBPEDIA_RESOURCE_NS)) {
-	                    	   continue;
-	                       }
-	                       String resourceUri = thisResource.getURI();
-	                       this.getRecognisedResourceUris().add(resourceUri);
-	                       log.debug("Recognised resource: " + resourceUri);
+	     List<QuerySolution> querySolutions = SparqlQueryRunner.getInstance().select(
+	    		 QueryClass.ENTITY_RECOGNITION, SPARQLquery, this.getSolveContext());
+	     for(QuerySolution querySolution : querySolutions) {
+	              Resource thisResource = querySolution.getResource("?resource");
+	              String nameSpace = thisResource.getNameSpace();
+	              /* We only want to consider resources in the BDpedia namespace */
+	              if(!nameSpace.contains(Pop.DBPEDIA_RESOURCE_NS)) {
+	           	   continue;
 	              }
-	              queryExecution.close();   
-	     }
-	     catch(QueryExceptionHTTP e) {
-	              throw e;
+	              String resourceUri = thisResource.getURI();
+	              resourceUris.add(resourceUri);
+	              log.debug("Recognised resource: " + resourceUri);
 	     }
+	     return resourceUris;
 	}
 	
 	/**
 	 * extractFITBEntities - constructs a list of URIs of resources in the DBpedia knowledge base whose labels match partially
 	 * the given clue fragment
 	 * @param clueFragment - the fragment of clue text with which to try to find resources on DBpedia with partially matching labels
+	 * @return the distinct URIs of the resources found
 	 * @throws com.hp.hpl.jena.sparql.engine.http.QueryExceptionHTTP - if any of the generated SPARQL queries throw this exception
 	 */
-	private void extractFITBEntities(String clueFragment) throws QueryExceptionHTTP {
-		if(this.getCommonClueFragments().containsKey(clueFragment.toLowerCase()))
-    		return; // do not construct models around the most commonly occurring English words, as defined in the commonClueFragments list
+	private ArrayList<String> extractFITBEntities(String clueFragment) throws QueryExceptionHTTP {
+		ArrayList<String> resourceUris = new ArrayList<String>();
 	    String wrappedClueFragment = "'\"" + clueFragment + "\"'";
 	    
 	    log.debug("Attempting to extract resources whose labels contain " + wrappedClueFragment);
@@ -198,29 +191,34 @@ public class EntityRecogniserTask extends SwingWorker<ArrayList<String>, Void> {
 	        " }" +
 	        " LIMIT " + this.FITB_RESULT_LIMIT;
 	
-	    Query query = QueryFactory.create(SPARQLquery);
-	    QueryExecution queryExecution = QueryExecutionFactory.sparqlService(Pop.ENDPOINT_URI, query);
-	    try {
-	             ResultSet resultSet = queryExecution.execSelect();
-	             while(resultSet.hasNext()) {
-	                      QuerySolution querySolution = resultSet.nextSolution();
-	                      Resource thisResource = querySolution.getResource("?resource");
-	                      String nameSpace = thisResource.getNameSpace();
-	                      /* We only want to consider resources in the BDpedia namespace */
-	                      if(!nameSpace.contains(Pop.DBPEDIA_RESOURCE_NS)) {
-	                   	   continue;
-	                      }
-	                      String resourceUri = thisResource.getURI();
-	                      if(!this.getRecognisedResourceUris().contains(resourceUri)) {
-	                    	   this.getRecognisedResourceUris().add(resourceUri);
-	                           log.debug("Recognised resource: " + resourceUri);
-	                      }
+	    List<QuerySolution> querySolutions = SparqlQueryRunner.getInstance().select(
+	    		QueryClass.ENTITY_RECOGNITION, SPARQLquery, this.getSolveContext());
+	    for(QuerySolution querySolution : querySolutions) {
+	             Resource thisResource = querySolution.getResource("?resource");
+	             String nameSpace = thisResource.getNameSpace();
+	             /* We only want to consider resources in the BDpedia namespace */
+	             if(!nameSpace.contains(Pop.DBPEDIA_RESOURCE_NS)) {
+	          	   continue;
+	             }
+	             String resourceUri = thisResource.getURI();
+	             if(!resourceUris.contains(resourceUri)) {
+	           	   resourceUris.add(resourceUri);
+	                  log.debug("Recognised resource: " + resourceUri);
 	             }
-	             queryExecution.close();   
-	    }
-	    catch(QueryExceptionHTTP e) {
-	             throw e;
 	    }
+	    return resourceUris;
+	}
+	
+	/**
+	 * recordEntities - adds the URIs of resources recognised for a clue fragment to the recognisedResourceUris list. For 
+	 * Fill-In-The-Blank clues, a URI already in the list is not added again
+	 * @param resourceUris - the URIs of resources recognised for a clue fragment
+	 */
+	private void recordEntities(ArrayList<String> resourceUris) {
+		for(String resourceUri : resourceUris) {
+			if(!this.getClue().isFillInTheBlank() || !this.getRecognisedResourceUris().contains(resourceUri))
+				this.getRecognisedResourceUris().add(resourceUri);
+		}
 	}
 
 	/**
@@ -229,48 +227,89 @@ public class EntityRecogniserTask extends SwingWorker<ArrayList<String>, Void> {
 	 * @param clue - the clue in the text of which the EntityRecogniserTask will attempt to find named entities
 	 */
 	public EntityRecogniserTask(Clue clue) {
+		this(clue, new SolveContext());
+	}
+	
+	/**
+	 * Constructor - instantiates a new EntityRecogniserTask object with the purpose of recognising named entities in the text of
+	 * the given clue, which stops making queries as soon as the given SolveContext is cancelled
+	 * @param clue - the clue in the text of which the EntityRecogniserTask will attempt to find named entities
+	 * @param solveContext - the context of the solving of the clue
+	 */
+	public EntityRecogniserTask(Clue clue, SolveContext solveContext) {
 		super();
 		this.setClue(clue);
+		this.setSolveContext(solveContext);
 		this.setRecognisedResourceUris(new ArrayList<String>());
 		this.setCommonClueFragments(ModelLoader.getCommonClueFragments());
+		this.setCache(EntityRecognitionCache.getInstance());
+		this.setQueryBudget(SolverProperties.getInt(SolverProperties.ER_QUERY_BUDGET, this.DEFAULT_QUERY_BUDGET));
 	}
     
 	/**
-	 * doInBackground - for each fragment in the clueFragments member of the clue with which the EntityRecogniserTask was initialised,
-	 * an attempt is made to retrieve a list of resources from DBpedia with matching labels
-	 * @override javax.swing.SwingWorker.doInBackground
+	 * call - the fragments of the clue with which the EntityRecogniserTask was initialised, other than the most common
+	 * English words, are ranked by a ClueFragmentScorer, and for each fragment in turn, best first, a list of resources with matching
+	 * labels is retrieved, from the entity recognition cache if the fragment has been looked up before, and otherwise from DBpedia. 
+	 * Once the query budget for the clue is spent, the remaining fragments are only looked up in the cache
+	 * @override java.util.concurrent.Callable.call
 	 * @return a list of URIs of resources representing named entities in the text of the clue
+	 * @throws java.util.concurrent.CancellationException - if the SolveContext of the task is cancelled
 	 */
     @Override
-    public ArrayList<String> doInBackground() {
+    public ArrayList<String> call() {
         int progress = 0;
-        this.setProgress(progress); // Initialise progress property of SwingWorker
+        this.setProgress(progress);
         
+        ClueFragmentScorer scorer = new ClueFragmentScorer(this.getClue(), this.getCommonClueFragments(), 
+        		KnowledgeBaseManager.getInstance().getKnownSolutionTexts(), this.getCache());
+        ArrayList<String> rankedFragments = scorer.rank(this.getClue().getClueFragmentLattice());
+        boolean fillInTheBlank = this.getClue().isFillInTheBlank();
         
-        int combinedLengthOfQueries = this.getClue().getClueFragments().size();
-        int taskLength = (100 / combinedLengthOfQueries);
+        int combinedLengthOfQueries = Math.max(1, rankedFragments.size());
+        int taskLength = (PROGRESS_MAXIMUM / combinedLengthOfQueries);
+        int queriesRemaining = this.getQueryBudget() > 0 ? this.getQueryBudget() : Integer.MAX_VALUE;
         
-        for(String clueFragment : this.getClue().getClueFragments()) {
-        	try {
-        		if(this.getClue().isFillInTheBlank())
-        			this.extractFITBEntities(clueFragment);
-        		else this.extractEntities(clueFragment);
+        SolveTrace trace = this.getSolveContext().getTrace();
+        
+        for(String clueFragment : rankedFragments) {
+        	this.getSolveContext().checkCancelled();
+        	ArrayList<String> resourceUris = this.getCache().get(clueFragment, fillInTheBlank);
+        	if(resourceUris != null && trace.isEnabled()) {
+        		trace.startSpan("fragment", clueFragment);
+        		trace.endSpan("cached, " + resourceUris.size() + " resources");
         	}
-        	catch (QueryExceptionHTTP e) {
-        		log.debug("DBpedia connection dropped. Entity recognition for clue fragment " + clueFragment + " failed");
-        		log.debug(e.getResponseMessage());
+        	// fragments are looked up in order of rank, so those skipped at the deadline are the least promising
+        	if(resourceUris == null && queriesRemaining > 0 && !this.getSolveContext().checkDeadline()) {
+        		queriesRemaining--;
+        		StageMeasurement measurement = StageMeasurement.start(Stage.ENTITY_RECOGNITION, this.getSolveContext(),
+        				clueFragment);
+        		trace.startSpan("fragment", clueFragment);
+        		try {
+        			if(fillInTheBlank)
+        				resourceUris = this.extractFITBEntities(clueFragment);
+        			else resourceUris = this.extractEntities(clueFragment);
+        			this.getSolveContext().checkCancelled(); // the results of an aborted query may be incomplete
+        			this.getCache().put(clueFragment, fillInTheBlank, resourceUris);
+        			measurement.stop(resourceUris.size());
+        		}
+        		catch (QueryExceptionHTTP e) {
+        			this.getSolveContext().checkCancelled();
+        			log.debug("DBpedia connection dropped. Entity recognition for clue fragment " + clueFragment + " failed");
+        			log.debug(e.getResponseMessage());
+        		}
+        		finally {
+        			trace.endSpan(resourceUris == null ? "failed" : resourceUris.size() + " resources");
+        		}
         	}
+        	if(resourceUris != null)
+        		this.recordEntities(resourceUris);
         	progress += taskLength;
-            this.setProgress(progress); // one query has been completed
+            this.setProgress(progress); // one fragment has been processed
         }
+        if(queriesRemaining == 0)
+        	log.debug("Entity recognition query budget of " + this.getQueryBudget() + " spent for clue " + 
+        			this.getClue().getSourceClue());
+        this.setProgress(PROGRESS_MAXIMUM);
         return this.getRecognisedResourceUris();
     }
-    
-    /**
-     * @override javax.swing.SwingWorker.done
-     */
-    @Override
-    public void done() {
-    	this.setProgress(100);
-    }
-}
\ No newline at end of file
+}
@@ -0,0 +1,170 @@
+package app;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import lombok.AccessLevel;
+import lombok.Getter;
+import lombok.Setter;
+
+/**
+ * @author Ben Griffiths
+ * EntityRecognitionCache
+ * A process-wide cache of the results of entity recognition queries, mapping each clue fragment looked up on DBpedia to the URIs of
+ * the resources recognised for it, so that the same fragment is never looked up twice. The cache also keeps a history, for each
+ * word, of how many of the looked-up fragments containing the word were recognised as entities, from which the ClueFragmentScorer
+ * estimates how likely an unseen fragment is to name an entity; the histories of the words least recently seen are forgotten once
+ * the cache holds as many words as fragments. Implemented as a Singleton class.
+ */
+public class EntityRecognitionCache {
+	private static EntityRecognitionCache instance;
+	private final int DEFAULT_CAPACITY = 10000; // fragments, and word histories, held before the least recently used is evicted
+	private final String FITB_KEY_PREFIX = "FITB:"; // partial-match lookups are cached separately from exact-match lookups
+	@Getter(AccessLevel.PRIVATE) @Setter(AccessLevel.PRIVATE) private Map<String, ArrayList<String>> results;
+	@Getter(AccessLevel.PRIVATE) @Setter(AccessLevel.PRIVATE) private Map<String, int[]> wordHistory; // {lookups, hits} per word
+	@Getter(AccessLevel.PRIVATE) @Setter(AccessLevel.PRIVATE) private AtomicLong hitCount;
+	@Getter(AccessLevel.PRIVATE) @Setter(AccessLevel.PRIVATE) private AtomicLong missCount;
+
+	/**
+	 * Constructor - the only constructor is private
+	 */
+	private EntityRecognitionCache() {
+		final int capacity = SolverProperties.getInt(SolverProperties.ER_CACHE_CAPACITY, this.DEFAULT_CAPACITY);
+		this.setResults(new LinkedHashMap<String, ArrayList<String>>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String, ArrayList<String>> eldest) {
+				return this.size() > capacity;
+			}
+		});
+		this.setWordHistory(new LinkedHashMap<String, int[]>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String, int[]> eldest) {
+				return this.size() > capacity;
+			}
+		});
+		this.setHitCount(new AtomicLong());
+		this.setMissCount(new AtomicLong());
+		SolverMetrics.getInstance().registerGauge("entityCacheHits", new SolverMetrics.Gauge() {
+			@Override
+			public long getValue() {
+				return getHits();
+			}
+		});
+		SolverMetrics.getInstance().registerGauge("entityCacheMisses", new SolverMetrics.Gauge() {
+			@Override
+			public long getValue() {
+				return getMisses();
+			}
+		});
+		SolverMetrics.getInstance().registerGauge("entityCacheSize", new SolverMetrics.Gauge() {
+			@Override
+			public long getValue() {
+				return size();
+			}
+		});
+	}
+
+	/**
+	 * getInstance - returns the unique instance of the EntityRecognitionCache class
+	 * @return the unique instance of the EntityRecognitionCache class
+	 */
+	public static synchronized EntityRecognitionCache getInstance() {
+		if(instance == null)
+			instance = new EntityRecognitionCache();
+		return instance;
+	}
+
+	/**
+	 * keyOf
+	 * @return the key under which the results of looking up the given fragment are held
+	 */
+	private String keyOf(String clueFragment, boolean fillInTheBlank) {
+		return fillInTheBlank ? this.FITB_KEY_PREFIX + clueFragment : clueFragment;
+	}
+
+	/**
+	 * wordsOf
+	 * @return the distinct words of the given fragment, in lower case
+	 */
+	private String[] wordsOf(String clueFragment) {
+		return clueFragment.toLowerCase().trim().split("\\s+");
+	}
+
+	/**
+	 * get
+	 * @param clueFragment - a fragment of the text of a clue
+	 * @param fillInTheBlank - true if the fragment is to be matched partially, as for Fill-In-The-Blank clues
+	 * @return a copy of the list of URIs of resources recognised for the fragment when it was last looked up, or null if the fragment
+	 * is not in the cache
+	 */
+	public synchronized ArrayList<String> get(String clueFragment, boolean fillInTheBlank) {
+		ArrayList<String> resourceUris = this.getResults().get(this.keyOf(clueFragment, fillInTheBlank));
+		if(resourceUris == null) {
+			this.getMissCount().incrementAndGet();
+			return null;
+		}
+		this.getHitCount().incrementAndGet();
+		return new ArrayList<String>(resourceUris);
+	}
+
+	/**
+	 * put - records the result of looking up a fragment, and updates the history of each word in the fragment
+	 * @param clueFragment - a fragment of the text of a clue
+	 * @param fillInTheBlank - true if the fragment was matched partially, as for Fill-In-The-Blank clues
+	 * @param resourceUris - the URIs of the resources recognised for the fragment
+	 */
+	public synchronized void put(String clueFragment, boolean fillInTheBlank, ArrayList<String> resourceUris) {
+		this.getResults().put(this.keyOf(clueFragment, fillInTheBlank), new ArrayList<String>(resourceUris));
+		for(String word : this.wordsOf(clueFragment)) {
+			int[] history = this.getWordHistory().get(word);
+			if(history == null) {
+				history = new int[2];
+				this.getWordHistory().put(word, history);
+			}
+			history[0]++;
+			if(!resourceUris.isEmpty())
+				history[1]++;
+		}
+	}
+
+	/**
+	 * getWordHitRate
+	 * @param word - a word of the text of a clue
+	 * @param priorHitRate - the hit rate to assume for a word that has never been looked up
+	 * @return the smoothed fraction of looked-up fragments containing the word that were recognised as entities
+	 */
+	public synchronized double getWordHitRate(String word, double priorHitRate) {
+		int[] history = this.getWordHistory().get(word.toLowerCase());
+		if(history == null)
+			return priorHitRate;
+		return (history[1] + priorHitRate) / (history[0] + 1);
+	}
+
+	/**
+	 * getHits
+	 * @return the number of lookups that found the fragment in the cache
+	 */
+	public long getHits() {
+		return this.getHitCount().get();
+	}
+
+	/**
+	 * getMisses
+	 * @return the number of lookups that did not find the fragment in the cache
+	 */
+	public long getMisses() {
+		return this.getMissCount().get();
+	}
+
+	/**
+	 * size
+	 * @return the number of fragments held in the cache
+	 */
+	public synchronized int size() {
+		return this.getResults().size();
+	}
+}
@@ -0,0 +1,54 @@
+package app;
+
+import java.util.Locale;
+import java.util.regex.Pattern;
+
+import com.hp.hpl.jena.graph.Node;
+import com.hp.hpl.jena.sparql.engine.ExecutionContext;
+import com.hp.hpl.jena.sparql.engine.QueryIterator;
+import com.hp.hpl.jena.sparql.engine.binding.Binding;
+import com.hp.hpl.jena.sparql.pfunction.PFuncSimple;
+import com.hp.hpl.jena.sparql.pfunction.PropertyFunctionRegistry;
+import com.hp.hpl.jena.sparql.util.IterLib;
+
+/**
+ * @author Ben Griffiths
+ * FullTextContainsFunction
+ * An in-process stand-in for the bif:contains full-text predicate of the Virtuoso server behind DBpedia's endpoint, so that the
+ * queries written for the endpoint can be answered unchanged by a LocalSparqlDataSource. The pattern ?label bif:contains '"text"'
+ * matches when ?label is bound to a literal containing the quoted text as a whole phrase, ignoring case. Unlike Virtuoso, which
+ * looks the text up in a full-text index, the function can only test labels already bound by an earlier pattern of the query.
+ * @extends com.hp.hpl.jena.sparql.pfunction.PFuncSimple
+ */
+public class FullTextContainsFunction extends PFuncSimple {
+	public static final String URI = "bif:contains";
+	private static final String QUOTES = "'\"";
+
+	/**
+	 * register - makes the function available to every query answered in-process. Has no effect if it is already registered
+	 */
+	public static synchronized void register() {
+		if(!PropertyFunctionRegistry.get().isRegistered(URI))
+			PropertyFunctionRegistry.get().put(URI, FullTextContainsFunction.class);
+	}
+
+	/**
+	 * execEvaluated
+	 * @override com.hp.hpl.jena.sparql.pfunction.PFuncSimple.execEvaluated
+	 */
+	@Override
+	public QueryIterator execEvaluated(Binding binding, Node subject, Node predicate, Node object, ExecutionContext execCxt) {
+		if(!subject.isLiteral() || !object.isLiteral())
+			return IterLib.noResults(execCxt);
+		String phrase = object.getLiteralLexicalForm().trim();
+		while(phrase.length() > 0 && QUOTES.indexOf(phrase.charAt(0)) >= 0 &&
+				QUOTES.indexOf(phrase.charAt(phrase.length() - 1)) >= 0 && phrase.length() > 1)
+			phrase = phrase.substring(1, phrase.length() - 1).trim();
+		if(phrase.isEmpty())
+			return IterLib.noResults(execCxt);
+		Pattern wholePhrase = Pattern.compile("(^|\\W)" + Pattern.quote(phrase.toLowerCase(Locale.ENGLISH)) + "($|\\W)");
+		if(wholePhrase.matcher(subject.getLiteralLexicalForm().toLowerCase(Locale.ENGLISH)).find())
+			return IterLib.result(binding, execCxt);
+		return IterLib.noResults(execCxt);
+	}
+}
@@ -0,0 +1,265 @@
+package app;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.log4j.Logger;
+
+import com.hp.hpl.jena.query.QuerySolution;
+import com.hp.hpl.jena.rdf.model.Literal;
+import com.hp.hpl.jena.sparql.engine.http.QueryExceptionHTTP;
+
+import framework.QueryClass;
+
+/**
+ * @author Ben Griffiths
+ * GraphAdmission
+ * Decides how much of the graph around each recognised resource may be fetched, so that the graphs held in memory, each bound to an
+ * inference model and kept until the candidate solutions found in it have been scored, cannot exhaust the heap. Each clue has a
+ * budget of triples for all of its graphs, and the clues being solved share a global budget, given in bytes of heap and converted
+ * to triples by an estimate of the heap taken by a triple once it has been reasoned over; by default the global budget is a quarter
+ * of the largest heap. Before a graph is constructed, the triples that may be fetched around its resource are reserved against
+ * both budgets at once, so that clues solved concurrently cannot all spend the same remainder, and once it has been fetched the
+ * reservation is settled against the size of the graph, which is cut to the reservation if it is larger. A resource is skipped once
+ * the budget of its clue, or the global budget, is spent. The triples of which a resource is the subject or the object are counted
+ * by a cheap query, whose answer is remembered for the resources most recently counted; a resource with more of them than were
+ * reserved - a hub entity, such as a country or a genre - is fetched in degraded form, restricted to the predicates that can lead
+ * to a candidate solution. Implemented as a Singleton class.
+ */
+public class GraphAdmission {
+	private static Logger log = Logger.getLogger(GraphAdmission.class);
+	private static GraphAdmission instance;
+	public static final long FULL = Long.MAX_VALUE; // the allowance of a resource whose graph may be fetched in full
+	private final long DEFAULT_MAX_TRIPLES = 10000;
+	private final long DEFAULT_CLUE_BUDGET = 40000;
+	private final long DEFAULT_BYTES_PER_TRIPLE = 1000;
+	private final long DEFAULT_GLOBAL_BUDGET_FRACTION = 4; // the global budget is this fraction of the largest heap, by default
+	private final int DEGREE_CACHE_CAPACITY = 1000;
+	private final String DEGREE_VARIABLE = "degree";
+	private final long maximumTriples; // around one resource, before it is degraded; 0 or less for no cap
+	private final long clueBudget; // 0 or less for no budget
+	private final long globalBudget; // in triples; 0 or less for no budget
+	private final Map<String, Long> degrees; // the number of triples around each resource, in least recently used order
+	private final AtomicLong degradedCount = new AtomicLong();
+	private final AtomicLong skippedCount = new AtomicLong();
+	private final AtomicLong cutCount = new AtomicLong();
+	private long heldTriples; // in the graphs of every clue being solved
+
+	/**
+	 * Constructor - the only constructor is private
+	 */
+	private GraphAdmission() {
+		this.maximumTriples = SolverProperties.getLong(SolverProperties.GRAPH_MAX_TRIPLES, DEFAULT_MAX_TRIPLES);
+		this.clueBudget = SolverProperties.getLong(SolverProperties.GRAPH_CLUE_BUDGET, DEFAULT_CLUE_BUDGET);
+		long bytesPerTriple = Math.max(1, SolverProperties.getLong(SolverProperties.GRAPH_BYTES_PER_TRIPLE, DEFAULT_BYTES_PER_TRIPLE));
+		this.globalBudget = SolverProperties.getLong(SolverProperties.GRAPH_GLOBAL_BUDGET_BYTES,
+				Runtime.getRuntime().maxMemory() / DEFAULT_GLOBAL_BUDGET_FRACTION) / bytesPerTriple;
+		this.degrees = Collections.synchronizedMap(new LinkedHashMap<String, Long>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String, Long> eldest) {
+				return this.size() > DEGREE_CACHE_CAPACITY;
+			}
+		});
+		log.debug("Graphs are limited to " + this.maximumTriples + " triples around a resource, " + this.clueBudget +
+				" triples for a clue and " + this.globalBudget + " triples in all");
+		this.registerGauges();
+	}
+
+	/**
+	 * getInstance - returns the unique instance of the GraphAdmission class
+	 * @return the unique instance of the GraphAdmission class
+	 */
+	public static synchronized GraphAdmission getInstance() {
+		if(instance == null)
+			instance = new GraphAdmission();
+		return instance;
+	}
+
+	/**
+	 * reserve - reserves the triples that may be fetched around one resource for a clue against the budget of the clue and the
+	 * global budget
+	 * @param solveContext - the context of the solving of the clue
+	 * @return FULL if nothing is capped, in which case nothing is reserved; 0 if a budget is spent, in which case the graph is not to
+	 * be fetched; otherwise the number of triples reserved, which must be settled once the graph has been fetched or has failed to be
+	 */
+	public synchronized long reserve(SolveContext solveContext) {
+		long reserved = this.remainingTriples(solveContext);
+		if(reserved == FULL)
+			return FULL;
+		if(reserved <= 0) {
+			this.skippedCount.incrementAndGet();
+			return 0;
+		}
+		solveContext.addGraphTriples(reserved);
+		this.heldTriples += reserved;
+		return reserved;
+	}
+
+	/**
+	 * mustDegrade - decides whether the graph around a resource must be fetched in degraded form, counting the triples around the
+	 * resource if they have not been counted recently
+	 * @param resourceUri - the URI of the resource
+	 * @param reserved - the triples reserved for the graph, or FULL if none were
+	 * @param solveContext - the context of the solving of the clue
+	 * @return true if the resource has more triples than were reserved for its graph
+	 * @throws CancellationException - if the solveContext is cancelled
+	 */
+	public boolean mustDegrade(String resourceUri, long reserved, SolveContext solveContext) throws CancellationException {
+		if(reserved == FULL)
+			return false; // nothing is capped, so the triples need not be counted
+		long degree = this.estimateDegree(resourceUri, solveContext);
+		if(degree < 0 || degree <= reserved)
+			return false;
+		this.degradedCount.incrementAndGet();
+		log.debug("<" + resourceUri + "> has " + degree + " triples; fetching at most " + reserved);
+		return true;
+	}
+
+	/**
+	 * settle - charges the triples of a graph fetched for a clue in place of those reserved for it, returning any not used to the
+	 * budgets. The triples charged are held until the clue is released
+	 * @param solveContext - the context of the solving of the clue
+	 * @param reserved - the triples reserved for the graph, or FULL if none were
+	 * @param triples - the number of triples in the graph as fetched, or 0 if it could not be fetched
+	 * @return the number of triples the graph may keep; a graph with more must be cut to this number
+	 */
+	public synchronized long settle(SolveContext solveContext, long reserved, long triples) {
+		long kept = triples, charged = 0;
+		if(reserved != FULL) {
+			charged = reserved;
+			if(triples > reserved) {
+				kept = reserved;
+				this.cutCount.incrementAndGet();
+			}
+		}
+		solveContext.addGraphTriples(kept - charged);
+		this.heldTriples += kept - charged;
+		return kept;
+	}
+
+	/**
+	 * release - returns the triples of every graph fetched for a clue to the global budget, once the clue is no longer being solved.
+	 * Has no effect if they have already been released
+	 * @param solveContext - the context of the solving of the clue
+	 */
+	public synchronized void release(SolveContext solveContext) {
+		this.heldTriples -= solveContext.takeGraphTriples();
+	}
+
+	/**
+	 * getHeldTriples
+	 * @return the number of triples in the graphs of every clue being solved
+	 */
+	public synchronized long getHeldTriples() {
+		return this.heldTriples;
+	}
+
+	/**
+	 * getDegradedCount
+	 * @return the number of graphs fetched in degraded form
+	 */
+	public long getDegradedCount() {
+		return this.degradedCount.get();
+	}
+
+	/**
+	 * getSkippedCount
+	 * @return the number of graphs not fetched because a budget was spent
+	 */
+	public long getSkippedCount() {
+		return this.skippedCount.get();
+	}
+
+	/**
+	 * getCutCount
+	 * @return the number of graphs cut because they were larger than the triples reserved for them
+	 */
+	public long getCutCount() {
+		return this.cutCount.get();
+	}
+
+	/**
+	 * remainingTriples
+	 * @return the largest number of triples that may be fetched around one resource for the clue, or FULL if nothing is capped
+	 */
+	private synchronized long remainingTriples(SolveContext solveContext) {
+		long remaining = FULL;
+		if(this.maximumTriples > 0)
+			remaining = this.maximumTriples;
+		if(this.clueBudget > 0)
+			remaining = Math.min(remaining, this.clueBudget - solveContext.getGraphTriples());
+		if(this.globalBudget > 0)
+			remaining = Math.min(remaining, this.globalBudget - this.heldTriples);
+		return remaining;
+	}
+
+	/**
+	 * estimateDegree
+	 * @param resourceUri - the URI of a resource
+	 * @param solveContext - the context of the solving of the clue
+	 * @return the number of triples of which the resource is the subject or the object, or -1 if they could not be counted
+	 * @throws CancellationException - if the solveContext is cancelled
+	 */
+	private long estimateDegree(String resourceUri, SolveContext solveContext) throws CancellationException {
+		Long degree = this.degrees.get(resourceUri);
+		if(degree != null)
+			return degree;
+		String sparqlQuery = "select (count(*) as ?" + DEGREE_VARIABLE + ")" +
+				" where {" +
+				" {<" + resourceUri + "> ?predicate ?object.}" +
+				" UNION" +
+				" {?subject ?anotherPredicate <" + resourceUri + ">.}" +
+				"}";
+		try {
+			List<QuerySolution> solutions = SparqlQueryRunner.getInstance().select(QueryClass.DEGREE, sparqlQuery,
+					solveContext);
+			Literal count = solutions.isEmpty() ? null : solutions.get(0).getLiteral(DEGREE_VARIABLE);
+			if(count == null)
+				return -1;
+			degree = count.getLong();
+		}
+		catch(QueryExceptionHTTP e) {
+			solveContext.checkCancelled();
+			log.debug("Failed to count the triples around <" + resourceUri + ">: " + e.getResponseMessage());
+			return -1;
+		}
+		this.degrees.put(resourceUri, degree);
+		return degree;
+	}
+
+	/**
+	 * registerGauges - publishes the triples held and the graphs degraded, skipped and cut through the SolverMetrics
+	 */
+	private void registerGauges() {
+		SolverMetrics metrics = SolverMetrics.getInstance();
+		metrics.registerGauge("graphTriplesHeld", new SolverMetrics.Gauge() {
+			@Override
+			public long getValue() {
+				return getHeldTriples();
+			}
+		});
+		metrics.registerGauge("graphsDegraded", new SolverMetrics.Gauge() {
+			@Override
+			public long getValue() {
+				return getDegradedCount();
+			}
+		});
+		metrics.registerGauge("graphsSkipped", new SolverMetrics.Gauge() {
+			@Override
+			public long getValue() {
+				return getSkippedCount();
+			}
+		});
+		metrics.registerGauge("graphsCut", new SolverMetrics.Gauge() {
+			@Override
+			public long getValue() {
+				return getCutCount();
+			}
+		});
+	}
+}
@@ -105,12 +105,7 @@ public class GraphicalUserInterface extends JFrame implements UserInterface, Act
 		this.getDisplayPanel().getProgressBar().setString(this.ENTITY_RECOGNITION_IN_PROGRESS_MESSAGE);
         this.getDisplayPanel().getProgressBar().setStringPainted(true);
 
-	    Thread solverThread = new Thread(new Runnable() {
-		        public void run() {
-		        	getSemanticSolver().solve(getClue());
-		        }
-		    });
-	    solverThread.start();
+	    this.getSemanticSolver().solve(this.getClue()); // returns at once; the clue is solved in the background
     }
     
     /**
@@ -0,0 +1,255 @@
+package app;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import org.apache.log4j.Logger;
+
+import lombok.AccessLevel;
+import lombok.Getter;
+import lombok.Setter;
+
+import com.hp.hpl.jena.rdf.model.Model;
+import com.hp.hpl.jena.rdf.model.ModelFactory;
+import com.hp.hpl.jena.rdf.model.Statement;
+import com.hp.hpl.jena.rdf.model.StmtIterator;
+
+import framework.CrosswordKB;
+import framework.KnowledgeBaseStore;
+
+/**
+ * @author Ben Griffiths
+ * InMemoryKnowledgeBaseStore
+ * An implementation of the KnowledgeBaseStore interface that holds the whole knowledge base in memory. Every committed addition
+ * to the knowledge base is recorded in an append-only journal, and the journal is periodically compacted into a full RDF/XML
+ * snapshot of the knowledge base on a background thread. On construction, the knowledge base is recovered by replaying the journal
+ * over the last snapshot.
+ * @implements framework.KnowledgeBaseStore
+ */
+public class InMemoryKnowledgeBaseStore implements KnowledgeBaseStore {
+	private static Logger log = Logger.getLogger(InMemoryKnowledgeBaseStore.class);
+	private final long COMPACTION_INTERVAL_MINUTES = 10; // how often the journal is folded into a snapshot of the knowledge base
+	private final String SNAPSHOT_FORMAT = "RDF/XML-ABBREV";
+	private final String TEMPORARY_FILE_SUFFIX = ".tmp";
+	@Getter(AccessLevel.PUBLIC) @Setter(AccessLevel.PRIVATE) private Model model;
+	@Getter(AccessLevel.PRIVATE) @Setter(AccessLevel.PRIVATE) private ReentrantReadWriteLock lock;
+	@Getter(AccessLevel.PRIVATE) @Setter(AccessLevel.PRIVATE) private Model pendingStatements; // uncommitted additions
+	@Getter(AccessLevel.PRIVATE) @Setter(AccessLevel.PRIVATE) private KnowledgeBaseJournal journal;
+	@Getter(AccessLevel.PRIVATE) @Setter(AccessLevel.PRIVATE) private ScheduledExecutorService compactionService;
+	@Getter(AccessLevel.PUBLIC) @Setter(AccessLevel.PRIVATE) private long triplesRecovered; // replayed from the journal on startup
+
+	/**
+	 * openJournal - opens the journal of triples added to the knowledge base since it was last written out in full, and replays
+	 * its content into the model member. If the journal cannot be opened, additions to the knowledge base are held only in memory
+	 * until the knowledge base is next persisted
+	 */
+	private void openJournal() {
+		File journalFile = new File(CrosswordKB.LOCAL_KNOWLEDGE_BASE_DIRECTORY, CrosswordKB.LOCAL_KNOWLEDGE_BASE_JOURNAL_URI);
+		try {
+			this.setJournal(new KnowledgeBaseJournal(journalFile));
+		}
+		catch(IOException e) {
+			log.debug("Failed to open " + journalFile.getPath() + "; new solutions will not be journalled");
+			log.debug(e.getMessage());
+			this.setJournal(null);
+			return;
+		}
+		this.setTriplesRecovered(this.getJournal().replay(this.getModel()));
+		log.debug(this.getTriplesRecovered() + " triples recovered from " + journalFile.getPath());
+	}
+
+	/**
+	 * scheduleCompaction - starts a background thread that periodically writes the knowledge base out to disk in full, if anything
+	 * has been journalled since the knowledge base was last written out, and then truncates the journal
+	 */
+	private void scheduleCompaction() {
+		if(this.getJournal() == null)
+			return;
+		this.setCompactionService(Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+			@Override
+			public Thread newThread(Runnable runnable) {
+				Thread compactionThread = new Thread(runnable, "crosswordKB-compaction");
+				compactionThread.setDaemon(true); // must not prevent the application from exiting
+				return compactionThread;
+			}
+		}));
+		this.getCompactionService().scheduleWithFixedDelay(new Runnable() {
+			@Override
+			public void run() {
+				if(getJournal().getEntryCount() > 0)
+					compact();
+			}
+		}, this.COMPACTION_INTERVAL_MINUTES, this.COMPACTION_INTERVAL_MINUTES, TimeUnit.MINUTES);
+	}
+
+	/**
+	 * compact - writes the knowledge base out to disk in RDF/XML form, replacing the previous snapshot, and then truncates the
+	 * journal. The new snapshot is written to a temporary file first, so that the previous snapshot survives a failure part way
+	 * through writing. Holds the read lock throughout, so that no addition can be journalled and then lost by the truncation. The 
+	 * binary snapshot read by ModelLoader at startup is then rewritten to match the new RDF/XML snapshot
+	 */
+	private void compact() {
+		File snapshotFile = new File(CrosswordKB.LOCAL_KNOWLEDGE_BASE_DIRECTORY, CrosswordKB.LOCAL_KNOWLEDGE_BASE_URI);
+		File temporaryFile = new File(CrosswordKB.LOCAL_KNOWLEDGE_BASE_DIRECTORY,
+				CrosswordKB.LOCAL_KNOWLEDGE_BASE_URI + this.TEMPORARY_FILE_SUFFIX);
+		this.getLock().readLock().lock();
+		try {
+			FileOutputStream outFile = new FileOutputStream(temporaryFile);
+			log.debug("Writing out crosswordKB to disk");
+			try {
+				this.getModel().write(outFile, this.SNAPSHOT_FORMAT);
+				outFile.getFD().sync();
+			}
+			finally {
+				outFile.close();
+			}
+			try {
+				Files.move(temporaryFile.toPath(), snapshotFile.toPath(), StandardCopyOption.REPLACE_EXISTING,
+						StandardCopyOption.ATOMIC_MOVE);
+			}
+			catch(AtomicMoveNotSupportedException e) {
+				Files.move(temporaryFile.toPath(), snapshotFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+			}
+			log.debug("CrosswordKB written to disk");
+			if(this.getJournal() != null)
+				this.getJournal().truncate(); // every journalled triple is now in the snapshot
+			BinaryModelSnapshot.write(new File(CrosswordKB.LOCAL_KNOWLEDGE_BASE_DIRECTORY, CrosswordKB.LOCAL_KNOWLEDGE_BASE_SNAPSHOT_URI),
+					this.getModel(), KnowledgeBaseManager.gatherSolvedClues(this.getModel()), snapshotFile.length(), 
+					snapshotFile.lastModified());
+		}
+		catch(FileNotFoundException e) {
+			log.debug("Failed to write crosswordKB out to disk");
+			log.debug(e.getMessage());
+		}
+		catch (IOException e) {
+			log.debug("Failed to write crosswordKB out to disk");
+			log.debug(e.getMessage());
+		}
+		finally {
+			this.getLock().readLock().unlock();
+		}
+	}
+
+	/**
+	 * Constructor - instantiates a new InMemoryKnowledgeBaseStore around the given model, replays the journal into it, and starts
+	 * periodic compaction of the journal
+	 * @param model - an instance of com.hp.hpl.jena.rdf.model.Model holding the last snapshot of the knowledge base
+	 */
+	public InMemoryKnowledgeBaseStore(Model model) {
+		this.setModel(model);
+		this.setLock(new ReentrantReadWriteLock());
+		this.openJournal();
+		this.scheduleCompaction();
+	}
+
+	/**
+	 * beginRead
+	 * @override framework.KnowledgeBaseStore.beginRead
+	 */
+	@Override
+	public void beginRead() {
+		this.getLock().readLock().lock();
+	}
+
+	/**
+	 * beginWrite
+	 * @override framework.KnowledgeBaseStore.beginWrite
+	 */
+	@Override
+	public void beginWrite() {
+		this.getLock().writeLock().lock();
+		this.setPendingStatements(ModelFactory.createDefaultModel());
+	}
+
+	/**
+	 * add - adds the new triples to the model member straight away, and remembers them so that they can be journalled on commit
+	 * or removed again if the transaction is abandoned
+	 * @override framework.KnowledgeBaseStore.add
+	 */
+	@Override
+	public void add(Model newStatements) {
+		StmtIterator statements = newStatements.listStatements();
+		while(statements.hasNext()) {
+			Statement statement = statements.nextStatement();
+			if(!this.getModel().contains(statement)) {
+				this.getModel().add(statement);
+				this.getPendingStatements().add(statement);
+			}
+		}
+	}
+
+	/**
+	 * commit - appends the triples added during the current transaction to the journal
+	 * @override framework.KnowledgeBaseStore.commit
+	 * @throws IllegalStateException - if the triples could not be journalled, in which case they remain pending, and are removed
+	 * from the model when the transaction ends
+	 */
+	@Override
+	public void commit() throws IllegalStateException {
+		if(this.getJournal() != null) {
+			try {
+				this.getJournal().append(this.getPendingStatements());
+			}
+			catch(IOException e) {
+				log.debug("Failed to journal new triples");
+				log.debug(e.getMessage());
+				throw new IllegalStateException("Failed to journal new triples", e);
+			}
+		}
+		this.setPendingStatements(ModelFactory.createDefaultModel());
+	}
+
+	/**
+	 * end
+	 * @override framework.KnowledgeBaseStore.end
+	 */
+	@Override
+	public void end() {
+		if(this.getLock().isWriteLockedByCurrentThread()) {
+			this.getModel().remove(this.getPendingStatements()); // abandon any uncommitted additions
+			this.setPendingStatements(null);
+			this.getLock().writeLock().unlock();
+		}
+		else this.getLock().readLock().unlock();
+	}
+
+	/**
+	 * persist - performs a final compaction of the journal into a snapshot of the knowledge base
+	 * @override framework.KnowledgeBaseStore.persist
+	 */
+	@Override
+	public void persist() {
+		this.compact();
+	}
+
+	/**
+	 * isFullyLoaded
+	 * @override framework.KnowledgeBaseStore.isFullyLoaded
+	 */
+	@Override
+	public boolean isFullyLoaded() {
+		return true;
+	}
+
+	/**
+	 * close
+	 * @override framework.KnowledgeBaseStore.close
+	 */
+	@Override
+	public void close() {
+		if(this.getCompactionService() != null)
+			this.getCompactionService().shutdown();
+		if(this.getJournal() != null)
+			this.getJournal().close();
+	}
+}
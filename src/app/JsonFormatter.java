@@ -0,0 +1,105 @@
+package app;
+
+import java.util.ArrayList;
+import java.util.Locale;
+
+import framework.Solution;
+
+/**
+ * @author Ben Griffiths
+ * JsonFormatter
+ * Utility class providing static methods for writing values in JSON form, used by the parts of the application that report results
+ * to other programs rather than to the graphical user interface
+ */
+public class JsonFormatter {
+	/**
+	 * The only constructor is private; the JsonFormatter class is not designed to be instantiated
+	 */
+	private JsonFormatter() {
+
+	}
+
+	/**
+	 * quote
+	 * @param text - a String, which may be null
+	 * @return the text as a JSON string literal, surrounded by double quotes with any special characters escaped, or the JSON
+	 * literal null if the text is null
+	 */
+	public static String quote(String text) {
+		if(text == null)
+			return "null";
+		StringBuilder quotedText = new StringBuilder(text.length() + 2);
+		quotedText.append('"');
+		for(int i = 0; i < text.length(); i++) {
+			char thisCharacter = text.charAt(i);
+			switch(thisCharacter) {
+				case '"':
+					quotedText.append("\\\"");
+					break;
+				case '\\':
+					quotedText.append("\\\\");
+					break;
+				case '\n':
+					quotedText.append("\\n");
+					break;
+				case '\r':
+					quotedText.append("\\r");
+					break;
+				case '\t':
+					quotedText.append("\\t");
+					break;
+				default:
+					if(thisCharacter < 0x20)
+						quotedText.append(String.format("\\u%04x", (int)thisCharacter));
+					else quotedText.append(thisCharacter);
+			}
+		}
+		quotedText.append('"');
+		return quotedText.toString();
+	}
+
+	/**
+	 * field
+	 * @param name - the name of a field of a JSON object
+	 * @param value - the value of the field, already in JSON form
+	 * @return the name and value in the form "name":value
+	 */
+	public static String field(String name, String value) {
+		return quote(name) + ":" + value;
+	}
+
+	/**
+	 * solutions
+	 * @param solutions - a list of solutions, in descending order of confidence
+	 * @return the solutions as a JSON array of objects, each holding the text and confidence level of a solution
+	 */
+	public static String solutions(ArrayList<Solution> solutions) {
+		StringBuilder output = new StringBuilder("[");
+		for(int i = 0; i < solutions.size(); i++) {
+			output.append(i == 0 ? "" : ",").append("{");
+			output.append(field("solution", quote(solutions.get(i).getSolutionText()))).append(",");
+			output.append(field("confidence", String.valueOf(solutions.get(i).getConfidence()))).append("}");
+		}
+		return output.append("]").toString();
+	}
+
+	/**
+	 * similarClues
+	 * @param similarClues - a list of previously solved clues similar to a new clue
+	 * @return the similar clues as a JSON array of objects, each holding the text, similarity and solutions of a clue
+	 */
+	public static String similarClues(ArrayList<SimilarClue> similarClues) {
+		StringBuilder output = new StringBuilder("[");
+		for(int i = 0; i < similarClues.size(); i++) {
+			SimilarClue similarClue = similarClues.get(i);
+			output.append(i == 0 ? "" : ",").append("{");
+			output.append(field("clue", quote(similarClue.getClueText()))).append(",");
+			output.append(field("similarity", String.format(Locale.ROOT, "%.2f", similarClue.getSimilarity()))).append(",");
+			output.append(field("solutions", "["));
+			for(int j = 0; j < similarClue.getSolutionTexts().size(); j++)
+				output.append(j == 0 ? "" : ",").append(quote(similarClue.getSolutionTexts().get(j)));
+			output.append("]}");
+		}
+		return output.append("]").toString();
+	}
+}
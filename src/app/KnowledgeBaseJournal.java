@@ -0,0 +1,157 @@
+package app;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.StringReader;
+import java.nio.charset.Charset;
+
+import org.apache.log4j.Logger;
+
+import lombok.AccessLevel;
+import lombok.Getter;
+import lombok.Setter;
+
+import com.hp.hpl.jena.rdf.model.Model;
+import com.hp.hpl.jena.shared.JenaException;
+
+/**
+ * @author Ben Griffiths
+ * KnowledgeBaseJournal
+ * An append-only journal of the triples added to the crossword knowledge base since it was last written out to disk in full. Each
+ * batch of new triples is appended to the journal file in N-Triples form, and forced to disk, as soon as it is added to the
+ * in-memory knowledge base, so that no newly solved clue is lost if the application exits without persisting the knowledge base.
+ */
+public class KnowledgeBaseJournal {
+	private static Logger log = Logger.getLogger(KnowledgeBaseJournal.class);
+	private final String JOURNAL_FORMAT = "N-TRIPLES";
+	private final Charset JOURNAL_CHARSET = Charset.forName("UTF-8");
+	private final String COMMENT_MARKER = "#";
+	@Getter(AccessLevel.PUBLIC) @Setter(AccessLevel.PRIVATE) private File journalFile;
+	@Getter(AccessLevel.PRIVATE) @Setter(AccessLevel.PRIVATE) private FileOutputStream outputStream;
+	@Getter(AccessLevel.PUBLIC) @Setter(AccessLevel.PRIVATE) private long entryCount; // triples appended since the last truncation
+
+	/**
+	 * openOutputStream - opens the journal file for appending, creating it if it does not yet exist
+	 * @throws IOException - if the journal file cannot be opened
+	 */
+	private void openOutputStream() throws IOException {
+		this.setOutputStream(new FileOutputStream(this.getJournalFile(), true));
+	}
+
+	/**
+	 * replayLineByLine - reads the journal one line at a time into the model argument, skipping any line that cannot be parsed. Used
+	 * when the journal as a whole cannot be parsed, which is normally the result of a torn final write
+	 * @param model - the model into which the journalled triples are to be read
+	 * @return the number of lines successfully read into the model
+	 * @throws IOException - if the journal file cannot be read
+	 */
+	private long replayLineByLine(Model model) throws IOException {
+		long linesReplayed = 0;
+		BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(this.getJournalFile()),
+				this.JOURNAL_CHARSET));
+		try {
+			String line;
+			while((line = reader.readLine()) != null) {
+				String trimmedLine = line.trim();
+				if(trimmedLine.isEmpty() || trimmedLine.startsWith(this.COMMENT_MARKER))
+					continue;
+				try {
+					model.read(new StringReader(trimmedLine), null, this.JOURNAL_FORMAT);
+					linesReplayed++;
+				}
+				catch(JenaException e) {
+					log.debug("Skipping unreadable line in " + this.getJournalFile().getName() + ": " + trimmedLine);
+				}
+			}
+		}
+		finally {
+			reader.close();
+		}
+		return linesReplayed;
+	}
+
+	/**
+	 * Constructor - opens the journal held in the given file, creating the file if it does not already exist
+	 * @param journalFile - the file in which the journal is held
+	 * @throws IOException - if the journal file cannot be opened for appending
+	 */
+	public KnowledgeBaseJournal(File journalFile) throws IOException {
+		this.setJournalFile(journalFile);
+		this.setEntryCount(0);
+		this.openOutputStream();
+	}
+
+	/**
+	 * replay - reads every triple held in the journal into the model argument. Since a model is a set of triples, replaying a
+	 * journal whose content is already present in the model leaves the model unchanged
+	 * @param model - the model, normally freshly loaded from the last full snapshot of the knowledge base, to which the journalled
+	 * triples are to be added
+	 * @return the number of triples in the model after replay minus the number before
+	 */
+	public synchronized long replay(Model model) {
+		if(this.getJournalFile().length() == 0)
+			return 0;
+		long sizeBeforeReplay = model.size();
+		try {
+			FileInputStream inputStream = new FileInputStream(this.getJournalFile());
+			try {
+				model.read(inputStream, null, this.JOURNAL_FORMAT);
+			}
+			catch(JenaException e) {
+				log.debug("Failed to read " + this.getJournalFile().getName() + " in a single pass: " + e.getMessage());
+				this.replayLineByLine(model);
+			}
+			finally {
+				inputStream.close();
+			}
+		}
+		catch(IOException e) {
+			log.debug("Failed to replay " + this.getJournalFile().getName());
+			log.debug(e.getMessage());
+		}
+		long triplesReplayed = model.size() - sizeBeforeReplay;
+		this.setEntryCount(this.getEntryCount() + triplesReplayed);
+		return triplesReplayed;
+	}
+
+	/**
+	 * append - appends the triples contained in the statements argument to the journal, and forces them out to disk
+	 * @param statements - a model containing the triples to be journalled
+	 * @throws IOException - if the triples could not be written to the journal
+	 */
+	public synchronized void append(Model statements) throws IOException {
+		if(statements.isEmpty())
+			return;
+		statements.write(this.getOutputStream(), this.JOURNAL_FORMAT);
+		this.getOutputStream().flush();
+		this.getOutputStream().getFD().sync();
+		this.setEntryCount(this.getEntryCount() + statements.size());
+	}
+
+	/**
+	 * truncate - discards the content of the journal. Must only be called once every journalled triple has been written out to disk
+	 * as part of a full snapshot of the knowledge base
+	 * @throws IOException - if the journal file could not be truncated
+	 */
+	public synchronized void truncate() throws IOException {
+		this.getOutputStream().getChannel().truncate(0);
+		this.getOutputStream().getFD().sync();
+		this.setEntryCount(0);
+	}
+
+	/**
+	 * close - releases the journal file
+	 */
+	public synchronized void close() {
+		try {
+			this.getOutputStream().close();
+		}
+		catch(IOException e) {
+			log.debug(e.getMessage());
+		}
+	}
+}
@@ -1,10 +1,14 @@
 package app;
 
-import java.io.FileNotFoundException;
-import java.io.FileOutputStream;
-import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Future;
 
 import org.apache.log4j.Logger;
 
@@ -13,7 +17,9 @@ import lombok.Getter;
 import lombok.Setter;
 
 import com.hp.hpl.jena.rdf.model.Model;
+import com.hp.hpl.jena.rdf.model.ModelFactory;
 import com.hp.hpl.jena.rdf.model.RDFNode;
+import com.hp.hpl.jena.rdf.model.ResIterator;
 import com.hp.hpl.jena.rdf.model.Resource;
 import com.hp.hpl.jena.rdf.model.Selector;
 import com.hp.hpl.jena.rdf.model.SimpleSelector;
@@ -24,47 +30,192 @@ import com.hp.hpl.jena.vocabulary.RDF;
 
 import framework.Clue;
 import framework.CrosswordKB;
+import framework.KnowledgeBaseStore;
 import framework.Solution;
+import framework.Stage;
 
 /**
  * @author Ben Griffiths
  * KnowledgeBaseManager
- * Responsible for managing the persistent knowledge base of previously solved clues and their solutions.
+ * Responsible for managing the persistent knowledge base of previously solved clues and their solutions. The knowledge base is
+ * held in an implementation of framework.KnowledgeBaseStore: by default the whole knowledge base is held in memory and journalled
+ * to disk, but it may instead be kept in a TDB triple store on disk by setting the system property semanticSolver.kb.backend to tdb.
  * Implemented as a Singleton class.
  */
 public class KnowledgeBaseManager {
 	private static KnowledgeBaseManager instance;
 	private static Logger log = Logger.getLogger(SemanticSolverImpl.class);
-	@Getter(AccessLevel.PRIVATE) @Setter(AccessLevel.PRIVATE) private Model knowledgeBase;
+	private final String DEFAULT_TDB_LOCATION = CrosswordKB.LOCAL_KNOWLEDGE_BASE_DIRECTORY + "/crosswordKB-tdb";
+	private final int DEFAULT_WRITE_QUEUE_CAPACITY = 64; // updates queued before addToKnowledgeBase blocks
+	private final int DEFAULT_WRITE_BATCH_SIZE = 16; // updates applied in a single write transaction
+	private final double DEFAULT_MINIMUM_SIMILARITY = 0.75; // estimated Jaccard similarity of shingles for clues to be similar
+	private final String INDEXER_THREAD_NAME = "knowledge-base-indexer";
+	@Getter(AccessLevel.PRIVATE) @Setter(AccessLevel.PRIVATE) private KnowledgeBaseStore knowledgeBase;
 	@Getter(AccessLevel.PRIVATE) @Setter(AccessLevel.PRIVATE) private ArrayList<SolvedClue> solvedClues;
-	@Getter(AccessLevel.PUBLIC) @Setter(AccessLevel.PRIVATE) private volatile boolean finished;
+	@Getter(AccessLevel.PRIVATE) @Setter(AccessLevel.PRIVATE) private KnowledgeBaseWriter writer;
+	@Getter(AccessLevel.PRIVATE) @Setter(AccessLevel.PRIVATE) private ClueSimilarityIndex similarityIndex;
+	@Setter(AccessLevel.PRIVATE) private Set<String> knownSolutionTexts; // in lower case
+	@Getter(AccessLevel.PRIVATE) @Setter(AccessLevel.PRIVATE) private Thread indexerThread; // indexes a store not held in memory
 	
 	/**
-	 * Constructor - the only constructor is private. Loads the persistent knowledge base into memory and then reads into the 
-	 * solvedClues list all solved clues contained within the knowledge base
+	 * Constructor - the only constructor is private. Opens the knowledge base store selected by the semanticSolver.kb.backend 
+	 * system property. If the whole knowledge base is held in memory, then all solved clues contained within it are read into the
+	 * solvedClues list; otherwise previously solved clues are looked up in the store as they are needed, and the similarity index is
+	 * built on a background thread. Starts the writer thread through which all updates to the knowledge base are made
 	 */
 	private KnowledgeBaseManager() {
-		this.setFinished(false);
+		this.setKnowledgeBase(this.openKnowledgeBaseStore());
+		this.setKnownSolutionTexts(Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>()));
+		this.setSimilarityIndex(new ClueSimilarityIndex(SolverProperties.getDouble(SolverProperties.KB_MINIMUM_SIMILARITY, 
+				this.DEFAULT_MINIMUM_SIMILARITY)));
+		if(this.getKnowledgeBase() != null && this.getKnowledgeBase().isFullyLoaded()) {
+			this.getKnowledgeBase().beginRead();
+			try {
+				this.gatherPreviouslySolvedClues();
+			}
+			finally {
+				this.getKnowledgeBase().end();
+			}
+			this.buildSimilarityIndex(this.getSolvedClues());
+		}
+		else if(this.getKnowledgeBase() != null)
+			this.startIndexer();
+		this.setWriter(new KnowledgeBaseWriter(new KnowledgeBaseWriter.BatchApplier() {
+			@Override
+			public void applyUpdates(List<KnowledgeBaseUpdate> updates) {
+				KnowledgeBaseManager.this.applyUpdates(updates);
+			}
+		},
+				SolverProperties.getInt(SolverProperties.KB_WRITE_QUEUE_CAPACITY, this.DEFAULT_WRITE_QUEUE_CAPACITY),
+				SolverProperties.getInt(SolverProperties.KB_WRITE_BATCH_SIZE, this.DEFAULT_WRITE_BATCH_SIZE)));
+	}
+	
+	/**
+	 * buildSimilarityIndex - adds each of the given solved clues to the similarity index, and its solutions to the set of known 
+	 * solution texts
+	 * @param solvedClues - a list of solved clues
+	 */
+	private void buildSimilarityIndex(ArrayList<SolvedClue> solvedClues) {
+		for(SolvedClue solvedClue : solvedClues) {
+			this.getSimilarityIndex().add(solvedClue.getClueText(), solvedClue.getSolutionStructure(), solvedClue.getSolutionTexts());
+			for(String solutionText : solvedClue.getSolutionTexts())
+				this.knownSolutionTexts.add(solutionText.toLowerCase());
+		}
+		log.debug(this.getSimilarityIndex().size() + " distinct clues held in the similarity index");
+	}
+	
+	/**
+	 * startIndexer - builds the similarity index from a knowledge base store that is not held in memory on a background thread, so
+	 * that opening the store does not wait for a scan of every solved clue it holds. Until the scan is complete, similar clues and
+	 * known solutions are only found among the clues solved since the store was opened and those already indexed
+	 */
+	private void startIndexer() {
+		this.setIndexerThread(new Thread(new Runnable() {
+			@Override
+			public void run() {
+				ArrayList<SolvedClue> solvedClues;
+				try {
+					getKnowledgeBase().beginRead();
+					try {
+						solvedClues = gatherSolvedClues(getKnowledgeBase().getModel());
+					}
+					finally {
+						getKnowledgeBase().end();
+					}
+				}
+				catch(JenaException e) {
+					log.debug("Failed to index the knowledge base: " + e.getMessage());
+					return;
+				}
+				buildSimilarityIndex(solvedClues);
+			}
+		}, this.INDEXER_THREAD_NAME));
+		this.getIndexerThread().setDaemon(true);
+		this.getIndexerThread().start();
+	}
+	
+	/**
+	 * awaitIndexer - waits for the similarity index to be built, if it is being built on a background thread, so that the store is
+	 * not closed while it is being read
+	 */
+	private void awaitIndexer() {
+		if(this.getIndexerThread() == null)
+			return;
 		try {
-			this.setKnowledgeBase(ModelLoader.getKnowledgeBase());
+			this.getIndexerThread().join();
+		}
+		catch(InterruptedException e) {
+			log.debug("Interrupted while waiting for the knowledge base to be indexed");
+			Thread.currentThread().interrupt();
+		}
+	}
+	
+	/**
+	 * openKnowledgeBaseStore
+	 * @return the implementation of framework.KnowledgeBaseStore selected by the semanticSolver.kb.backend system property, or null
+	 * if the knowledge base cannot be opened
+	 */
+	private KnowledgeBaseStore openKnowledgeBaseStore() {
+		String backend = SolverProperties.getString(SolverProperties.KB_BACKEND, SolverProperties.IN_MEMORY_BACKEND);
+		try {
+			if(backend.equals(SolverProperties.TDB_BACKEND)) {
+				String location = SolverProperties.getString(SolverProperties.KB_TDB_LOCATION, this.DEFAULT_TDB_LOCATION);
+				log.debug("Opening TDB knowledge base at " + location);
+				return new TdbKnowledgeBaseStore(location);
+			}
+			return new InMemoryKnowledgeBaseStore(ModelLoader.getKnowledgeBase());
 		}
 		catch(JenaException e) {
 			log.debug(e.getMessage());
-			this.setKnowledgeBase(null);
+			return null;
 		}
-		this.setSolvedClues(new ArrayList<SolvedClue>());
-		if(this.getKnowledgeBase() != null)
-			this.gatherPreviouslySolvedClues();
-		this.setFinished(true);
 	}
 	
 	/**
-	 * gatherPreviouslySolvedClues - initialises the solvedClues member with a list of all solved clues present in the knowledge base
+	 * findPreviouslySolvedClue - must be called within a transaction on the knowledge base
+	 * @param clueText - the text of a clue
+	 * @param solutionStructure - a String representing the structure of the solution to the clue
+	 * @return a SolvedClue representing the clue with the given text and solution structure held in the knowledge base, or null if
+	 * the knowledge base holds no such clue
 	 */
-	private void gatherPreviouslySolvedClues() {
-
+	private SolvedClue findPreviouslySolvedClue(String clueText, String solutionStructure) {
+		if(this.getSolvedClues() != null) {
+			SolvedClue solvedClue = new SolvedClue(clueText, solutionStructure, null); // a dummy solvedClue object with a null uri
+			int index = this.getSolvedClues().indexOf(solvedClue);
+			return (index == -1) ? null : this.getSolvedClues().get(index);
+		}
+		Model model = this.getKnowledgeBase().getModel();
+		ResIterator clues = model.listResourcesWithProperty(CrosswordKB.hasClueText, model.createLiteral(clueText));
+		while(clues.hasNext()) {
+			Resource thisClue = clues.nextResource();
+			Statement solutionStructureStatement = thisClue.getProperty(CrosswordKB.hasSolutionStructure);
+			if(solutionStructureStatement == null || 
+					!solutionStructureStatement.getObject().toString().equals(solutionStructure))
+				continue;
+			SolvedClue solvedClue = new SolvedClue(clueText, solutionStructure, thisClue.getURI());
+			StmtIterator solutions = thisClue.listProperties(CrosswordKB.solvedBy);
+			while(solutions.hasNext()) {
+				Resource thisSolution = solutions.nextStatement().getObject().asResource();
+				StmtIterator solutionTexts = thisSolution.listProperties(CrosswordKB.hasSolutionText);
+				while(solutionTexts.hasNext())
+					solvedClue.getSolutionTexts().add(solutionTexts.nextStatement().getObject().toString());
+			}
+			clues.close();
+			return solvedClue;
+		}
+		return null;
+	}
+	
+	/**
+	 * gatherSolvedClues
+	 * @param knowledgeBase - a model holding the crossword knowledge base
+	 * @return a list of all solved clues present in the knowledge base
+	 */
+	public static ArrayList<SolvedClue> gatherSolvedClues(Model knowledgeBase) {
+		ArrayList<SolvedClue> solvedClues = new ArrayList<SolvedClue>();
+		
 		Selector selector = new SimpleSelector(null, CrosswordKB.solvedBy, (RDFNode) null);
-		StmtIterator statements = this.getKnowledgeBase().listStatements(selector);
+		StmtIterator statements = knowledgeBase.listStatements(selector);
 		
 		while(statements.hasNext()) {
 			Statement thisStatement = statements.nextStatement();
@@ -89,128 +240,224 @@ public class KnowledgeBaseManager {
 			}
 			solvedClues.add(solvedClue);
 		}
+		return solvedClues;
+	}
+	
+	/**
+	 * gatherPreviouslySolvedClues - initialises the solvedClues member with a list of all solved clues present in the knowledge base.
+	 * The list held in the binary snapshot of the knowledge base is used, if the snapshot was read and nothing has been recovered
+	 * from the journal since; otherwise the knowledge base is scanned
+	 */
+	private void gatherPreviouslySolvedClues() {
+		ArrayList<SolvedClue> solvedClueIndex = ModelLoader.getSolvedClueIndex();
+		if(solvedClueIndex != null && this.getKnowledgeBase() instanceof InMemoryKnowledgeBaseStore &&
+				((InMemoryKnowledgeBaseStore) this.getKnowledgeBase()).getTriplesRecovered() == 0) {
+			this.setSolvedClues(new ArrayList<SolvedClue>(solvedClueIndex));
+			return;
+		}
+		this.setSolvedClues(gatherSolvedClues(this.getKnowledgeBase().getModel()));
 	}
 	
 	/**
-	 * addSolutionOnlyToKnowledgeBase - adds a new solution to an existing solved clue in the in-memory representation of the knowledge
-	 * base
+	 * addSolutionOnlyToKnowledgeBase - adds a new solution to an existing solved clue
 	 * @param clueUri - the URI of the solved clue, as used in the crossword knowledge base
-	 * @param solution - a Solution object representing the new solution found for this clue
+	 * @param solutionText - the text of the new solution found for this clue
+	 * @param newStatements - the model in which the triples representing the new solution are gathered
 	 */
-	private void addSolutionOnlyToKnowledgeBase(String clueUri, Solution solution) {
-		Resource clueResource = this.getKnowledgeBase().getResource(clueUri);
+	private void addSolutionOnlyToKnowledgeBase(String clueUri, String solutionText, Model newStatements) {
+		Resource clueResource = newStatements.createResource(clueUri);
 		
 		UUID solutionUID = UUID.randomUUID();
 		String solutionUri = CrosswordKB.CROSSWORD_KB_URI + solutionUID.toString();
-		String solutionText = solution.getSolutionText();
 		
-		Resource solutionResource = this.getKnowledgeBase().createResource(solutionUri);
+		Resource solutionResource = newStatements.createResource(solutionUri);
 		
-		this.getKnowledgeBase().add(solutionResource, RDF.type, CrosswordKB.solution);
-		this.getKnowledgeBase().add(solutionResource, CrosswordKB.hasSolutionText, solutionText);
+		newStatements.add(solutionResource, RDF.type, CrosswordKB.solution);
+		newStatements.add(solutionResource, CrosswordKB.hasSolutionText, solutionText);
 		
-		this.getKnowledgeBase().add(clueResource, CrosswordKB.solvedBy, solutionResource);
+		newStatements.add(clueResource, CrosswordKB.solvedBy, solutionResource);
 	}
 	
 	/**
-	 * addToKnowledgeBase - adds a new clue-solution pair to the in-memory representation of the knowledge base
-	 * @param clue - a Clue object representing the newly solved clue
-	 * @param solution - a Solution object representing a found Solution to the clue
+	 * addToKnowledgeBase - adds a new clue-solution pair
+	 * @param clueText - the text of the newly solved clue
+	 * @param solutionStructure - a String representing the structure of the solution of the clue
+	 * @param solutionText - the text of a found solution to the clue
+	 * @param newStatements - the model in which the triples representing the new clue-solution pair are gathered
 	 */
-	private void addToKnowledgeBase(Clue clue, Solution solution) {
-		String clueText = clue.getSourceClue();
-		String solutionStructure = clue.getSolutionStructureAsString();
-		String solutionText = solution.getSolutionText();
-		
+	private void addToKnowledgeBase(String clueText, String solutionStructure, String solutionText, Model newStatements) {
 		UUID clueUID = UUID.randomUUID();
 		UUID solutionUID = UUID.randomUUID();
 		
 		String clueUri = CrosswordKB.CROSSWORD_KB_URI + clueUID.toString();
 		String solutionUri = CrosswordKB.CROSSWORD_KB_URI + solutionUID.toString();
 
-		Resource clueResource = this.getKnowledgeBase().createResource(clueUri);
-		Resource solutionResource = this.getKnowledgeBase().createResource(solutionUri);
+		Resource clueResource = newStatements.createResource(clueUri);
+		Resource solutionResource = newStatements.createResource(solutionUri);
 		
-		this.getKnowledgeBase().add(clueResource, RDF.type, CrosswordKB.clue);
-		this.getKnowledgeBase().add(clueResource, CrosswordKB.hasClueText, clueText);
-		this.getKnowledgeBase().add(clueResource, CrosswordKB.hasSolutionStructure, solutionStructure);
+		newStatements.add(clueResource, RDF.type, CrosswordKB.clue);
+		newStatements.add(clueResource, CrosswordKB.hasClueText, clueText);
+		newStatements.add(clueResource, CrosswordKB.hasSolutionStructure, solutionStructure);
 		
-		this.getKnowledgeBase().add(solutionResource, RDF.type, CrosswordKB.solution);
-		this.getKnowledgeBase().add(solutionResource, CrosswordKB.hasSolutionText, solutionText);
+		newStatements.add(solutionResource, RDF.type, CrosswordKB.solution);
+		newStatements.add(solutionResource, CrosswordKB.hasSolutionText, solutionText);
 		
-		this.getKnowledgeBase().add(clueResource, CrosswordKB.solvedBy, solutionResource);
+		newStatements.add(clueResource, CrosswordKB.solvedBy, solutionResource);
 		
-		SolvedClue solvedClue = new SolvedClue(clueText, solutionStructure, clueUri, solutionText);
-		this.getSolvedClues().add(solvedClue);
+		if(this.getSolvedClues() != null) {
+			SolvedClue solvedClue = new SolvedClue(clueText, solutionStructure, clueUri, solutionText);
+			this.getSolvedClues().add(solvedClue);
+		}
 	}
 	
 	/**
-	 * getInstance - returns the unique instance of the KnowledgeBaseManager class
-	 * @return
+	 * getInstance - returns the unique instance of the KnowledgeBaseManager class, instantiating it on first use
+	 * @return the unique instance of the KnowledgeBaseManager class
 	 */
-	public static KnowledgeBaseManager getInstance() {
+	public static synchronized KnowledgeBaseManager getInstance() {
 		if(instance == null)
 			instance = new KnowledgeBaseManager();
 		return instance;
 	}
 	
 	/**
-	 * addToKnowledgeBase - adds a new clue to the in-memory representation of the knowledge base, and a new clue-solution pair for
-	 * each Solution object in the solutions argument
+	 * addToKnowledgeBase - queues the addition to the knowledge base of the given clue, and of a new clue-solution pair for each
+	 * Solution object in the solutions argument with a confidence level above zero. Blocks while the queue of updates is full
 	 * @param clue - a Clue object representing the newly solved clue
 	 * @param solutions - an ArrayList of Solution objects representing found solutions to the new clue
+	 * @return a Future that completes once the new triples are durable, or fails if they could not be written
+	 * @throws InterruptedException - if the calling thread is interrupted while waiting for space in the queue
 	 */
-	public void addToKnowledgeBase(Clue clue, ArrayList<Solution> solutions) {
-		this.setFinished(false);
-		if(this.getKnowledgeBase() == null) {
-			this.setFinished(true);
-			return;
-		}
+	public Future<Void> addToKnowledgeBase(Clue clue, ArrayList<Solution> solutions) throws InterruptedException {
+		ArrayList<String> solutionTexts = new ArrayList<String>();
 		for(Solution solution : solutions) {
-			if(solution.getConfidence() > 0) {
-				SolvedClue solvedClue = new SolvedClue(clue.getSourceClue(), clue.getSolutionStructureAsString(), null, 
-						solution.getSolutionText()); // create a dummy solvedClue object with a null uri
-				if(this.getSolvedClues().contains(solvedClue)) {
-					int index = this.getSolvedClues().indexOf(solvedClue);
-					SolvedClue previouslySolvedClue = this.getSolvedClues().get(index);
-					String clueResourceUri = previouslySolvedClue.getClueResourceUri();
-					if(!previouslySolvedClue.getSolutionTexts().contains(solution.getSolutionText()))
-						this.addSolutionOnlyToKnowledgeBase(clueResourceUri, solution);
-				}
-				else {
-					this.addToKnowledgeBase(clue, solution); // add the new triples to the knowledge base
+			if(solution.getConfidence() > 0)
+				solutionTexts.add(solution.getSolutionText());
+		}
+		KnowledgeBaseUpdate update = new KnowledgeBaseUpdate(clue.getSourceClue(), clue.getSolutionStructureAsString(), 
+				solutionTexts);
+		if(this.getKnowledgeBase() == null || solutionTexts.isEmpty()) {
+			update.complete(); // nothing to write
+			return update;
+		}
+		return this.getWriter().submit(update);
+	}
+	
+	/**
+	 * applyUpdates - adds each of a batch of updates to the knowledge base, in a single write transaction. Called only on the
+	 * writer thread of the KnowledgeBaseWriter. The solved clues held in memory are updated as the triples are added, so that later
+	 * solutions in the batch find them, and are restored if the transaction fails to commit
+	 * @param updates - the updates to be applied
+	 */
+	void applyUpdates(List<KnowledgeBaseUpdate> updates) {
+		int solvedClueCount = (this.getSolvedClues() == null) ? 0 : this.getSolvedClues().size();
+		/* the number of solution texts each previously solved clue had before the batch added to them */
+		Map<SolvedClue, Integer> solutionTextCounts = new IdentityHashMap<SolvedClue, Integer>();
+		boolean committed = false;
+		this.getKnowledgeBase().beginWrite();
+		try {
+			for(KnowledgeBaseUpdate update : updates) {
+				for(String solutionText : update.getSolutionTexts()) {
+					Model newStatements = ModelFactory.createDefaultModel();
+					SolvedClue previouslySolvedClue = this.findPreviouslySolvedClue(update.getClueText(), 
+							update.getSolutionStructure());
+					if(previouslySolvedClue != null) {
+						if(previouslySolvedClue.getSolutionTexts().contains(solutionText))
+							continue;
+						this.addSolutionOnlyToKnowledgeBase(previouslySolvedClue.getClueResourceUri(), solutionText, newStatements);
+						if(!solutionTextCounts.containsKey(previouslySolvedClue))
+							solutionTextCounts.put(previouslySolvedClue, previouslySolvedClue.getSolutionTexts().size());
+						previouslySolvedClue.getSolutionTexts().add(solutionText);
+					}
+					else
+						this.addToKnowledgeBase(update.getClueText(), update.getSolutionStructure(), solutionText, newStatements);
+					this.getKnowledgeBase().add(newStatements); // add the new triples, so that later solutions find them
 				}
 			}
+			this.getKnowledgeBase().commit();
+			committed = true;
+		}
+		finally {
+			if(!committed)
+				this.restoreSolvedClues(solvedClueCount, solutionTextCounts);
+			this.getKnowledgeBase().end();
+		}
+		for(KnowledgeBaseUpdate update : updates) {
+			this.getSimilarityIndex().add(update.getClueText(), update.getSolutionStructure(), update.getSolutionTexts());
+			for(String solutionText : update.getSolutionTexts())
+				this.knownSolutionTexts.add(solutionText.toLowerCase());
 		}
-		solutions = null; // allow solutions to be garbage-collected
-		this.setFinished(true);
 	}
 	
 	/**
-	 * persistKnowledgeBase - writes the in-memory representation of the knowledge base out to disk in RDF/XML form
+	 * restoreSolvedClues - undoes the changes made to the solved clues held in memory by a batch of updates that failed to commit
+	 * @param solvedClueCount - the number of solved clues held before the batch, to which any added by it are removed
+	 * @param solutionTextCounts - the number of solution texts that each previously solved clue to which the batch added solutions
+	 * had before it
+	 */
+	private void restoreSolvedClues(int solvedClueCount, Map<SolvedClue, Integer> solutionTextCounts) {
+		if(this.getSolvedClues() != null)
+			this.getSolvedClues().subList(solvedClueCount, this.getSolvedClues().size()).clear();
+		for(Map.Entry<SolvedClue, Integer> solutionTextCount : solutionTextCounts.entrySet()) {
+			ArrayList<String> solutionTexts = solutionTextCount.getKey().getSolutionTexts();
+			solutionTexts.subList(solutionTextCount.getValue(), solutionTexts.size()).clear();
+		}
+	}
+	
+	/**
+	 * getKnownSolutionTexts
+	 * @return a read-only view of the set of the texts, in lower case, of every solution held in the knowledge base
+	 */
+	public Set<String> getKnownSolutionTexts() {
+		return Collections.unmodifiableSet(this.knownSolutionTexts);
+	}
+	
+	/**
+	 * findSimilarClues
+	 * @param clue - a Clue object representing a clue to be solved
+	 * @return a list of previously solved clues whose text is nearly the same as that of the given clue, and whose solution 
+	 * structure is the same, together with their solutions, in descending order of similarity
+	 */
+	public ArrayList<SimilarClue> findSimilarClues(Clue clue) {
+		return this.getSimilarityIndex().findSimilarClues(clue.getSourceClue(), clue.getSolutionStructureAsString());
+	}
+	
+	/**
+	 * persistKnowledgeBase - waits for every queued update to be written, then ensures that the whole knowledge base is written out
+	 * to disk, and releases the knowledge base store
 	 */
 	public void persistKnowledgeBase() {
-		this.setFinished(false);
-		if(this.getKnowledgeBase() == null) {
-			this.setFinished(true);
+		this.getWriter().shutdown();
+		if(this.getKnowledgeBase() == null)
 			return;
-		}
+		this.awaitIndexer();
+		long size = this.knowledgeBaseSize(); // counted first, so that the count is not timed as part of persisting
+		StageMeasurement measurement = StageMeasurement.start(Stage.KNOWLEDGE_BASE_PERSISTENCE, 0, null);
+		this.getKnowledgeBase().persist();
+		measurement.stop(size);
+		this.getKnowledgeBase().close();
+	}
+
+	/**
+	 * knowledgeBaseSize
+	 * @return the number of triples in the knowledge base if it is held in memory, where they are counted at once, or otherwise 0,
+	 * since counting the triples of a store on disk means scanning the whole of it
+	 */
+	private long knowledgeBaseSize() {
+		if(!this.getKnowledgeBase().isFullyLoaded())
+			return 0;
 		try {
-			String fileName = "data\\" + CrosswordKB.LOCAL_KNOWLEDGE_BASE_URI;
-			FileOutputStream outFile = new FileOutputStream(fileName);
-			log.debug("Writing out crosswordKB to disk");
-			this.getKnowledgeBase().write(outFile, "RDF/XML-ABBREV");
-			outFile.close();
-			log.debug("CrosswordKB written to disk");
-		}
-		catch(FileNotFoundException e) {
-			log.debug("Failed to write crosswordKB out to disk");
-			log.debug(e.getMessage());
-		} 
-		catch (IOException e) {
-			log.debug("Failed to write crosswordKB out to disk");
-			log.debug(e.getMessage());
+			this.getKnowledgeBase().beginRead();
+			try {
+				return this.getKnowledgeBase().getModel().size();
+			}
+			finally {
+				this.getKnowledgeBase().end();
+			}
+		}
+		catch(JenaException e) {
+			log.debug("Failed to count the triples in the knowledge base: " + e.getMessage());
+			return 0;
 		}
-		this.setFinished(true);
 	}
 }
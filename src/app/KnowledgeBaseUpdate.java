@@ -0,0 +1,56 @@
+package app;
+
+import java.util.ArrayList;
+import java.util.concurrent.FutureTask;
+
+import lombok.AccessLevel;
+import lombok.Getter;
+import lombok.Setter;
+
+/**
+ * @author Ben Griffiths
+ * KnowledgeBaseUpdate
+ * A request, queued with the KnowledgeBaseWriter, to add a solved clue and its solutions to the crossword knowledge base. Holds only
+ * the text of the clue and of its solutions, so that nothing derived from the solving of the clue (in particular, the inference
+ * models from which the solutions were drawn) is kept alive while the update waits to be written. The update is also the Future
+ * through which the caller may learn when the new knowledge has been made durable: get() returns once the write transaction that
+ * includes the update has committed, and throws an ExecutionException if it failed.
+ */
+public class KnowledgeBaseUpdate extends FutureTask<Void> {
+	@Getter(AccessLevel.PUBLIC) @Setter(AccessLevel.PRIVATE) private String clueText;
+	@Getter(AccessLevel.PUBLIC) @Setter(AccessLevel.PRIVATE) private String solutionStructure;
+	@Getter(AccessLevel.PUBLIC) @Setter(AccessLevel.PRIVATE) private ArrayList<String> solutionTexts;
+
+	/**
+	 * Constructor - instantiates a new, incomplete KnowledgeBaseUpdate
+	 * @param clueText - the text of the solved clue
+	 * @param solutionStructure - a String representing the structure of the solution of the clue
+	 * @param solutionTexts - the texts of the solutions to be recorded for the clue
+	 */
+	public KnowledgeBaseUpdate(String clueText, String solutionStructure, ArrayList<String> solutionTexts) {
+		super(new Runnable() {
+			@Override
+			public void run() {
+				// the update is completed by the KnowledgeBaseWriter, never run
+			}
+		}, null);
+		this.setClueText(clueText);
+		this.setSolutionStructure(solutionStructure);
+		this.setSolutionTexts(solutionTexts);
+	}
+
+	/**
+	 * complete - marks the update as durably written to the knowledge base
+	 */
+	void complete() {
+		this.set(null);
+	}
+
+	/**
+	 * fail - marks the update as having failed to be written to the knowledge base
+	 * @param cause - the reason for the failure
+	 */
+	void fail(Throwable cause) {
+		this.setException(cause);
+	}
+}
@@ -0,0 +1,180 @@
+package app;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+import org.apache.log4j.Logger;
+
+import lombok.AccessLevel;
+import lombok.Getter;
+import lombok.Setter;
+
+import framework.Stage;
+
+/**
+ * @author Ben Griffiths
+ * KnowledgeBaseWriter
+ * A write-behind queue for updates to the crossword knowledge base. Updates are applied by a single writer thread, so that the
+ * knowledge base only ever has one writer, and every update waiting in the queue when the writer thread becomes free is applied
+ * in the same write transaction. The queue is bounded: once it is full, submit blocks until the writer thread catches up. On
+ * shutdown, every update already queued is written before the writer thread exits. Should applying a batch throw an Error, the
+ * writer shuts down, failing that batch and every update queued behind it, so that no caller waits on an update never written.
+ */
+public class KnowledgeBaseWriter {
+	private static Logger log = Logger.getLogger(KnowledgeBaseWriter.class);
+	private final String WRITER_THREAD_NAME = "crosswordKB-writer";
+	private final KnowledgeBaseUpdate SHUTDOWN_MARKER = new KnowledgeBaseUpdate(null, null, null);
+	@Getter(AccessLevel.PRIVATE) @Setter(AccessLevel.PRIVATE) private BatchApplier batchApplier;
+	@Getter(AccessLevel.PRIVATE) @Setter(AccessLevel.PRIVATE) private BlockingQueue<KnowledgeBaseUpdate> queue;
+	@Getter(AccessLevel.PRIVATE) @Setter(AccessLevel.PRIVATE) private int maximumBatchSize;
+	@Getter(AccessLevel.PRIVATE) @Setter(AccessLevel.PRIVATE) private Thread writerThread;
+	@Getter(AccessLevel.PUBLIC) @Setter(AccessLevel.PRIVATE) private volatile boolean shutdown;
+
+	/**
+	 * BatchApplier - applies a batch of updates to the knowledge base in a single write transaction, on the writer thread
+	 */
+	public interface BatchApplier {
+		public void applyUpdates(List<KnowledgeBaseUpdate> updates);
+	}
+
+	/**
+	 * Constructor - instantiates a new KnowledgeBaseWriter and starts its writer thread
+	 * @param batchApplier - the BatchApplier, normally backed by the KnowledgeBaseManager, that applies each batch of updates to the
+	 * knowledge base
+	 * @param capacity - the number of updates that may be queued before submit blocks
+	 * @param maximumBatchSize - the largest number of updates to be applied in a single write transaction
+	 */
+	public KnowledgeBaseWriter(BatchApplier batchApplier, int capacity, int maximumBatchSize) {
+		this.setBatchApplier(batchApplier);
+		this.setQueue(new ArrayBlockingQueue<KnowledgeBaseUpdate>(Math.max(1, capacity)));
+		this.setMaximumBatchSize(Math.max(1, maximumBatchSize));
+		this.setShutdown(false);
+		this.setWriterThread(new Thread(new Runnable() {
+			@Override
+			public void run() {
+				writeUpdates();
+			}
+		}, this.WRITER_THREAD_NAME));
+		this.getWriterThread().setDaemon(true); // shutdown must be called for queued updates to be written before exit
+		this.getWriterThread().start();
+	}
+
+	/**
+	 * writeUpdates - the body of the writer thread. Waits for an update to be queued, then takes every other update that is already
+	 * queued, up to the maximum batch size, and applies them all in one write transaction, until the shutdown marker is reached
+	 */
+	private void writeUpdates() {
+		ArrayList<KnowledgeBaseUpdate> batch = new ArrayList<KnowledgeBaseUpdate>();
+		boolean finished = false;
+		while(!finished) {
+			try {
+				batch.add(this.getQueue().take());
+			}
+			catch(InterruptedException e) {
+				log.debug("KnowledgeBaseWriter interrupted; continuing until shut down");
+				continue;
+			}
+			this.getQueue().drainTo(batch, this.getMaximumBatchSize() - 1);
+			int markerIndex = batch.indexOf(this.SHUTDOWN_MARKER);
+			if(markerIndex != -1) {
+				batch.remove(markerIndex);
+				finished = true;
+			}
+			if(!batch.isEmpty())
+				this.writeBatch(batch);
+			batch.clear();
+		}
+	}
+
+	/**
+	 * writeBatch - applies a batch of updates to the knowledge base and completes the future of every update in the batch
+	 * @param batch - the updates to be applied
+	 * @throws Error - if applying the batch threw one, once the writer has been shut down and every queued update failed
+	 */
+	private void writeBatch(ArrayList<KnowledgeBaseUpdate> batch) throws Error {
+		StageMeasurement measurement = StageMeasurement.start(Stage.KNOWLEDGE_BASE_UPDATE, 0, null);
+		try {
+			this.getBatchApplier().applyUpdates(batch);
+		}
+		catch(Throwable e) {
+			log.debug("Failed to write " + batch.size() + " updates to the knowledge base");
+			log.debug(e.getMessage());
+			for(KnowledgeBaseUpdate update : batch)
+				update.fail(e);
+			if(e instanceof Error) {
+				this.failQueuedUpdates(e);
+				throw (Error)e;
+			}
+			return;
+		}
+		measurement.stop(batch.size());
+		SolverMetrics.getInstance().increment(SolverMetrics.Count.KNOWLEDGE_BASE_UPDATES, batch.size());
+		for(KnowledgeBaseUpdate update : batch)
+			update.complete();
+	}
+
+	/**
+	 * failQueuedUpdates - shuts the KnowledgeBaseWriter down from the writer thread, which is about to exit, and fails every update
+	 * still queued
+	 * @param cause - the reason the writer thread is exiting
+	 */
+	private void failQueuedUpdates(Throwable cause) {
+		ArrayList<KnowledgeBaseUpdate> queued = new ArrayList<KnowledgeBaseUpdate>();
+		this.setShutdown(true); // refuses any further submit, leaving at most one blocked on the full queue
+		this.getQueue().drainTo(queued); // makes room for that one
+		synchronized(this) {
+			this.getQueue().drainTo(queued);
+		}
+		for(KnowledgeBaseUpdate update : queued) {
+			if(update != this.SHUTDOWN_MARKER)
+				update.fail(cause);
+		}
+	}
+
+	/**
+	 * submit - queues an update to the knowledge base, blocking while the queue is full
+	 * @param update - the update to be written
+	 * @return the update, which doubles as the Future that completes once the update is durable
+	 * @throws IllegalStateException - if the KnowledgeBaseWriter has been shut down
+	 * @throws InterruptedException - if the calling thread is interrupted while waiting for space in the queue
+	 */
+	public synchronized KnowledgeBaseUpdate submit(KnowledgeBaseUpdate update) throws InterruptedException {
+		if(this.isShutdown())
+			throw new IllegalStateException("The knowledge base writer has been shut down");
+		this.getQueue().put(update);
+		return update;
+	}
+
+	/**
+	 * shutdown - stops the KnowledgeBaseWriter accepting updates, and waits until every update already queued has been written
+	 */
+	public void shutdown() {
+		boolean interrupted = false;
+		synchronized(this) { // no update may be queued behind the shutdown marker
+			if(this.isShutdown())
+				return;
+			this.setShutdown(true);
+			while(true) {
+				try {
+					this.getQueue().put(this.SHUTDOWN_MARKER);
+					break;
+				}
+				catch(InterruptedException e) {
+					interrupted = true;
+				}
+			}
+		}
+		while(this.getWriterThread().isAlive()) {
+			try {
+				this.getWriterThread().join();
+			}
+			catch(InterruptedException e) {
+				interrupted = true;
+			}
+		}
+		if(interrupted)
+			Thread.currentThread().interrupt();
+	}
+}
@@ -0,0 +1,63 @@
+package app;
+
+import java.util.Arrays;
+
+/**
+ * @author Ben Griffiths
+ * LatencyWindow
+ * Holds the most recent latencies observed for a class of operation, from which percentiles of the latency are estimated
+ */
+public class LatencyWindow {
+	private final long[] latencies;
+	private final int minimumSamples;
+	private int count; // the number of latencies recorded, of which only the most recent latencies.length are held
+	private long sum; // the sum of the latencies held
+
+	/**
+	 * Constructor
+	 * @param capacity - the number of recent latencies to be held
+	 * @param minimumSamples - the number of latencies that must be recorded before percentiles are estimated
+	 */
+	public LatencyWindow(int capacity, int minimumSamples) {
+		this.latencies = new long[Math.max(1, capacity)];
+		this.minimumSamples = Math.max(1, Math.min(minimumSamples, this.latencies.length));
+	}
+
+	/**
+	 * record - records an observed latency, displacing the oldest held if the window is full
+	 * @param latencyNanos - the latency in nanoseconds
+	 */
+	public synchronized void record(long latencyNanos) {
+		int index = this.count % this.latencies.length;
+		if(this.count >= this.latencies.length)
+			this.sum -= this.latencies[index];
+		this.latencies[index] = latencyNanos;
+		this.sum += latencyNanos;
+		this.count = (this.count == Integer.MAX_VALUE) ? this.latencies.length : this.count + 1;
+	}
+
+	/**
+	 * percentile
+	 * @param percentile - the percentile required, from 0 to 100
+	 * @return the latency in nanoseconds at the given percentile of those held, by the nearest-rank method, or 0 if too few
+	 * latencies have been recorded for an estimate
+	 */
+	public synchronized long percentile(int percentile) {
+		int size = Math.min(this.count, this.latencies.length);
+		if(size < this.minimumSamples)
+			return 0;
+		long[] sortedLatencies = Arrays.copyOf(this.latencies, size);
+		Arrays.sort(sortedLatencies);
+		int rank = (int)Math.ceil(percentile / 100.0 * size);
+		return sortedLatencies[Math.max(0, rank - 1)];
+	}
+
+	/**
+	 * mean
+	 * @return the mean in nanoseconds of the latencies held, or 0 if none have been recorded
+	 */
+	public synchronized long mean() {
+		int size = Math.min(this.count, this.latencies.length);
+		return size == 0 ? 0 : this.sum / size;
+	}
+}
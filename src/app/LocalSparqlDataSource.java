@@ -0,0 +1,158 @@
+package app;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+
+import lombok.AccessLevel;
+import lombok.Getter;
+import lombok.Setter;
+
+import org.apache.log4j.Logger;
+
+import com.hp.hpl.jena.query.Dataset;
+import com.hp.hpl.jena.query.QueryExecution;
+import com.hp.hpl.jena.query.QueryExecutionFactory;
+import com.hp.hpl.jena.query.QuerySolution;
+import com.hp.hpl.jena.query.QuerySolutionMap;
+import com.hp.hpl.jena.query.ReadWrite;
+import com.hp.hpl.jena.query.ResultSet;
+import com.hp.hpl.jena.rdf.model.Model;
+import com.hp.hpl.jena.rdf.model.RDFNode;
+
+import framework.CancellationHandle;
+import framework.QueryClass;
+import framework.SparqlDataSource;
+
+
+/**
+ * @author Ben Griffiths
+ * LocalSparqlDataSource
+ * An implementation of the SparqlDataSource interface that answers each query in-process against a Jena Dataset, which may be held
+ * in memory, e.g. an extract of DBpedia loaded from files, or in a TDB store on local disk. Queries are answered at the speed of
+ * the local machine, without the pacing, retries and timeouts that a remote endpoint needs. Reads of a transactional dataset take
+ * place within a read transaction, and the solutions of a select query are copied out of the dataset before the transaction ends.
+ * @implements framework.SparqlDataSource
+ */
+public class LocalSparqlDataSource implements SparqlDataSource {
+	private static Logger log = Logger.getLogger(LocalSparqlDataSource.class);
+	@Getter(AccessLevel.PRIVATE) @Setter(AccessLevel.PRIVATE) private Dataset dataset;
+	@Setter(AccessLevel.PRIVATE) private String description; // read through the public getDescription
+
+	/**
+	 * Constructor
+	 * @param dataset - the dataset against which queries are answered, which is not modified
+	 * @param description - a description of the dataset, such as the files or directory it was loaded from
+	 */
+	public LocalSparqlDataSource(Dataset dataset, String description) {
+		this.setDataset(dataset);
+		this.setDescription(description);
+		FullTextContainsFunction.register(); // for the fill-in-the-blank queries written for DBpedia's Virtuoso server
+	}
+
+	/**
+	 * select
+	 * @override framework.SparqlDataSource.select
+	 */
+	@Override
+	public List<QuerySolution> select(QueryClass queryClass, String sparqlQuery, CancellationHandle cancellation)
+			throws CancellationException {
+		this.beginRead();
+		try {
+			QueryExecution queryExecution = cancellation.register(QueryExecutionFactory.create(sparqlQuery, this.getDataset()));
+			try {
+				ResultSet resultSet = queryExecution.execSelect();
+				List<QuerySolution> solutions = new ArrayList<QuerySolution>();
+				while(resultSet.hasNext()) {
+					QuerySolution solution = resultSet.next();
+					QuerySolutionMap copy = new QuerySolutionMap();
+					for(Iterator<String> varNames = solution.varNames(); varNames.hasNext(); ) {
+						String varName = varNames.next();
+						RDFNode value = solution.get(varName);
+						if(value != null)
+							copy.add(varName, value);
+					}
+					solutions.add(copy);
+				}
+				return Collections.unmodifiableList(solutions);
+			}
+			finally {
+				cancellation.release(queryExecution);
+			}
+		}
+		finally {
+			this.end();
+		}
+	}
+
+	/**
+	 * construct
+	 * @override framework.SparqlDataSource.construct
+	 */
+	@Override
+	public Model construct(QueryClass queryClass, String sparqlQuery, CancellationHandle cancellation) throws CancellationException {
+		this.beginRead();
+		try {
+			QueryExecution queryExecution = cancellation.register(QueryExecutionFactory.create(sparqlQuery, this.getDataset()));
+			try {
+				return queryExecution.execConstruct(); // into a new in-memory Model, which outlives the transaction
+			}
+			finally {
+				cancellation.release(queryExecution);
+			}
+		}
+		finally {
+			this.end();
+		}
+	}
+
+	/**
+	 * isRemote
+	 * @override framework.SparqlDataSource.isRemote
+	 */
+	@Override
+	public boolean isRemote() {
+		return false;
+	}
+
+	/**
+	 * getDescription
+	 * @override framework.SparqlDataSource.getDescription
+	 */
+	@Override
+	public String getDescription() {
+		return this.description;
+	}
+
+	/**
+	 * close
+	 * @override framework.SparqlDataSource.close
+	 */
+	@Override
+	public void close() {
+		try {
+			this.getDataset().close();
+		}
+		catch(RuntimeException e) {
+			log.debug("Failed to close the dataset " + this.getDescription() + ": " + e.getMessage());
+		}
+	}
+
+	/**
+	 * beginRead - begins a read transaction on the dataset, if it supports transactions
+	 */
+	private void beginRead() {
+		if(this.getDataset().supportsTransactions())
+			this.getDataset().begin(ReadWrite.READ);
+	}
+
+	/**
+	 * end - ends the read transaction begun by beginRead
+	 */
+	private void end() {
+		if(this.getDataset().supportsTransactions())
+			this.getDataset().end();
+	}
+}
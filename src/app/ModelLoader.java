@@ -1,16 +1,30 @@
 package app;
 
+import java.io.File;
+import java.io.IOException;
 import java.io.InputStream;
+import java.net.MalformedURLException;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.net.URLConnection;
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Scanner;
 
 import org.apache.log4j.Logger;
 
+import com.hp.hpl.jena.rdf.model.InfModel;
 import com.hp.hpl.jena.rdf.model.Model;
+import com.hp.hpl.jena.rdf.model.ModelFactory;
+import com.hp.hpl.jena.rdf.model.ResIterator;
+import com.hp.hpl.jena.rdf.model.Resource;
 
+import com.hp.hpl.jena.reasoner.Reasoner;
+import com.hp.hpl.jena.reasoner.ReasonerRegistry;
 import com.hp.hpl.jena.shared.JenaException;
 import com.hp.hpl.jena.util.FileManager;
+import com.hp.hpl.jena.vocabulary.RDFS;
 
 import framework.CrosswordKB;
 import framework.Pop;
@@ -22,14 +36,20 @@ import lombok.Setter;
  * @author Ben Griffiths
  * ModelLoader
  * Utility class providing static methods to load a single instance of each of the pop ontology, the crossword knowledge base, and a
- * list of the most common clue fragments, and provide references to the unique instances of each of these data sources
+ * list of the most common clue fragments, and provide references to the unique instances of each of these data sources. The pop 
+ * ontology and the crossword knowledge base are read from binary snapshots where an up-to-date snapshot exists, and otherwise from
+ * RDF/XML, after which a fresh snapshot is written
  */
 public class ModelLoader {
 	private static Logger log = Logger.getLogger(ModelLoader.class);
 	@Setter(AccessLevel.PRIVATE) private static Model model;
 	@Setter(AccessLevel.PRIVATE) private static Model knowledgeBase;
 	@Setter(AccessLevel.PRIVATE) private static Map<String, Boolean> commonClueFragments;
+	@Setter(AccessLevel.PRIVATE) private static Reasoner reasoner;
+	@Setter(AccessLevel.PRIVATE) private static ArrayList<SolvedClue> solvedClueIndex;
+	@Setter(AccessLevel.PRIVATE) private static ArrayList<String> relationalPropertyUris;
 	private static final String COMMON_CLUE_FRAGMENTS_FILE_LOCATION = "commonClueFragments.txt";
+	private static final String FILE_PROTOCOL = "file";
 	
 	/**
 	 * The only constructor is private; the ModelLoader class is not designed to be instantiated
@@ -38,15 +58,89 @@ public class ModelLoader {
 		
 	}
 	
+	/**
+	 * locateSource
+	 * @param fileName - the name of an RDF/XML data file
+	 * @return the URL of the copy of the file in the local data directory, to which the knowledge base is persisted, if such a copy
+	 * exists, and otherwise the URL of the file on the class path, or null if the file cannot be found
+	 */
+	private static URL locateSource(String fileName) {
+		File localFile = new File(CrosswordKB.LOCAL_KNOWLEDGE_BASE_DIRECTORY, fileName);
+		if(localFile.exists()) {
+			try {
+				return localFile.toURI().toURL();
+			}
+			catch(MalformedURLException e) {
+				log.debug(e.getMessage());
+			}
+		}
+		return ModelLoader.class.getClassLoader().getResource(fileName);
+	}
+	
+	/**
+	 * loadModel - reads the model held in the given RDF/XML file from its binary snapshot, if the snapshot is up to date, and 
+	 * otherwise parses the RDF/XML file and then writes a fresh snapshot
+	 * @param fileName - the name of the RDF/XML file holding the model
+	 * @param snapshotFileName - the name of the file, in the local data directory, holding the binary snapshot of the model
+	 * @param isKnowledgeBase - true if the model is the crossword knowledge base, in which case the list of solved clues held in the
+	 * knowledge base is read from or written to the snapshot too, and made available through getSolvedClueIndex
+	 * @return the loaded model
+	 * @throws com.hp.hpl.jena.shared.JenaException - if the model cannot be loaded
+	 */
+	private static Model loadModel(String fileName, String snapshotFileName, boolean isKnowledgeBase) {
+		URL source = locateSource(fileName);
+		if(source == null)
+			return FileManager.get().loadModel(fileName); // will throw a NotFoundException
+		long sourceLength, sourceLastModified;
+		try {
+			if(source.getProtocol().equals(FILE_PROTOCOL)) {
+				File sourceFile = new File(source.toURI());
+				sourceLength = sourceFile.length();
+				sourceLastModified = sourceFile.lastModified();
+			}
+			else {
+				URLConnection connection = source.openConnection();
+				sourceLength = connection.getContentLengthLong();
+				sourceLastModified = connection.getLastModified();
+				connection.getInputStream().close();
+			}
+		}
+		catch(IOException e) {
+			log.debug(e.getMessage());
+			return FileManager.get().loadModel(source.toExternalForm());
+		}
+		catch(URISyntaxException e) {
+			log.debug(e.getMessage());
+			return FileManager.get().loadModel(source.toExternalForm());
+		}
+		File snapshotFile = new File(CrosswordKB.LOCAL_KNOWLEDGE_BASE_DIRECTORY, snapshotFileName);
+		BinaryModelSnapshot snapshot = BinaryModelSnapshot.read(snapshotFile, sourceLength, sourceLastModified);
+		if(snapshot != null) {
+			if(isKnowledgeBase)
+				setSolvedClueIndex(snapshot.getSolvedClues());
+			return snapshot.getModel();
+		}
+		Model loadedModel = FileManager.get().loadModel(source.toExternalForm());
+		log.debug(fileName + " parsed from RDF/XML");
+		ArrayList<SolvedClue> solvedClues = null;
+		if(isKnowledgeBase) {
+			solvedClues = KnowledgeBaseManager.gatherSolvedClues(loadedModel);
+			setSolvedClueIndex(solvedClues);
+		}
+		if(snapshotFile.getParentFile().isDirectory())
+			BinaryModelSnapshot.write(snapshotFile, loadedModel, solvedClues, sourceLength, sourceLastModified);
+		return loadedModel;
+	}
+	
 	/**
 	 * getModel - when first called, this method instantiates a Model by loading the Pop ontology from a file. It also loads a set of 
 	 * standard namespace prefixes into the Model, from another file, and then returns the model. The Model member is treated as a 
 	 * Singleton and thus subsequent calls to the method result in the Model simply being returned. 
 	 * @return - the unique static instance of com.hp.hpl.jena.rdf.model.Model that is the model member of the ModelLoader class
 	 */
-	public static Model getModel() {
+	public static synchronized Model getModel() {
 		if(model == null) {
-			setModel(FileManager.get().loadModel(Pop.LOCAL_VOCAB_URI));
+			setModel(loadModel(Pop.LOCAL_VOCAB_URI, Pop.LOCAL_VOCAB_SNAPSHOT_URI, false));
 			/* load standard prefixes into the model */
 			NsPrefixLoader prefixLoader = new NsPrefixLoader(model);
 			prefixLoader.loadStandardPrefixes();
@@ -54,16 +148,50 @@ public class ModelLoader {
 		return model;
 	}
 	
+	/**
+	 * getReasoner - when first called, this method binds an OWL Micro reasoner to the pop ontology, so that the closure of the
+	 * ontology is computed only once, and returns the bound reasoner. Subsequent calls return the same bound reasoner, which may be
+	 * used to construct any number of inference models
+	 * @return - the unique static instance of com.hp.hpl.jena.reasoner.Reasoner bound to the pop ontology
+	 */
+	public static synchronized Reasoner getReasoner() {
+		if(reasoner == null)
+			setReasoner(ReasonerRegistry.getOWLMicroReasoner().bindSchema(getModel()));
+		return reasoner;
+	}
+	
+	/**
+	 * getRelationalPropertyUris - when first called, this method lists the properties outside the pop vocabulary, such as
+	 * dbpedia-owl:genre, that the pop ontology declares to be sub-properties of, or equivalent to sub-properties of,
+	 * pop:relationalProperty, and so are the only properties that can lead from a recognised resource to a candidate solution.
+	 * Subsequent calls return the same list
+	 * @return - the unique static list of the URIs of the relational properties of the data, in no particular order
+	 */
+	public static synchronized ArrayList<String> getRelationalPropertyUris() {
+		if(relationalPropertyUris == null) {
+			ArrayList<String> propertyUris = new ArrayList<String>();
+			InfModel schemaClosure = ModelFactory.createInfModel(getReasoner(), ModelFactory.createDefaultModel());
+			ResIterator properties = schemaClosure.listSubjectsWithProperty(RDFS.subPropertyOf, Pop.relationalProperty);
+			while(properties.hasNext()) {
+				Resource property = properties.nextResource();
+				if(property.isURIResource() && !property.getURI().startsWith(Pop.POP_URI))
+					propertyUris.add(property.getURI());
+			}
+			setRelationalPropertyUris(propertyUris);
+		}
+		return relationalPropertyUris;
+	}
+	
 	/**
 	 * getKnowledgeBase - when first called, this method instantiates a basic Model with the content of the RDF file that stores the 
 	 * crossword knowledge base on disk, and returns the model. The Model member is treated as a Singleton and thus subsequent calls 
 	 * to the method result in the Model simply being returned. 
 	 * @return - the unique static instance of a com.hp.hpl.jena.rdf.model.Model that is the knowledgeBase member of the ModelLoader class
 	 */
-	public static Model getKnowledgeBase() {
+	public static synchronized Model getKnowledgeBase() {
 		if(knowledgeBase == null) {
 			try {
-				setKnowledgeBase(FileManager.get().loadModel(CrosswordKB.LOCAL_KNOWLEDGE_BASE_URI));
+				setKnowledgeBase(loadModel(CrosswordKB.LOCAL_KNOWLEDGE_BASE_URI, CrosswordKB.LOCAL_KNOWLEDGE_BASE_SNAPSHOT_URI, true));
 			}
 			catch(JenaException e) {
 				log.debug("Failed to load " + CrosswordKB.LOCAL_KNOWLEDGE_BASE_URI);
@@ -73,13 +201,22 @@ public class ModelLoader {
 		return knowledgeBase;
 	}
 	
+	/**
+	 * getSolvedClueIndex - must be called after getKnowledgeBase
+	 * @return the list of solved clues held in the knowledge base as it was loaded from disk, or null if the knowledge base has not 
+	 * been loaded
+	 */
+	public static synchronized ArrayList<SolvedClue> getSolvedClueIndex() {
+		return solvedClueIndex;
+	}
+	
 	/**
 	 * getCommonClueFragments - when first called, instantiates a map containing all of the most common clue fragments by loading the
 	 * content of the commonClueFragments text file into memory. Each map entry is given a value of true; a map is used in order to
 	 * provide fast random access
 	 * @return the unique static instance of java.util.HashMap containing all of the most common clue fragments
 	 */
-	public static Map<String, Boolean> getCommonClueFragments() {
+	public static synchronized Map<String, Boolean> getCommonClueFragments() {
 		if(commonClueFragments == null) {
 			setCommonClueFragments(new HashMap<String, Boolean>());
 			/* Load the file containing common clue fragments into memory and use it to instantiate the Map member */
@@ -0,0 +1,57 @@
+package app;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import framework.ProgressListener;
+
+/**
+ * @author Ben Griffiths
+ * ProgressReportingTask
+ * A stage of solving a clue that may be run on any thread or ExecutorService, and that reports its progress, from 0 to 100, to any
+ * ProgressListeners registered with it
+ * @implements java.util.concurrent.Callable
+ */
+public abstract class ProgressReportingTask<V> implements Callable<V> {
+	public static final int PROGRESS_MAXIMUM = 100;
+	private final CopyOnWriteArrayList<ProgressListener> progressListeners = new CopyOnWriteArrayList<ProgressListener>();
+	private volatile int progress = -1; // no progress has yet been reported
+
+	/**
+	 * addProgressListener
+	 * @param progressListener - a listener to be notified of the progress of this task; ignored if null
+	 */
+	public void addProgressListener(ProgressListener progressListener) {
+		if(progressListener != null)
+			this.progressListeners.addIfAbsent(progressListener);
+	}
+
+	/**
+	 * removeProgressListener
+	 * @param progressListener - a listener that is no longer to be notified of the progress of this task
+	 */
+	public void removeProgressListener(ProgressListener progressListener) {
+		this.progressListeners.remove(progressListener);
+	}
+
+	/**
+	 * getProgress
+	 * @return the progress most recently reported by this task, from 0 to 100, or 0 if none has been reported
+	 */
+	public int getProgress() {
+		return Math.max(0, this.progress);
+	}
+
+	/**
+	 * setProgress - records the progress of this task and, if it has changed, notifies the registered listeners
+	 * @param progress - the proportion of this task that is complete; values outside the range 0 to 100 are clamped to it
+	 */
+	protected void setProgress(int progress) {
+		int clampedProgress = Math.max(0, Math.min(progress, PROGRESS_MAXIMUM));
+		if(clampedProgress == this.progress)
+			return;
+		this.progress = clampedProgress;
+		for(ProgressListener progressListener : this.progressListeners)
+			progressListener.progressChanged(clampedProgress);
+	}
+}
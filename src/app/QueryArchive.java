@@ -0,0 +1,280 @@
+package app;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.ZipException;
+
+import lombok.AccessLevel;
+import lombok.Getter;
+import lombok.Setter;
+
+import org.apache.jena.riot.Lang;
+import org.apache.jena.riot.RDFDataMgr;
+import org.apache.log4j.Logger;
+
+import com.hp.hpl.jena.graph.Node;
+import com.hp.hpl.jena.query.QuerySolution;
+import com.hp.hpl.jena.query.QuerySolutionMap;
+import com.hp.hpl.jena.rdf.model.Model;
+import com.hp.hpl.jena.rdf.model.ModelFactory;
+import com.hp.hpl.jena.rdf.model.RDFNode;
+import com.hp.hpl.jena.sparql.util.FmtUtils;
+import com.hp.hpl.jena.sparql.util.NodeFactoryExtra;
+
+import framework.QueryClass;
+
+
+/**
+ * @author Ben Griffiths
+ * QueryArchive
+ * A compact, gzip-compressed file of SPARQL queries and the responses to them, written by a RecordingSparqlDataSource and read by a
+ * ReplaySparqlDataSource. Each record holds the class and text of a query, the time taken to answer it, and its result: the
+ * solutions of a select query as tab-separated N-Triples terms, or the graph built by a construct query as N-Triples. Records are
+ * flushed to disk as they are written, and each recording session appends to the archive, so that an archive remains readable up
+ * to its last complete record even if the process recording it is killed.
+ */
+public class QueryArchive {
+	private static Logger log = Logger.getLogger(QueryArchive.class);
+	private static final Charset CHARSET = Charset.forName("UTF-8");
+	private static final byte SELECT_RECORD = 'S';
+	private static final byte CONSTRUCT_RECORD = 'C';
+	private static final String SEPARATOR = "\t";
+	@Getter(AccessLevel.PUBLIC) @Setter(AccessLevel.PRIVATE) private File file;
+	@Getter(AccessLevel.PRIVATE) @Setter(AccessLevel.PRIVATE) private DataOutputStream output; // opened by the first append
+
+	/**
+	 * A response held in the archive
+	 */
+	public static class ArchivedResponse {
+		@Getter(AccessLevel.PUBLIC) @Setter(AccessLevel.PRIVATE) private boolean construct;
+		@Getter(AccessLevel.PUBLIC) @Setter(AccessLevel.PRIVATE) private long latencyNanos; // the time taken to answer the query
+		@Getter(AccessLevel.PRIVATE) @Setter(AccessLevel.PRIVATE) private byte[] encodedResult;
+
+		/**
+		 * getSolutions
+		 * @return an unmodifiable list of the solutions of a select query
+		 */
+		public List<QuerySolution> getSolutions() {
+			return decodeSolutions(this.getEncodedResult());
+		}
+
+		/**
+		 * getModel
+		 * @return an instance of com.hp.hpl.jena.rdf.model.Model holding the graph built by a construct query, belonging to the
+		 * caller alone
+		 */
+		public Model getModel() {
+			Model model = ModelFactory.createDefaultModel();
+			RDFDataMgr.read(model, new ByteArrayInputStream(this.getEncodedResult()), Lang.NTRIPLES);
+			return model;
+		}
+	}
+
+	/**
+	 * Constructor
+	 * @param file - the file holding the archive, which need not yet exist
+	 */
+	public QueryArchive(File file) {
+		this.setFile(file);
+	}
+
+	/**
+	 * keyOf
+	 * @param queryClass - the class of a query
+	 * @param sparqlQuery - the text of the query
+	 * @return the key under which the response to the query is held
+	 */
+	public static String keyOf(QueryClass queryClass, String sparqlQuery) {
+		return queryClass + " " + sparqlQuery;
+	}
+
+	/**
+	 * appendSolutions - adds the solutions of a select query to the archive
+	 * @param queryClass - the class of the query
+	 * @param sparqlQuery - the text of the query
+	 * @param solutions - the solutions of the query
+	 * @param latencyNanos - the time taken to answer the query
+	 * @throws IOException - if the archive cannot be written
+	 */
+	public void appendSolutions(QueryClass queryClass, String sparqlQuery, List<QuerySolution> solutions, long latencyNanos)
+			throws IOException {
+		this.append(SELECT_RECORD, queryClass, sparqlQuery, latencyNanos, encodeSolutions(solutions));
+	}
+
+	/**
+	 * appendModel - adds the graph built by a construct query to the archive
+	 * @param queryClass - the class of the query
+	 * @param sparqlQuery - the text of the query
+	 * @param model - the graph built by the query
+	 * @param latencyNanos - the time taken to answer the query
+	 * @throws IOException - if the archive cannot be written
+	 */
+	public void appendModel(QueryClass queryClass, String sparqlQuery, Model model, long latencyNanos) throws IOException {
+		ByteArrayOutputStream encodedModel = new ByteArrayOutputStream();
+		RDFDataMgr.write(encodedModel, model, Lang.NTRIPLES);
+		this.append(CONSTRUCT_RECORD, queryClass, sparqlQuery, latencyNanos, encodedModel.toByteArray());
+	}
+
+	/**
+	 * load - reads every record in the archive. Where a query was recorded more than once, the most recent response is kept
+	 * @return a map from the key of each query, as returned by keyOf, to its response
+	 * @throws IOException - if the archive cannot be read
+	 */
+	public Map<String, ArchivedResponse> load() throws IOException {
+		Map<String, ArchivedResponse> responses = new HashMap<String, ArchivedResponse>();
+		DataInputStream input = new DataInputStream(new BufferedInputStream(
+				new GZIPInputStream(new BufferedInputStream(new FileInputStream(this.getFile())))));
+		try {
+			while(true) {
+				int recordType = input.read();
+				if(recordType < 0)
+					break;
+				QueryClass queryClass = QueryClass.valueOf(input.readUTF());
+				String sparqlQuery = new String(readBytes(input), CHARSET);
+				ArchivedResponse response = new ArchivedResponse();
+				response.setConstruct(recordType == CONSTRUCT_RECORD);
+				response.setLatencyNanos(input.readLong());
+				response.setEncodedResult(readBytes(input));
+				responses.put(keyOf(queryClass, sparqlQuery), response);
+			}
+		}
+		catch(EOFException e) {
+			log.debug("The archive " + this.getFile() + " ends with an incomplete record, which is ignored");
+		}
+		catch(ZipException e) { // a session that was killed, followed by another
+			log.debug("The archive " + this.getFile() + " is corrupt after " + responses.size() + " queries, which are kept");
+		}
+		finally {
+			input.close();
+		}
+		return responses;
+	}
+
+	/**
+	 * close - completes the archive. Has no effect if nothing has been appended
+	 */
+	public synchronized void close() {
+		if(this.getOutput() == null)
+			return;
+		try {
+			this.getOutput().close();
+		}
+		catch(IOException e) {
+			log.debug("Failed to close the archive " + this.getFile() + ": " + e.getMessage());
+		}
+		this.setOutput(null);
+	}
+
+	/**
+	 * append - writes a record to the archive and flushes it to disk
+	 */
+	private synchronized void append(byte recordType, QueryClass queryClass, String sparqlQuery, long latencyNanos,
+			byte[] encodedResult) throws IOException {
+		if(this.getOutput() == null) {
+			/* A new gzip member is started for each session; GZIPInputStream reads consecutive members as a single stream */
+			this.setOutput(new DataOutputStream(new BufferedOutputStream(
+					new GZIPOutputStream(new FileOutputStream(this.getFile(), true), true))));
+		}
+		DataOutputStream output = this.getOutput();
+		output.write(recordType);
+		output.writeUTF(queryClass.name());
+		writeBytes(output, sparqlQuery.getBytes(CHARSET));
+		output.writeLong(latencyNanos);
+		writeBytes(output, encodedResult);
+		output.flush();
+	}
+
+	/**
+	 * writeBytes - writes an array of bytes preceded by its length
+	 */
+	private static void writeBytes(DataOutputStream output, byte[] bytes) throws IOException {
+		output.writeInt(bytes.length);
+		output.write(bytes);
+	}
+
+	/**
+	 * readBytes - reads an array of bytes written by writeBytes
+	 */
+	private static byte[] readBytes(DataInputStream input) throws IOException {
+		byte[] bytes = new byte[input.readInt()];
+		input.readFully(bytes);
+		return bytes;
+	}
+
+	/**
+	 * encodeSolutions
+	 * @return the solutions as lines of text: the names of the variables, then, for each solution, the value of each variable as an
+	 * N-Triples term, or nothing if the variable is unbound
+	 */
+	private static byte[] encodeSolutions(List<QuerySolution> solutions) {
+		List<String> varNames = new ArrayList<String>();
+		for(QuerySolution solution : solutions) {
+			for(Iterator<String> names = solution.varNames(); names.hasNext(); ) {
+				String varName = names.next();
+				if(!varNames.contains(varName))
+					varNames.add(varName);
+			}
+		}
+		StringBuilder encodedSolutions = new StringBuilder();
+		for(int i = 0; i < varNames.size(); i++)
+			encodedSolutions.append(i == 0 ? "" : SEPARATOR).append(varNames.get(i));
+		encodedSolutions.append("\n");
+		for(QuerySolution solution : solutions) {
+			for(int i = 0; i < varNames.size(); i++) {
+				RDFNode value = solution.get(varNames.get(i));
+				encodedSolutions.append(i == 0 ? "" : SEPARATOR).append(value == null ? "" : FmtUtils.stringForNode(value.asNode()));
+			}
+			encodedSolutions.append("\n");
+		}
+		return encodedSolutions.toString().getBytes(CHARSET);
+	}
+
+	/**
+	 * decodeSolutions
+	 * @return the solutions encoded by encodeSolutions
+	 */
+	private static List<QuerySolution> decodeSolutions(byte[] encodedSolutions) {
+		List<QuerySolution> solutions = new ArrayList<QuerySolution>();
+		Model model = ModelFactory.createDefaultModel(); // to which the values of the variables belong
+		BufferedReader reader = new BufferedReader(new InputStreamReader(new ByteArrayInputStream(encodedSolutions), CHARSET));
+		try {
+			String[] varNames = reader.readLine().split(SEPARATOR, -1);
+			String line;
+			while((line = reader.readLine()) != null) {
+				String[] values = line.split(SEPARATOR, -1);
+				QuerySolutionMap solution = new QuerySolutionMap();
+				for(int i = 0; i < varNames.length && i < values.length; i++) {
+					if(values[i].isEmpty())
+						continue;
+					Node value = NodeFactoryExtra.parseNode(values[i]);
+					solution.add(varNames[i], model.asRDFNode(value));
+				}
+				solutions.add(solution);
+			}
+		}
+		catch(IOException e) {
+			throw new IllegalStateException(e); // reading from an array of bytes cannot fail
+		}
+		return Collections.unmodifiableList(solutions);
+	}
+}
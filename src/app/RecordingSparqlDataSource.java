@@ -0,0 +1,110 @@
+package app;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+
+import lombok.AccessLevel;
+import lombok.Getter;
+import lombok.Setter;
+
+import org.apache.log4j.Logger;
+
+import com.hp.hpl.jena.query.QuerySolution;
+import com.hp.hpl.jena.rdf.model.Model;
+
+import framework.CancellationHandle;
+import framework.QueryClass;
+import framework.SparqlDataSource;
+
+
+/**
+ * @author Ben Griffiths
+ * RecordingSparqlDataSource
+ * An implementation of the SparqlDataSource interface that passes each query to another data source and records every query
+ * answered, with its response and the time taken to answer it, in a QueryArchive, from which a ReplaySparqlDataSource can later
+ * answer the same queries without a network. Queries that fail are not recorded.
+ * @implements framework.SparqlDataSource
+ */
+public class RecordingSparqlDataSource implements SparqlDataSource {
+	private static Logger log = Logger.getLogger(RecordingSparqlDataSource.class);
+	@Getter(AccessLevel.PRIVATE) @Setter(AccessLevel.PRIVATE) private SparqlDataSource dataSource;
+	@Getter(AccessLevel.PRIVATE) @Setter(AccessLevel.PRIVATE) private QueryArchive archive;
+
+	/**
+	 * Constructor
+	 * @param dataSource - the data source by which queries are answered
+	 * @param archive - the archive in which queries and their responses are recorded
+	 */
+	public RecordingSparqlDataSource(SparqlDataSource dataSource, QueryArchive archive) {
+		this.setDataSource(dataSource);
+		this.setArchive(archive);
+	}
+
+	/**
+	 * select
+	 * @override framework.SparqlDataSource.select
+	 */
+	@Override
+	public List<QuerySolution> select(QueryClass queryClass, String sparqlQuery, CancellationHandle cancellation)
+			throws CancellationException {
+		long startTime = System.nanoTime();
+		List<QuerySolution> solutions = this.getDataSource().select(queryClass, sparqlQuery, cancellation);
+		if(cancellation.isCancelled()) // the result of an aborted query may be incomplete
+			return solutions;
+		try {
+			this.getArchive().appendSolutions(queryClass, sparqlQuery, solutions, System.nanoTime() - startTime);
+		}
+		catch(IOException e) {
+			log.debug("Failed to record a " + queryClass + " query: " + e.getMessage());
+		}
+		return solutions;
+	}
+
+	/**
+	 * construct
+	 * @override framework.SparqlDataSource.construct
+	 */
+	@Override
+	public Model construct(QueryClass queryClass, String sparqlQuery, CancellationHandle cancellation) throws CancellationException {
+		long startTime = System.nanoTime();
+		Model model = this.getDataSource().construct(queryClass, sparqlQuery, cancellation);
+		if(cancellation.isCancelled())
+			return model;
+		try {
+			this.getArchive().appendModel(queryClass, sparqlQuery, model, System.nanoTime() - startTime);
+		}
+		catch(IOException e) {
+			log.debug("Failed to record a " + queryClass + " query: " + e.getMessage());
+		}
+		return model;
+	}
+
+	/**
+	 * isRemote
+	 * @override framework.SparqlDataSource.isRemote
+	 */
+	@Override
+	public boolean isRemote() {
+		return this.getDataSource().isRemote();
+	}
+
+	/**
+	 * getDescription
+	 * @override framework.SparqlDataSource.getDescription
+	 */
+	@Override
+	public String getDescription() {
+		return this.getDataSource().getDescription() + ", recorded to " + this.getArchive().getFile();
+	}
+
+	/**
+	 * close
+	 * @override framework.SparqlDataSource.close
+	 */
+	@Override
+	public void close() {
+		this.getArchive().close();
+		this.getDataSource().close();
+	}
+}
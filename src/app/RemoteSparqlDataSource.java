@@ -0,0 +1,81 @@
+package app;
+
+import java.util.List;
+import java.util.concurrent.CancellationException;
+
+import lombok.AccessLevel;
+import lombok.Getter;
+import lombok.Setter;
+
+import com.hp.hpl.jena.query.QuerySolution;
+import com.hp.hpl.jena.rdf.model.Model;
+
+import framework.CancellationHandle;
+import framework.QueryClass;
+import framework.SparqlDataSource;
+
+
+/**
+ * @author Ben Griffiths
+ * RemoteSparqlDataSource
+ * An implementation of the SparqlDataSource interface that sends each query to a SPARQL endpoint over HTTP, by default the public
+ * DBpedia endpoint but equally a local mirror of it, through the shared SparqlHttpTransport
+ * @implements framework.SparqlDataSource
+ */
+public class RemoteSparqlDataSource implements SparqlDataSource {
+	@Getter(AccessLevel.PRIVATE) @Setter(AccessLevel.PRIVATE) private String endpointUri;
+
+	/**
+	 * Constructor
+	 * @param endpointUri - the URI of the SPARQL endpoint
+	 */
+	public RemoteSparqlDataSource(String endpointUri) {
+		this.setEndpointUri(endpointUri);
+	}
+
+	/**
+	 * select
+	 * @override framework.SparqlDataSource.select
+	 */
+	@Override
+	public List<QuerySolution> select(QueryClass queryClass, String sparqlQuery, CancellationHandle cancellation)
+			throws CancellationException {
+		return SparqlHttpTransport.getInstance().select(this.getEndpointUri(), queryClass, sparqlQuery, cancellation);
+	}
+
+	/**
+	 * construct
+	 * @override framework.SparqlDataSource.construct
+	 */
+	@Override
+	public Model construct(QueryClass queryClass, String sparqlQuery, CancellationHandle cancellation) throws CancellationException {
+		return SparqlHttpTransport.getInstance().construct(this.getEndpointUri(), queryClass, sparqlQuery, cancellation);
+	}
+
+	/**
+	 * isRemote
+	 * @override framework.SparqlDataSource.isRemote
+	 */
+	@Override
+	public boolean isRemote() {
+		return true;
+	}
+
+	/**
+	 * getDescription
+	 * @override framework.SparqlDataSource.getDescription
+	 */
+	@Override
+	public String getDescription() {
+		return this.getEndpointUri();
+	}
+
+	/**
+	 * close
+	 * @override framework.SparqlDataSource.close
+	 */
+	@Override
+	public void close() {
+		// the transport is shared, and its pooled connections are closed when they have been idle for long enough
+	}
+}
@@ -0,0 +1,178 @@
+package app;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import lombok.AccessLevel;
+import lombok.Getter;
+import lombok.Setter;
+
+import org.apache.log4j.Logger;
+
+import com.hp.hpl.jena.query.QuerySolution;
+import com.hp.hpl.jena.rdf.model.Model;
+import com.hp.hpl.jena.sparql.engine.http.QueryExceptionHTTP;
+
+import framework.CancellationHandle;
+import framework.QueryClass;
+import framework.SparqlDataSource;
+
+import app.QueryArchive.ArchivedResponse;
+
+/**
+ * @author Ben Griffiths
+ * ReplaySparqlDataSource
+ * An implementation of the SparqlDataSource interface that answers queries from a QueryArchive recorded by a
+ * RecordingSparqlDataSource, so that the solver can be run, and its performance measured, repeatably and without a network. A
+ * query that is not in the archive fails as if the endpoint had answered 404. Optionally, each response is delayed to simulate an
+ * endpoint: by the time taken to answer the query when it was recorded, multiplied by a scale factor, or by a time drawn from a
+ * log-normal distribution. The simulated time of a query depends only on the query and a seed, so it is the same in every run;
+ * while latency is simulated, the data source counts as remote and its queries are paced, retried and hedged as usual.
+ * @implements framework.SparqlDataSource
+ */
+public class ReplaySparqlDataSource implements SparqlDataSource {
+	private static Logger log = Logger.getLogger(ReplaySparqlDataSource.class);
+	private final int STATUS_NOT_FOUND = 404;
+	private final long WAIT_POLL_MILLIS = 100; // how often a delayed response checks whether its query is cancelled
+	private final double DEFAULT_LATENCY_SCALE = 1.0;
+	private final long DEFAULT_LATENCY_MEDIAN_MILLIS = 100;
+	private final double DEFAULT_LATENCY_SIGMA = 0.5;
+	@Getter(AccessLevel.PRIVATE) @Setter(AccessLevel.PRIVATE) private QueryArchive archive;
+	@Getter(AccessLevel.PRIVATE) @Setter(AccessLevel.PRIVATE) private Map<String, ArchivedResponse> responses;
+	@Getter(AccessLevel.PRIVATE) @Setter(AccessLevel.PRIVATE) private String latencyModel;
+	@Getter(AccessLevel.PRIVATE) @Setter(AccessLevel.PRIVATE) private double latencyScale;
+	@Getter(AccessLevel.PRIVATE) @Setter(AccessLevel.PRIVATE) private long latencyMedianNanos;
+	@Getter(AccessLevel.PRIVATE) @Setter(AccessLevel.PRIVATE) private double latencySigma;
+	@Getter(AccessLevel.PRIVATE) @Setter(AccessLevel.PRIVATE) private long seed;
+	private final AtomicLong hitCount = new AtomicLong();
+	private final AtomicLong missCount = new AtomicLong();
+
+	/**
+	 * Constructor - loads the archive, and reads the simulated latency from the semanticSolver.replay.* system properties
+	 * @param archive - the archive from which queries are answered
+	 * @throws IOException - if the archive cannot be read
+	 */
+	public ReplaySparqlDataSource(QueryArchive archive) throws IOException {
+		this.setArchive(archive);
+		this.setResponses(archive.load());
+		log.debug(this.getResponses().size() + " queries loaded from " + archive.getFile());
+		this.setLatencyModel(SolverProperties.getString(SolverProperties.REPLAY_LATENCY, SolverProperties.NO_REPLAY_LATENCY));
+		this.setLatencyScale(SolverProperties.getDouble(SolverProperties.REPLAY_LATENCY_SCALE, this.DEFAULT_LATENCY_SCALE));
+		this.setLatencyMedianNanos(TimeUnit.MILLISECONDS.toNanos(SolverProperties.getLong(
+				SolverProperties.REPLAY_LATENCY_MEDIAN_MILLIS, this.DEFAULT_LATENCY_MEDIAN_MILLIS)));
+		this.setLatencySigma(SolverProperties.getDouble(SolverProperties.REPLAY_LATENCY_SIGMA, this.DEFAULT_LATENCY_SIGMA));
+		this.setSeed(SolverProperties.getLong(SolverProperties.REPLAY_SEED, 0));
+	}
+
+	/**
+	 * select
+	 * @override framework.SparqlDataSource.select
+	 */
+	@Override
+	public List<QuerySolution> select(QueryClass queryClass, String sparqlQuery, CancellationHandle cancellation)
+			throws CancellationException {
+		return this.respond(queryClass, sparqlQuery, false, cancellation).getSolutions();
+	}
+
+	/**
+	 * construct
+	 * @override framework.SparqlDataSource.construct
+	 */
+	@Override
+	public Model construct(QueryClass queryClass, String sparqlQuery, CancellationHandle cancellation) throws CancellationException {
+		return this.respond(queryClass, sparqlQuery, true, cancellation).getModel();
+	}
+
+	/**
+	 * isRemote
+	 * @override framework.SparqlDataSource.isRemote
+	 */
+	@Override
+	public boolean isRemote() {
+		return !this.getLatencyModel().equals(SolverProperties.NO_REPLAY_LATENCY);
+	}
+
+	/**
+	 * getDescription
+	 * @override framework.SparqlDataSource.getDescription
+	 */
+	@Override
+	public String getDescription() {
+		return "replay of " + this.getArchive().getFile() + " with " + this.getLatencyModel() + " latency";
+	}
+
+	/**
+	 * close
+	 * @override framework.SparqlDataSource.close
+	 */
+	@Override
+	public void close() {
+		log.debug("Replay answered " + this.getHitCount() + " queries; " + this.getMissCount() + " were not in the archive");
+	}
+
+	/**
+	 * getHitCount
+	 * @return the number of queries answered from the archive
+	 */
+	public long getHitCount() {
+		return this.hitCount.get();
+	}
+
+	/**
+	 * getMissCount
+	 * @return the number of queries that were not in the archive
+	 */
+	public long getMissCount() {
+		return this.missCount.get();
+	}
+
+	/**
+	 * respond - finds the response to a query in the archive and waits for the simulated latency of the query
+	 * @throws QueryExceptionHTTP - if the query is not in the archive, or was recorded as a different kind of query
+	 * @throws CancellationException - if the solving of the clue is cancelled while waiting
+	 */
+	private ArchivedResponse respond(QueryClass queryClass, String sparqlQuery, boolean construct, CancellationHandle cancellation)
+			throws CancellationException {
+		String key = QueryArchive.keyOf(queryClass, sparqlQuery);
+		ArchivedResponse response = this.getResponses().get(key);
+		if(response == null || response.isConstruct() != construct) {
+			this.missCount.incrementAndGet();
+			log.debug("A " + queryClass + " query is not in the archive");
+			throw new QueryExceptionHTTP(this.STATUS_NOT_FOUND, "Not in the archive " + this.getArchive().getFile());
+		}
+		this.hitCount.incrementAndGet();
+		long deadline = System.nanoTime() + this.simulatedLatencyNanos(key, response);
+		while(true) {
+			cancellation.checkCancelled();
+			long remainingMillis = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+			if(remainingMillis <= 0)
+				return response;
+			try {
+				Thread.sleep(Math.min(remainingMillis, this.WAIT_POLL_MILLIS));
+			}
+			catch(InterruptedException e) {
+				Thread.currentThread().interrupt(); // checkCancelled then cancels the context
+			}
+		}
+	}
+
+	/**
+	 * simulatedLatencyNanos
+	 * @return the time by which the response to the query with the given key is delayed, which depends only on the query, its
+	 * recorded response and the seed
+	 */
+	private long simulatedLatencyNanos(String key, ArchivedResponse response) {
+		if(this.getLatencyModel().equals(SolverProperties.RECORDED_REPLAY_LATENCY))
+			return (long)(response.getLatencyNanos() * this.getLatencyScale());
+		if(this.getLatencyModel().equals(SolverProperties.LOG_NORMAL_REPLAY_LATENCY)) {
+			Random random = new Random(this.getSeed() * 31 + key.hashCode());
+			return (long)(this.getLatencyMedianNanos() * Math.exp(this.getLatencySigma() * random.nextGaussian()));
+		}
+		return 0;
+	}
+}
@@ -3,9 +3,11 @@ package app;
 import java.awt.Cursor;
 
 import java.util.ArrayList;
-import java.util.Collections;
-import java.util.Comparator;
-import java.util.concurrent.ExecutionException;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
 
 import javax.swing.SwingUtilities;
 
@@ -17,260 +19,242 @@ import lombok.Setter;
 
 import com.hp.hpl.jena.sparql.engine.http.QueryExceptionHTTP;
 
-import exception.NoResourcesSelectedException;
-import exception.NoSolutionsException;
-
 import framework.Clue;
-import framework.ClueSolver;
+import framework.ProgressListener;
 import framework.SemanticSolver;
 import framework.Solution;
-import framework.SolutionScorer;
 import framework.UserInterface;
 
 /**
  * @author Ben Griffiths	
  * SemanticSolveImpl
  * An implementation of the SemanticSolver interface, the SemanticSolver acts as the controller of the logic of the system, and is
- * responsible for generating entity recognition and query tasks to solve clues passed to it by an implementation of 
- * framework.UserInterface. Once a list of candidate solutions is generated, the SemanticSolver is responsible for returning a ranked
- * list of valid solutions to the user interface for display to the user, and for adding any newly acquired knowledge to the crossword
- * knowledge base.
+ * responsible for passing clues from an implementation of framework.UserInterface to the ClueSolvingPipeline, which runs on an
+ * ExecutorService with no dependency on Swing. Once a ranked list of valid solutions has been generated, the SemanticSolver is
+ * responsible for returning it to the user interface for display to the user. The progress of the pipeline is shown on the user
+ * interface by a SwingProgressListener.
  * @implements framework.SemanticSolver
  */
 public class SemanticSolverImpl implements SemanticSolver {
 	private static Logger log = Logger.getLogger(SemanticSolverImpl.class);
 	@Getter(AccessLevel.PRIVATE) @Setter(AccessLevel.PRIVATE) private UserInterface userInterface;
 	@Getter(AccessLevel.PRIVATE) @Setter(AccessLevel.PRIVATE) private Clue clue;
-	@Getter(AccessLevel.PRIVATE) @Setter(AccessLevel.PRIVATE) private EntityRecogniserTask entityRecogniserTask;
-	@Getter(AccessLevel.PRIVATE) @Setter(AccessLevel.PRIVATE) private ClueQueryTask clueQueryTask;
-	@Getter(AccessLevel.PRIVATE) @Setter(AccessLevel.PRIVATE) private ClueSolver clueSolver;
 	@Getter(AccessLevel.PRIVATE) @Setter(AccessLevel.PRIVATE) private String results;
-	@Getter(AccessLevel.PRIVATE) @Setter(AccessLevel.PRIVATE) private ArrayList<String> recognisedResourceUris;
-	@Getter(AccessLevel.PRIVATE) @Setter(AccessLevel.PRIVATE) private ArrayList<Solution> solutions;
-	@Getter(AccessLevel.PRIVATE) @Setter(AccessLevel.PRIVATE) private KnowledgeBaseManager knowledgeBaseManager;
+	@Getter(AccessLevel.PRIVATE) @Setter(AccessLevel.PRIVATE) private ArrayList<SimilarClue> similarClues;
+	@Getter(AccessLevel.PRIVATE) @Setter(AccessLevel.PRIVATE) private ExecutorService executor;
+	@Getter(AccessLevel.PRIVATE) @Setter(AccessLevel.PRIVATE) private ClueSolvingPipeline pipeline;
+	@Getter(AccessLevel.PRIVATE) @Setter(AccessLevel.PRIVATE) private ProgressListener progressListener;
+	@Getter(AccessLevel.PRIVATE) @Setter(AccessLevel.PRIVATE) private SolveContext solveContext; // of the most recent clue
+	private final double SHORT_CIRCUIT_SIMILARITY = 0.9; // similarity above which a previously solved clue may stand in for a clue
 	
 	/**
-	 * sortAndFilterSolutions
-	 * @param solutions - an ArrayList of Solution objects, each of which has had its score field set prior to calling
-	 * @return - the solutions list with any duplicate solutions removed, sorted in descending order of confidence level
+	 * describeSimilarClues
+	 * @param similarClues - a list of previously solved clues similar to the clue being solved
+	 * @return a description of the solutions found previously for each of the similar clues, for display to the user
 	 */
-	private ArrayList<Solution> sortAndFilterSolutions(ArrayList<Solution> solutions) {
-		ArrayList<Solution> sortedSolutions = this.sortByConfidenceLevel(solutions);
-		ArrayList<Solution> filteredSolutions = new ArrayList<Solution>();
-		ArrayList<String> filteredSolutionTexts = new ArrayList<String>();
-		for(int i = 0; i < sortedSolutions.size(); i++) {
-			Solution thisSolution = sortedSolutions.get(i);
-			if(!filteredSolutionTexts.contains(thisSolution.getSolutionText())) {
-				filteredSolutions.add(thisSolution);
-				filteredSolutionTexts.add(thisSolution.getSolutionText());
-			}
+	private String describeSimilarClues(ArrayList<SimilarClue> similarClues) {
+		String description = "Solutions previously found for similar clues:\n";
+		for(SimilarClue similarClue : similarClues) {
+			description += "\"" + similarClue.getClueText() + " " + similarClue.getSolutionStructure() + "\" (similarity: " + 
+							Math.round(similarClue.getSimilarity() * 100) + "%): ";
+			for(int i = 0; i < similarClue.getSolutionTexts().size(); i++)
+				description += (i == 0 ? "" : ", ") + similarClue.getSolutionTexts().get(i);
+			description += "\n";
 		}
-		return filteredSolutions;
+		return description;
 	}
 	
 	/**
-	 * sortByConfidenceLevel
-	 * @param solutions - an ArrayList of Solution objects, each of which has had its score field set prior to calling
-	 * @return - the solutions list, sorted in descending order of confidence level
+	 * getKnowledgeBaseManager
+	 * @return the unique instance of KnowledgeBaseManager, waiting for it to finish loading the knowledge base if necessary
 	 */
-	private ArrayList<Solution> sortByConfidenceLevel(ArrayList<Solution> solutions) {
-		
-		class SolutionConfidenceComparator implements Comparator<Solution> {
-		    @Override
-		    public int compare(Solution firstSolution, Solution secondSolution) {
-		        return secondSolution.getConfidence() - firstSolution.getConfidence();
-		    }
-		}
-		Collections.sort(solutions, new SolutionConfidenceComparator());
-		return solutions;
+	private KnowledgeBaseManager getKnowledgeBaseManager() {
+		return KnowledgeBaseManager.getInstance();
 	}
 	
 	/**
-	 * addSolutionsToKnowledgeBase
-	 * @param solutions - a list of solutions to be added to the crossword knowledge base together with the clue that they solve
+	 * showResults - displays the results on the user interface, on the Event Dispatch Thread, and readies it for a new clue
 	 */
-	private void addSolutionsToKnowledgeBase(ArrayList<Solution> solutions) {
-		while(!this.getKnowledgeBaseManager().isFinished())
-    		; // wait for the KnowledgeBaseManager to finish any ongoing updates
-		this.setSolutions(solutions);
-		Thread kbManagerThread = new Thread(new Runnable() {
-        	public void run() {
-                 	getKnowledgeBaseManager().addToKnowledgeBase(getClue(), getSolutions());
-        	}
-    	});
-		kbManagerThread.start();
+	private void showResults() {
+		SwingUtilities.invokeLater(new Runnable() {
+			@Override
+			public void run() {
+				getUserInterface().getDisplayPanel().getProgressBar().setStringPainted(false);
+				getUserInterface().updateResults(getResults());
+				getUserInterface().getDisplayPanel().getSubmitClueButton().setEnabled(true);
+				getUserInterface().getDisplayPanel().setCursor(Cursor.getPredefinedCursor(Cursor.DEFAULT_CURSOR));
+				getUserInterface().showNewClueOptions();
+			}
+		});
 	}
 	
+	/**
+	 * Constructor - the clues are solved on a single background thread, one at a time
+	 * @param userInterface - the user interface to which the results are to be returned
+	 */
 	public SemanticSolverImpl(UserInterface userInterface) {
+		this(userInterface, Executors.newSingleThreadExecutor(new ThreadFactory() {
+			@Override
+			public Thread newThread(Runnable runnable) {
+				Thread thread = new Thread(runnable, "semanticSolver-engine");
+				thread.setDaemon(true);
+				return thread;
+			}
+		}));
+	}
+	
+	/**
+	 * Constructor
+	 * @param userInterface - the user interface to which the results are to be returned
+	 * @param executor - the ExecutorService on which the clues are to be solved
+	 */
+	public SemanticSolverImpl(UserInterface userInterface, ExecutorService executor) {
 		this.setUserInterface(userInterface);
-		Thread instantiateKBManagerThread = new Thread(new Runnable() {
-        	public void run() {
-        		setKnowledgeBaseManager(KnowledgeBaseManager.getInstance());
-        	}
-    	});
-		instantiateKBManagerThread.start();
+		this.setExecutor(executor);
+		this.setPipeline(new ClueSolvingPipeline(executor));
+		this.setProgressListener(new SwingProgressListener(userInterface));
+		executor.execute(new Runnable() {
+			@Override
+			public void run() {
+				KnowledgeBaseManager.getInstance(); // load the knowledge base in the background
+			}
+		});
+	}
+	
+	/**
+	 * supersede - makes the given context that of the most recent clue, and cancels the context of the clue it supersedes, so that
+	 * the superseded clue is dropped if it is still waiting to be solved and its open queries are aborted if it is being solved
+	 * @param solveContext - the context of the most recent clue, or null if no more clues are to be solved
+	 */
+	private void supersede(SolveContext solveContext) {
+		SolveContext supersededContext;
+		synchronized(this) {
+			supersededContext = this.getSolveContext();
+			this.setSolveContext(solveContext);
+		}
+		if(supersededContext != null)
+			supersededContext.cancel();
 	}
 	
 	/**
-	 * solve
+	 * solve - begins solving the clue on the ExecutorService of this SemanticSolver, without waiting for it to be solved. Any clue
+	 * passed to solve previously that has not yet been solved is cancelled
 	 * @override framework.SemanticSolver.solve
 	 */
 	@Override
-	public void solve(Clue clue) throws QueryExceptionHTTP {
-         	this.setClue(clue);
-        	this.setEntityRecogniserTask(new EntityRecogniserTask(getClue()));
+	public void solve(final Clue clue) throws QueryExceptionHTTP {
+		final SolveContext solveContext = new SolveContext();
+		long deadlineMillis = SolverProperties.getLong(SolverProperties.SOLVE_DEADLINE, 0);
+		if(deadlineMillis > 0)
+			solveContext.setDeadline(deadlineMillis);
+		this.supersede(solveContext);
+		try {
+			this.getExecutor().execute(new Runnable() {
+				@Override
+				public void run() {
+					try {
+						solveOnExecutor(clue, solveContext);
+					}
+					catch(CancellationException e) {
+						log.debug("Solving of the clue " + clue.getSourceClue() + " was cancelled");
+					}
+				}
+			});
+		}
+		catch(RejectedExecutionException e) {
+			log.debug("The solver has been shut down; clue " + clue.getSourceClue() + " will not be solved");
+		}
+	}
 	
-        	Thread erThread = new Thread(new Runnable() {
-                	public void run() {
-                         	getEntityRecogniserTask().addPropertyChangeListener(getUserInterface());
-                         	getEntityRecogniserTask().execute();
-                	}
-            	});
-         	erThread.start();
-         	
-         	this.setRecognisedResourceUris(null);
-        	try {
-                        this.setRecognisedResourceUris(this.getEntityRecogniserTask().get()); // will block until ERTask has finished
-        	} 
-        	catch (QueryExceptionHTTP e) {
-         	throw e;
-        	}
-        	catch (InterruptedException e) {
-        		log.debug(e.getMessage());
-                 } 
-        	catch (ExecutionException e) {
-        		log.debug(e.getMessage());
-        	}
-        	this.setEntityRecogniserTask(null); // allow EntityRecogniserTask to be garbage-collected
-
-        	if(this.getRecognisedResourceUris() == null) {
-        		/* Notify the user that no solutions were found and then return*/
-				this.setResults("No solutions found");
-	        	SwingUtilities.invokeLater(new Runnable() {
-	        	@Override
-	                 	public void run() {
-	        				getUserInterface().getDisplayPanel().getProgressBar().setStringPainted(false);
-	        				getUserInterface().updateResults(getResults());
-	                 		
-	                 		getUserInterface().getDisplayPanel().getSubmitClueButton().setEnabled(true);
-	                     	getUserInterface().getDisplayPanel().setCursor(Cursor.getPredefinedCursor(Cursor.DEFAULT_CURSOR));
-	                 		getUserInterface().showNewClueOptions();
-	                 	}
-	        	});
-	        	return;
-        	}
-        	this.findSolutions(this.getRecognisedResourceUris());
+	/**
+	 * solveOnExecutor - solves the clue on the calling thread, which belongs to the ExecutorService of this SemanticSolver
+	 * @param clue - the clue to be solved
+	 * @param solveContext - the context of the solving of the clue
+	 * @throws CancellationException - if the clue is superseded before it is solved
+	 */
+	private void solveOnExecutor(Clue clue, SolveContext solveContext) throws CancellationException {
+		solveContext.checkCancelled();
+		this.setClue(clue);
+		
+		/* Look for previously solved clues whose text is nearly the same as this clue */
+		this.setSimilarClues(this.getKnowledgeBaseManager().findSimilarClues(clue));
+		if(SolverProperties.getBoolean(SolverProperties.KB_SHORT_CIRCUIT, false) && !this.getSimilarClues().isEmpty() &&
+				this.getSimilarClues().get(0).getSimilarity() >= this.SHORT_CIRCUIT_SIMILARITY) {
+			/* Report the solutions already held in the knowledge base, without searching DBpedia */
+			this.setResults(this.describeSimilarClues(this.getSimilarClues()));
+			this.showResults();
+			return;
+		}
+		
+		ArrayList<String> recognisedResourceUris = this.getPipeline().recogniseEntities(clue, this.getProgressListener(),
+				solveContext);
+		if(recognisedResourceUris == null) {
+			/* Notify the user that no solutions were found and then return*/
+			this.setResults("No solutions found");
+			this.showResults();
+			return;
+		}
+		this.findSolutions(recognisedResourceUris, solveContext);
 	}
 	
 	/**
-	 * findSolutions
+	 * findSolutions - finds solutions to the clue most recently passed to solve, on the calling thread
 	 * @override framework.SemanticSolver.findSolutions
 	 */
 	@Override
 	public void findSolutions(ArrayList<String> recognisedResourceUris) {
-			final long NANOSECONDS_IN_ONE_SECOND = 1000000000;
-			long startTime = System.nanoTime();
+		SolveContext solveContext;
+		synchronized(this) {
+			solveContext = this.getSolveContext();
+		}
+		try {
+			this.findSolutions(recognisedResourceUris, solveContext == null ? new SolveContext() : solveContext);
+		}
+		catch(CancellationException e) {
+			log.debug("Solving of the clue " + this.getClue().getSourceClue() + " was cancelled");
+		}
+	}
+	
+	/**
+	 * findSolutions - finds solutions to the clue most recently passed to solve, on the calling thread, and displays them
+	 * @param recognisedResourceUris - the list of recognised entities in the text of the clue to be solved
+	 * @param solveContext - the context of the solving of the clue
+	 * @throws CancellationException - if the clue is superseded before it is solved
+	 */
+	private void findSolutions(ArrayList<String> recognisedResourceUris, SolveContext solveContext) throws CancellationException {
+		final long NANOSECONDS_IN_ONE_SECOND = 1000000000;
+		ClueSolvingResult result;
+		try {
+			result = this.getPipeline().findSolutions(this.getClue(), recognisedResourceUris, this.getProgressListener(),
+					solveContext);
+		}
+		catch(InterruptedException e) {
+			log.debug("Interrupted while solving clue " + this.getClue().getSourceClue());
+			Thread.currentThread().interrupt();
+			return;
+		}
+		if(!result.isSolved()) {
+			/* Notify the user that no solutions were found and then return*/
+			this.setResults(result.getMessage() + ": \"" + this.getClue().getSourceClue() + "\" " +
+					this.getClue().getSolutionStructureAsString());
+			this.showResults();
+			return;
+		}
 		
-			/* Update the progress bar to reflect the fact that Entity Recognition phase is over */
-	     	SwingUtilities.invokeLater(new Runnable() {
-	    		@Override
-	             	public void run() {
-	    			String clueQueryInProgressMessage = "Searching for solutions on DBpedia";
-	    			getUserInterface().getDisplayPanel().getProgressBar().setValue(0);
-	    			getUserInterface().getDisplayPanel().getProgressBar().setString(clueQueryInProgressMessage);
-	    			getUserInterface().getDisplayPanel().getProgressBar().setStringPainted(true);
-	             	}
-	    	});      
-                
-        	this.setClueQueryTask(new ClueQueryTask(this.getClue(), recognisedResourceUris));
-        
-        	Thread cqThread = new Thread(new Runnable() {
-                	public void run() {
-                    	getClueQueryTask().addPropertyChangeListener(getUserInterface());
-                    	getClueQueryTask().execute();
-                	}
-            	});
-        	cqThread.start();
-
-        	ArrayList<Solution> proposedSolutions = null;
-                 try {
-                	 proposedSolutions = this.getClueQueryTask().get(); // will block until CQTask is finished
-                 }
-                 catch (Exception e) {
-                	 try {
-                		 NoResourcesSelectedException castE = (NoResourcesSelectedException)e;
-                		 System.out.println("No entities were recognised in the clue " + this.getClue().getSourceClue());
-                		 log.debug(castE.getMessage());
-                	 }
-                	 catch(ClassCastException cce) {
-                		 log.debug(e.getMessage());
-                	 }
-                 }
-            this.setClueQueryTask(null); // allow ClueQueryTask to be garbage-collected
-        	this.setClueSolver(new ClueSolverImpl());
-        
-        	ArrayList<Solution> solutions = null;
-			try {
-				solutions = this.getClueSolver().getSolutions(this.getClue(), proposedSolutions);
-			} catch (NoSolutionsException e) {
-				/* Notify the user that no solutions were found and then return*/
-				this.setResults(e.getMessage());
-	        	SwingUtilities.invokeLater(new Runnable() {
-	        	@Override
-	                 	public void run() {
-	        				getUserInterface().getDisplayPanel().getProgressBar().setStringPainted(false);
-	        				
-	        				String exceptionMessage = getResults();
-	        				String solutionStructure = getClue().getSolutionStructureAsString();
-	        				setResults(exceptionMessage + ": \"" + getClue().getSourceClue() + "\" " + solutionStructure);
-	                 		
-	        				getUserInterface().updateResults(getResults());
-	                 		
-	                 		getUserInterface().getDisplayPanel().getSubmitClueButton().setEnabled(true);
-	                     	getUserInterface().getDisplayPanel().setCursor(Cursor.getPredefinedCursor(Cursor.DEFAULT_CURSOR));
-	                 		getUserInterface().showNewClueOptions();
-	                 	}
-	        	});
-	        	return;
-			}
-			/* Update the GUI on the EDT */
-        	SwingUtilities.invokeLater(new Runnable() {
-        	@Override
-                 	public void run() {
-                 		getUserInterface().getDisplayPanel().getProgressBar().setString("Calculating confidence levels for solutions");
-                 		getUserInterface().getDisplayPanel().getProgressBar().setStringPainted(true);
-                 	}
-        	});
-        	String resultsBuffer = "Solutions to the clue \"" + this.getClue().getSourceClue() + " " +
-        							this.getClue().getSolutionStructureAsString() + "\":\n";
-        	SolutionScorer solutionScorer = new SolutionScorerImpl();
-        	/* Score each solution */
-        	for(Solution solution: solutions) {
-             	solution.setScore(solutionScorer.score(solution));
-        	}
-        	/* Filter out any solutions that duplicate a solution with a higher confidence level, and sort in order of confidence */
-        	ArrayList<Solution> filteredSolutions = this.sortAndFilterSolutions(solutions);
-        	
-        	this.addSolutionsToKnowledgeBase(solutions); // pass solutions to Knowledge Base Manager, to add any new discoveries
-        	
-        	for(Solution solution : filteredSolutions)
-        		resultsBuffer += solution.getSolutionText() + " (confidence level: " + 
-        					solution.getConfidence() + "%)\n";
-        	solutions = null; // allow the garbage collector to remove solutions from memory immediately
-        	long endTime = System.nanoTime();
-			long durationInSecs = (endTime - startTime) / NANOSECONDS_IN_ONE_SECOND;
-			resultsBuffer += "Time taken to process this clue: " + durationInSecs + "s\n";
-        	
-        	this.setResults(resultsBuffer);
-        	
-        	/* Update the GUI on the EDT to show the scores */
-        	SwingUtilities.invokeLater(new Runnable() {
-        	@Override
-                 	public void run() {
-                 		getUserInterface().updateResults(getResults());
-                 		getUserInterface().showNewClueOptions();
-                 	}
-        	});
+		String resultsBuffer = "Solutions to the clue \"" + this.getClue().getSourceClue() + " " +
+								this.getClue().getSolutionStructureAsString() + "\":\n";
+		for(Solution solution : result.getSolutions())
+			resultsBuffer += solution.getSolutionText() + " (confidence level: " + 
+						solution.getConfidence() + "%)\n";
+		if(!result.isComplete())
+			resultsBuffer += "The search was stopped at its deadline; these are the best solutions found so far\n";
+		if(this.getSimilarClues() != null && !this.getSimilarClues().isEmpty())
+			resultsBuffer += this.describeSimilarClues(this.getSimilarClues());
+		double durationInSecs = result.getLatencyNanos() / (double)NANOSECONDS_IN_ONE_SECOND;
+		resultsBuffer += String.format("Time taken to process this clue: %.2fs\n", durationInSecs);
+		
+		this.setResults(resultsBuffer);
+		this.showResults();
 	}
 	
 	/**
@@ -279,6 +263,8 @@ public class SemanticSolverImpl implements SemanticSolver {
 	 */
 	@Override
 	public void persistKnowledgeBase() {
+		this.supersede(null); // abandon the clue being solved, if there is one
+		this.getExecutor().shutdown(); // accept no more clues
 		this.getKnowledgeBaseManager().persistKnowledgeBase();
 	}
 }
@@ -0,0 +1,34 @@
+package app;
+
+import java.util.ArrayList;
+
+import lombok.AccessLevel;
+import lombok.Getter;
+import lombok.Setter;
+
+/**
+ * @author Ben Griffiths
+ * SimilarClue
+ * A previously solved clue found by the ClueSimilarityIndex to be similar to a new clue, together with the solutions recorded for it
+ * in the knowledge base and an estimate of how similar the two clue texts are
+ */
+public class SimilarClue {
+	@Getter(AccessLevel.PUBLIC) @Setter(AccessLevel.PRIVATE) private String clueText;
+	@Getter(AccessLevel.PUBLIC) @Setter(AccessLevel.PRIVATE) private String solutionStructure;
+	@Getter(AccessLevel.PUBLIC) @Setter(AccessLevel.PRIVATE) private ArrayList<String> solutionTexts;
+	@Getter(AccessLevel.PUBLIC) @Setter(AccessLevel.PRIVATE) private double similarity; // estimated Jaccard similarity, 0 to 1
+
+	/**
+	 * Constructor
+	 * @param clueText - the text of the previously solved clue
+	 * @param solutionStructure - a String representing the structure of the solution of the clue
+	 * @param solutionTexts - the solutions recorded for the clue in the knowledge base
+	 * @param similarity - the estimated similarity of the previously solved clue to the new clue, between 0 and 1
+	 */
+	public SimilarClue(String clueText, String solutionStructure, ArrayList<String> solutionTexts, double similarity) {
+		this.setClueText(clueText);
+		this.setSolutionStructure(solutionStructure);
+		this.setSolutionTexts(solutionTexts);
+		this.setSimilarity(similarity);
+	}
+}
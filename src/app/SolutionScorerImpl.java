@@ -1,15 +1,11 @@
 package app;
 
 import java.util.ArrayList;
+import java.util.List;
 
 import org.apache.log4j.Logger;
 
-import com.hp.hpl.jena.query.Query;
-import com.hp.hpl.jena.query.QueryExecution;
-import com.hp.hpl.jena.query.QueryExecutionFactory;
-import com.hp.hpl.jena.query.QueryFactory;
 import com.hp.hpl.jena.query.QuerySolution;
-import com.hp.hpl.jena.query.ResultSet;
 import com.hp.hpl.jena.rdf.model.InfModel;
 import com.hp.hpl.jena.rdf.model.Literal;
 import com.hp.hpl.jena.rdf.model.RDFNode;
@@ -29,6 +25,7 @@ import lombok.Setter;
 
 import framework.Clue;
 import framework.Pop;
+import framework.QueryClass;
 import framework.Solution;
 import framework.SolutionScorer;
 
@@ -41,6 +38,22 @@ public class SolutionScorerImpl implements SolutionScorer {
 	private static Logger log = Logger.getLogger(SolutionScorerImpl.class);
 	@Getter(AccessLevel.PRIVATE) @Setter(AccessLevel.PRIVATE) private Clue clue;
 	@Getter(AccessLevel.PRIVATE) @Setter(AccessLevel.PRIVATE) private Solution solution;
+	@Getter(AccessLevel.PRIVATE) @Setter(AccessLevel.PRIVATE) private SolveContext solveContext;
+	
+	/**
+	 * Constructor - instantiates a SolutionScorerImpl whose queries cannot be cancelled
+	 */
+	public SolutionScorerImpl() {
+		this(new SolveContext());
+	}
+	
+	/**
+	 * Constructor - instantiates a SolutionScorerImpl that stops making queries as soon as the given SolveContext is cancelled
+	 * @param solveContext - the context of the solving of the clue whose solutions are to be scored
+	 */
+	public SolutionScorerImpl(SolveContext solveContext) {
+		this.setSolveContext(solveContext);
+	}
 	
 	/**
 	 * getSolutionTypes
@@ -201,8 +214,9 @@ public class SolutionScorerImpl implements SolutionScorer {
 		
 		double numberOfLinks = this.executeCountQuery(sparqlQuery);
 		
-		log.debug("Second count query for solutionResource " + solutionResourceUri + " - " + sparqlQuery + " - has result: " +
-				numberOfLinks);
+		if(log.isDebugEnabled())
+			log.debug("Second count query for solutionResource " + solutionResourceUri + " - " + sparqlQuery + " - has result: " +
+					numberOfLinks);
 		
 		double distance = (1.0 / (1.0 + numberOfLinks));
 		return distance;
@@ -226,23 +240,7 @@ public class SolutionScorerImpl implements SolutionScorer {
 							 	" {<" + secondResourceUri + "> ?predicate <" + firstResourceUri + ">." +
 							 	" }" +
 							 " }";
-		Query query = QueryFactory.create(sparqlQuery);
-		QueryExecution queryExecution = QueryExecutionFactory.sparqlService(Pop.ENDPOINT_URI, query);
-		
-		ResultSet resultSet = null;
-		try {
-			resultSet = queryExecution.execSelect();
-		}
-		catch (QueryExceptionHTTP e) {
-			log.debug("DBpedia failed to return a result for the scoring query: " + sparqlQuery);
-			return 0;
-		}
-        QuerySolution querySolution = resultSet.nextSolution();
-        Literal numberOfLinksAsLiteral = querySolution.getLiteral("?count");
-        double numberOfLinks = numberOfLinksAsLiteral.getDouble();
-
-		queryExecution.close();
-		return numberOfLinks;
+		return this.executeCountQuery(sparqlQuery);
 	}
 	
 	/**
@@ -252,22 +250,16 @@ public class SolutionScorerImpl implements SolutionScorer {
 	 * @return the result of the countQuery, as a value of type double
 	 */
 	private double executeCountQuery(String countQuery) {
-		Query query = QueryFactory.create(countQuery);
-		QueryExecution queryExecution = QueryExecutionFactory.sparqlService(Pop.ENDPOINT_URI, query);
-		ResultSet resultSet = null;
 		try {
-			resultSet = queryExecution.execSelect();
+			List<QuerySolution> querySolutions = SparqlQueryRunner.getInstance().select(QueryClass.SCORING,
+					countQuery, this.getSolveContext());
+	        Literal numberOfLinksAsLiteral = querySolutions.get(0).getLiteral("?count");
+	        return numberOfLinksAsLiteral.getDouble();
 		}
 		catch (QueryExceptionHTTP e) {
 			log.debug("DBpedia failed to return a result for the scoring query: " + countQuery);
 			return 0;
 		}
-        QuerySolution querySolution = resultSet.nextSolution();
-        Literal numberOfLinksAsLiteral = querySolution.getLiteral("?count");
-        double numberOfLinks = numberOfLinksAsLiteral.getDouble();
-        
-		queryExecution.close();
-		return numberOfLinks;
 	}
 	
 	/**
@@ -279,9 +271,11 @@ public class SolutionScorerImpl implements SolutionScorer {
 	 * inference model and [ii] the resources representing properties that link the solution's solutionResource member with its 
 	 * clueResource member in the associated inference model
 	 * @Override framework.SolutionScorer.score
+	 * @throws java.util.concurrent.CancellationException - if the SolveContext of the scorer is cancelled
 	 */
 	@Override
 	public double score(Solution solution) {
+		this.getSolveContext().checkCancelled();
 		this.setSolution(solution);
 		this.setClue(solution.getClue());
 		double distanceBetweenClueAndSolution = distance(solution.getSolutionResource(), solution.getClueResource());
@@ -293,9 +287,10 @@ public class SolutionScorerImpl implements SolutionScorer {
 		this.setSolution(null);
 		this.setClue(null);
 		
-		log.debug("Solution with text " + solution.getSolutionText() + " and solutionResource " +
-				solution.getSolutionResource().getURI() + " scores " + 
-				distanceBetweenClueAndSolution * distanceBetweenClueFragmentsAndSolution);
+		if(log.isDebugEnabled())
+			log.debug("Solution with text " + solution.getSolutionText() + " and solutionResource " +
+					solution.getSolutionResource().getURI() + " scores " + 
+					distanceBetweenClueAndSolution * distanceBetweenClueFragmentsAndSolution);
 		
 		return distanceBetweenClueAndSolution * distanceBetweenClueFragmentsAndSolution;
 	}
@@ -0,0 +1,299 @@
+package app;
+
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.http.client.methods.AbortableHttpRequest;
+import org.apache.log4j.Logger;
+
+import com.hp.hpl.jena.query.QueryExecution;
+
+import framework.CancellationHandle;
+
+/**
+ * @author Ben Griffiths
+ * SolveContext
+ * Carries the cancellation state of the solving of a single clue through each of its stages. The stages check the context between
+ * units of work and register each QueryExecution or HTTP request they open with it, so that cancelling the context, whether because
+ * the user has submitted a new clue or because a request has passed its deadline, stops any further queries being made and aborts
+ * those already open. A stage that finds its context cancelled throws java.util.concurrent.CancellationException. The context is
+ * the CancellationHandle through which the SparqlDataSource answering a query registers it. The context also carries the SolveTrace
+ * in which the stages record their spans, an identifier of the clue, unique within the process, by which the spans, and the events
+ * reported for the stages, can be tied to the clue, and the number of triples in the graphs fetched for the clue, against which the
+ * GraphAdmission charges its budget. A context may be given a deadline, which, unlike cancellation, asks the stages to stop taking
+ * on new work and to return the best solutions found so far: each stage checks the deadline between units of work, such as the
+ * resources it queries or the candidates it scores, and any unit already begun is finished.
+ */
+public class SolveContext implements CancellationHandle {
+	private static Logger log = Logger.getLogger(SolveContext.class);
+	private static final AtomicLong clueCount = new AtomicLong();
+	private final Set<QueryExecution> openQueryExecutions =
+			Collections.newSetFromMap(new ConcurrentHashMap<QueryExecution, Boolean>());
+	private final Set<AbortableHttpRequest> openRequests =
+			Collections.newSetFromMap(new ConcurrentHashMap<AbortableHttpRequest, Boolean>());
+	private final Set<SolveContext> children = Collections.newSetFromMap(new ConcurrentHashMap<SolveContext, Boolean>());
+	private volatile boolean cancelled;
+	private volatile SolveTrace trace = new SolveTrace(); // records nothing until a trace is begun
+	private final long clueId;
+	private final AtomicLong graphTriples = new AtomicLong();
+	private volatile boolean deadlineSet;
+	private volatile long deadlineNanos; // the value of System.nanoTime at the deadline, if there is one
+	private volatile boolean deadlineReached; // set once a stage has skipped work because the deadline has passed
+
+	/**
+	 * Constructor - instantiates a SolveContext for a new clue
+	 */
+	public SolveContext() {
+		this(clueCount.incrementAndGet());
+	}
+
+	/**
+	 * Constructor - instantiates a SolveContext for the clue with the given identifier
+	 */
+	private SolveContext(long clueId) {
+		this.clueId = clueId;
+	}
+
+	/**
+	 * cancel - marks the context as cancelled and aborts every QueryExecution registered with it. Has no effect if the context is
+	 * already cancelled
+	 */
+	public void cancel() {
+		if(this.cancelled)
+			return;
+		this.cancelled = true;
+		for(QueryExecution queryExecution : this.openQueryExecutions)
+			this.abort(queryExecution);
+		this.openQueryExecutions.clear();
+		for(AbortableHttpRequest request : this.openRequests)
+			this.abort(request);
+		this.openRequests.clear();
+		for(SolveContext child : this.children)
+			child.cancel();
+		this.children.clear();
+	}
+
+	/**
+	 * createChild - creates a context for a unit of work, such as one of several attempts at the same query, that may be cancelled
+	 * on its own without cancelling this context, but that is cancelled whenever this context is
+	 * @return the new child context, which should be removed with removeChild once its work is complete
+	 */
+	public SolveContext createChild() {
+		SolveContext child = new SolveContext(this.clueId);
+		child.trace = this.trace;
+		child.deadlineNanos = this.deadlineNanos;
+		child.deadlineSet = this.deadlineSet;
+		this.children.add(child);
+		if(this.cancelled) // checked after adding, so that a concurrent cancel cannot miss the child
+			child.cancel();
+		return child;
+	}
+
+	/**
+	 * removeChild - stops a child context being cancelled along with this context
+	 * @param child - a context returned by createChild
+	 */
+	public void removeChild(SolveContext child) {
+		this.children.remove(child);
+	}
+
+	/**
+	 * getClueId
+	 * @return the identifier of the clue being solved, which is shared by every child of the context
+	 */
+	public long getClueId() {
+		return this.clueId;
+	}
+
+	/**
+	 * setDeadline - sets the time after which the stages stop taking on new work and return the best solutions found so far
+	 * @param timeBudgetMillis - the time allowed from now, in milliseconds
+	 */
+	public void setDeadline(long timeBudgetMillis) {
+		this.deadlineNanos = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeBudgetMillis);
+		this.deadlineSet = true;
+	}
+
+	/**
+	 * hasDeadline
+	 * @return true if the context has been given a deadline
+	 */
+	public boolean hasDeadline() {
+		return this.deadlineSet;
+	}
+
+	/**
+	 * checkDeadline - called by a stage before it begins a unit of work that it may skip
+	 * @return true if the deadline has passed, in which case the work is to be skipped and the search is marked as incomplete
+	 */
+	public boolean checkDeadline() {
+		if(!this.deadlineSet || System.nanoTime() - this.deadlineNanos < 0)
+			return false;
+		this.deadlineReached = true;
+		return true;
+	}
+
+	/**
+	 * isDeadlineReached
+	 * @return true if any work has been skipped because the deadline had passed
+	 */
+	public boolean isDeadlineReached() {
+		return this.deadlineReached;
+	}
+
+	/**
+	 * getGraphTriples
+	 * @return the number of triples in the graphs fetched in this context and not yet released
+	 */
+	public long getGraphTriples() {
+		return this.graphTriples.get();
+	}
+
+	/**
+	 * addGraphTriples - records the triples of a graph fetched in this context
+	 * @param triples - the number of triples in the graph
+	 */
+	public void addGraphTriples(long triples) {
+		this.graphTriples.addAndGet(triples);
+	}
+
+	/**
+	 * takeGraphTriples - releases the triples of every graph fetched in this context
+	 * @return the number of triples released
+	 */
+	public long takeGraphTriples() {
+		return this.graphTriples.getAndSet(0);
+	}
+
+	/**
+	 * getTrace
+	 * @return the SolveTrace of the clue being solved, which records nothing unless tracing is enabled
+	 */
+	public SolveTrace getTrace() {
+		return this.trace;
+	}
+
+	/**
+	 * beginTrace - starts tracing the solving of a clue, unless a trace has already been begun in this context
+	 * @param clueText - the text of the clue
+	 * @return the SolveTrace of the clue
+	 */
+	public synchronized SolveTrace beginTrace(String clueText) {
+		if(!this.trace.isEnabled() && TraceWriter.getInstance() != null)
+			this.trace = new SolveTrace(this.clueId, clueText);
+		return this.trace;
+	}
+
+	/**
+	 * isCancelled
+	 * @return true if the context has been cancelled
+	 * @override framework.CancellationHandle.isCancelled
+	 */
+	@Override
+	public boolean isCancelled() {
+		return this.cancelled;
+	}
+
+	/**
+	 * checkCancelled - cancels the context if the calling thread has been interrupted
+	 * @throws CancellationException - if the context has been cancelled
+	 * @override framework.CancellationHandle.checkCancelled
+	 */
+	@Override
+	public void checkCancelled() throws CancellationException {
+		if(Thread.currentThread().isInterrupted())
+			this.cancel();
+		if(this.cancelled)
+			throw new CancellationException("The clue is no longer being solved");
+	}
+
+	/**
+	 * register - records a QueryExecution that is about to be executed, so that it is aborted if the context is cancelled
+	 * @param queryExecution - the QueryExecution to be registered
+	 * @return the queryExecution argument
+	 * @throws CancellationException - if the context has already been cancelled, in which case the queryExecution is closed
+	 * @override framework.CancellationHandle.register
+	 */
+	@Override
+	public QueryExecution register(QueryExecution queryExecution) throws CancellationException {
+		this.openQueryExecutions.add(queryExecution);
+		if(this.cancelled) { // checked after adding, so that a concurrent cancel cannot miss the query
+			this.release(queryExecution);
+			this.checkCancelled();
+		}
+		return queryExecution;
+	}
+
+	/**
+	 * release - closes a QueryExecution registered with the context once it has been fully consumed or has failed
+	 * @param queryExecution - the QueryExecution to be closed
+	 * @override framework.CancellationHandle.release
+	 */
+	@Override
+	public void release(QueryExecution queryExecution) {
+		this.openQueryExecutions.remove(queryExecution);
+		try {
+			queryExecution.close();
+		}
+		catch(RuntimeException e) {
+			log.debug("Failed to close query execution: " + e.getMessage());
+		}
+	}
+
+	/**
+	 * register - records an HTTP request that is about to be sent, so that it is aborted if the context is cancelled
+	 * @param request - the request to be registered
+	 * @return the request argument
+	 * @throws CancellationException - if the context has already been cancelled, in which case the request is aborted
+	 * @override framework.CancellationHandle.register
+	 */
+	@Override
+	public AbortableHttpRequest register(AbortableHttpRequest request) throws CancellationException {
+		this.openRequests.add(request);
+		if(this.cancelled) { // checked after adding, so that a concurrent cancel cannot miss the request
+			this.release(request);
+			this.abort(request);
+			this.checkCancelled();
+		}
+		return request;
+	}
+
+	/**
+	 * release - stops an HTTP request registered with the context being aborted if the context is cancelled, once its response has
+	 * been fully read or it has failed
+	 * @param request - the request to be released
+	 * @override framework.CancellationHandle.release
+	 */
+	@Override
+	public void release(AbortableHttpRequest request) {
+		this.openRequests.remove(request);
+	}
+
+	/**
+	 * abort - aborts an HTTP request, closing its connection to the endpoint
+	 */
+	private void abort(AbortableHttpRequest request) {
+		try {
+			request.abort();
+		}
+		catch(RuntimeException e) {
+			log.debug("Failed to abort HTTP request: " + e.getMessage());
+		}
+	}
+
+	/**
+	 * abort - aborts a QueryExecution, closing its connection to the endpoint
+	 */
+	private void abort(QueryExecution queryExecution) {
+		try {
+			queryExecution.abort();
+		}
+		catch(RuntimeException e) {
+			log.debug("Failed to abort query execution: " + e.getMessage());
+		}
+	}
+}
@@ -0,0 +1,218 @@
+package app;
+
+import java.nio.charset.Charset;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.Locale;
+
+import framework.QueryClass;
+
+
+/**
+ * @author Ben Griffiths
+ * SolveTrace
+ * A record of the solving of a single clue as a tree of timed spans: the clue, each fragment of it looked up, each resource around
+ * which a graph is constructed, each candidate solution scored, and each query made along the way, identified by a hash of its text
+ * so that it can be matched with the slow-query log. Spans are opened and closed in a nested fashion on the thread solving the clue,
+ * and a query is attached to whichever span is open when it is made. A finished trace is handed to the TraceWriter as a single
+ * line of JSON. A SolveTrace created while tracing is disabled records nothing, so that the stages of solving need never check
+ * whether tracing is enabled.
+ */
+public class SolveTrace {
+	private static final Charset CHARSET = Charset.forName("UTF-8");
+	private static final int HASH_LENGTH = 16; // hexadecimal digits of the SHA-1 hash of a query kept to identify it
+	private static final double NANOSECONDS_IN_ONE_MILLISECOND = 1000000.0;
+	private static final String CLUE_SPAN = "clue";
+	private static final String QUERY_SPAN = "query";
+	private final TraceWriter writer; // null if tracing is disabled
+	private final long traceId;
+	private final long startTime = System.nanoTime();
+	private final long startTimeMillis = System.currentTimeMillis();
+	private final ArrayList<Span> spans = new ArrayList<Span>();
+	private final Deque<Span> openSpans = new ArrayDeque<Span>();
+	private boolean finished;
+
+	/**
+	 * Span - a timed unit of the work of solving a clue
+	 */
+	private static class Span {
+		private final int id;
+		private final int parentId; // 0 for the root span
+		private final String kind;
+		private final String label;
+		private final long startNanos; // since the trace began
+		private long durationNanos;
+		private String outcome;
+		private String queryHash;
+		private long resultSize = -1;
+
+		private Span(int id, int parentId, String kind, String label, long startNanos) {
+			this.id = id;
+			this.parentId = parentId;
+			this.kind = kind;
+			this.label = label;
+			this.startNanos = startNanos;
+		}
+
+		/**
+		 * toJson
+		 * @return the span as a JSON object, with times in milliseconds
+		 */
+		private String toJson() {
+			StringBuilder output = new StringBuilder("{");
+			output.append(JsonFormatter.field("id", String.valueOf(this.id))).append(",");
+			output.append(JsonFormatter.field("parent", String.valueOf(this.parentId))).append(",");
+			output.append(JsonFormatter.field("kind", JsonFormatter.quote(this.kind))).append(",");
+			output.append(JsonFormatter.field("label", JsonFormatter.quote(this.label))).append(",");
+			output.append(JsonFormatter.field("startMs", millis(this.startNanos))).append(",");
+			output.append(JsonFormatter.field("ms", millis(this.durationNanos)));
+			if(this.queryHash != null)
+				output.append(",").append(JsonFormatter.field("hash", JsonFormatter.quote(this.queryHash)));
+			if(this.resultSize >= 0)
+				output.append(",").append(JsonFormatter.field("size", String.valueOf(this.resultSize)));
+			if(this.outcome != null)
+				output.append(",").append(JsonFormatter.field("outcome", JsonFormatter.quote(this.outcome)));
+			return output.append("}").toString();
+		}
+	}
+
+	/**
+	 * Constructor - instantiates a SolveTrace that records nothing
+	 */
+	public SolveTrace() {
+		this.writer = null;
+		this.traceId = 0;
+	}
+
+	/**
+	 * Constructor - instantiates a SolveTrace for the given clue, and opens its root span, if tracing is enabled
+	 * @param clueId - the identifier of the clue, as given by SolveContext.getClueId, which identifies the trace
+	 * @param clueText - the text of the clue being solved
+	 */
+	public SolveTrace(long clueId, String clueText) {
+		this.writer = TraceWriter.getInstance();
+		this.traceId = clueId;
+		this.startSpan(CLUE_SPAN, clueText);
+	}
+
+	/**
+	 * isEnabled
+	 * @return true if the trace is recording spans
+	 */
+	public boolean isEnabled() {
+		return this.writer != null;
+	}
+
+	/**
+	 * startSpan - opens a span nested within the span currently open
+	 * @param kind - the kind of span, such as "fragment", "resource" or "candidate"
+	 * @param label - a description of the work, such as the text of the fragment
+	 */
+	public synchronized void startSpan(String kind, String label) {
+		if(!this.isEnabled() || this.finished)
+			return;
+		Span parent = this.openSpans.peek();
+		Span span = new Span(this.spans.size() + 1, parent == null ? 0 : parent.id, kind, label, System.nanoTime() - this.startTime);
+		this.spans.add(span);
+		this.openSpans.push(span);
+	}
+
+	/**
+	 * endSpan - closes the span most recently opened
+	 * @param outcome - a summary of the result of the work, such as the number of resources recognised; may be null
+	 */
+	public synchronized void endSpan(String outcome) {
+		if(!this.isEnabled() || this.finished || this.openSpans.isEmpty())
+			return;
+		Span span = this.openSpans.pop();
+		span.durationNanos = System.nanoTime() - this.startTime - span.startNanos;
+		span.outcome = outcome;
+	}
+
+	/**
+	 * addQuery - records a query made within the span currently open
+	 * @param queryClass - the class of the query
+	 * @param sparqlQuery - the text of the query
+	 * @param durationNanos - the time taken to answer the query, including any wait for an identical query already in flight
+	 * @param resultSize - the number of solutions or triples returned, or -1 if the query failed
+	 */
+	public synchronized void addQuery(QueryClass queryClass, String sparqlQuery, long durationNanos, long resultSize) {
+		if(!this.isEnabled() || this.finished)
+			return;
+		Span parent = this.openSpans.peek();
+		Span span = new Span(this.spans.size() + 1, parent == null ? 0 : parent.id, QUERY_SPAN, queryClass.name(),
+				System.nanoTime() - this.startTime - durationNanos);
+		span.durationNanos = durationNanos;
+		span.queryHash = hashOf(sparqlQuery);
+		span.resultSize = resultSize;
+		if(resultSize < 0)
+			span.outcome = "failed";
+		this.spans.add(span);
+	}
+
+	/**
+	 * finish - closes every span still open and queues the trace to be written. Has no effect if the trace is already finished
+	 * @param outcome - a summary of the result of solving the clue
+	 */
+	public void finish(String outcome) {
+		String trace;
+		synchronized(this) {
+			if(!this.isEnabled() || this.finished)
+				return;
+			while(this.openSpans.size() > 1)
+				this.endSpan(null);
+			this.endSpan(outcome);
+			this.finished = true;
+			trace = this.toJson();
+		}
+		this.writer.write(trace);
+	}
+
+	/**
+	 * toJson
+	 * @return the trace as a single line of JSON
+	 */
+	private String toJson() {
+		StringBuilder output = new StringBuilder("{");
+		output.append(JsonFormatter.field("trace", String.valueOf(this.traceId))).append(",");
+		output.append(JsonFormatter.field("startedAt", String.valueOf(this.startTimeMillis))).append(",");
+		output.append(JsonFormatter.field("ms", millis(System.nanoTime() - this.startTime))).append(",");
+		output.append("\"spans\":[");
+		for(int i = 0; i < this.spans.size(); i++) {
+			if(i > 0)
+				output.append(",");
+			output.append(this.spans.get(i).toJson());
+		}
+		return output.append("]}").toString();
+	}
+
+	/**
+	 * millis
+	 * @return the given number of nanoseconds in milliseconds, to one decimal place
+	 */
+	private static String millis(long nanos) {
+		return String.format(Locale.ROOT, "%.1f", nanos / NANOSECONDS_IN_ONE_MILLISECOND);
+	}
+
+	/**
+	 * hashOf
+	 * @param sparqlQuery - the text of a query
+	 * @return the first HASH_LENGTH hexadecimal digits of the SHA-1 hash of the text, which identify the query in traces and in the
+	 * slow-query log
+	 */
+	public static String hashOf(String sparqlQuery) {
+		try {
+			byte[] digest = MessageDigest.getInstance("SHA-1").digest(sparqlQuery.getBytes(CHARSET));
+			StringBuilder hash = new StringBuilder();
+			for(int i = 0; i < HASH_LENGTH / 2; i++)
+				hash.append(String.format("%02x", digest[i]));
+			return hash.toString();
+		}
+		catch(NoSuchAlgorithmException e) {
+			throw new IllegalStateException(e); // every Java platform supports SHA-1
+		}
+	}
+}
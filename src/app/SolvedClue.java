@@ -13,8 +13,8 @@ import lombok.Setter;
  * and their solutions. A solved clue may contain more than one solutionText which solves it.
  */
 public class SolvedClue {
-	@Getter(AccessLevel.PRIVATE) @Setter(AccessLevel.PRIVATE) private String clueText;
-	@Getter(AccessLevel.PRIVATE) @Setter(AccessLevel.PRIVATE) private String solutionStructure;
+	@Getter(AccessLevel.PUBLIC) @Setter(AccessLevel.PRIVATE) private String clueText;
+	@Getter(AccessLevel.PUBLIC) @Setter(AccessLevel.PRIVATE) private String solutionStructure;
 	@Getter(AccessLevel.PUBLIC) @Setter(AccessLevel.PRIVATE) private ArrayList<String> solutionTexts;
 	@Getter(AccessLevel.PUBLIC) @Setter(AccessLevel.PRIVATE) private String clueResourceUri;
 	
@@ -0,0 +1,301 @@
+package app;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.management.Attribute;
+import javax.management.AttributeList;
+import javax.management.AttributeNotFoundException;
+import javax.management.DynamicMBean;
+import javax.management.JMException;
+import javax.management.MBeanAttributeInfo;
+import javax.management.MBeanException;
+import javax.management.MBeanInfo;
+import javax.management.ObjectName;
+import javax.management.ReflectionException;
+
+import org.apache.log4j.Logger;
+
+import framework.Stage;
+
+/**
+ * @author Ben Griffiths
+ * SolverMetrics
+ * A process-wide registry of measurements of the solver. The time taken by each stage of solving a clue is recorded in a histogram,
+ * from which the count, mean and maximum of every time recorded, and percentiles of the most recent, are reported; events such as
+ * the triples and bytes fetched from DBpedia are counted; and counts kept by other parts of the solver, such as the queries executed
+ * by the SparqlQueryRunner and the hits and misses of the entity recognition cache, are read through gauges registered by those
+ * parts. The measurements are published as the attributes of a JMX MBean named semanticSolver:type=SolverMetrics, unless the
+ * semanticSolver.metrics.jmx system property is false, and as text by dump. Implemented as a Singleton class.
+ * @implements javax.management.DynamicMBean
+ */
+public class SolverMetrics implements DynamicMBean {
+	private static Logger log = Logger.getLogger(SolverMetrics.class);
+	private static SolverMetrics instance;
+	private final String OBJECT_NAME = "semanticSolver:type=SolverMetrics";
+	private final int HISTOGRAM_CAPACITY = 1000; // recent times from which percentiles are estimated
+	private final int[] PERCENTILES = {50, 95, 99};
+	private final double NANOSECONDS_IN_ONE_MILLISECOND = 1000000.0;
+	private final Histogram[] histograms = new Histogram[Stage.values().length];
+	private final AtomicLong[] counts = new AtomicLong[Count.values().length];
+	private final Map<String, Gauge> gauges = new LinkedHashMap<String, Gauge>();
+
+	/**
+	 * The counted events
+	 */
+	public enum Count {
+		TRIPLES_FETCHED, // triples in the graphs returned by construct queries
+		ROWS_FETCHED, // solutions returned by select queries
+		BYTES_FETCHED, // bytes of results read from a remote endpoint, once decompressed
+		CANDIDATE_SOLUTIONS, // candidate solutions extracted from inference models
+		KNOWLEDGE_BASE_UPDATES // updates written to the knowledge base
+	}
+
+	/**
+	 * A measurement kept elsewhere, read whenever the metrics are reported
+	 */
+	public interface Gauge {
+		/**
+		 * getValue
+		 * @return the current value of the measurement
+		 */
+		public long getValue();
+	}
+
+	/**
+	 * Histogram - the times recorded for a stage
+	 */
+	private class Histogram {
+		private final LatencyWindow recentTimes = new LatencyWindow(HISTOGRAM_CAPACITY, 1);
+		private long count;
+		private long totalNanos;
+		private long maximumNanos;
+
+		/**
+		 * record - records the time taken by one occurrence of the stage
+		 */
+		private synchronized void record(long nanos) {
+			this.count++;
+			this.totalNanos += nanos;
+			this.maximumNanos = Math.max(this.maximumNanos, nanos);
+			this.recentTimes.record(nanos);
+		}
+
+		/**
+		 * report - adds the count of the times recorded, and their mean, percentiles and maximum in milliseconds, to the given map
+		 */
+		private synchronized void report(String name, Map<String, Object> values) {
+			values.put(name + "Count", this.count);
+			values.put(name + "MeanMillis", this.count == 0 ? 0.0 : this.totalNanos / NANOSECONDS_IN_ONE_MILLISECOND / this.count);
+			for(int percentile : PERCENTILES)
+				values.put(name + "P" + percentile + "Millis",
+						this.recentTimes.percentile(percentile) / NANOSECONDS_IN_ONE_MILLISECOND);
+			values.put(name + "MaxMillis", this.maximumNanos / NANOSECONDS_IN_ONE_MILLISECOND);
+		}
+	}
+
+	/**
+	 * Constructor - the only constructor is private
+	 */
+	private SolverMetrics() {
+		for(int i = 0; i < this.histograms.length; i++)
+			this.histograms[i] = new Histogram();
+		for(int i = 0; i < this.counts.length; i++)
+			this.counts[i] = new AtomicLong();
+	}
+
+	/**
+	 * getInstance - returns the unique instance of the SolverMetrics class, which is registered with the platform MBean server when
+	 * it is created
+	 * @return the unique instance of the SolverMetrics class
+	 */
+	public static synchronized SolverMetrics getInstance() {
+		if(instance == null) {
+			instance = new SolverMetrics();
+			if(SolverProperties.getBoolean(SolverProperties.METRICS_JMX, true))
+				instance.registerMBean();
+		}
+		return instance;
+	}
+
+	/**
+	 * registerMBean - publishes the metrics through JMX
+	 */
+	private void registerMBean() {
+		try {
+			ManagementFactory.getPlatformMBeanServer().registerMBean(this, new ObjectName(OBJECT_NAME));
+		}
+		catch(JMException e) {
+			log.debug("Failed to register " + OBJECT_NAME + ": " + e.getMessage());
+		}
+	}
+
+	/**
+	 * nameOf
+	 * @param value - a constant of an enum, such as a Stage or a Count
+	 * @return the name of the constant in camel case, e.g. entityRecognition for ENTITY_RECOGNITION, as used in the names of
+	 * measurements
+	 */
+	public static String nameOf(Enum<?> value) {
+		StringBuilder name = new StringBuilder();
+		for(String word : value.name().toLowerCase().split("_")) {
+			if(name.length() == 0 || word.isEmpty())
+				name.append(word);
+			else name.append(Character.toUpperCase(word.charAt(0))).append(word.substring(1));
+		}
+		return name.toString();
+	}
+
+	/**
+	 * record - records the time taken by one occurrence of a stage
+	 * @param stage - the stage
+	 * @param nanos - the time taken, in nanoseconds
+	 */
+	public void record(Stage stage, long nanos) {
+		this.histograms[stage.ordinal()].record(nanos);
+	}
+
+	/**
+	 * increment - adds to the count of an event
+	 * @param count - the event
+	 * @param amount - the number of occurrences of the event
+	 */
+	public void increment(Count count, long amount) {
+		this.counts[count.ordinal()].addAndGet(amount);
+	}
+
+	/**
+	 * registerGauge - adds a measurement kept elsewhere to those reported, replacing any gauge already registered with its name
+	 * @param name - the name under which the measurement is reported
+	 * @param gauge - the Gauge from which the measurement is read
+	 */
+	public void registerGauge(String name, Gauge gauge) {
+		synchronized(this.gauges) {
+			this.gauges.put(name, gauge);
+		}
+	}
+
+	/**
+	 * snapshot
+	 * @return the current values of the histograms and counts, in the order in which the stages and events are declared, but not
+	 * of the gauges
+	 */
+	public Map<String, Object> snapshot() {
+		Map<String, Object> values = new LinkedHashMap<String, Object>();
+		for(Stage stage : Stage.values())
+			this.histograms[stage.ordinal()].report(nameOf(stage), values);
+		for(Count count : Count.values())
+			values.put(nameOf(count), this.counts[count.ordinal()].get());
+		return values;
+	}
+
+	/**
+	 * readAll
+	 * @return the current values of the histograms, counts and gauges
+	 */
+	private Map<String, Object> readAll() {
+		Map<String, Object> values = this.snapshot();
+		List<Map.Entry<String, Gauge>> gaugeEntries;
+		synchronized(this.gauges) {
+			gaugeEntries = new ArrayList<Map.Entry<String, Gauge>>(this.gauges.entrySet());
+		}
+		for(Map.Entry<String, Gauge> gauge : gaugeEntries) {
+			try {
+				values.put(gauge.getKey(), gauge.getValue().getValue());
+			}
+			catch(RuntimeException e) {
+				log.debug("Failed to read the gauge " + gauge.getKey() + ": " + e);
+			}
+		}
+		return values;
+	}
+
+	/**
+	 * dump
+	 * @return every measurement, one to a line in the form "name value", with times in milliseconds
+	 */
+	public String dump() {
+		StringBuilder output = new StringBuilder();
+		for(Map.Entry<String, Object> value : this.readAll().entrySet()) {
+			output.append(value.getKey()).append(" ");
+			if(value.getValue() instanceof Double)
+				output.append(String.format(Locale.ROOT, "%.3f", (Double)value.getValue()));
+			else output.append(value.getValue());
+			output.append("\n");
+		}
+		return output.toString();
+	}
+
+	/**
+	 * getAttribute
+	 * @override javax.management.DynamicMBean.getAttribute
+	 */
+	@Override
+	public Object getAttribute(String attribute) throws AttributeNotFoundException, MBeanException, ReflectionException {
+		Object value = this.readAll().get(attribute);
+		if(value == null)
+			throw new AttributeNotFoundException(attribute);
+		return value;
+	}
+
+	/**
+	 * getAttributes
+	 * @override javax.management.DynamicMBean.getAttributes
+	 */
+	@Override
+	public AttributeList getAttributes(String[] attributes) {
+		Map<String, Object> values = this.readAll();
+		AttributeList attributeList = new AttributeList();
+		for(String attribute : attributes) {
+			if(values.containsKey(attribute))
+				attributeList.add(new Attribute(attribute, values.get(attribute)));
+		}
+		return attributeList;
+	}
+
+	/**
+	 * setAttribute - every attribute is read-only
+	 * @override javax.management.DynamicMBean.setAttribute
+	 */
+	@Override
+	public void setAttribute(Attribute attribute) throws AttributeNotFoundException {
+		throw new AttributeNotFoundException(attribute.getName() + " is read-only");
+	}
+
+	/**
+	 * setAttributes - every attribute is read-only, so none is set
+	 * @override javax.management.DynamicMBean.setAttributes
+	 */
+	@Override
+	public AttributeList setAttributes(AttributeList attributes) {
+		return new AttributeList();
+	}
+
+	/**
+	 * invoke - there are no operations
+	 * @override javax.management.DynamicMBean.invoke
+	 */
+	@Override
+	public Object invoke(String actionName, Object[] params, String[] signature) throws ReflectionException {
+		throw new ReflectionException(new NoSuchMethodException(actionName));
+	}
+
+	/**
+	 * getMBeanInfo
+	 * @override javax.management.DynamicMBean.getMBeanInfo
+	 */
+	@Override
+	public MBeanInfo getMBeanInfo() {
+		ArrayList<MBeanAttributeInfo> attributeInfo = new ArrayList<MBeanAttributeInfo>();
+		for(Map.Entry<String, Object> value : this.readAll().entrySet())
+			attributeInfo.add(new MBeanAttributeInfo(value.getKey(), value.getValue().getClass().getName(), value.getKey(), true,
+					false, false));
+		return new MBeanInfo(this.getClass().getName(), "Timings and counts of the stages of solving clues",
+				attributeInfo.toArray(new MBeanAttributeInfo[attributeInfo.size()]), null, null, null);
+	}
+}
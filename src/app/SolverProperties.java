@@ -0,0 +1,173 @@
+package app;
+
+import org.apache.log4j.Logger;
+
+/**
+ * @author Ben Griffiths
+ * SolverProperties
+ * Utility class providing static access to the optional settings of the solver. Each setting is read from a Java system property
+ * (e.g. -DsemanticSolver.kb.backend=tdb on the command line) and falls back to a default value if the property is absent or invalid
+ */
+public class SolverProperties {
+	private static Logger log = Logger.getLogger(SolverProperties.class);
+
+	/**
+	 * Names of the system properties recognised by the solver
+	 */
+	public static final String KB_BACKEND = "semanticSolver.kb.backend"; // "memory" (the default) or "tdb"
+	public static final String KB_TDB_LOCATION = "semanticSolver.kb.tdbLocation"; // directory holding the TDB knowledge base
+	public static final String KB_TDB_IMPORT = "semanticSolver.kb.tdbImport"; // populate an empty TDB store from crosswordKB.xml
+	public static final String KB_WRITE_QUEUE_CAPACITY = "semanticSolver.kb.writeQueueCapacity"; // queued updates before blocking
+	public static final String KB_WRITE_BATCH_SIZE = "semanticSolver.kb.writeBatchSize"; // updates per write transaction
+	public static final String KB_MINIMUM_SIMILARITY = "semanticSolver.kb.minimumSimilarity"; // for clues to count as similar
+	public static final String KB_SHORT_CIRCUIT = "semanticSolver.kb.shortCircuit"; // reuse solutions of a near-identical clue
+	public static final String ER_QUERY_BUDGET = "semanticSolver.er.queryBudget"; // entity recognition queries per clue
+	public static final String ER_CACHE_CAPACITY = "semanticSolver.er.cacheCapacity"; // fragments held in the entity cache
+	public static final String SOLVE_DEADLINE = "semanticSolver.solve.deadlineMillis"; // time budget of a clue; 0 for none
+	public static final String GRAPH_MAX_TRIPLES = "semanticSolver.graph.maxTriples"; // around one resource in full; 0 for no cap
+	public static final String GRAPH_CLUE_BUDGET = "semanticSolver.graph.clueBudget"; // triples fetched for the graphs of one clue
+	public static final String GRAPH_GLOBAL_BUDGET_BYTES = "semanticSolver.graph.globalBudgetBytes"; // heap held by every graph
+	public static final String GRAPH_BYTES_PER_TRIPLE = "semanticSolver.graph.bytesPerTriple"; // heap estimate, with inferences
+	public static final String SERVER_PORT = "semanticSolver.server.port"; // port on which the solving service listens
+	public static final String SERVER_WORKERS = "semanticSolver.server.workers"; // clues solved at once by the service
+	public static final String SERVER_QUEUE_CAPACITY = "semanticSolver.server.queueCapacity"; // requests waiting for a worker
+	public static final String SERVER_DEADLINE = "semanticSolver.server.deadlineMillis"; // longest time allowed for a request
+	public static final String ENDPOINT_INITIAL_CONCURRENCY = "semanticSolver.endpoint.initialConcurrency"; // queries in flight
+	public static final String ENDPOINT_MAX_CONCURRENCY = "semanticSolver.endpoint.maxConcurrency"; // ceiling of the adaptive limit
+	public static final String ENDPOINT_RATE = "semanticSolver.endpoint.ratePerSecond"; // queries sent per second, 0 for no cap
+	public static final String ENDPOINT_BURST = "semanticSolver.endpoint.burst"; // queries that may be sent at once after a lull
+	public static final String ENDPOINT_RETRY_ATTEMPTS = "semanticSolver.endpoint.retryAttempts"; // attempts at a failing query
+	public static final String ENDPOINT_HEDGING = "semanticSolver.endpoint.hedging"; // duplicate queries slower than usual
+	public static final String ENDPOINT_BREAKER_THRESHOLD = "semanticSolver.endpoint.breakerThreshold"; // failures before opening
+	public static final String ENDPOINT_BREAKER_OPEN_MILLIS = "semanticSolver.endpoint.breakerOpenMillis"; // before a probe query
+	public static final String ENDPOINT_FALLBACK_CAPACITY = "semanticSolver.endpoint.fallbackCapacity"; // results kept for fallback
+	public static final String HTTP_MAX_CONNECTIONS = "semanticSolver.http.maxConnections"; // pooled connections per endpoint
+	public static final String HTTP_CONNECT_TIMEOUT = "semanticSolver.http.connectTimeoutMillis";
+	public static final String HTTP_ENTITY_RECOGNITION_TIMEOUT = "semanticSolver.http.entityRecognitionTimeoutMillis"; // read timeouts
+	public static final String HTTP_NEIGHBOURHOOD_TIMEOUT = "semanticSolver.http.neighbourhoodTimeoutMillis";
+	public static final String HTTP_SCORING_TIMEOUT = "semanticSolver.http.scoringTimeoutMillis";
+	public static final String DATA_SOURCE = "semanticSolver.dataSource"; // "remote" (the default), "tdb", "memory" or "replay"
+	public static final String DATA_SOURCE_LOCATION = "semanticSolver.dataSource.location"; // endpoint URI, directory, files or archive
+	public static final String RECORD_ARCHIVE = "semanticSolver.record.archive"; // file in which every query answered is recorded
+	public static final String REPLAY_LATENCY = "semanticSolver.replay.latency"; // "none" (the default), "recorded" or "lognormal"
+	public static final String REPLAY_LATENCY_SCALE = "semanticSolver.replay.latencyScale"; // multiplies recorded latency
+	public static final String REPLAY_LATENCY_MEDIAN_MILLIS = "semanticSolver.replay.latencyMedianMillis"; // of lognormal latency
+	public static final String REPLAY_LATENCY_SIGMA = "semanticSolver.replay.latencySigma"; // spread of lognormal latency
+	public static final String REPLAY_SEED = "semanticSolver.replay.seed"; // varies the lognormal latency of each query
+	public static final String TRACE_FILE = "semanticSolver.trace.file"; // file to which a trace of each clue solved is appended
+	public static final String SLOW_QUERY_MILLIS = "semanticSolver.trace.slowQueryMillis"; // slower queries are logged; 0 for none
+	public static final String METRICS_JMX = "semanticSolver.metrics.jmx"; // publish SolverMetrics as an MBean; true by default
+	public static final String EVENT_RECORDER = "semanticSolver.events.recorder"; // StageEventRecorder class; empty for none
+
+	/**
+	 * Values of the KB_BACKEND property
+	 */
+	public static final String IN_MEMORY_BACKEND = "memory";
+	public static final String TDB_BACKEND = "tdb";
+
+	/**
+	 * Values of the DATA_SOURCE property
+	 */
+	public static final String REMOTE_DATA_SOURCE = "remote";
+	public static final String TDB_DATA_SOURCE = "tdb";
+	public static final String IN_MEMORY_DATA_SOURCE = "memory";
+	public static final String REPLAY_DATA_SOURCE = "replay";
+
+	/**
+	 * Values of the REPLAY_LATENCY property
+	 */
+	public static final String NO_REPLAY_LATENCY = "none";
+	public static final String RECORDED_REPLAY_LATENCY = "recorded";
+	public static final String LOG_NORMAL_REPLAY_LATENCY = "lognormal";
+
+	/**
+	 * The only constructor is private; the SolverProperties class is not designed to be instantiated
+	 */
+	private SolverProperties() {
+
+	}
+
+	/**
+	 * getString
+	 * @param name - the name of the system property
+	 * @param defaultValue - the value to be returned if the property is not set
+	 * @return the value of the named system property, or defaultValue if it is not set
+	 */
+	public static String getString(String name, String defaultValue) {
+		String value = System.getProperty(name);
+		if(value == null || value.trim().isEmpty())
+			return defaultValue;
+		return value.trim();
+	}
+
+	/**
+	 * getInt
+	 * @param name - the name of the system property
+	 * @param defaultValue - the value to be returned if the property is not set, or is not a valid integer
+	 * @return the value of the named system property as an int, or defaultValue
+	 */
+	public static int getInt(String name, int defaultValue) {
+		String value = getString(name, null);
+		if(value == null)
+			return defaultValue;
+		try {
+			return Integer.parseInt(value);
+		}
+		catch(NumberFormatException e) {
+			log.debug("Ignoring invalid value " + value + " for " + name);
+			return defaultValue;
+		}
+	}
+
+	/**
+	 * getLong
+	 * @param name - the name of the system property
+	 * @param defaultValue - the value to be returned if the property is not set, or is not a valid long
+	 * @return the value of the named system property as a long, or defaultValue
+	 */
+	public static long getLong(String name, long defaultValue) {
+		String value = getString(name, null);
+		if(value == null)
+			return defaultValue;
+		try {
+			return Long.parseLong(value);
+		}
+		catch(NumberFormatException e) {
+			log.debug("Ignoring invalid value " + value + " for " + name);
+			return defaultValue;
+		}
+	}
+
+	/**
+	 * getDouble
+	 * @param name - the name of the system property
+	 * @param defaultValue - the value to be returned if the property is not set, or is not a valid double
+	 * @return the value of the named system property as a double, or defaultValue
+	 */
+	public static double getDouble(String name, double defaultValue) {
+		String value = getString(name, null);
+		if(value == null)
+			return defaultValue;
+		try {
+			return Double.parseDouble(value);
+		}
+		catch(NumberFormatException e) {
+			log.debug("Ignoring invalid value " + value + " for " + name);
+			return defaultValue;
+		}
+	}
+
+	/**
+	 * getBoolean
+	 * @param name - the name of the system property
+	 * @param defaultValue - the value to be returned if the property is not set
+	 * @return true if the named system property is set to "true" (ignoring case), false if it is set to anything else, or
+	 * defaultValue if it is not set
+	 */
+	public static boolean getBoolean(String name, boolean defaultValue) {
+		String value = getString(name, null);
+		if(value == null)
+			return defaultValue;
+		return Boolean.parseBoolean(value);
+	}
+}
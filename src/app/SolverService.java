@@ -0,0 +1,458 @@
+package app;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.Charset;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import lombok.AccessLevel;
+import lombok.Getter;
+import lombok.Setter;
+
+import org.apache.jena.atlas.json.JSON;
+import org.apache.jena.atlas.json.JsonObject;
+import org.apache.jena.atlas.json.JsonValue;
+import org.apache.log4j.Logger;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import exception.InvalidClueException;
+
+import framework.Clue;
+
+/**
+ * @author Ben Griffiths
+ * SolverService
+ * An embedded HTTP server through which other programs may solve clues, sharing a single ClueSolvingPipeline, and therefore the
+ * process-wide caches, the knowledge base and the bound reasoner, between all requests. Three endpoints are provided:
+ * POST /solve - solves the clue in the JSON request body, e.g. {"clue": "Member of the Beatles", "structure": [4, 6]}, optionally
+ * with a "deadlineMillis" shorter than the service's own deadline, and with "anytime": true to be answered, shortly before the
+ * deadline, with the best solutions found so far rather than with an error
+ * GET /health - reports whether the service is accepting requests
+ * GET /metrics - reports counts of requests, the state of the request queue, latency, cache and endpoint statistics, and the
+ * timings of each stage of solving recorded by the SolverMetrics; with ?format=text, reports every SolverMetrics measurement as text
+ * At most a fixed number of clues are solved at once; further requests wait in a bounded queue, and are refused with 503 Service
+ * Unavailable once the queue is full. A request that has not been answered by its deadline is answered with 504 Gateway Timeout,
+ * and the solving of its clue is cancelled: dropped if it is still queued, and its open queries aborted if it is being solved.
+ * Request handlers never wait for a clue to be solved: the response is written by whichever of the solving task and the deadline
+ * timer finishes first.
+ */
+public class SolverService {
+	private static Logger log = Logger.getLogger(SolverService.class);
+	private static final Charset CHARSET = Charset.forName("UTF-8");
+	private final int HANDLER_THREADS = 2; // threads reading requests and writing responses
+	private final int RETRY_AFTER_SECONDS = 1; // suggested to clients refused because the queue is full
+	private final int STATUS_OK = 200;
+	private final int STATUS_BAD_REQUEST = 400;
+	private final int STATUS_METHOD_NOT_ALLOWED = 405;
+	private final int STATUS_INTERNAL_SERVER_ERROR = 500;
+	private final int STATUS_SERVICE_UNAVAILABLE = 503;
+	private final int STATUS_GATEWAY_TIMEOUT = 504;
+	private final double NANOSECONDS_IN_ONE_MILLISECOND = 1000000.0;
+	private final String TEXT_FORMAT_PARAMETER = "format=text";
+	private final long ANYTIME_MARGIN_MILLIS = 1000; // left before the deadline of an anytime request, for work already begun
+	@Getter(AccessLevel.PRIVATE) @Setter(AccessLevel.PRIVATE) private HttpServer server;
+	@Getter(AccessLevel.PRIVATE) @Setter(AccessLevel.PRIVATE) private ExecutorService handlerPool;
+	@Getter(AccessLevel.PRIVATE) @Setter(AccessLevel.PRIVATE) private ThreadPoolExecutor solverPool;
+	@Getter(AccessLevel.PRIVATE) @Setter(AccessLevel.PRIVATE) private ScheduledExecutorService deadlineTimer;
+	@Getter(AccessLevel.PRIVATE) @Setter(AccessLevel.PRIVATE) private ClueSolvingPipeline pipeline;
+	@Getter(AccessLevel.PRIVATE) @Setter(AccessLevel.PRIVATE) private long deadlineMillis;
+	@Getter(AccessLevel.PRIVATE) @Setter(AccessLevel.PRIVATE) private long startTime;
+	@Getter(AccessLevel.PRIVATE) @Setter(AccessLevel.PRIVATE) private volatile boolean stopping;
+	private final AtomicLong requests = new AtomicLong();
+	private final AtomicLong solved = new AtomicLong(); // requests answered with solutions
+	private final AtomicLong unsolved = new AtomicLong(); // requests answered without solutions
+	private final AtomicLong rejected = new AtomicLong();
+	private final AtomicLong timedOut = new AtomicLong();
+	private final AtomicLong failed = new AtomicLong();
+	private final AtomicLong totalLatencyNanos = new AtomicLong(); // of the requests answered by the solving task
+
+	/**
+	 * Constructor
+	 * @param port - the port on which to listen for requests
+	 * @param numberOfWorkers - the number of clues that may be solved at once
+	 * @param queueCapacity - the number of requests that may wait for a worker before further requests are refused
+	 * @param deadlineMillis - the longest time, in milliseconds, that a request may take before it is cancelled
+	 * @throws IOException - if the server cannot listen on the given port
+	 */
+	public SolverService(int port, int numberOfWorkers, int queueCapacity, long deadlineMillis) throws IOException {
+		this.setDeadlineMillis(deadlineMillis);
+		this.setSolverPool(new ThreadPoolExecutor(numberOfWorkers, numberOfWorkers, 0L, TimeUnit.MILLISECONDS,
+				new ArrayBlockingQueue<Runnable>(queueCapacity), this.createThreadFactory("solver-worker"),
+				new ThreadPoolExecutor.AbortPolicy()));
+		this.setPipeline(new ClueSolvingPipeline(this.getSolverPool()));
+		this.setHandlerPool(Executors.newFixedThreadPool(this.HANDLER_THREADS, this.createThreadFactory("solver-http")));
+		this.setDeadlineTimer(Executors.newSingleThreadScheduledExecutor(this.createThreadFactory("solver-deadline")));
+		this.setServer(HttpServer.create(new InetSocketAddress(port), 0));
+		this.getServer().setExecutor(this.getHandlerPool());
+
+		this.getServer().createContext("/solve", new HttpHandler() {
+			@Override
+			public void handle(HttpExchange exchange) throws IOException {
+				handleSolve(exchange);
+			}
+		});
+		this.getServer().createContext("/health", new HttpHandler() {
+			@Override
+			public void handle(HttpExchange exchange) throws IOException {
+				handleHealth(exchange);
+			}
+		});
+		this.getServer().createContext("/metrics", new HttpHandler() {
+			@Override
+			public void handle(HttpExchange exchange) throws IOException {
+				handleMetrics(exchange);
+			}
+		});
+	}
+
+	/**
+	 * createThreadFactory
+	 * @param name - the prefix of the names of the threads to be created
+	 * @return a ThreadFactory creating daemon threads with the given name prefix
+	 */
+	private ThreadFactory createThreadFactory(final String name) {
+		return new ThreadFactory() {
+			private final AtomicInteger threadCount = new AtomicInteger();
+
+			@Override
+			public Thread newThread(Runnable runnable) {
+				Thread thread = new Thread(runnable, name + "-" + this.threadCount.incrementAndGet());
+				thread.setDaemon(true);
+				return thread;
+			}
+		};
+	}
+
+	/**
+	 * start - loads the knowledge base and the reasoner, then begins accepting requests
+	 */
+	public void start() {
+		ModelLoader.getReasoner();
+		KnowledgeBaseManager.getInstance();
+		this.setStartTime(System.nanoTime());
+		this.getServer().start();
+		log.info("Solver service listening on port " + this.getServer().getAddress().getPort());
+	}
+
+	/**
+	 * stop - stops accepting requests, waits for those already accepted to be answered, and saves the knowledge base
+	 * @param gracePeriodSeconds - the longest time to wait for requests already accepted to be answered
+	 */
+	public void stop(int gracePeriodSeconds) {
+		this.setStopping(true);
+		this.getSolverPool().shutdown();
+		try {
+			this.getSolverPool().awaitTermination(gracePeriodSeconds, TimeUnit.SECONDS);
+		}
+		catch(InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		this.getServer().stop(gracePeriodSeconds > 0 ? 1 : 0);
+		this.getDeadlineTimer().shutdownNow();
+		this.getHandlerPool().shutdown();
+		KnowledgeBaseManager.getInstance().persistKnowledgeBase();
+	}
+
+	/**
+	 * parseClue
+	 * @param body - the body of a request to the /solve endpoint
+	 * @return the clue described by the request
+	 * @throws InvalidClueException - if the request does not describe a valid clue
+	 */
+	private Clue parseClue(JsonObject body) throws InvalidClueException {
+		JsonValue clueText = body.get("clue");
+		JsonValue structure = body.get("structure");
+		if(clueText == null || !clueText.isString())
+			throw new InvalidClueException("The request has no clue");
+		if(structure == null)
+			throw new InvalidClueException("The request has no solution structure");
+		int[] solutionStructure;
+		try {
+			if(structure.isArray()) {
+				solutionStructure = new int[structure.getAsArray().size()];
+				for(int i = 0; i < solutionStructure.length; i++)
+					solutionStructure[i] = structure.getAsArray().get(i).getAsNumber().value().intValue();
+			}
+			else if(structure.isString())
+				solutionStructure = ClueSolvingPipeline.parseSolutionStructure(structure.getAsString().value());
+			else solutionStructure = new int[] {structure.getAsNumber().value().intValue()};
+		}
+		catch(RuntimeException e) {
+			throw new InvalidClueException("Invalid solution structure " + structure);
+		}
+		return new ClueImpl(clueText.getAsString().value(), solutionStructure);
+	}
+
+	/**
+	 * readBody
+	 * @return the body of the request, as a String
+	 */
+	private String readBody(HttpExchange exchange) throws IOException {
+		InputStream input = exchange.getRequestBody();
+		ByteArrayOutputStream body = new ByteArrayOutputStream();
+		byte[] buffer = new byte[4096];
+		int bytesRead;
+		while((bytesRead = input.read(buffer)) != -1)
+			body.write(buffer, 0, bytesRead);
+		return new String(body.toByteArray(), CHARSET);
+	}
+
+	/**
+	 * respond - writes a JSON response and ends the exchange
+	 * @param exchange - the exchange to which to respond
+	 * @param status - the HTTP status code of the response
+	 * @param json - the body of the response
+	 */
+	private void respond(HttpExchange exchange, int status, String json) {
+		try {
+			byte[] body = (json + "\n").getBytes(CHARSET);
+			exchange.getResponseHeaders().set("Content-Type", "application/json; charset=UTF-8");
+			exchange.sendResponseHeaders(status, body.length);
+			OutputStream output = exchange.getResponseBody();
+			output.write(body);
+			output.close();
+		}
+		catch(IOException e) {
+			log.debug("Failed to respond to " + exchange.getRemoteAddress() + ": " + e.getMessage());
+		}
+		finally {
+			exchange.close();
+		}
+	}
+
+	/**
+	 * respondWithText - sends a response with status 200 OK and a plain text body, and completes the exchange
+	 */
+	private void respondWithText(HttpExchange exchange, String text) {
+		try {
+			byte[] body = text.getBytes(CHARSET);
+			exchange.getResponseHeaders().set("Content-Type", "text/plain; charset=UTF-8");
+			exchange.sendResponseHeaders(this.STATUS_OK, body.length);
+			OutputStream output = exchange.getResponseBody();
+			output.write(body);
+			output.close();
+		}
+		catch(IOException e) {
+			log.debug("Failed to respond to " + exchange.getRemoteAddress() + ": " + e.getMessage());
+		}
+		finally {
+			exchange.close();
+		}
+	}
+
+	/**
+	 * error
+	 * @return a JSON object holding the given error message
+	 */
+	private String error(String message) {
+		return "{" + JsonFormatter.field("error", JsonFormatter.quote(message)) + "}";
+	}
+
+	/**
+	 * formatResult
+	 * @return the result of solving a clue as a JSON object
+	 */
+	private String formatResult(ClueSolvingResult result) {
+		StringBuilder output = new StringBuilder("{");
+		output.append(JsonFormatter.field("clue", JsonFormatter.quote(result.getClue().getSourceClue()))).append(",");
+		output.append(JsonFormatter.field("structure",
+				JsonFormatter.quote(result.getClue().getSolutionStructureAsString()))).append(",");
+		output.append(JsonFormatter.field("solutions", JsonFormatter.solutions(result.getSolutions()))).append(",");
+		output.append(JsonFormatter.field("similarClues", JsonFormatter.similarClues(result.getSimilarClues()))).append(",");
+		output.append(JsonFormatter.field("latencyMs",
+				String.format(Locale.ROOT, "%.1f", result.getLatencyNanos() / this.NANOSECONDS_IN_ONE_MILLISECOND))).append(",");
+		output.append(JsonFormatter.field("complete", String.valueOf(result.isComplete()))).append(",");
+		output.append(JsonFormatter.field("message", JsonFormatter.quote(result.getMessage())));
+		return output.append("}").toString();
+	}
+
+	/**
+	 * handleSolve - parses a request to solve a clue and queues the clue to be solved, without waiting for it to be solved
+	 */
+	private void handleSolve(final HttpExchange exchange) throws IOException {
+		if(!exchange.getRequestMethod().equalsIgnoreCase("POST")) {
+			this.respond(exchange, this.STATUS_METHOD_NOT_ALLOWED, this.error("Use POST to solve a clue"));
+			return;
+		}
+		this.requests.incrementAndGet();
+		if(this.isStopping()) {
+			this.rejected.incrementAndGet();
+			this.respond(exchange, this.STATUS_SERVICE_UNAVAILABLE, this.error("The service is stopping"));
+			return;
+		}
+		final Clue clue;
+		long deadline = this.getDeadlineMillis();
+		boolean anytime = false;
+		try {
+			JsonObject body = JSON.parse(this.readBody(exchange));
+			clue = this.parseClue(body);
+			JsonValue requestedDeadline = body.get("deadlineMillis");
+			if(requestedDeadline != null && requestedDeadline.isNumber())
+				deadline = Math.max(1, Math.min(deadline, requestedDeadline.getAsNumber().value().longValue()));
+			JsonValue requestedAnytime = body.get("anytime");
+			anytime = requestedAnytime != null && requestedAnytime.isBoolean() && requestedAnytime.getAsBoolean().value();
+		}
+		catch(InvalidClueException e) {
+			this.failed.incrementAndGet();
+			this.respond(exchange, this.STATUS_BAD_REQUEST, this.error(e.getMessage()));
+			return;
+		}
+		catch(RuntimeException e) { // the body is not a JSON object
+			this.failed.incrementAndGet();
+			this.respond(exchange, this.STATUS_BAD_REQUEST, this.error("The request body is not a valid JSON object"));
+			return;
+		}
+
+		/* Whichever of the solving task and the deadline timer sets answered first writes the response */
+		final AtomicBoolean answered = new AtomicBoolean(false);
+		final ScheduledFuture<?>[] deadlineTimeout = new ScheduledFuture<?>[1];
+		final SolveContext solveContext = new SolveContext();
+		if(anytime) // stop taking on new work in time to answer with the best solutions found so far
+			solveContext.setDeadline(Math.max(deadline / 2, deadline - this.ANYTIME_MARGIN_MILLIS));
+		final FutureTask<ClueSolvingResult> solvingTask = new FutureTask<ClueSolvingResult>(new Callable<ClueSolvingResult>() {
+			@Override
+			public ClueSolvingResult call() throws Exception {
+				return getPipeline().solve(clue, null, solveContext);
+			}
+		}) {
+			@Override
+			protected void done() {
+				if(this.isCancelled() || !answered.compareAndSet(false, true))
+					return;
+				if(deadlineTimeout[0] != null)
+					deadlineTimeout[0].cancel(false);
+				try {
+					ClueSolvingResult result = this.get();
+					(result.isSolved() ? solved : unsolved).incrementAndGet();
+					totalLatencyNanos.addAndGet(result.getLatencyNanos());
+					respond(exchange, STATUS_OK, formatResult(result));
+				}
+				catch(InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+				catch(ExecutionException e) {
+					failed.incrementAndGet();
+					log.debug("Failed to solve " + clue.getSourceClue() + ": " + e.getCause());
+					respond(exchange, STATUS_INTERNAL_SERVER_ERROR, error(String.valueOf(e.getCause())));
+				}
+			}
+		};
+		try {
+			this.getSolverPool().execute(solvingTask);
+		}
+		catch(RejectedExecutionException e) {
+			this.rejected.incrementAndGet();
+			exchange.getResponseHeaders().set("Retry-After", String.valueOf(this.RETRY_AFTER_SECONDS));
+			this.respond(exchange, this.STATUS_SERVICE_UNAVAILABLE, this.error("Too many requests are waiting to be solved"));
+			return;
+		}
+		try {
+			deadlineTimeout[0] = this.getDeadlineTimer().schedule(new Runnable() {
+				@Override
+				public void run() {
+					if(!answered.compareAndSet(false, true))
+						return;
+					solveContext.cancel(); // abort the queries of the clue, so that it stops using DBpedia's capacity
+					solvingTask.cancel(true);
+					getSolverPool().remove(solvingTask); // if it is still waiting in the queue
+					timedOut.incrementAndGet();
+					respond(exchange, STATUS_GATEWAY_TIMEOUT, error("The clue was not solved before the deadline"));
+				}
+			}, deadline, TimeUnit.MILLISECONDS);
+		}
+		catch(RejectedExecutionException e) {
+			log.debug("Deadline not scheduled; the service is stopping");
+		}
+	}
+
+	/**
+	 * handleHealth - reports whether the service is accepting requests
+	 */
+	private void handleHealth(HttpExchange exchange) {
+		if(this.isStopping())
+			this.respond(exchange, this.STATUS_SERVICE_UNAVAILABLE,
+					"{" + JsonFormatter.field("status", JsonFormatter.quote("stopping")) + "}");
+		else this.respond(exchange, this.STATUS_OK, "{" + JsonFormatter.field("status", JsonFormatter.quote("ok")) + "}");
+	}
+
+	/**
+	 * handleMetrics - reports counts of requests, the state of the request queue, latency, cache and endpoint statistics, and the
+	 * measurements of the SolverMetrics
+	 */
+	private void handleMetrics(HttpExchange exchange) {
+		if(!exchange.getRequestMethod().equalsIgnoreCase("GET")) {
+			this.respond(exchange, this.STATUS_METHOD_NOT_ALLOWED, this.error("Use GET to read the metrics"));
+			return;
+		}
+		String parameters = exchange.getRequestURI().getQuery();
+		if(parameters != null && parameters.contains(this.TEXT_FORMAT_PARAMETER)) {
+			this.respondWithText(exchange, SolverMetrics.getInstance().dump());
+			return;
+		}
+		long answered = this.solved.get() + this.unsolved.get();
+		EntityRecognitionCache cache = EntityRecognitionCache.getInstance();
+		EndpointGovernor governor = EndpointGovernor.getInstance();
+		SparqlQueryRunner runner = SparqlQueryRunner.getInstance();
+		SparqlHttpTransport transport = SparqlHttpTransport.getInstance();
+		StringBuilder output = new StringBuilder("{");
+		output.append(JsonFormatter.field("uptimeSeconds",
+				String.valueOf((System.nanoTime() - this.getStartTime()) / 1000000000L))).append(",");
+		output.append(JsonFormatter.field("requests", String.valueOf(this.requests.get()))).append(",");
+		output.append(JsonFormatter.field("solved", String.valueOf(this.solved.get()))).append(",");
+		output.append(JsonFormatter.field("unsolved", String.valueOf(this.unsolved.get()))).append(",");
+		output.append(JsonFormatter.field("rejected", String.valueOf(this.rejected.get()))).append(",");
+		output.append(JsonFormatter.field("timedOut", String.valueOf(this.timedOut.get()))).append(",");
+		output.append(JsonFormatter.field("failed", String.valueOf(this.failed.get()))).append(",");
+		output.append(JsonFormatter.field("activeSolves", String.valueOf(this.getSolverPool().getActiveCount()))).append(",");
+		output.append(JsonFormatter.field("queuedSolves", String.valueOf(this.getSolverPool().getQueue().size()))).append(",");
+		output.append(JsonFormatter.field("meanLatencyMs", answered == 0 ? "null" :
+				String.format(Locale.ROOT, "%.1f", this.totalLatencyNanos.get() / this.NANOSECONDS_IN_ONE_MILLISECOND / answered))).append(",");
+		output.append(JsonFormatter.field("entityCacheSize", String.valueOf(cache.size()))).append(",");
+		output.append(JsonFormatter.field("entityCacheHits", String.valueOf(cache.getHits()))).append(",");
+		output.append(JsonFormatter.field("entityCacheMisses", String.valueOf(cache.getMisses()))).append(",");
+		output.append(JsonFormatter.field("endpointConcurrencyLimit", String.valueOf(governor.getLimit()))).append(",");
+		output.append(JsonFormatter.field("endpointQueriesInFlight", String.valueOf(governor.getInFlight()))).append(",");
+		output.append(JsonFormatter.field("endpointQueriesWaiting", String.valueOf(governor.getWaiting()))).append(",");
+		output.append(JsonFormatter.field("endpointOverloads", String.valueOf(governor.getOverloadCount()))).append(",");
+		output.append(JsonFormatter.field("endpointSlowQueries", String.valueOf(governor.getSlowCount()))).append(",");
+		output.append(JsonFormatter.field("dataSource", JsonFormatter.quote(runner.getDataSource().getDescription()))).append(",");
+		output.append(JsonFormatter.field("queriesExecuted", String.valueOf(runner.getExecutedCount()))).append(",");
+		output.append(JsonFormatter.field("queriesCoalesced", String.valueOf(runner.getCoalescedCount()))).append(",");
+		output.append(JsonFormatter.field("queriesRetried", String.valueOf(runner.getRetriedCount()))).append(",");
+		output.append(JsonFormatter.field("queriesHedged", String.valueOf(runner.getHedgedCount()))).append(",");
+		output.append(JsonFormatter.field("hedgesWon", String.valueOf(runner.getHedgeWonCount()))).append(",");
+		output.append(JsonFormatter.field("queriesFallenBack", String.valueOf(runner.getFallbackCount()))).append(",");
+		output.append(JsonFormatter.field("circuitBreaker", JsonFormatter.quote(runner.getCircuitBreaker().getState().name()))).append(",");
+		output.append(JsonFormatter.field("httpConnectionsLeased", String.valueOf(transport.getLeasedConnections()))).append(",");
+		output.append(JsonFormatter.field("httpConnectionsIdle", String.valueOf(transport.getIdleConnections()))).append(",");
+		output.append(JsonFormatter.field("httpRequestsPending", String.valueOf(transport.getPendingRequests())));
+		for(Map.Entry<String, Object> value : SolverMetrics.getInstance().snapshot().entrySet()) {
+			String formattedValue = (value.getValue() instanceof Double) ? String.format(Locale.ROOT, "%.3f", (Double)value.getValue()) :
+				String.valueOf(value.getValue());
+			output.append(",").append(JsonFormatter.field(value.getKey(), formattedValue));
+		}
+		this.respond(exchange, this.STATUS_OK, output.append("}").toString());
+	}
+}
@@ -0,0 +1,42 @@
+package app;
+
+import java.io.IOException;
+
+import org.apache.log4j.Level;
+import org.apache.log4j.Logger;
+import org.apache.log4j.PropertyConfigurator;
+
+/**
+ * @author Ben Griffiths
+ * SolverServiceRunner
+ * Contains a main method that configures the logging system and then starts the SolverService, which runs until the process is
+ * stopped. The port, number of workers, queue capacity and deadline of the service are read from the system properties named in
+ * SolverProperties
+ */
+public class SolverServiceRunner {
+	private static final int DEFAULT_PORT = 8080;
+	private static final int DEFAULT_NUMBER_OF_WORKERS = 4;
+	private static final int DEFAULT_QUEUE_CAPACITY = 32;
+	private static final long DEFAULT_DEADLINE_MILLIS = 30000;
+	private static final int SHUTDOWN_GRACE_PERIOD_SECONDS = 10;
+
+	public static void main(String[] args) throws IOException {
+		/* log4j logging configuration */
+		Logger.getRootLogger().setLevel(Level.INFO);
+		PropertyConfigurator.configure("log4j.properties");
+
+		final SolverService service = new SolverService(
+				SolverProperties.getInt(SolverProperties.SERVER_PORT, DEFAULT_PORT),
+				Math.max(1, SolverProperties.getInt(SolverProperties.SERVER_WORKERS, DEFAULT_NUMBER_OF_WORKERS)),
+				Math.max(1, SolverProperties.getInt(SolverProperties.SERVER_QUEUE_CAPACITY, DEFAULT_QUEUE_CAPACITY)),
+				Math.max(1, SolverProperties.getLong(SolverProperties.SERVER_DEADLINE, DEFAULT_DEADLINE_MILLIS)));
+		/* Answer the requests already accepted and save the knowledge base when the process is stopped */
+		Runtime.getRuntime().addShutdownHook(new Thread() {
+			@Override
+			public void run() {
+				service.stop(SHUTDOWN_GRACE_PERIOD_SECONDS);
+			}
+		});
+		service.start();
+	}
+}
@@ -0,0 +1,393 @@
+package app;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.URLEncoder;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.http.HeaderElement;
+import org.apache.http.HeaderElementIterator;
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpStatus;
+import org.apache.http.client.HttpClient;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.client.methods.HttpPost;
+import org.apache.http.client.methods.HttpRequestBase;
+import org.apache.http.client.params.ClientPNames;
+import org.apache.http.client.protocol.RequestAcceptEncoding;
+import org.apache.http.client.protocol.ResponseContentEncoding;
+import org.apache.http.conn.ConnectionKeepAliveStrategy;
+import org.apache.http.entity.ContentType;
+import org.apache.http.entity.StringEntity;
+import org.apache.http.impl.client.DefaultHttpClient;
+import org.apache.http.impl.conn.PoolingClientConnectionManager;
+import org.apache.http.message.BasicHeaderElementIterator;
+import org.apache.http.params.CoreConnectionPNames;
+import org.apache.http.params.HttpConnectionParams;
+import org.apache.http.pool.PoolStats;
+import org.apache.http.protocol.HTTP;
+import org.apache.http.protocol.HttpContext;
+import org.apache.http.util.EntityUtils;
+import org.apache.jena.riot.Lang;
+import org.apache.jena.riot.RDFDataMgr;
+import org.apache.jena.riot.RDFLanguages;
+import org.apache.log4j.Logger;
+
+import com.hp.hpl.jena.query.QuerySolution;
+import com.hp.hpl.jena.query.ResultSet;
+import com.hp.hpl.jena.query.ResultSetFactory;
+import com.hp.hpl.jena.query.ResultSetFormatter;
+import com.hp.hpl.jena.rdf.model.Model;
+import com.hp.hpl.jena.rdf.model.ModelFactory;
+import com.hp.hpl.jena.sparql.engine.http.QueryExceptionHTTP;
+
+import framework.CancellationHandle;
+import framework.QueryClass;
+
+
+/**
+ * @author Ben Griffiths
+ * SparqlHttpTransport
+ * Sends SPARQL queries to an endpoint over HTTP and reads their results. Unlike a QueryExecution created by
+ * QueryExecutionFactory.sparqlService, which opens a connection of its own with default settings for every query, the transport
+ * shares a pool of keep-alive connections among all queries, asks for compressed results in the compact JSON and Turtle formats,
+ * applies a read timeout suited to each class of query and caps the number of connections open to each endpoint. A query
+ * registered with a CancellationHandle is aborted by closing its connection, which stops it even while it is waiting for the
+ * endpoint to respond. Implemented as a Singleton class.
+ */
+public class SparqlHttpTransport {
+	private static Logger log = Logger.getLogger(SparqlHttpTransport.class);
+	private static SparqlHttpTransport instance;
+	private final int DEFAULT_MAX_CONNECTIONS = 20; // connections open to each endpoint at once, above the endpoint concurrency limit
+	private final int DEFAULT_CONNECT_TIMEOUT_MILLIS = 5000;
+	private final int DEFAULT_SCORING_TIMEOUT_MILLIS = 10000; // read timeouts, for the small results of select queries
+	private final int DEFAULT_ENTITY_RECOGNITION_TIMEOUT_MILLIS = 15000;
+	private final int DEFAULT_NEIGHBOURHOOD_TIMEOUT_MILLIS = 30000; // for the larger graphs built by construct queries
+	private final long DEFAULT_KEEP_ALIVE_MILLIS = 30000; // for endpoints that do not say how long they keep connections open
+	private final long IDLE_CHECK_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(5);
+	private final int URL_LIMIT = 2000; // longer queries are sent in the body of a POST request
+	private final String SELECT_ACCEPT = "application/sparql-results+json, application/sparql-results+xml;q=0.9";
+	private final String CONSTRUCT_ACCEPT = "text/turtle, application/n-triples;q=0.9, application/rdf+xml;q=0.8";
+	private final String FORM_CONTENT_TYPE = "application/x-www-form-urlencoded";
+	private final String ENCODING = "UTF-8";
+	private final PoolingClientConnectionManager connectionManager;
+	private final HttpClient httpClient;
+	private final int[] readTimeoutMillis = new int[QueryClass.values().length];
+	private volatile long lastIdleCheckNanos = System.nanoTime();
+
+	/**
+	 * CountingInputStream - adds the bytes read from the body of a response to the SolverMetrics
+	 */
+	private static class CountingInputStream extends FilterInputStream {
+		private CountingInputStream(InputStream in) {
+			super(in);
+		}
+
+		@Override
+		public int read() throws IOException {
+			int b = super.read();
+			if(b != -1)
+				SolverMetrics.getInstance().increment(SolverMetrics.Count.BYTES_FETCHED, 1);
+			return b;
+		}
+
+		@Override
+		public int read(byte[] buffer, int offset, int length) throws IOException {
+			int count = super.read(buffer, offset, length);
+			if(count > 0)
+				SolverMetrics.getInstance().increment(SolverMetrics.Count.BYTES_FETCHED, count);
+			return count;
+		}
+	}
+
+	/**
+	 * Constructor - the only constructor is private
+	 */
+	private SparqlHttpTransport() {
+		int maxConnections = Math.max(1, SolverProperties.getInt(SolverProperties.HTTP_MAX_CONNECTIONS, DEFAULT_MAX_CONNECTIONS));
+		int connectTimeoutMillis = SolverProperties.getInt(SolverProperties.HTTP_CONNECT_TIMEOUT, DEFAULT_CONNECT_TIMEOUT_MILLIS);
+		this.readTimeoutMillis[QueryClass.ENTITY_RECOGNITION.ordinal()] = SolverProperties.getInt(
+				SolverProperties.HTTP_ENTITY_RECOGNITION_TIMEOUT, DEFAULT_ENTITY_RECOGNITION_TIMEOUT_MILLIS);
+		this.readTimeoutMillis[QueryClass.NEIGHBOURHOOD.ordinal()] = SolverProperties.getInt(
+				SolverProperties.HTTP_NEIGHBOURHOOD_TIMEOUT, DEFAULT_NEIGHBOURHOOD_TIMEOUT_MILLIS);
+		this.readTimeoutMillis[QueryClass.SCORING.ordinal()] = SolverProperties.getInt(
+				SolverProperties.HTTP_SCORING_TIMEOUT, DEFAULT_SCORING_TIMEOUT_MILLIS);
+		this.readTimeoutMillis[QueryClass.DEGREE.ordinal()] = this.readTimeoutMillis[QueryClass.SCORING.ordinal()]; // also counts
+
+		this.connectionManager = new PoolingClientConnectionManager();
+		this.connectionManager.setDefaultMaxPerRoute(maxConnections);
+		this.connectionManager.setMaxTotal(maxConnections * 2); // leaves room for a second endpoint, should one be configured
+		DefaultHttpClient client = new DefaultHttpClient(this.connectionManager);
+		HttpConnectionParams.setConnectionTimeout(client.getParams(), connectTimeoutMillis);
+		HttpConnectionParams.setSoTimeout(client.getParams(), DEFAULT_NEIGHBOURHOOD_TIMEOUT_MILLIS);
+		HttpConnectionParams.setTcpNoDelay(client.getParams(), true);
+		client.getParams().setLongParameter(ClientPNames.CONN_MANAGER_TIMEOUT, connectTimeoutMillis); // waiting for a free connection
+		client.setKeepAliveStrategy(new ConnectionKeepAliveStrategy() {
+			@Override
+			public long getKeepAliveDuration(HttpResponse response, HttpContext context) {
+				HeaderElementIterator iterator = new BasicHeaderElementIterator(response.headerIterator(HTTP.CONN_KEEP_ALIVE));
+				while(iterator.hasNext()) {
+					HeaderElement element = iterator.nextElement();
+					if(element.getName().equalsIgnoreCase("timeout") && element.getValue() != null) {
+						try {
+							return Long.parseLong(element.getValue()) * 1000;
+						}
+						catch(NumberFormatException e) {
+							log.debug("Ignoring invalid keep-alive timeout " + element.getValue());
+						}
+					}
+				}
+				return DEFAULT_KEEP_ALIVE_MILLIS;
+			}
+		});
+		/* Ask for, and inflate, gzip and deflate encoded results. The interceptors are added to the client, rather than the client
+		 * being wrapped in a DecompressingHttpClient, which sends a copy of each request, so that aborting a request closes its
+		 * connection */
+		client.addRequestInterceptor(new RequestAcceptEncoding());
+		client.addResponseInterceptor(new ResponseContentEncoding());
+		this.httpClient = client;
+		SolverMetrics.getInstance().registerGauge("httpConnectionsLeased", new SolverMetrics.Gauge() {
+			@Override
+			public long getValue() {
+				return getLeasedConnections();
+			}
+		});
+		SolverMetrics.getInstance().registerGauge("httpConnectionsIdle", new SolverMetrics.Gauge() {
+			@Override
+			public long getValue() {
+				return getIdleConnections();
+			}
+		});
+		SolverMetrics.getInstance().registerGauge("httpRequestsPending", new SolverMetrics.Gauge() {
+			@Override
+			public long getValue() {
+				return getPendingRequests();
+			}
+		});
+	}
+
+	/**
+	 * getInstance - returns the unique instance of the SparqlHttpTransport class
+	 * @return the unique instance of the SparqlHttpTransport class
+	 */
+	public static synchronized SparqlHttpTransport getInstance() {
+		if(instance == null)
+			instance = new SparqlHttpTransport();
+		return instance;
+	}
+
+	/**
+	 * select - sends a select query to an endpoint and reads the whole of its result
+	 * @param endpointUri - the URI of the SPARQL endpoint
+	 * @param queryClass - the class of the query, which determines its read timeout
+	 * @param sparqlQuery - the text of the query
+	 * @param cancellation - the handle with which the query is registered while it is executed
+	 * @return an unmodifiable list of the solutions of the query
+	 * @throws QueryExceptionHTTP - if the endpoint fails to answer the query, or cannot be reached
+	 * @throws CancellationException - if the solving of the clue is cancelled
+	 */
+	public List<QuerySolution> select(String endpointUri, QueryClass queryClass, String sparqlQuery, CancellationHandle cancellation)
+			throws CancellationException {
+		HttpRequestBase request = this.createRequest(endpointUri, queryClass, sparqlQuery, SELECT_ACCEPT);
+		HttpEntity entity = this.execute(request, cancellation);
+		try {
+			InputStream in = new CountingInputStream(entity.getContent());
+			ResultSet resultSet = this.mediaTypeOf(entity).endsWith("+json") ? ResultSetFactory.fromJSON(in) :
+				ResultSetFactory.fromXML(in);
+			return Collections.unmodifiableList(ResultSetFormatter.toList(resultSet));
+		}
+		catch(IOException e) {
+			throw this.failure(e, cancellation);
+		}
+		catch(RuntimeException e) {
+			throw this.failure(e, cancellation); // the parsers wrap a failure to read the response in an exception of their own
+		}
+		finally {
+			this.finish(request, entity, cancellation);
+		}
+	}
+
+	/**
+	 * construct - sends a construct query to an endpoint and reads the whole of the constructed graph
+	 * @param endpointUri - the URI of the SPARQL endpoint
+	 * @param queryClass - the class of the query, which determines its read timeout
+	 * @param sparqlQuery - the text of the query
+	 * @param cancellation - the handle with which the query is registered while it is executed
+	 * @return an instance of com.hp.hpl.jena.rdf.model.Model holding the constructed graph
+	 * @throws QueryExceptionHTTP - if the endpoint fails to answer the query, or cannot be reached
+	 * @throws CancellationException - if the solving of the clue is cancelled
+	 */
+	public Model construct(String endpointUri, QueryClass queryClass, String sparqlQuery, CancellationHandle cancellation)
+			throws CancellationException {
+		HttpRequestBase request = this.createRequest(endpointUri, queryClass, sparqlQuery, CONSTRUCT_ACCEPT);
+		HttpEntity entity = this.execute(request, cancellation);
+		try {
+			Lang lang = RDFLanguages.contentTypeToLang(this.mediaTypeOf(entity));
+			Model model = ModelFactory.createDefaultModel();
+			RDFDataMgr.read(model, new CountingInputStream(entity.getContent()), lang == null ? Lang.RDFXML : lang);
+			return model;
+		}
+		catch(IOException e) {
+			throw this.failure(e, cancellation);
+		}
+		catch(RuntimeException e) {
+			throw this.failure(e, cancellation); // the parsers wrap a failure to read the response in an exception of their own
+		}
+		finally {
+			this.finish(request, entity, cancellation);
+		}
+	}
+
+	/**
+	 * getLeasedConnections
+	 * @return the number of pooled connections currently carrying a query
+	 */
+	public int getLeasedConnections() {
+		return this.connectionManager.getTotalStats().getLeased();
+	}
+
+	/**
+	 * getIdleConnections
+	 * @return the number of pooled connections currently kept alive for reuse
+	 */
+	public int getIdleConnections() {
+		return this.connectionManager.getTotalStats().getAvailable();
+	}
+
+	/**
+	 * getPendingRequests
+	 * @return the number of queries currently waiting for a pooled connection
+	 */
+	public int getPendingRequests() {
+		PoolStats stats = this.connectionManager.getTotalStats();
+		return stats.getPending();
+	}
+
+	/**
+	 * createRequest - creates a GET request for the query, or a POST request if the query is too long for a URL
+	 */
+	private HttpRequestBase createRequest(String endpointUri, QueryClass queryClass, String sparqlQuery, String accept) {
+		String encodedQuery;
+		try {
+			encodedQuery = "query=" + URLEncoder.encode(sparqlQuery, ENCODING);
+		}
+		catch(UnsupportedEncodingException e) {
+			throw new IllegalStateException(e); // every Java platform supports UTF-8
+		}
+		HttpRequestBase request;
+		if(endpointUri.length() + encodedQuery.length() < URL_LIMIT)
+			request = new HttpGet(endpointUri + (endpointUri.contains("?") ? "&" : "?") + encodedQuery);
+		else {
+			HttpPost post = new HttpPost(endpointUri);
+			post.setEntity(new StringEntity(encodedQuery, ContentType.create(FORM_CONTENT_TYPE, ENCODING)));
+			request = post;
+		}
+		request.setHeader("Accept", accept);
+		request.getParams().setIntParameter(CoreConnectionPNames.SO_TIMEOUT, this.readTimeoutMillis[queryClass.ordinal()]);
+		return request;
+	}
+
+	/**
+	 * execute - sends a request registered with the cancellation handle and checks the status of the response
+	 * @return the entity of a successful response, which must be passed to finish once it has been read
+	 */
+	private HttpEntity execute(HttpRequestBase request, CancellationHandle cancellation) throws CancellationException {
+		this.closeIdleConnections();
+		cancellation.register(request);
+		HttpResponse response;
+		try {
+			response = this.httpClient.execute(request);
+		}
+		catch(IOException e) {
+			cancellation.release(request);
+			throw this.failure(e, cancellation);
+		}
+		catch(RuntimeException e) {
+			cancellation.release(request);
+			throw e;
+		}
+		int statusCode = response.getStatusLine().getStatusCode();
+		if(statusCode != HttpStatus.SC_OK || response.getEntity() == null) {
+			this.finish(request, response.getEntity(), cancellation);
+			cancellation.checkCancelled();
+			throw new QueryExceptionHTTP(statusCode, response.getStatusLine().getReasonPhrase());
+		}
+		return response.getEntity();
+	}
+
+	/**
+	 * finish - releases the request from the cancellation handle and returns its connection to the pool. A connection is only kept
+	 * alive if the whole of the response has been read, so the remainder of a response is discarded unless the query has been aborted
+	 */
+	private void finish(HttpRequestBase request, HttpEntity entity, CancellationHandle cancellation) {
+		cancellation.release(request);
+		if(entity == null)
+			return;
+		try {
+			if(cancellation.isCancelled())
+				request.abort();
+			else EntityUtils.consume(entity);
+		}
+		catch(IOException e) {
+			log.debug("Failed to read the remainder of a response: " + e.getMessage());
+			request.abort();
+		}
+	}
+
+	/**
+	 * failure
+	 * @return a QueryExceptionHTTP reporting a failure to communicate with the endpoint
+	 * @throws CancellationException - if the failure was caused by the query being aborted
+	 */
+	private QueryExceptionHTTP failure(IOException e, CancellationHandle cancellation) throws CancellationException {
+		cancellation.checkCancelled();
+		return new QueryExceptionHTTP(e);
+	}
+
+	/**
+	 * failure
+	 * @return a QueryExceptionHTTP reporting a failure to communicate with the endpoint, if the given exception was caused by one,
+	 * and otherwise the exception itself
+	 * @throws CancellationException - if the failure was caused by the query being aborted
+	 */
+	private RuntimeException failure(RuntimeException e, CancellationHandle cancellation) throws CancellationException {
+		for(Throwable cause = e.getCause(); cause != null; cause = cause.getCause()) {
+			if(cause instanceof IOException)
+				return this.failure((IOException)cause, cancellation);
+		}
+		cancellation.checkCancelled();
+		return e;
+	}
+
+	/**
+	 * mediaTypeOf
+	 * @return the media type of the entity, without any parameters, in lower case
+	 */
+	private String mediaTypeOf(HttpEntity entity) {
+		if(entity.getContentType() == null)
+			return "";
+		String contentType = entity.getContentType().getValue();
+		int parametersStart = contentType.indexOf(';');
+		return (parametersStart < 0 ? contentType : contentType.substring(0, parametersStart)).trim().toLowerCase(Locale.ENGLISH);
+	}
+
+	/**
+	 * closeIdleConnections - closes pooled connections that have outlived their keep-alive duration, at most once every
+	 * IDLE_CHECK_INTERVAL_NANOS
+	 */
+	private void closeIdleConnections() {
+		long now = System.nanoTime();
+		if(now - this.lastIdleCheckNanos < IDLE_CHECK_INTERVAL_NANOS)
+			return;
+		this.lastIdleCheckNanos = now;
+		this.connectionManager.closeExpiredConnections();
+		this.connectionManager.closeIdleConnections(DEFAULT_KEEP_ALIVE_MILLIS, TimeUnit.MILLISECONDS);
+	}
+}
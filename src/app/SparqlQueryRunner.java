@@ -0,0 +1,721 @@
+package app;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.jena.riot.RDFDataMgr;
+import org.apache.log4j.Logger;
+
+import com.hp.hpl.jena.query.Dataset;
+import com.hp.hpl.jena.query.DatasetFactory;
+import com.hp.hpl.jena.query.QueryFactory;
+import com.hp.hpl.jena.query.QuerySolution;
+import com.hp.hpl.jena.rdf.model.Model;
+import com.hp.hpl.jena.rdf.model.ModelFactory;
+import com.hp.hpl.jena.shared.JenaException;
+import com.hp.hpl.jena.sparql.engine.http.QueryExceptionHTTP;
+import com.hp.hpl.jena.tdb.TDBFactory;
+
+import app.EndpointGovernor.Outcome;
+
+import framework.Pop;
+import framework.QueryClass;
+import framework.SparqlDataSource;
+
+/**
+ * @author Ben Griffiths
+ * SparqlQueryRunner
+ * The single point through which every SPARQL query made to DBpedia is executed. Queries are answered by a SparqlDataSource: by
+ * default the DBpedia endpoint, but optionally a local mirror of it or a copy of the data held in-process. Identical queries that
+ * are in flight at the same time, as happens when several clues are solved at once and share fragments, resources or pairs of
+ * resources, are coalesced: the first caller executes the query and every other caller waits for, and shares, its result. Results
+ * are therefore returned fully read, as an unmodifiable list of solutions for a select query, or as an in-memory Model for a
+ * construct query. Queries sent to a remote data source are paced by the EndpointGovernor, so that the endpoint is not overloaded.
+ * A query that the endpoint fails to answer because it is overloaded is retried, a query answered much more slowly than usual is
+ * duplicated, and while the endpoint keeps failing a CircuitBreaker fails queries at once, answering them with an earlier result
+ * where there is one. Implemented as a Singleton class.
+ */
+public class SparqlQueryRunner {
+	private static Logger log = Logger.getLogger(SparqlQueryRunner.class);
+	private static Logger slowQueryLog = Logger.getLogger("slowQueries"); // configured in log4j.properties to write a file of its own
+	private static SparqlQueryRunner instance;
+	private final long WAIT_POLL_MILLIS = 100; // how often a caller waiting for another's query checks whether it is cancelled
+	private final int STATUS_TOO_MANY_REQUESTS = 429;
+	private final int STATUS_INTERNAL_SERVER_ERROR = 500;
+	private final int STATUS_SERVICE_UNAVAILABLE = 503; // reported while the circuit breaker is open
+	private final int DEFAULT_RETRY_ATTEMPTS = 3; // attempts at a query that fails because the endpoint is overloaded
+	private final long BACKOFF_BASE_MILLIS = 200; // the longest wait before the first retry, doubling for each retry after it
+	private final long BACKOFF_CAP_MILLIS = 3000;
+	private final int HEDGE_PERCENTILE = 95; // a duplicate query is sent once the first has taken longer than this percentile
+	private final double HEDGE_BUDGET = 0.05; // the largest fraction of the queries executed that may be duplicates
+	private final int LATENCY_WINDOW_CAPACITY = 200;
+	private final int LATENCY_WINDOW_MINIMUM_SAMPLES = 20;
+	private final int DEFAULT_BREAKER_THRESHOLD = 5;
+	private final long DEFAULT_BREAKER_OPEN_MILLIS = 30000;
+	private final int DEFAULT_FALLBACK_CAPACITY = 2000;
+	private final long DEFAULT_SLOW_QUERY_MILLIS = 2000;
+	private final long slowQueryNanos; // queries taking at least this long are written to the slow-query log; 0 for none
+	private final int retryAttempts;
+	private final boolean hedging;
+	private final CircuitBreaker circuitBreaker;
+	private final LatencyWindow[] latencyWindows = new LatencyWindow[QueryClass.values().length];
+	private final Map<String, Object> fallbackResults; // the most recent results of select queries, in least recently used order
+	private final ExecutorService attemptExecutor;
+	private final SparqlDataSource dataSource;
+	private final ConcurrentHashMap<String, FutureTask<Object>> inFlightQueries = new ConcurrentHashMap<String, FutureTask<Object>>();
+	private final AtomicLong executedCount = new AtomicLong();
+	private final AtomicLong[] executedCounts = new AtomicLong[QueryClass.values().length]; // by class of query
+	private final AtomicLong coalescedCount = new AtomicLong();
+	private final AtomicLong retriedCount = new AtomicLong();
+	private final AtomicLong hedgedCount = new AtomicLong();
+	private final AtomicLong hedgeWonCount = new AtomicLong();
+	private final AtomicLong fallbackCount = new AtomicLong();
+
+	/**
+	 * Constructor - the only constructor is private
+	 */
+	private SparqlQueryRunner() {
+		this.dataSource = this.openDataSource();
+		log.debug("Answering queries from " + this.dataSource.getDescription());
+		this.retryAttempts = Math.max(1, SolverProperties.getInt(SolverProperties.ENDPOINT_RETRY_ATTEMPTS, DEFAULT_RETRY_ATTEMPTS));
+		this.hedging = SolverProperties.getBoolean(SolverProperties.ENDPOINT_HEDGING, true);
+		this.slowQueryNanos = TimeUnit.MILLISECONDS.toNanos(SolverProperties.getLong(SolverProperties.SLOW_QUERY_MILLIS,
+				DEFAULT_SLOW_QUERY_MILLIS));
+		this.circuitBreaker = new CircuitBreaker(
+				SolverProperties.getInt(SolverProperties.ENDPOINT_BREAKER_THRESHOLD, DEFAULT_BREAKER_THRESHOLD),
+				SolverProperties.getLong(SolverProperties.ENDPOINT_BREAKER_OPEN_MILLIS, DEFAULT_BREAKER_OPEN_MILLIS));
+		for(int i = 0; i < this.latencyWindows.length; i++) {
+			this.latencyWindows[i] = new LatencyWindow(LATENCY_WINDOW_CAPACITY, LATENCY_WINDOW_MINIMUM_SAMPLES);
+			this.executedCounts[i] = new AtomicLong();
+		}
+		final int fallbackCapacity = SolverProperties.getInt(SolverProperties.ENDPOINT_FALLBACK_CAPACITY, DEFAULT_FALLBACK_CAPACITY);
+		this.fallbackResults = Collections.synchronizedMap(new LinkedHashMap<String, Object>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String, Object> eldest) {
+				return this.size() > fallbackCapacity;
+			}
+		});
+		this.attemptExecutor = Executors.newCachedThreadPool(new ThreadFactory() {
+			private final AtomicInteger threadCount = new AtomicInteger();
+
+			@Override
+			public Thread newThread(Runnable runnable) {
+				Thread thread = new Thread(runnable, "sparql-query-" + this.threadCount.incrementAndGet());
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+		this.registerGauges();
+	}
+
+	/**
+	 * getInstance - returns the unique instance of the SparqlQueryRunner class
+	 * @return the unique instance of the SparqlQueryRunner class
+	 */
+	public static synchronized SparqlQueryRunner getInstance() {
+		if(instance == null)
+			instance = new SparqlQueryRunner();
+		return instance;
+	}
+
+	/**
+	 * select - executes a select query, sharing the execution with any identical query already in flight
+	 * @param queryClass - the class of the query
+	 * @param sparqlQuery - the text of the query
+	 * @param solveContext - the context of the solving of the clue for which the query is made
+	 * @return an unmodifiable list of the solutions of the query, which may be shared with other callers
+	 * @throws com.hp.hpl.jena.sparql.engine.http.QueryExceptionHTTP - if DBpedia fails to answer the query
+	 * @throws CancellationException - if the solveContext is cancelled
+	 */
+	@SuppressWarnings("unchecked")
+	public List<QuerySolution> select(QueryClass queryClass, String sparqlQuery, SolveContext solveContext)
+			throws CancellationException {
+		return (List<QuerySolution>)this.execute(queryClass, sparqlQuery, false, solveContext);
+	}
+
+	/**
+	 * construct - executes a construct query, sharing the execution with any identical query already in flight
+	 * @param queryClass - the class of the query
+	 * @param sparqlQuery - the text of the query
+	 * @param solveContext - the context of the solving of the clue for which the query is made
+	 * @return an instance of com.hp.hpl.jena.rdf.model.Model holding the constructed graph, belonging to the caller alone
+	 * @throws com.hp.hpl.jena.sparql.engine.http.QueryExceptionHTTP - if DBpedia fails to answer the query
+	 * @throws CancellationException - if the solveContext is cancelled
+	 */
+	public Model construct(QueryClass queryClass, String sparqlQuery, SolveContext solveContext) throws CancellationException {
+		return (Model)this.execute(queryClass, sparqlQuery, true, solveContext);
+	}
+
+	/**
+	 * getExecutedCount
+	 * @return the number of queries sent to DBpedia
+	 */
+	public long getExecutedCount() {
+		return this.executedCount.get();
+	}
+
+	/**
+	 * getExecutedCount
+	 * @param queryClass - a class of query
+	 * @return the number of queries of the given class sent to DBpedia
+	 */
+	public long getExecutedCount(QueryClass queryClass) {
+		return this.executedCounts[queryClass.ordinal()].get();
+	}
+
+	/**
+	 * getCoalescedCount
+	 * @return the number of queries answered by sharing the execution of an identical query already in flight
+	 */
+	public long getCoalescedCount() {
+		return this.coalescedCount.get();
+	}
+
+	/**
+	 * getDataSource
+	 * @return the data source from which queries are answered
+	 */
+	public SparqlDataSource getDataSource() {
+		return this.dataSource;
+	}
+
+	/**
+	 * getRetriedCount
+	 * @return the number of times a query has been retried after the endpoint failed to answer it
+	 */
+	public long getRetriedCount() {
+		return this.retriedCount.get();
+	}
+
+	/**
+	 * getHedgedCount
+	 * @return the number of duplicate queries sent because the first was slower than usual
+	 */
+	public long getHedgedCount() {
+		return this.hedgedCount.get();
+	}
+
+	/**
+	 * getHedgeWonCount
+	 * @return the number of duplicate queries answered before the query they duplicated
+	 */
+	public long getHedgeWonCount() {
+		return this.hedgeWonCount.get();
+	}
+
+	/**
+	 * getFallbackCount
+	 * @return the number of queries answered with an earlier result because the endpoint could not answer them
+	 */
+	public long getFallbackCount() {
+		return this.fallbackCount.get();
+	}
+
+	/**
+	 * getCircuitBreaker
+	 * @return the CircuitBreaker guarding the endpoint
+	 */
+	public CircuitBreaker getCircuitBreaker() {
+		return this.circuitBreaker;
+	}
+
+	/**
+	 * getLatencyPercentile
+	 * @param queryClass - a class of query
+	 * @param percentile - the percentile required, from 0 to 100
+	 * @return the recent latency in nanoseconds of queries of the given class at the given percentile, or 0 if too few have been
+	 * answered for an estimate
+	 */
+	public long getLatencyPercentile(QueryClass queryClass, int percentile) {
+		return this.latencyWindows[queryClass.ordinal()].percentile(percentile);
+	}
+
+	/**
+	 * execute - executes the query, recording it in the SolveTrace of the solveContext
+	 */
+	private Object execute(QueryClass queryClass, String sparqlQuery, boolean construct, SolveContext solveContext)
+			throws CancellationException {
+		SolveTrace trace = solveContext.getTrace();
+		if(!trace.isEnabled())
+			return this.executeShared(queryClass, sparqlQuery, construct, solveContext);
+		long startTime = System.nanoTime();
+		long resultSize = -1;
+		try {
+			Object result = this.executeShared(queryClass, sparqlQuery, construct, solveContext);
+			resultSize = sizeOf(result, construct);
+			return result;
+		}
+		finally {
+			trace.addQuery(queryClass, sparqlQuery, System.nanoTime() - startTime, resultSize);
+		}
+	}
+
+	/**
+	 * executeShared - executes the query on the calling thread if no identical query is in flight, and otherwise waits for the
+	 * result of the identical query. If the caller executing the identical query is cancelled, a waiting caller executes the query
+	 * itself
+	 */
+	private Object executeShared(final QueryClass queryClass, final String sparqlQuery, final boolean construct,
+			final SolveContext solveContext) throws CancellationException {
+		final String key = queryClass + " " + sparqlQuery;
+		while(true) {
+			solveContext.checkCancelled();
+			FutureTask<Object> execution = new FutureTask<Object>(new Callable<Object>() {
+				@Override
+				public Object call() throws Exception {
+					if(!dataSource.isRemote())
+						return executeLocally(queryClass, sparqlQuery, construct, solveContext);
+					return executeResiliently(key, queryClass, sparqlQuery, construct, solveContext);
+				}
+			});
+			FutureTask<Object> inFlightExecution = this.inFlightQueries.putIfAbsent(key, execution);
+			if(inFlightExecution == null) { // no identical query is in flight, so this caller executes it
+				try {
+					execution.run();
+				}
+				finally {
+					this.inFlightQueries.remove(key, execution);
+				}
+				return this.getResult(execution, false, solveContext);
+			}
+			this.coalescedCount.incrementAndGet();
+			try {
+				Object result = this.getResult(inFlightExecution, true, solveContext);
+				/* Each caller has its own copy of a constructed graph, which it is free to build an inference model upon */
+				return construct ? ModelFactory.createDefaultModel().add((Model)result) : result;
+			}
+			catch(CancellationException e) {
+				solveContext.checkCancelled(); // if this caller was not cancelled, the caller executing the query was
+				log.debug("Retrying a query abandoned by another caller");
+			}
+		}
+	}
+
+	/**
+	 * getResult - waits for an execution to finish and returns its result
+	 * @param execution - the execution of a query
+	 * @param poll - true if the execution belongs to another caller, in which case the solveContext is checked while waiting
+	 * @param solveContext - the context of the solving of the clue for which the caller needs the result
+	 * @return the result of the execution
+	 * @throws CancellationException - if the solveContext, or the context of the caller executing the query, is cancelled
+	 */
+	private Object getResult(FutureTask<Object> execution, boolean poll, SolveContext solveContext) throws CancellationException {
+		while(true) {
+			try {
+				if(!poll)
+					return execution.get();
+				return execution.get(this.WAIT_POLL_MILLIS, TimeUnit.MILLISECONDS);
+			}
+			catch(TimeoutException e) {
+				solveContext.checkCancelled();
+			}
+			catch(InterruptedException e) {
+				Thread.currentThread().interrupt();
+				solveContext.checkCancelled(); // cancels the context, as the thread has been interrupted
+			}
+			catch(ExecutionException e) {
+				if(e.getCause() instanceof RuntimeException)
+					throw (RuntimeException)e.getCause(); // including QueryExceptionHTTP and CancellationException
+				throw new RuntimeException(e.getCause());
+			}
+		}
+	}
+
+	/**
+	 * executeResiliently - executes a query, retrying it with a randomised, exponentially increasing backoff if the endpoint is
+	 * overloaded, and answering it with the most recent result of the same query, if there is one, once the retries are exhausted
+	 * or while the circuit breaker is open. Every query made by the solver is a read, so it is always safe to repeat
+	 */
+	private Object executeResiliently(String key, QueryClass queryClass, String sparqlQuery, boolean construct,
+			SolveContext solveContext) {
+		for(int attempt = 1; ; attempt++) {
+			if(!this.circuitBreaker.allowRequest())
+				return this.fallBack(key, new QueryExceptionHTTP(this.STATUS_SERVICE_UNAVAILABLE,
+						"The circuit breaker for " + this.dataSource.getDescription() + " is open"));
+			try {
+				Object result = this.executeHedged(queryClass, sparqlQuery, construct, solveContext);
+				this.circuitBreaker.recordSuccess();
+				if(!construct) // constructed graphs are too large to keep
+					this.fallbackResults.put(key, result);
+				return result;
+			}
+			catch(QueryExceptionHTTP e) {
+				if(!this.isOverload(e)) {
+					this.circuitBreaker.recordSuccess(); // the endpoint answered, albeit with an error
+					throw e;
+				}
+				this.circuitBreaker.recordFailure();
+				if(attempt >= this.retryAttempts)
+					return this.fallBack(key, e);
+				log.debug("Retrying " + queryClass + " query after failed attempt " + attempt + ": " + e.getMessage());
+				this.retriedCount.incrementAndGet();
+				this.backOff(attempt, solveContext);
+			}
+		}
+	}
+
+	/**
+	 * fallBack - answers a query that the endpoint cannot answer with its most recent result
+	 * @throws QueryExceptionHTTP - the given exception, if there is no earlier result
+	 */
+	private Object fallBack(String key, QueryExceptionHTTP e) throws QueryExceptionHTTP {
+		Object result = this.fallbackResults.get(key);
+		if(result == null)
+			throw e;
+		log.debug("Answering a query with an earlier result: " + e.getMessage());
+		this.fallbackCount.incrementAndGet();
+		return result;
+	}
+
+	/**
+	 * backOff - waits before a retry for a random time of up to BACKOFF_BASE_MILLIS, doubled for each earlier retry
+	 * @throws CancellationException - if the solveContext is cancelled while waiting
+	 */
+	private void backOff(int attempt, SolveContext solveContext) throws CancellationException {
+		long ceilingMillis = Math.min(BACKOFF_CAP_MILLIS, BACKOFF_BASE_MILLIS << Math.min(attempt - 1, 16));
+		long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(ThreadLocalRandom.current().nextLong(ceilingMillis + 1));
+		while(true) {
+			solveContext.checkCancelled();
+			long remainingMillis = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+			if(remainingMillis <= 0)
+				return;
+			try {
+				Thread.sleep(Math.min(remainingMillis, WAIT_POLL_MILLIS));
+			}
+			catch(InterruptedException e) {
+				Thread.currentThread().interrupt(); // checkCancelled then cancels the context
+			}
+		}
+	}
+
+	/**
+	 * executeHedged - sends a query and, if it has not been answered within the usual latency of its class, a duplicate of it,
+	 * returning whichever answer arrives first and abandoning the other. Each attempt runs on a thread of its own under a child of
+	 * the solveContext, so that the losing attempt can be aborted without cancelling the solve
+	 */
+	private Object executeHedged(final QueryClass queryClass, final String sparqlQuery, final boolean construct,
+			SolveContext solveContext) throws CancellationException {
+		long hedgeAfterNanos = this.isHedgeAllowed() ? this.getLatencyPercentile(queryClass, HEDGE_PERCENTILE) : 0;
+		CompletionService<Object> attempts = new ExecutorCompletionService<Object>(this.attemptExecutor);
+		Map<Future<Object>, SolveContext> pendingAttempts = new HashMap<Future<Object>, SolveContext>();
+		Future<Object> hedge = null;
+		long startTime = System.nanoTime();
+		RuntimeException failure = null;
+		try {
+			this.submitAttempt(attempts, pendingAttempts, queryClass, sparqlQuery, construct, solveContext);
+			while(!pendingAttempts.isEmpty()) {
+				solveContext.checkCancelled();
+				long waitNanos = TimeUnit.MILLISECONDS.toNanos(WAIT_POLL_MILLIS);
+				if(hedge == null && hedgeAfterNanos > 0 && failure == null) {
+					long untilHedgeNanos = startTime + hedgeAfterNanos - System.nanoTime();
+					if(untilHedgeNanos <= 0 && this.isHedgeAllowed()) {
+						log.debug("Sending a duplicate " + queryClass + " query after " +
+								TimeUnit.NANOSECONDS.toMillis(hedgeAfterNanos) + "ms");
+						this.hedgedCount.incrementAndGet();
+						hedge = this.submitAttempt(attempts, pendingAttempts, queryClass, sparqlQuery, construct, solveContext);
+						continue;
+					}
+					waitNanos = Math.max(1, Math.min(waitNanos, untilHedgeNanos));
+				}
+				Future<Object> finishedAttempt;
+				try {
+					finishedAttempt = attempts.poll(waitNanos, TimeUnit.NANOSECONDS);
+				}
+				catch(InterruptedException e) {
+					Thread.currentThread().interrupt(); // checkCancelled then cancels the context
+					continue;
+				}
+				if(finishedAttempt == null)
+					continue;
+				pendingAttempts.remove(finishedAttempt);
+				try {
+					Object result = finishedAttempt.get();
+					if(finishedAttempt == hedge)
+						this.hedgeWonCount.incrementAndGet();
+					return result;
+				}
+				catch(ExecutionException e) {
+					/* The first failure is reported, unless an attempt still pending succeeds */
+					if(failure == null)
+						failure = (e.getCause() instanceof RuntimeException) ? (RuntimeException)e.getCause() :
+							new RuntimeException(e.getCause());
+				}
+				catch(InterruptedException e) {
+					Thread.currentThread().interrupt();
+					solveContext.checkCancelled(); // cancels the context, as the thread has been interrupted
+				}
+			}
+			throw failure;
+		}
+		finally {
+			for(Map.Entry<Future<Object>, SolveContext> pendingAttempt : pendingAttempts.entrySet()) {
+				pendingAttempt.getValue().cancel(); // aborts the attempt's query
+				pendingAttempt.getKey().cancel(true);
+				solveContext.removeChild(pendingAttempt.getValue());
+			}
+		}
+	}
+
+	/**
+	 * submitAttempt - starts an attempt at a query under a child of the solveContext
+	 * @return the Future of the attempt, whose context is also recorded in pendingAttempts
+	 */
+	private Future<Object> submitAttempt(CompletionService<Object> attempts, Map<Future<Object>, SolveContext> pendingAttempts,
+			final QueryClass queryClass, final String sparqlQuery, final boolean construct, final SolveContext solveContext) {
+		final SolveContext attemptContext = solveContext.createChild();
+		Future<Object> attempt = attempts.submit(new Callable<Object>() {
+			@Override
+			public Object call() throws Exception {
+				try {
+					return executeRemotely(queryClass, sparqlQuery, construct, attemptContext);
+				}
+				finally {
+					solveContext.removeChild(attemptContext);
+				}
+			}
+		});
+		pendingAttempts.put(attempt, attemptContext);
+		return attempt;
+	}
+
+	/**
+	 * executeRemotely - sends the query to the remote data source, once the EndpointGovernor allows it, and reads the whole of its
+	 * result
+	 */
+	private Object executeRemotely(QueryClass queryClass, String sparqlQuery, boolean construct, SolveContext solveContext) {
+		QueryFactory.create(sparqlQuery); // a query that cannot be parsed fails here, rather than on the endpoint
+		EndpointGovernor governor = EndpointGovernor.getInstance();
+		long permit = governor.acquire(solveContext);
+		Outcome outcome = Outcome.FAILURE;
+		try {
+			this.executedCount.incrementAndGet();
+			this.executedCounts[queryClass.ordinal()].incrementAndGet();
+			log.debug("Executing " + queryClass + " query");
+			try {
+				Object result;
+				if(construct)
+					result = this.dataSource.construct(queryClass, sparqlQuery, solveContext);
+				else result = this.dataSource.select(queryClass, sparqlQuery, solveContext);
+				outcome = Outcome.SUCCESS;
+				long latencyNanos = System.nanoTime() - permit;
+				this.latencyWindows[queryClass.ordinal()].record(latencyNanos);
+				this.recordResult(queryClass, sparqlQuery, result, construct, latencyNanos);
+				return result;
+			}
+			finally {
+				solveContext.checkCancelled(); // the result of an aborted query may be incomplete
+			}
+		}
+		catch(QueryExceptionHTTP e) {
+			if(this.isOverload(e))
+				outcome = Outcome.OVERLOAD;
+			throw e;
+		}
+		finally {
+			governor.release(permit, queryClass, solveContext.isCancelled() ? Outcome.CANCELLED : outcome);
+		}
+	}
+
+	/**
+	 * executeLocally - answers the query from a local data source, on the calling thread
+	 */
+	private Object executeLocally(QueryClass queryClass, String sparqlQuery, boolean construct, SolveContext solveContext) {
+		this.executedCount.incrementAndGet();
+		this.executedCounts[queryClass.ordinal()].incrementAndGet();
+		long startTime = System.nanoTime();
+		try {
+			Object result;
+			if(construct)
+				result = this.dataSource.construct(queryClass, sparqlQuery, solveContext);
+			else result = this.dataSource.select(queryClass, sparqlQuery, solveContext);
+			long latencyNanos = System.nanoTime() - startTime;
+			this.latencyWindows[queryClass.ordinal()].record(latencyNanos);
+			this.recordResult(queryClass, sparqlQuery, result, construct, latencyNanos);
+			return result;
+		}
+		finally {
+			solveContext.checkCancelled(); // the result of an aborted query may be incomplete
+		}
+	}
+
+	/**
+	 * sizeOf
+	 * @return the number of triples in a constructed graph, or of solutions to a select query
+	 */
+	private static long sizeOf(Object result, boolean construct) {
+		return construct ? ((Model)result).size() : ((List<?>)result).size();
+	}
+
+	/**
+	 * recordResult - adds the size of the result of a query to the SolverMetrics, and writes the query to the slow-query log if it
+	 * took longer than slowQueryNanos
+	 */
+	private void recordResult(QueryClass queryClass, String sparqlQuery, Object result, boolean construct, long latencyNanos) {
+		long size = sizeOf(result, construct);
+		SolverMetrics.getInstance().increment(construct ? SolverMetrics.Count.TRIPLES_FETCHED : SolverMetrics.Count.ROWS_FETCHED,
+				size);
+		if(this.slowQueryNanos > 0 && latencyNanos >= this.slowQueryNanos)
+			slowQueryLog.info(queryClass + " query " + SolveTrace.hashOf(sparqlQuery) + " took " +
+					TimeUnit.NANOSECONDS.toMillis(latencyNanos) + "ms and returned " + size + (construct ? " triples" :
+					" solutions") + ": " + sparqlQuery);
+	}
+
+	/**
+	 * registerGauges - publishes the counts kept by the SparqlQueryRunner through the SolverMetrics
+	 */
+	private void registerGauges() {
+		SolverMetrics metrics = SolverMetrics.getInstance();
+		metrics.registerGauge("queriesExecuted", new SolverMetrics.Gauge() {
+			@Override
+			public long getValue() {
+				return getExecutedCount();
+			}
+		});
+		for(final QueryClass queryClass : QueryClass.values()) {
+			String className = SolverMetrics.nameOf(queryClass);
+			metrics.registerGauge(className + "QueriesExecuted", new SolverMetrics.Gauge() {
+				@Override
+				public long getValue() {
+					return getExecutedCount(queryClass);
+				}
+			});
+			metrics.registerGauge(className + "QueryP95Millis", new SolverMetrics.Gauge() {
+				@Override
+				public long getValue() {
+					return TimeUnit.NANOSECONDS.toMillis(getLatencyPercentile(queryClass, 95));
+				}
+			});
+		}
+		metrics.registerGauge("queriesCoalesced", new SolverMetrics.Gauge() {
+			@Override
+			public long getValue() {
+				return getCoalescedCount();
+			}
+		});
+		metrics.registerGauge("queriesRetried", new SolverMetrics.Gauge() {
+			@Override
+			public long getValue() {
+				return getRetriedCount();
+			}
+		});
+		metrics.registerGauge("queriesHedged", new SolverMetrics.Gauge() {
+			@Override
+			public long getValue() {
+				return getHedgedCount();
+			}
+		});
+		metrics.registerGauge("hedgesWon", new SolverMetrics.Gauge() {
+			@Override
+			public long getValue() {
+				return getHedgeWonCount();
+			}
+		});
+		metrics.registerGauge("queriesFallenBack", new SolverMetrics.Gauge() {
+			@Override
+			public long getValue() {
+				return getFallbackCount();
+			}
+		});
+	}
+
+	/**
+	 * openDataSource
+	 * @return the data source opened by selectDataSource, wrapped in a RecordingSparqlDataSource if the
+	 * semanticSolver.record.archive system property names a file in which to record the queries answered. The data source is
+	 * closed when the JVM shuts down
+	 */
+	private SparqlDataSource openDataSource() {
+		SparqlDataSource selectedDataSource = this.selectDataSource();
+		String archiveFileName = SolverProperties.getString(SolverProperties.RECORD_ARCHIVE, null);
+		if(archiveFileName != null)
+			selectedDataSource = new RecordingSparqlDataSource(selectedDataSource, new QueryArchive(new File(archiveFileName)));
+		final SparqlDataSource dataSource = selectedDataSource;
+		Runtime.getRuntime().addShutdownHook(new Thread() {
+			@Override
+			public void run() {
+				dataSource.close();
+			}
+		});
+		return dataSource;
+	}
+
+	/**
+	 * selectDataSource
+	 * @return the implementation of framework.SparqlDataSource selected by the semanticSolver.dataSource system property: the DBpedia
+	 * endpoint, or another given by semanticSolver.dataSource.location, by default; a TDB store held in the directory given by
+	 * semanticSolver.dataSource.location; an in-memory dataset loaded from the comma-separated RDF files given by
+	 * semanticSolver.dataSource.location; or a replay of the QueryArchive held in the file given by semanticSolver.dataSource.location.
+	 * The DBpedia endpoint is used if a local dataset or archive cannot be opened
+	 */
+	private SparqlDataSource selectDataSource() {
+		String type = SolverProperties.getString(SolverProperties.DATA_SOURCE, SolverProperties.REMOTE_DATA_SOURCE);
+		String location = SolverProperties.getString(SolverProperties.DATA_SOURCE_LOCATION, null);
+		try {
+			if(type.equals(SolverProperties.TDB_DATA_SOURCE) && location != null)
+				return new LocalSparqlDataSource(TDBFactory.createDataset(location), location);
+			if(type.equals(SolverProperties.IN_MEMORY_DATA_SOURCE) && location != null) {
+				Dataset dataset = DatasetFactory.createMem();
+				for(String fileName : location.split(",")) {
+					if(!fileName.trim().isEmpty())
+						RDFDataMgr.read(dataset.getDefaultModel(), fileName.trim());
+				}
+				log.debug(dataset.getDefaultModel().size() + " triples loaded into the in-memory dataset from " + location);
+				return new LocalSparqlDataSource(dataset, location);
+			}
+			if(type.equals(SolverProperties.REPLAY_DATA_SOURCE) && location != null)
+				return new ReplaySparqlDataSource(new QueryArchive(new File(location)));
+		}
+		catch(JenaException e) {
+			log.debug("Failed to open the " + type + " dataset " + location + ": " + e.getMessage());
+		}
+		catch(IOException e) {
+			log.debug("Failed to open the archive " + location + ": " + e.getMessage());
+		}
+		if(!type.equals(SolverProperties.REMOTE_DATA_SOURCE) || location == null)
+			location = Pop.ENDPOINT_URI;
+		return new RemoteSparqlDataSource(location);
+	}
+
+	/**
+	 * isHedgeAllowed
+	 * @return true if duplicate queries may be sent, which they may not while the endpoint is failing, nor once they would make up
+	 * more than HEDGE_BUDGET of the queries executed
+	 */
+	private boolean isHedgeAllowed() {
+		return this.hedging && this.circuitBreaker.getState() == CircuitBreaker.State.CLOSED &&
+				this.hedgedCount.get() < HEDGE_BUDGET * this.executedCount.get();
+	}
+
+	/**
+	 * isOverload
+	 * @param e - the exception thrown by a failed query
+	 * @return true if the failure shows that the endpoint is overloaded or unavailable, rather than that the query was at fault
+	 */
+	private boolean isOverload(QueryExceptionHTTP e) {
+		int responseCode = e.getResponseCode();
+		return responseCode <= 0 || responseCode == this.STATUS_TOO_MANY_REQUESTS ||
+				responseCode >= this.STATUS_INTERNAL_SERVER_ERROR;
+	}
+}
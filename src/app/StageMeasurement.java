@@ -0,0 +1,104 @@
+package app;
+
+import org.apache.log4j.Logger;
+
+import framework.Stage;
+import framework.StageEventRecorder;
+
+/**
+ * @author Ben Griffiths
+ * StageMeasurement
+ * Measures a single occurrence of a stage of solving a clue: its duration is recorded in the SolverMetrics, and an event for it is
+ * reported to the StageEventRecorder, if there is one. The recorder is the implementation of framework.StageEventRecorder named
+ * by the semanticSolver.events.recorder system property, by default jfr.JfrStageEventRecorder, which reports the stages to Java
+ * Flight Recorder. That class is compiled separately, for Java 11 or later, so if it is not on the class path, or cannot be loaded
+ * by the running JVM, no events are reported.
+ */
+public class StageMeasurement {
+	private static Logger log = Logger.getLogger(StageMeasurement.class);
+	private static final String DEFAULT_RECORDER = "jfr.JfrStageEventRecorder";
+	private static final StageEventRecorder recorder = loadRecorder();
+	private final Stage stage;
+	private final long startTime;
+	private final StageEventRecorder.Event event;
+
+	/**
+	 * Constructor - the only constructor is private
+	 */
+	private StageMeasurement(Stage stage, StageEventRecorder.Event event) {
+		this.stage = stage;
+		this.event = event;
+		this.startTime = System.nanoTime();
+	}
+
+	/**
+	 * loadRecorder
+	 * @return an instance of the StageEventRecorder named by the semanticSolver.events.recorder system property, or null if there is
+	 * none or it cannot be loaded
+	 */
+	private static StageEventRecorder loadRecorder() {
+		String className = SolverProperties.getString(SolverProperties.EVENT_RECORDER, DEFAULT_RECORDER);
+		if(className.isEmpty())
+			return null;
+		try {
+			return (StageEventRecorder)Class.forName(className).getDeclaredConstructor().newInstance();
+		}
+		catch(ClassNotFoundException e) {
+			log.debug("No stage event recorder " + className + " on the class path; stage events will not be recorded");
+		}
+		catch(Exception e) {
+			log.debug("Failed to create the stage event recorder " + className + ": " + e);
+		}
+		catch(LinkageError e) { // the recorder was compiled for a later version of Java, or needs classes it lacks
+			log.debug("Failed to load the stage event recorder " + className + ": " + e);
+		}
+		return null;
+	}
+
+	/**
+	 * start - begins measuring an occurrence of a stage
+	 * @param stage - the stage
+	 * @param clueId - the identifier of the clue being solved, or 0 if the stage is not part of the solving of a single clue
+	 * @param subject - the subject of the stage, such as a clue fragment or a resource URI
+	 * @return the measurement, which must be stopped once the stage is complete
+	 */
+	public static StageMeasurement start(Stage stage, long clueId, String subject) {
+		StageEventRecorder.Event event = null;
+		if(recorder != null) {
+			try {
+				event = recorder.begin(stage, clueId, subject);
+			}
+			catch(RuntimeException e) {
+				log.debug("Failed to begin a " + stage + " event: " + e);
+			}
+		}
+		return new StageMeasurement(stage, event);
+	}
+
+	/**
+	 * start - begins measuring an occurrence of a stage of solving the clue of the given context
+	 * @param stage - the stage
+	 * @param solveContext - the context of the solving of the clue
+	 * @param subject - the subject of the stage, such as a clue fragment or a resource URI
+	 * @return the measurement, which must be stopped once the stage is complete
+	 */
+	public static StageMeasurement start(Stage stage, SolveContext solveContext, String subject) {
+		return start(stage, solveContext.getClueId(), subject);
+	}
+
+	/**
+	 * stop - records the duration of the stage in the SolverMetrics, and ends its event
+	 * @param size - the number of triples, solutions or updates produced by the stage, or 0 if it produced none
+	 */
+	public void stop(long size) {
+		SolverMetrics.getInstance().record(this.stage, System.nanoTime() - this.startTime);
+		if(this.event != null) {
+			try {
+				this.event.end(size);
+			}
+			catch(RuntimeException e) {
+				log.debug("Failed to end a " + this.stage + " event: " + e);
+			}
+		}
+	}
+}
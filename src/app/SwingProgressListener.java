@@ -0,0 +1,69 @@
+package app;
+
+import java.beans.PropertyChangeEvent;
+
+import javax.swing.SwingUtilities;
+
+import lombok.AccessLevel;
+import lombok.Getter;
+import lombok.Setter;
+
+import framework.ProgressListener;
+import framework.UserInterface;
+
+/**
+ * @author Ben Griffiths
+ * SwingProgressListener
+ * Adapts the progress reported by the solving engine to a Swing user interface. Each report is passed to the Event Dispatch Thread,
+ * where the progress bar of the user interface is updated: a new stage is shown as the text of the progress bar, and progress within
+ * a stage is delivered to the user interface as a "progress" PropertyChangeEvent, as it was when the engine ran on SwingWorkers
+ * @implements framework.ProgressListener
+ */
+public class SwingProgressListener implements ProgressListener {
+	private final String PROGRESS_PROPERTY = "progress";
+	@Getter(AccessLevel.PRIVATE) @Setter(AccessLevel.PRIVATE) private UserInterface userInterface;
+	@Getter(AccessLevel.PRIVATE) @Setter(AccessLevel.PRIVATE) private volatile int progress;
+
+	/**
+	 * Constructor
+	 * @param userInterface - the user interface whose progress bar is to be updated
+	 */
+	public SwingProgressListener(UserInterface userInterface) {
+		this.setUserInterface(userInterface);
+	}
+
+	/**
+	 * stageStarted
+	 * @override framework.ProgressListener.stageStarted
+	 */
+	@Override
+	public void stageStarted(final String description) {
+		this.setProgress(0);
+		SwingUtilities.invokeLater(new Runnable() {
+			@Override
+			public void run() {
+				getUserInterface().getDisplayPanel().getProgressBar().setValue(0);
+				getUserInterface().getDisplayPanel().getProgressBar().setString(description);
+				getUserInterface().getDisplayPanel().getProgressBar().setStringPainted(true);
+			}
+		});
+	}
+
+	/**
+	 * progressChanged
+	 * @override framework.ProgressListener.progressChanged
+	 */
+	@Override
+	public void progressChanged(int progress) {
+		final int oldProgress = this.getProgress();
+		final int newProgress = progress;
+		this.setProgress(progress);
+		SwingUtilities.invokeLater(new Runnable() {
+			@Override
+			public void run() {
+				getUserInterface().propertyChange(new PropertyChangeEvent(SwingProgressListener.this, PROGRESS_PROPERTY,
+						oldProgress, newProgress));
+			}
+		});
+	}
+}
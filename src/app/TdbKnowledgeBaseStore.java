@@ -0,0 +1,173 @@
+package app;
+
+import java.io.File;
+import java.io.IOException;
+
+import org.apache.log4j.Logger;
+
+import lombok.AccessLevel;
+import lombok.Getter;
+import lombok.Setter;
+
+import com.hp.hpl.jena.query.Dataset;
+import com.hp.hpl.jena.query.ReadWrite;
+import com.hp.hpl.jena.rdf.model.Model;
+import com.hp.hpl.jena.shared.JenaException;
+import com.hp.hpl.jena.tdb.TDBFactory;
+
+import framework.CrosswordKB;
+import framework.KnowledgeBaseStore;
+
+/**
+ * @author Ben Griffiths
+ * TdbKnowledgeBaseStore
+ * An implementation of the KnowledgeBaseStore interface that keeps the knowledge base in a persistent, transactional, indexed
+ * Jena TDB triple store on local disk. Nothing is loaded into memory up front: reads go straight to the store's indexes, and each
+ * committed write transaction is durable as soon as commit returns. The first time the store is opened, it is populated from the
+ * RDF/XML knowledge base and any journal held alongside it, unless the semanticSolver.kb.tdbImport property is false.
+ * @implements framework.KnowledgeBaseStore
+ */
+public class TdbKnowledgeBaseStore implements KnowledgeBaseStore {
+	private static Logger log = Logger.getLogger(TdbKnowledgeBaseStore.class);
+	@Getter(AccessLevel.PRIVATE) @Setter(AccessLevel.PRIVATE) private Dataset dataset;
+	@Getter(AccessLevel.PRIVATE) @Setter(AccessLevel.PRIVATE) private String location;
+
+	/**
+	 * importKnowledgeBase - copies the RDF/XML knowledge base, together with any triples journalled since it was last written out,
+	 * into the empty TDB store
+	 */
+	private void importKnowledgeBase() {
+		Model knowledgeBase;
+		try {
+			knowledgeBase = ModelLoader.getKnowledgeBase();
+		}
+		catch(JenaException e) {
+			log.debug("Nothing to import into the TDB knowledge base at " + this.getLocation());
+			return;
+		}
+		File journalFile = new File(CrosswordKB.LOCAL_KNOWLEDGE_BASE_DIRECTORY, CrosswordKB.LOCAL_KNOWLEDGE_BASE_JOURNAL_URI);
+		if(journalFile.exists()) {
+			try {
+				KnowledgeBaseJournal journal = new KnowledgeBaseJournal(journalFile);
+				journal.replay(knowledgeBase);
+				journal.close();
+			}
+			catch(IOException e) {
+				log.debug("Failed to replay " + journalFile.getPath() + " into the TDB knowledge base");
+				log.debug(e.getMessage());
+			}
+		}
+		this.beginWrite();
+		try {
+			this.add(knowledgeBase);
+			this.getModel().setNsPrefixes(knowledgeBase.getNsPrefixMap());
+			this.commit();
+			log.debug(knowledgeBase.size() + " triples imported into the TDB knowledge base at " + this.getLocation());
+		}
+		finally {
+			this.end();
+		}
+	}
+
+	/**
+	 * Constructor - opens, creating it if necessary, the TDB store held in the given directory, and populates it from the RDF/XML
+	 * knowledge base if it is empty and importing is enabled
+	 * @param location - the path of the directory in which the TDB store is held
+	 */
+	public TdbKnowledgeBaseStore(String location) {
+		this.setLocation(location);
+		new File(location).mkdirs();
+		this.setDataset(TDBFactory.createDataset(location));
+		boolean isEmpty;
+		this.beginRead();
+		try {
+			isEmpty = this.getModel().isEmpty();
+		}
+		finally {
+			this.end();
+		}
+		if(isEmpty && SolverProperties.getBoolean(SolverProperties.KB_TDB_IMPORT, true))
+			this.importKnowledgeBase();
+	}
+
+	/**
+	 * getModel
+	 * @override framework.KnowledgeBaseStore.getModel
+	 */
+	@Override
+	public Model getModel() {
+		return this.getDataset().getDefaultModel();
+	}
+
+	/**
+	 * beginRead
+	 * @override framework.KnowledgeBaseStore.beginRead
+	 */
+	@Override
+	public void beginRead() {
+		this.getDataset().begin(ReadWrite.READ);
+	}
+
+	/**
+	 * beginWrite
+	 * @override framework.KnowledgeBaseStore.beginWrite
+	 */
+	@Override
+	public void beginWrite() {
+		this.getDataset().begin(ReadWrite.WRITE);
+	}
+
+	/**
+	 * add
+	 * @override framework.KnowledgeBaseStore.add
+	 */
+	@Override
+	public void add(Model newStatements) {
+		this.getModel().add(newStatements);
+	}
+
+	/**
+	 * commit
+	 * @override framework.KnowledgeBaseStore.commit
+	 */
+	@Override
+	public void commit() {
+		this.getDataset().commit();
+	}
+
+	/**
+	 * end
+	 * @override framework.KnowledgeBaseStore.end
+	 */
+	@Override
+	public void end() {
+		this.getDataset().end();
+	}
+
+	/**
+	 * persist - every committed transaction is already durable, so there is nothing to do
+	 * @override framework.KnowledgeBaseStore.persist
+	 */
+	@Override
+	public void persist() {
+
+	}
+
+	/**
+	 * isFullyLoaded
+	 * @override framework.KnowledgeBaseStore.isFullyLoaded
+	 */
+	@Override
+	public boolean isFullyLoaded() {
+		return false;
+	}
+
+	/**
+	 * close
+	 * @override framework.KnowledgeBaseStore.close
+	 */
+	@Override
+	public void close() {
+		this.getDataset().close();
+	}
+}
@@ -0,0 +1,152 @@
+package app;
+
+import java.io.BufferedWriter;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.log4j.Logger;
+
+/**
+ * @author Ben Griffiths
+ * TraceWriter
+ * Appends the traces of solved clues, one JSON object to a line, to the file given by the semanticSolver.trace.file system property.
+ * Traces are written by a single writer thread, so that solving a clue never waits for the disk: a trace that arrives while the
+ * queue is full is dropped, and counted, rather than blocking the solver. Every trace already queued is written when the JVM shuts
+ * down. Implemented as a Singleton class.
+ */
+public class TraceWriter {
+	private static Logger log = Logger.getLogger(TraceWriter.class);
+	private static TraceWriter instance;
+	private static final Charset CHARSET = Charset.forName("UTF-8");
+	private final String WRITER_THREAD_NAME = "trace-writer";
+	private final String SHUTDOWN_MARKER = new String(); // compared by identity, so that no trace can be mistaken for it
+	private final int QUEUE_CAPACITY = 1000;
+	private final long SHUTDOWN_TIMEOUT_MILLIS = 5000;
+	private final BlockingQueue<String> queue = new ArrayBlockingQueue<String>(QUEUE_CAPACITY);
+	private final AtomicLong droppedCount = new AtomicLong();
+	private final String fileName;
+	private final Thread writerThread;
+
+	/**
+	 * Constructor - the only constructor is private
+	 */
+	private TraceWriter(String fileName) {
+		this.fileName = fileName;
+		this.writerThread = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				writeTraces();
+			}
+		}, WRITER_THREAD_NAME);
+		this.writerThread.setDaemon(true);
+		this.writerThread.start();
+		Runtime.getRuntime().addShutdownHook(new Thread() {
+			@Override
+			public void run() {
+				shutdown();
+			}
+		});
+		SolverMetrics.getInstance().registerGauge("tracesDropped", new SolverMetrics.Gauge() {
+			@Override
+			public long getValue() {
+				return getDroppedCount();
+			}
+		});
+	}
+
+	/**
+	 * getInstance - returns the unique instance of the TraceWriter class
+	 * @return the unique instance of the TraceWriter class, or null if the semanticSolver.trace.file system property is not set, in
+	 * which case clues are not traced
+	 */
+	public static synchronized TraceWriter getInstance() {
+		String fileName = SolverProperties.getString(SolverProperties.TRACE_FILE, null);
+		if(instance == null && fileName != null)
+			instance = new TraceWriter(fileName);
+		return instance;
+	}
+
+	/**
+	 * write - queues a trace to be written, unless the queue is full
+	 * @param trace - the trace, as a single line of JSON
+	 */
+	public void write(String trace) {
+		if(!this.queue.offer(trace))
+			this.droppedCount.incrementAndGet();
+	}
+
+	/**
+	 * getDroppedCount
+	 * @return the number of traces dropped because the queue was full
+	 */
+	public long getDroppedCount() {
+		return this.droppedCount.get();
+	}
+
+	/**
+	 * writeTraces - the body of the writer thread. Writes every trace queued, flushing the file whenever the queue is empty, until
+	 * the shutdown marker is reached
+	 */
+	private void writeTraces() {
+		Writer writer;
+		try {
+			writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(this.fileName, true), CHARSET));
+		}
+		catch(IOException e) {
+			log.debug("Failed to open the trace file " + this.fileName + ": " + e.getMessage());
+			return;
+		}
+		ArrayList<String> traces = new ArrayList<String>();
+		try {
+			while(true) {
+				try {
+					traces.add(this.queue.take());
+				}
+				catch(InterruptedException e) {
+					continue;
+				}
+				this.queue.drainTo(traces);
+				for(String trace : traces) {
+					if(trace == this.SHUTDOWN_MARKER)
+						return;
+					writer.write(trace);
+					writer.write("\n");
+				}
+				traces.clear();
+				writer.flush();
+			}
+		}
+		catch(IOException e) {
+			log.debug("Failed to write to the trace file " + this.fileName + ": " + e.getMessage());
+		}
+		finally {
+			try {
+				writer.close();
+			}
+			catch(IOException e) {
+				log.debug("Failed to close the trace file " + this.fileName + ": " + e.getMessage());
+			}
+		}
+	}
+
+	/**
+	 * shutdown - waits, for a limited time, until every trace already queued has been written
+	 */
+	private void shutdown() {
+		try {
+			if(this.queue.offer(this.SHUTDOWN_MARKER, SHUTDOWN_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS))
+				this.writerThread.join(SHUTDOWN_TIMEOUT_MILLIS);
+		}
+		catch(InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+}
@@ -0,0 +1,58 @@
+package framework;
+
+import java.util.concurrent.CancellationException;
+
+import org.apache.http.client.methods.AbortableHttpRequest;
+
+import com.hp.hpl.jena.query.QueryExecution;
+
+/**
+ * @author Ben Griffiths
+ * CancellationHandle
+ * Interface through which a SparqlDataSource learns whether the solving of the clue for which it answers a query has been cancelled,
+ * and registers each QueryExecution or HTTP request it opens, so that cancellation aborts those still open. Methods may be called
+ * from any thread
+ */
+public interface CancellationHandle {
+	/**
+	 * isCancelled
+	 * @return true if the solving of the clue has been cancelled
+	 */
+	public boolean isCancelled();
+
+	/**
+	 * checkCancelled - cancels the solving of the clue if the calling thread has been interrupted
+	 * @throws CancellationException - if the solving of the clue has been cancelled
+	 */
+	public void checkCancelled() throws CancellationException;
+
+	/**
+	 * register - records a QueryExecution that is about to be executed, so that it is aborted on cancellation
+	 * @param queryExecution - the QueryExecution to be registered
+	 * @return the queryExecution argument
+	 * @throws CancellationException - if the solving of the clue has already been cancelled, in which case the queryExecution is
+	 * closed
+	 */
+	public QueryExecution register(QueryExecution queryExecution) throws CancellationException;
+
+	/**
+	 * release - closes a registered QueryExecution once it has been fully consumed or has failed
+	 * @param queryExecution - the QueryExecution to be closed
+	 */
+	public void release(QueryExecution queryExecution);
+
+	/**
+	 * register - records an HTTP request that is about to be sent, so that it is aborted on cancellation
+	 * @param request - the request to be registered
+	 * @return the request argument
+	 * @throws CancellationException - if the solving of the clue has already been cancelled, in which case the request is aborted
+	 */
+	public AbortableHttpRequest register(AbortableHttpRequest request) throws CancellationException;
+
+	/**
+	 * release - stops a registered HTTP request being aborted on cancellation, once its response has been fully read or it has
+	 * failed
+	 * @param request - the request to be released
+	 */
+	public void release(AbortableHttpRequest request);
+}
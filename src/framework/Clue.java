@@ -36,6 +36,12 @@ public interface Clue {
 	 */
 	public ArrayList<String> getClueFragments();
 	
+	/**
+	 * getClueFragmentLattice
+	 * @return the lattice of parsed fragments of the original text String, from which the list returned by getClueFragments is built
+	 */
+	public ClueFragmentLattice getClueFragmentLattice();
+	
 	/**
 	 * matchesStructure
 	 * @param solution - a solution whose structure is to be compared to the solutionStructure member of this clue
@@ -0,0 +1,45 @@
+package framework;
+
+import java.util.ArrayList;
+
+/**
+ * @author Ben Griffiths
+ * ClueFragmentLattice
+ * The set of distinct fragments of the text of a clue, in the order in which they were generated. A fragment is either a sequence of
+ * consecutive words of the clue text, or a fragment of the clue taken as a whole (such as a quoted sequence). Fragments made up of
+ * consecutive words are held as spans over the words of the clue, and the text of each is only built when it is first asked for
+ */
+public interface ClueFragmentLattice {
+	/**
+	 * size
+	 * @return the number of distinct fragments in the lattice
+	 */
+	public int size();
+
+	/**
+	 * getFragment
+	 * @param index - the position of a fragment in the lattice, from 0 to size() - 1
+	 * @return the text of the fragment
+	 */
+	public String getFragment(int index);
+
+	/**
+	 * getWordCount
+	 * @param index - the position of a fragment in the lattice, from 0 to size() - 1
+	 * @return the number of consecutive words of the clue that make up the fragment, or 1 if the fragment was taken as a whole
+	 */
+	public int getWordCount(int index);
+
+	/**
+	 * contains
+	 * @param fragment - the text of a fragment
+	 * @return true if the lattice holds a fragment with the given text
+	 */
+	public boolean contains(String fragment);
+
+	/**
+	 * getFragments
+	 * @return an ArrayList of the text of every fragment in the lattice, in order
+	 */
+	public ArrayList<String> getFragments();
+}
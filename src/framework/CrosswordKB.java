@@ -13,6 +13,9 @@ import com.hp.hpl.jena.rdf.model.Resource;
 public class CrosswordKB {
     private static Model model = ModelFactory.createDefaultModel();
     public static final String LOCAL_KNOWLEDGE_BASE_URI = "crosswordKB.xml";
+    public static final String LOCAL_KNOWLEDGE_BASE_SNAPSHOT_URI = "crosswordKB.bin"; // binary snapshot of crosswordKB.xml
+    public static final String LOCAL_KNOWLEDGE_BASE_JOURNAL_URI = "crosswordKB.nt"; // triples added since the last full snapshot
+    public static final String LOCAL_KNOWLEDGE_BASE_DIRECTORY = "data"; // directory to which the knowledge base is written
     public static final String CROSSWORD_KB_ONTOLOGY_URI = "http://www.griffithsben.com/ontologies/crosswordKBontology.owl#";
     public static final String CROSSWORD_KB_URI = "http://www.griffithsben.com/ontologies/crosswordKB/";
     
@@ -0,0 +1,60 @@
+package framework;
+
+import com.hp.hpl.jena.rdf.model.Model;
+
+/**
+ * @author Ben Griffiths
+ * KnowledgeBaseStore
+ * Interface through which the crossword knowledge base is read and updated. All access to the model returned by getModel must take
+ * place between a call to beginRead or beginWrite and the matching call to end, on the same thread
+ */
+public interface KnowledgeBaseStore {
+	/**
+	 * getModel
+	 * @return an instance of com.hp.hpl.jena.rdf.model.Model representing the knowledge base. Only valid within a transaction
+	 */
+	public Model getModel();
+
+	/**
+	 * beginRead - begins a read transaction on the knowledge base
+	 */
+	public void beginRead();
+
+	/**
+	 * beginWrite - begins a write transaction on the knowledge base
+	 */
+	public void beginWrite();
+
+	/**
+	 * add - adds the triples in the newStatements argument to the knowledge base. Must be called within a write transaction
+	 * @param newStatements - an instance of com.hp.hpl.jena.rdf.model.Model containing the triples to be added
+	 */
+	public void add(Model newStatements);
+
+	/**
+	 * commit - makes durable every triple added since the current write transaction began. Throws an unchecked exception, leaving
+	 * the transaction uncommitted, if they cannot be made durable
+	 */
+	public void commit();
+
+	/**
+	 * end - ends the current transaction. A write transaction that has not been committed is abandoned
+	 */
+	public void end();
+
+	/**
+	 * persist - ensures that the whole knowledge base is held on disk in its most compact form
+	 */
+	public void persist();
+
+	/**
+	 * isFullyLoaded
+	 * @return true if the whole knowledge base is held in memory, so that it is cheap to scan in its entirety
+	 */
+	public boolean isFullyLoaded();
+
+	/**
+	 * close - releases any resources held by the store
+	 */
+	public void close();
+}
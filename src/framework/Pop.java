@@ -14,6 +14,7 @@ import com.hp.hpl.jena.rdf.model.Resource;
 public class Pop {
     private static Model model = ModelFactory.createDefaultModel();
     public static final String LOCAL_VOCAB_URI = "pop.owl";
+    public static final String LOCAL_VOCAB_SNAPSHOT_URI = "pop.bin"; // binary snapshot of pop.owl
     public static final String POP_URI = "http://www.griffithsben.com/ontologies/pop.owl#";
     public static final String DBPEDIA_OWL_URI = "http://dbpedia.org/ontology/";
     public static final String ENDPOINT_URI = "http://dbpedia-live.openlinksw.com/sparql"; // URL of the DBpedia Live SPARQL endpoint
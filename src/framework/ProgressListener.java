@@ -0,0 +1,22 @@
+package framework;
+
+/**
+ * @author Ben Griffiths
+ * ProgressListener
+ * Interface through which the solving engine reports its progress in solving a clue, with no dependency on any particular user
+ * interface. Methods may be called from any thread; implementations that update a user interface are responsible for passing the
+ * update to the thread that owns it
+ */
+public interface ProgressListener {
+	/**
+	 * stageStarted - called when the engine begins a new stage of solving a clue
+	 * @param description - a description of the stage, suitable for display to the user
+	 */
+	public void stageStarted(String description);
+
+	/**
+	 * progressChanged - called when the engine has made progress within the current stage
+	 * @param progress - the proportion of the current stage that is complete, from 0 to 100
+	 */
+	public void progressChanged(int progress);
+}
@@ -0,0 +1,13 @@
+package framework;
+
+/**
+ * @author Ben Griffiths
+ * QueryClass
+ * The classes of query made by the solver, by which queries are paced, timed out, traced and archived separately
+ */
+public enum QueryClass {
+	ENTITY_RECOGNITION, // look-ups of the resources whose labels match fragments of a clue
+	NEIGHBOURHOOD, // constructions of the graph around a recognised resource
+	DEGREE, // counts of the triples around a recognised resource, made before its graph is constructed
+	SCORING // counts of the links between the resources of a solution
+}
@@ -0,0 +1,56 @@
+package framework;
+
+import java.util.List;
+import java.util.concurrent.CancellationException;
+
+import com.hp.hpl.jena.query.QuerySolution;
+import com.hp.hpl.jena.rdf.model.Model;
+
+/**
+ * @author Ben Griffiths
+ * SparqlDataSource
+ * Interface through which the queries made by the solver to find entities, neighbourhoods and links in DBpedia are answered,
+ * whether by a remote SPARQL endpoint or by a copy of the data held locally. Methods may be called from any thread
+ */
+public interface SparqlDataSource {
+	/**
+	 * select - answers a select query, reading the whole of its result
+	 * @param queryClass - the class of the query
+	 * @param sparqlQuery - the text of the query
+	 * @param cancellation - the handle through which the query is cancelled with the solving of its clue
+	 * @return an unmodifiable list of the solutions of the query
+	 * @throws com.hp.hpl.jena.sparql.engine.http.QueryExceptionHTTP - if a remote data source fails to answer the query
+	 * @throws CancellationException - if the solving of the clue is cancelled
+	 */
+	public List<QuerySolution> select(QueryClass queryClass, String sparqlQuery, CancellationHandle cancellation)
+			throws CancellationException;
+
+	/**
+	 * construct - answers a construct query
+	 * @param queryClass - the class of the query
+	 * @param sparqlQuery - the text of the query
+	 * @param cancellation - the handle through which the query is cancelled with the solving of its clue
+	 * @return an instance of com.hp.hpl.jena.rdf.model.Model holding the constructed graph, belonging to the caller alone
+	 * @throws com.hp.hpl.jena.sparql.engine.http.QueryExceptionHTTP - if a remote data source fails to answer the query
+	 * @throws CancellationException - if the solving of the clue is cancelled
+	 */
+	public Model construct(QueryClass queryClass, String sparqlQuery, CancellationHandle cancellation) throws CancellationException;
+
+	/**
+	 * isRemote
+	 * @return true if queries are answered over the network, in which case they are paced, retried and hedged by the
+	 * SparqlQueryRunner
+	 */
+	public boolean isRemote();
+
+	/**
+	 * getDescription
+	 * @return a description of the data source, such as the URI of its endpoint, suitable for logging
+	 */
+	public String getDescription();
+
+	/**
+	 * close - releases any resources held by the data source
+	 */
+	public void close();
+}
@@ -0,0 +1,17 @@
+package framework;
+
+/**
+ * @author Ben Griffiths
+ * Stage
+ * The timed stages of solving a clue, as measured by the solver's metrics and reported to a StageEventRecorder
+ */
+public enum Stage {
+	ENTITY_RECOGNITION, // the look-up on DBpedia of one fragment of a clue
+	NEIGHBOURHOOD_CONSTRUCTION, // the construction of the graph around one recognised resource
+	REASONING, // the binding of a constructed graph to the reasoner
+	EXTRACTION, // the search of one inference model for candidate solutions
+	SCORING, // the scoring of one candidate solution
+	RANKING, // the ranking of the scored solutions to a clue
+	KNOWLEDGE_BASE_UPDATE, // the writing of one batch of updates to the knowledge base
+	KNOWLEDGE_BASE_PERSISTENCE // the persisting of the knowledge base when the solver shuts down
+}
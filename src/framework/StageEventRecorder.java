@@ -0,0 +1,32 @@
+package framework;
+
+
+/**
+ * @author Ben Griffiths
+ * StageEventRecorder
+ * Interface through which each stage of solving a clue is reported to a profiler, such as Java Flight Recorder, as an event
+ * carrying the clue, the subject of the stage and the size of its result, so that the profiler's timings can be tied back to
+ * particular clues and entities. Methods may be called from any thread, and an event is begun and ended on the same thread
+ */
+public interface StageEventRecorder {
+	/**
+	 * An event in progress
+	 */
+	public interface Event {
+		/**
+		 * end - ends the event and records it
+		 * @param size - the number of triples, solutions or updates produced by the stage, or 0 if it produced none
+		 */
+		public void end(long size);
+	}
+
+	/**
+	 * begin - begins an event for a stage, on the calling thread
+	 * @param stage - the stage
+	 * @param clueId - the identifier of the clue being solved, as given by app.SolveContext.getClueId, or 0 if the stage is not
+	 * part of the solving of a single clue
+	 * @param subject - the subject of the stage, such as a clue fragment, a resource URI or the text of a candidate solution
+	 * @return the event, or null if events of the stage are not being recorded
+	 */
+	public Event begin(Stage stage, long clueId, String subject);
+}
@@ -0,0 +1,120 @@
+package test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.hp.hpl.jena.datatypes.xsd.XSDDatatype;
+import com.hp.hpl.jena.rdf.model.Model;
+import com.hp.hpl.jena.rdf.model.ModelFactory;
+import com.hp.hpl.jena.rdf.model.Resource;
+import com.hp.hpl.jena.util.FileManager;
+
+import app.BinaryModelSnapshot;
+import app.KnowledgeBaseManager;
+import app.SolvedClue;
+
+import framework.CrosswordKB;
+
+/**
+ * @author Ben Griffiths
+ * BinaryModelSnapshotTest
+ * Checks that a binary snapshot of the crossword knowledge base reads back as the same triples, prefixes and solved clues as were
+ * written, that every kind of RDF term survives the round trip, and that a snapshot is ignored once it is stale, truncated or missing.
+ */
+public class BinaryModelSnapshotTest {
+	private final String KNOWLEDGE_BASE = "data/crosswordKB.xml";
+	private final String SNAPSHOT_FILE_NAME = "crosswordKB.bin";
+	private final String EXAMPLE_URI = "http://example.org/";
+	private final long SOURCE_LENGTH = 1234;
+	private final long SOURCE_LAST_MODIFIED = 1350000000000L;
+	@Rule public TemporaryFolder folder = new TemporaryFolder();
+
+	/**
+	 * writeSnapshot
+	 * @return the file to which a snapshot of the model argument was written
+	 */
+	private File writeSnapshot(Model model, ArrayList<SolvedClue> solvedClues) {
+		File snapshotFile = new File(this.folder.getRoot(), SNAPSHOT_FILE_NAME);
+		BinaryModelSnapshot.write(snapshotFile, model, solvedClues, SOURCE_LENGTH, SOURCE_LAST_MODIFIED);
+		return snapshotFile;
+	}
+
+	@Test
+	public void knowledgeBaseRoundTrip() {
+		Model knowledgeBase = FileManager.get().loadModel(KNOWLEDGE_BASE);
+		ArrayList<SolvedClue> solvedClues = KnowledgeBaseManager.gatherSolvedClues(knowledgeBase);
+		File snapshotFile = this.writeSnapshot(knowledgeBase, solvedClues);
+
+		BinaryModelSnapshot snapshot = BinaryModelSnapshot.read(snapshotFile, SOURCE_LENGTH, SOURCE_LAST_MODIFIED);
+		assertNotNull(snapshot);
+		assertTrue(snapshot.getModel().isIsomorphicWith(knowledgeBase));
+		assertEquals(knowledgeBase.getNsPrefixMap(), snapshot.getModel().getNsPrefixMap());
+		assertEquals(solvedClues.size(), snapshot.getSolvedClues().size());
+		for(int i = 0; i < solvedClues.size(); i++) {
+			SolvedClue written = solvedClues.get(i);
+			SolvedClue read = snapshot.getSolvedClues().get(i);
+			assertEquals(written, read);
+			assertEquals(written.getClueResourceUri(), read.getClueResourceUri());
+			assertEquals(written.getSolutionTexts(), read.getSolutionTexts());
+		}
+	}
+
+	@Test
+	public void everyKindOfTermRoundTrips() {
+		Model model = ModelFactory.createDefaultModel();
+		model.setNsPrefix("ex", EXAMPLE_URI);
+		Resource subject = model.createResource(EXAMPLE_URI + "subject");
+		subject.addProperty(model.createProperty(EXAMPLE_URI, "plain"), "Caf\u00e9 \"quoted\"\nline");
+		subject.addProperty(model.createProperty(EXAMPLE_URI, "language"), "chanson", "fr");
+		subject.addLiteral(model.createProperty(EXAMPLE_URI, "typed"), model.createTypedLiteral("42", XSDDatatype.XSDint));
+		subject.addProperty(model.createProperty(EXAMPLE_URI, "blank"), model.createResource()
+				.addProperty(CrosswordKB.hasSolutionText, ""));
+		File snapshotFile = this.writeSnapshot(model, null);
+
+		BinaryModelSnapshot snapshot = BinaryModelSnapshot.read(snapshotFile, SOURCE_LENGTH, SOURCE_LAST_MODIFIED);
+		assertNotNull(snapshot);
+		assertTrue(snapshot.getModel().isIsomorphicWith(model));
+		assertEquals(EXAMPLE_URI, snapshot.getModel().getNsPrefixURI("ex"));
+		assertNull(snapshot.getSolvedClues()); // the model is not a crossword knowledge base
+	}
+
+	@Test
+	public void staleSnapshotIsIgnored() {
+		Model model = ModelFactory.createDefaultModel();
+		model.createResource(EXAMPLE_URI + "subject").addProperty(CrosswordKB.hasClueText, "Singer Ives");
+		File snapshotFile = this.writeSnapshot(model, new ArrayList<SolvedClue>());
+
+		assertNull(BinaryModelSnapshot.read(snapshotFile, SOURCE_LENGTH + 1, SOURCE_LAST_MODIFIED));
+		assertNull(BinaryModelSnapshot.read(snapshotFile, SOURCE_LENGTH, SOURCE_LAST_MODIFIED + 1));
+		assertNotNull(BinaryModelSnapshot.read(snapshotFile, SOURCE_LENGTH, SOURCE_LAST_MODIFIED));
+	}
+
+	@Test
+	public void truncatedOrMissingSnapshotIsIgnored() throws IOException {
+		Model model = ModelFactory.createDefaultModel();
+		model.createResource(EXAMPLE_URI + "subject").addProperty(CrosswordKB.hasClueText, "Singer Ives");
+		File snapshotFile = this.writeSnapshot(model, new ArrayList<SolvedClue>());
+		RandomAccessFile file = new RandomAccessFile(snapshotFile, "rw");
+		try {
+			file.setLength(file.length() - 1);
+		}
+		finally {
+			file.close();
+		}
+		assertNull(BinaryModelSnapshot.read(snapshotFile, SOURCE_LENGTH, SOURCE_LAST_MODIFIED));
+
+		assertTrue(snapshotFile.delete());
+		assertNull(BinaryModelSnapshot.read(snapshotFile, SOURCE_LENGTH, SOURCE_LAST_MODIFIED));
+	}
+}
@@ -0,0 +1,100 @@
+package test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import app.CircuitBreaker;
+import app.CircuitBreaker.State;
+
+/**
+ * @author Ben Griffiths
+ * CircuitBreakerTest
+ * Checks that the circuit breaker opens after the given run of consecutive failures and then rejects queries, that once its
+ * cooling-off period has passed it lets a single probe through, and that it closes if the probe succeeds and reopens if it fails.
+ * A cooling-off period of an hour stands for one that has not passed, and of nothing for one that has; the probe that is never
+ * answered needs a real one.
+ */
+public class CircuitBreakerTest {
+	private final int FAILURE_THRESHOLD = 3;
+	private final long NEVER_COOLS_OFF_MILLIS = 60 * 60 * 1000;
+	private final long COOLS_OFF_AT_ONCE_MILLIS = 0;
+	private final long COOLING_OFF_MILLIS = 500;
+	private final long COOLING_OFF_MARGIN_MILLIS = 100;
+
+	/**
+	 * recordFailures - records the given number of failures of queries allowed by the breaker
+	 */
+	private void recordFailures(CircuitBreaker breaker, int failures) {
+		for(int i = 0; i < failures; i++) {
+			assertTrue(breaker.allowRequest());
+			breaker.recordFailure();
+		}
+	}
+
+	@Test
+	public void opensAfterConsecutiveFailuresAndRejects() {
+		CircuitBreaker breaker = new CircuitBreaker(FAILURE_THRESHOLD, NEVER_COOLS_OFF_MILLIS);
+		this.recordFailures(breaker, FAILURE_THRESHOLD - 1);
+		assertEquals(State.CLOSED, breaker.getState());
+		this.recordFailures(breaker, 1);
+		assertEquals(State.OPEN, breaker.getState());
+		assertEquals(1, breaker.getOpenedCount());
+
+		assertFalse(breaker.allowRequest());
+		assertFalse(breaker.allowRequest());
+		assertEquals(2, breaker.getRejectedCount());
+		assertEquals(State.OPEN, breaker.getState());
+	}
+
+	@Test
+	public void successResetsTheRunOfFailures() {
+		CircuitBreaker breaker = new CircuitBreaker(FAILURE_THRESHOLD, NEVER_COOLS_OFF_MILLIS);
+		this.recordFailures(breaker, FAILURE_THRESHOLD - 1);
+		assertTrue(breaker.allowRequest());
+		breaker.recordSuccess();
+		this.recordFailures(breaker, FAILURE_THRESHOLD - 1);
+		assertEquals(State.CLOSED, breaker.getState());
+		assertEquals(0, breaker.getOpenedCount());
+	}
+
+	@Test
+	public void singleProbeClosesTheBreakerOnSuccess() {
+		CircuitBreaker breaker = new CircuitBreaker(FAILURE_THRESHOLD, COOLS_OFF_AT_ONCE_MILLIS);
+		this.recordFailures(breaker, FAILURE_THRESHOLD);
+		assertEquals(State.OPEN, breaker.getState());
+
+		assertTrue(breaker.allowRequest()); // the probe
+		assertEquals(State.HALF_OPEN, breaker.getState());
+		breaker.recordSuccess();
+		assertEquals(State.CLOSED, breaker.getState());
+		assertTrue(breaker.allowRequest());
+		assertTrue(breaker.allowRequest());
+	}
+
+	@Test
+	public void failedProbeReopensTheBreaker() {
+		CircuitBreaker breaker = new CircuitBreaker(FAILURE_THRESHOLD, COOLS_OFF_AT_ONCE_MILLIS);
+		this.recordFailures(breaker, FAILURE_THRESHOLD);
+		assertTrue(breaker.allowRequest()); // the probe
+		breaker.recordFailure();
+		assertEquals(State.OPEN, breaker.getState());
+		assertEquals(2, breaker.getOpenedCount());
+	}
+
+	@Test
+	public void onlyOneProbeIsInFlightUntilTheCoolingOffPeriodPasses() throws InterruptedException {
+		CircuitBreaker breaker = new CircuitBreaker(1, COOLING_OFF_MILLIS);
+		this.recordFailures(breaker, 1);
+		assertFalse(breaker.allowRequest()); // still cooling off
+		Thread.sleep(COOLING_OFF_MILLIS + COOLING_OFF_MARGIN_MILLIS);
+		assertTrue(breaker.allowRequest()); // the probe, whose outcome is never recorded
+		assertFalse(breaker.allowRequest());
+		assertEquals(State.HALF_OPEN, breaker.getState());
+		Thread.sleep(COOLING_OFF_MILLIS + COOLING_OFF_MARGIN_MILLIS);
+		assertTrue(breaker.allowRequest()); // replaces the lost probe
+		assertFalse(breaker.allowRequest());
+	}
+}
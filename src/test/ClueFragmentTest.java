@@ -0,0 +1,213 @@
+package test;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+
+import org.junit.Test;
+
+import com.hp.hpl.jena.rdf.model.Model;
+import com.hp.hpl.jena.util.FileManager;
+
+import exception.InvalidClueException;
+
+import app.ClueImpl;
+import app.ClueSolvingPipeline;
+import app.KnowledgeBaseManager;
+import app.SolvedClue;
+
+import framework.Clue;
+
+/**
+ * @author Ben Griffiths
+ * ClueFragmentTest
+ * Checks that the clue fragment lattice fragments clues exactly as clues were fragmented before it, by list and string
+ * concatenation, for every clue in the crossword knowledge base and for clues whose punctuation exercises the rules by which
+ * fragments are altered. The earlier fragmentation is kept here, unchanged but for its duplicates, as the reference.
+ */
+public class ClueFragmentTest {
+	private final String KNOWLEDGE_BASE = "data/crosswordKB.xml";
+	private final int[] ONE_WORD = {4};
+
+	/**
+	 * ReferenceFragmenter - the fragmentation of ClueImpl as it was before the clue fragment lattice
+	 */
+	private static class ReferenceFragmenter {
+		private final String APOSTROPHE_S_SEQUENCE = "'s";
+		private final String S_APOSTROPHE_SEQUENCE = "s'";
+		private final String FILL_IN_THE_BLANK_MARKER = "_";
+		private final String QUOTE = "\"";
+		private final String[] PUNCTUATION = {":", ";", ",", ".", "-"};
+		private final ArrayList<String> clueFragments = new ArrayList<String>();
+		private final Clue clue; // for its toProperCase
+		private final boolean fillInTheBlank;
+
+		private ReferenceFragmenter(Clue clue) {
+			this.clue = clue;
+			this.fillInTheBlank = clue.getSourceClue().contains(FILL_IN_THE_BLANK_MARKER);
+		}
+
+		/**
+		 * fragment
+		 * @return the fragments of the clue, in the order in which they were generated, without duplicates
+		 */
+		private ArrayList<String> fragment() {
+			String textToBeFragmented = this.clue.getSourceClue();
+			if(this.fillInTheBlank) {
+				textToBeFragmented = textToBeFragmented.replace(APOSTROPHE_S_SEQUENCE, "").replace("'", "");
+				this.addFITBClueFragments(textToBeFragmented);
+			}
+			else {
+				while(textToBeFragmented.contains(QUOTE)) {
+					int indexOfStartQuote = textToBeFragmented.indexOf(QUOTE);
+					int indexOfEndQuote = textToBeFragmented.indexOf(QUOTE, indexOfStartQuote + 1);
+					this.clueFragments.add(textToBeFragmented.substring(indexOfStartQuote + 1, indexOfEndQuote));
+					textToBeFragmented = textToBeFragmented.substring(0, indexOfStartQuote) +
+							textToBeFragmented.substring(indexOfEndQuote + 1, textToBeFragmented.length());
+				}
+				this.addStandardClueFragments(textToBeFragmented);
+			}
+			return new ArrayList<String>(new LinkedHashSet<String>(this.clueFragments));
+		}
+
+		private void addStandardClueFragments(String clueText) {
+			clueText = clueText.replace(FILL_IN_THE_BLANK_MARKER, "");
+			String[] wordsInClueText = clueText.split(" ");
+			for(int i = 0; i < wordsInClueText.length; i++) {
+				if(wordsInClueText[i].isEmpty())
+					continue;
+				String thisWord = this.clue.toProperCase(wordsInClueText[i]);
+				if(!this.clueFragments.contains(thisWord)) {
+					if(thisWord.length() > 1 && thisWord.endsWith(","))
+						thisWord = thisWord.substring(0, thisWord.length() - 1);
+					if(this.imbalancedParentheses(thisWord))
+						thisWord = thisWord.replace("(", "").replace(")", "");
+					if(this.notSolelyPunctuation(thisWord))
+						this.clueFragments.add(thisWord);
+				}
+				for(int j = i + 1; j < wordsInClueText.length; j++) {
+					if(!wordsInClueText[j].isEmpty())
+						thisWord = thisWord + " " + this.clue.toProperCase(wordsInClueText[j]);
+					if(!this.clueFragments.contains(thisWord)) {
+						if(thisWord.length() > 1 && thisWord.endsWith(","))
+							thisWord = thisWord.substring(0, thisWord.length() - 1);
+						if(this.imbalancedParentheses(thisWord))
+							thisWord = thisWord.replace("(", "").replace(")", "");
+						if(this.notSolelyPunctuation(thisWord))
+							this.clueFragments.add(thisWord);
+					}
+				}
+			}
+			if(clueText.contains(APOSTROPHE_S_SEQUENCE))
+				this.addStandardClueFragments(clueText.replace(APOSTROPHE_S_SEQUENCE, ""));
+			if(clueText.contains(S_APOSTROPHE_SEQUENCE))
+				this.addStandardClueFragments(clueText.replace(S_APOSTROPHE_SEQUENCE, ""));
+		}
+
+		private void addFITBClueFragments(String clueText) {
+			ArrayList<String> FITBfragments = new ArrayList<String>();
+			ArrayList<String> otherFragments = new ArrayList<String>();
+			if(!clueText.contains(QUOTE)) {
+				this.addStandardClueFragments(clueText);
+				return;
+			}
+			while(clueText.contains(QUOTE)) {
+				int indexOfStartQuote = clueText.indexOf(QUOTE);
+				int indexOfEndQuote = clueText.indexOf(QUOTE, indexOfStartQuote + 1);
+				if(indexOfStartQuote >= clueText.length() - 1 || indexOfEndQuote == -1)
+					clueText = clueText.replace(QUOTE, "");
+				else {
+					otherFragments.add(clueText.substring(0, indexOfStartQuote));
+					otherFragments.add(clueText.substring(indexOfEndQuote + 1, clueText.length()));
+					FITBfragments.add(clueText.substring(indexOfStartQuote + 1, indexOfEndQuote));
+					clueText = clueText.replaceFirst(QUOTE, "").replaceFirst(QUOTE, "");
+				}
+			}
+			for(String portionOfClue : otherFragments)
+				this.addStandardClueFragments(portionOfClue);
+			for(String fragment : FITBfragments) {
+				for(String thisFragment : fragment.split(FILL_IN_THE_BLANK_MARKER)) {
+					if(!this.clueFragments.contains(thisFragment)) {
+						this.clueFragments.add(thisFragment);
+						if(thisFragment.length() > 1 && (thisFragment.endsWith(",") || thisFragment.endsWith(")")))
+							this.clueFragments.add(thisFragment.substring(0, thisFragment.length() - 1));
+						if(thisFragment.length() > 1 && thisFragment.startsWith("("))
+							this.clueFragments.add(thisFragment.substring(1, thisFragment.length()));
+					}
+				}
+			}
+		}
+
+		private boolean notSolelyPunctuation(String text) {
+			for(String punctuation : PUNCTUATION) {
+				if(punctuation.equals(text))
+					return false;
+			}
+			return true;
+		}
+
+		private boolean imbalancedParentheses(String text) {
+			int openBracketCount = 0, closeBracketCount = 0;
+			for(char character : text.toCharArray()) {
+				if(character == '(')
+					openBracketCount++;
+				else if(character == ')')
+					closeBracketCount++;
+			}
+			return openBracketCount != closeBracketCount;
+		}
+	}
+
+	/**
+	 * assertFragmentedAsBefore - fails unless the given clue is fragmented as the ReferenceFragmenter would fragment it
+	 */
+	private void assertFragmentedAsBefore(String clueText, int[] solutionStructure) throws InvalidClueException {
+		Clue clue = new ClueImpl(clueText, solutionStructure);
+		assertEquals(clueText, new ReferenceFragmenter(clue).fragment(), clue.getClueFragments());
+	}
+
+	@Test
+	public void knowledgeBaseClues() throws InvalidClueException {
+		Model knowledgeBase = FileManager.get().loadModel(KNOWLEDGE_BASE);
+		int cluesChecked = 0;
+		for(SolvedClue solvedClue : KnowledgeBaseManager.gatherSolvedClues(knowledgeBase)) {
+			int[] solutionStructure = ClueSolvingPipeline.parseSolutionStructure(
+					solvedClue.getSolutionStructure().replaceAll("[\\[\\]]", ""));
+			this.assertFragmentedAsBefore(solvedClue.getClueText(), solutionStructure);
+			cluesChecked++;
+		}
+		assertEquals(true, cluesChecked > 0);
+	}
+
+	@Test
+	public void parenthesesStayRemovedFromLongerFragments() throws InvalidClueException {
+		Clue clue = new ClueImpl("(Eagles song)", ONE_WORD);
+		assertEquals("[Eagles, Eagles Song, Song]", clue.getClueFragments().toString());
+		this.assertFragmentedAsBefore("(indie rock band)", ONE_WORD);
+		this.assertFragmentedAsBefore("(a (b)", ONE_WORD);
+		this.assertFragmentedAsBefore("(a b) (c d)", ONE_WORD);
+		this.assertFragmentedAsBefore("Beatles (Beatles", ONE_WORD);
+		this.assertFragmentedAsBefore("song ( 1985 )", ONE_WORD);
+		this.assertFragmentedAsBefore("x,) y", ONE_WORD);
+	}
+
+	@Test
+	public void commasAreRemovedFromTheEndsOfFragments() throws InvalidClueException {
+		Clue clue = new ClueImpl("a , b . c", ONE_WORD);
+		assertEquals(true, clue.getClueFragments().contains("A "));
+		assertEquals(false, clue.getClueFragments().contains("A ,"));
+		this.assertFragmentedAsBefore("a , b . c", ONE_WORD);
+		this.assertFragmentedAsBefore("Big _, Small", ONE_WORD);
+		this.assertFragmentedAsBefore("a ,, b", ONE_WORD);
+		this.assertFragmentedAsBefore("Bread, butter, jam", ONE_WORD);
+		this.assertFragmentedAsBefore("(b, c", ONE_WORD);
+	}
+
+	@Test
+	public void fragmentsAlreadyHeldAreNotAltered() throws InvalidClueException {
+		this.assertFragmentedAsBefore("\"Hello,\" hello, world", ONE_WORD);
+		this.assertFragmentedAsBefore("\"(A\" (a b", ONE_WORD);
+		this.assertFragmentedAsBefore("John's friends' band", ONE_WORD);
+	}
+}
@@ -0,0 +1,147 @@
+package test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import com.hp.hpl.jena.util.FileManager;
+
+import app.ClueSimilarityIndex;
+import app.KnowledgeBaseManager;
+import app.SimilarClue;
+import app.SolvedClue;
+
+/**
+ * @author Ben Griffiths
+ * ClueSimilarityIndexTest
+ * Checks the recall of the MinHash index of similar clues over the clues of the crossword knowledge base: every clue is found again
+ * from a copy differing only in case, punctuation, apostrophes or articles, and nearly every clue from a copy with one character
+ * mistyped, among the copies whose exact similarity to the clue is comfortably above the minimum similarity. Also checks that clues of another solution structure, or with unrelated text, are not reported, and that the solutions
+ * of a clue added twice are merged.
+ */
+public class ClueSimilarityIndexTest {
+	private static final String KNOWLEDGE_BASE = "data/crosswordKB.xml";
+	private static final double MINIMUM_SIMILARITY = 0.75; // as used by the KnowledgeBaseManager by default
+	private static final double MINIMUM_TYPO_SIMILARITY = 0.8; // exact similarity of the mistyped copies looked up
+	private static final double MINIMUM_TYPO_RECALL = 0.95;
+	private static final int SHINGLE_LENGTH = 3; // as used by the ClueSimilarityIndex
+	private static final String[] ARTICLES = {"the", "a", "an"};
+	private static ArrayList<SolvedClue> solvedClues;
+	private static ClueSimilarityIndex index;
+
+	@BeforeClass
+	public static void Before() {
+		solvedClues = KnowledgeBaseManager.gatherSolvedClues(FileManager.get().loadModel(KNOWLEDGE_BASE));
+		index = new ClueSimilarityIndex(MINIMUM_SIMILARITY);
+		for(SolvedClue solvedClue : solvedClues)
+			index.add(solvedClue.getClueText(), solvedClue.getSolutionStructure(), solvedClue.getSolutionTexts());
+	}
+
+	/**
+	 * finds
+	 * @return true if the clue text argument, looked up in the index, finds the solved clue argument, or a clue of the same
+	 * normalised text under which its solutions are held
+	 */
+	private static boolean finds(String clueText, SolvedClue solvedClue) {
+		for(SimilarClue similarClue : index.findSimilarClues(clueText, solvedClue.getSolutionStructure())) {
+			if(similarClue.getSolutionTexts().containsAll(solvedClue.getSolutionTexts()))
+				return true;
+		}
+		return false;
+	}
+
+	/**
+	 * shingles
+	 * @return the character shingles of the clue text, normalised as by the ClueSimilarityIndex
+	 */
+	private static Set<String> shingles(String clueText) {
+		StringBuilder paddedText = new StringBuilder(" ");
+		for(String word : clueText.toLowerCase().replaceAll("['\\u2019]", "").replaceAll("[^a-z0-9]+", " ").trim().split(" ")) {
+			if(!word.isEmpty() && !Arrays.asList(ARTICLES).contains(word))
+				paddedText.append(word).append(' ');
+		}
+		if(paddedText.length() == 1)
+			paddedText.append(' ');
+		Set<String> shingles = new HashSet<String>();
+		for(int start = 0; start + SHINGLE_LENGTH <= paddedText.length(); start++)
+			shingles.add(paddedText.substring(start, start + SHINGLE_LENGTH));
+		return shingles;
+	}
+
+	/**
+	 * exactSimilarity
+	 * @return the Jaccard similarity of the shingles of the two clue texts, which the index estimates
+	 */
+	private static double exactSimilarity(String firstClueText, String secondClueText) {
+		Set<String> union = shingles(firstClueText);
+		Set<String> intersection = new HashSet<String>(union);
+		Set<String> secondShingles = shingles(secondClueText);
+		intersection.retainAll(secondShingles);
+		union.addAll(secondShingles);
+		return (double)intersection.size() / union.size();
+	}
+
+	/**
+	 * mistype
+	 * @return the clue text with the letter nearest its middle replaced by another letter
+	 */
+	private static String mistype(String clueText) {
+		int position = clueText.length() / 2;
+		while(position < clueText.length() - 1 && !Character.isLetter(clueText.charAt(position)))
+			position++;
+		char replacement = clueText.charAt(position) == 'x' ? 'q' : 'x';
+		return clueText.substring(0, position) + replacement + clueText.substring(position + 1);
+	}
+
+	@Test
+	public void everyClueIsFoundDespiteCaseAndPunctuation() {
+		for(SolvedClue solvedClue : solvedClues) {
+			String variant = "The " + solvedClue.getClueText().toUpperCase().replace(" ", " - ") + "!'";
+			assertTrue(variant, finds(variant, solvedClue));
+		}
+	}
+
+	@Test
+	public void nearlyEveryClueIsFoundDespiteAMistypedCharacter() {
+		int cluesLookedUp = 0, cluesFound = 0;
+		for(SolvedClue solvedClue : solvedClues) {
+			String mistypedClueText = mistype(solvedClue.getClueText());
+			if(exactSimilarity(mistypedClueText, solvedClue.getClueText()) < MINIMUM_TYPO_SIMILARITY)
+				continue;
+			cluesLookedUp++;
+			if(finds(mistypedClueText, solvedClue))
+				cluesFound++;
+		}
+		double recall = (double)cluesFound / cluesLookedUp;
+		assertTrue(cluesLookedUp > 0);
+		assertTrue("Recall of " + recall + " over " + cluesLookedUp + " clues is below " + MINIMUM_TYPO_RECALL, recall >= MINIMUM_TYPO_RECALL);
+	}
+
+	@Test
+	public void otherStructuresAndUnrelatedCluesAreNotFound() {
+		ClueSimilarityIndex smallIndex = new ClueSimilarityIndex(MINIMUM_SIMILARITY);
+		smallIndex.add("Member of The Beatles", "[4,6]", Arrays.asList("John Lennon"));
+		assertEquals(1, smallIndex.findSimilarClues("member of the beatles", "[4,6]").size());
+		assertTrue(smallIndex.findSimilarClues("member of the beatles", "[4,9]").isEmpty());
+		assertTrue(smallIndex.findSimilarClues("Firework singer", "[4,6]").isEmpty());
+	}
+
+	@Test
+	public void solutionsOfTheSameClueAreMerged() {
+		ClueSimilarityIndex smallIndex = new ClueSimilarityIndex(MINIMUM_SIMILARITY);
+		smallIndex.add("Member of The Beatles", "[4,6]", Arrays.asList("John Lennon"));
+		smallIndex.add("member of the Beatles", "[4,6]", Arrays.asList("John Lennon", "Ringo Starr"));
+		assertEquals(1, smallIndex.size());
+		ArrayList<SimilarClue> similarClues = smallIndex.findSimilarClues("Member of the Beatles.", "[4,6]");
+		assertEquals(1, similarClues.size());
+		assertEquals(1.0, similarClues.get(0).getSimilarity(), 0);
+		assertEquals(Arrays.asList("John Lennon", "Ringo Starr"), similarClues.get(0).getSolutionTexts());
+	}
+}
@@ -1,7 +1,6 @@
 package test;
 
 import java.util.ArrayList;
-import java.util.concurrent.ExecutionException;
 
 import org.apache.log4j.Logger;
 
@@ -39,26 +38,7 @@ public class DummySemanticSolver {
          	this.setClue(clue);
         	this.setEntityRecogniserTask(new EntityRecogniserTask(getClue()));
 	
-        	Thread erThread = new Thread(new Runnable() {
-                	public void run() {
-                         	getEntityRecogniserTask().execute();
-                	}
-            	});
-         	erThread.start();
-         	
-         	this.setRecognisedResourceUris(null);
-        	try {
-                        this.setRecognisedResourceUris(this.getEntityRecogniserTask().get()); // will block until ERTask has finished
-        	} 
-        	catch (QueryExceptionHTTP e) {
-         	throw e;
-        	}
-        	catch (InterruptedException e) {
-        		log.debug(e.getMessage());
-                 } 
-        	catch (ExecutionException e) {
-        		log.debug(e.getMessage());
-        	}
+         	this.setRecognisedResourceUris(this.getEntityRecogniserTask().call()); // runs on the calling thread
 
         	if(this.getRecognisedResourceUris() == null) {
         		/* Notify the user that no solutions were found and then return*/
@@ -72,26 +52,16 @@ public class DummySemanticSolver {
                 
         	this.setClueQueryTask(new ClueQueryTask(this.getClue(), recognisedResourceUris));
         
-        	Thread cqThread = new Thread(new Runnable() {
-                	public void run() {
-                    	getClueQueryTask().execute();
-                	}
-            	});
-        	cqThread.start();
-
         	ArrayList<Solution> proposedSolutions = null;
                  try {
-                	 proposedSolutions = this.getClueQueryTask().get(); // will block until CQTask is finished
+                	 proposedSolutions = this.getClueQueryTask().call(); // runs on the calling thread
+                 }
+                 catch (NoResourcesSelectedException e) {
+                	 System.out.println("No entities were recognised in the clue " + this.getClue().getSourceClue());
+                	 log.debug(e.getMessage());
                  }
                  catch (Exception e) {
-                	 try {
-                		 NoResourcesSelectedException castE = (NoResourcesSelectedException)e;
-                		 System.out.println("No entities were recognised in the clue " + this.getClue().getSourceClue());
-                		 log.debug(castE.getMessage());
-                	 }
-                	 catch(ClassCastException cce) {
-                		 log.debug(e.getMessage());
-                	 }
+                	 log.debug(e.getMessage());
                  }
         
         	this.setClueSolver(new ClueSolverImpl());
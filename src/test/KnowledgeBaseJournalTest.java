@@ -0,0 +1,134 @@
+package test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.Charset;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.hp.hpl.jena.rdf.model.Model;
+import com.hp.hpl.jena.rdf.model.ModelFactory;
+import com.hp.hpl.jena.rdf.model.Resource;
+
+import app.KnowledgeBaseJournal;
+
+import framework.CrosswordKB;
+
+/**
+ * @author Ben Griffiths
+ * KnowledgeBaseJournalTest
+ * Checks that triples appended to the knowledge base journal are replayed into a fresh model, that a journal truncated once its
+ * content has been compacted into a snapshot replays nothing but goes on accepting new triples, and that a journal whose last line
+ * was only partly written still replays every complete line before it.
+ */
+public class KnowledgeBaseJournalTest {
+	private final String JOURNAL_FILE_NAME = "crosswordKB.nt";
+	private final String TORN_LINE = "<http://example.org/torn> <http://example.org/p> \"unfinished";
+	private final Charset UTF_8 = Charset.forName("UTF-8");
+	@Rule public TemporaryFolder folder = new TemporaryFolder();
+	private File journalFile;
+	private KnowledgeBaseJournal journal;
+
+	@Before
+	public void openJournal() throws IOException {
+		this.journalFile = new File(this.folder.getRoot(), JOURNAL_FILE_NAME);
+		this.journal = new KnowledgeBaseJournal(this.journalFile);
+	}
+
+	@After
+	public void closeJournal() {
+		this.journal.close();
+	}
+
+	/**
+	 * solvedClue
+	 * @return a model holding the triples that record a clue and its solution
+	 */
+	private Model solvedClue(String clueText, String solutionText) {
+		Model model = ModelFactory.createDefaultModel();
+		Resource clue = model.createResource(CrosswordKB.CROSSWORD_KB_URI + clueText.replace(' ', '_'));
+		Resource solution = model.createResource(CrosswordKB.CROSSWORD_KB_URI + solutionText.replace(' ', '_'));
+		clue.addProperty(CrosswordKB.hasClueText, clueText);
+		clue.addProperty(CrosswordKB.solvedBy, solution);
+		solution.addProperty(CrosswordKB.hasSolutionText, solutionText);
+		return model;
+	}
+
+	/**
+	 * replayIntoNewModel
+	 * @return a model holding only the triples replayed from a newly opened journal on the same file
+	 */
+	private Model replayIntoNewModel() throws IOException {
+		Model model = ModelFactory.createDefaultModel();
+		KnowledgeBaseJournal reopenedJournal = new KnowledgeBaseJournal(this.journalFile);
+		try {
+			reopenedJournal.replay(model);
+		}
+		finally {
+			reopenedJournal.close();
+		}
+		return model;
+	}
+
+	@Test
+	public void appendedTriplesAreReplayed() throws IOException {
+		Model first = this.solvedClue("Firework singer", "Katy Perry");
+		Model second = this.solvedClue("Singer Ives", "Burl");
+		this.journal.append(first);
+		this.journal.append(second);
+		this.journal.append(ModelFactory.createDefaultModel()); // nothing is written
+		assertEquals(first.size() + second.size(), this.journal.getEntryCount());
+
+		Model replayed = this.replayIntoNewModel();
+		assertTrue(replayed.isIsomorphicWith(first.union(second)));
+	}
+
+	@Test
+	public void replayingIntoAModelThatHoldsTheTriplesAddsNothing() throws IOException {
+		Model solvedClue = this.solvedClue("Firework singer", "Katy Perry");
+		this.journal.append(solvedClue);
+		Model model = ModelFactory.createDefaultModel();
+		model.read(this.journalFile.toURI().toString(), "N-TRIPLES");
+		long size = model.size();
+		assertEquals(0, this.journal.replay(model));
+		assertEquals(size, model.size());
+	}
+
+	@Test
+	public void compactedJournalReplaysNothingAndKeepsAppending() throws IOException {
+		this.journal.append(this.solvedClue("Firework singer", "Katy Perry"));
+		this.journal.truncate(); // as once the knowledge base has been written out in full
+		assertEquals(0, this.journal.getEntryCount());
+		assertEquals(0, this.journalFile.length());
+		assertTrue(this.replayIntoNewModel().isEmpty());
+
+		Model afterCompaction = this.solvedClue("Singer Ives", "Burl");
+		this.journal.append(afterCompaction);
+		assertEquals(afterCompaction.size(), this.journal.getEntryCount());
+		assertTrue(this.replayIntoNewModel().isIsomorphicWith(afterCompaction));
+	}
+
+	@Test
+	public void partiallyWrittenLastLineIsSkipped() throws IOException {
+		Model solvedClue = this.solvedClue("Firework singer", "Katy Perry");
+		this.journal.append(solvedClue);
+		FileOutputStream outputStream = new FileOutputStream(this.journalFile, true);
+		try {
+			outputStream.write(TORN_LINE.getBytes(UTF_8)); // no closing quote, full stop or newline
+		}
+		finally {
+			outputStream.close();
+		}
+
+		Model replayed = this.replayIntoNewModel();
+		assertTrue(replayed.isIsomorphicWith(solvedClue));
+	}
+}
@@ -0,0 +1,180 @@
+package test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Test;
+
+import app.KnowledgeBaseUpdate;
+import app.KnowledgeBaseWriter;
+
+/**
+ * @author Ben Griffiths
+ * KnowledgeBaseWriterTest
+ * Checks that the knowledge base writer applies the updates queued while its writer thread is busy together, in batches no larger
+ * than the maximum batch size and in the order submitted, that each update's future reports the outcome of its batch, that an
+ * Error thrown while writing a batch fails every update queued and shuts the writer down, and that shutdown writes every update
+ * already queued before returning and refuses any update submitted afterwards.
+ */
+public class KnowledgeBaseWriterTest {
+	private final long TIMEOUT_SECONDS = 10;
+	private KnowledgeBaseWriter writer;
+
+	/**
+	 * RecordingApplier - records each batch of updates applied, optionally holding the writer thread in its first batch until
+	 * released
+	 */
+	private static class RecordingApplier implements KnowledgeBaseWriter.BatchApplier {
+		private final List<List<String>> batches = Collections.synchronizedList(new ArrayList<List<String>>());
+		private final CountDownLatch firstBatchStarted = new CountDownLatch(1);
+		private final CountDownLatch release;
+
+		private RecordingApplier(boolean holdFirstBatch) {
+			this.release = new CountDownLatch(holdFirstBatch ? 1 : 0);
+		}
+
+		@Override
+		public void applyUpdates(List<KnowledgeBaseUpdate> updates) {
+			List<String> clueTexts = new ArrayList<String>();
+			for(KnowledgeBaseUpdate update : updates)
+				clueTexts.add(update.getClueText());
+			this.batches.add(clueTexts);
+			this.firstBatchStarted.countDown();
+			try {
+				this.release.await();
+			}
+			catch(InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+	}
+
+	/**
+	 * update
+	 * @return a new update recording a single solution to the clue given
+	 */
+	private static KnowledgeBaseUpdate update(String clueText) {
+		return new KnowledgeBaseUpdate(clueText, "[4]", new ArrayList<String>(Arrays.asList("Burl")));
+	}
+
+	@After
+	public void shutdownWriter() {
+		if(this.writer != null)
+			this.writer.shutdown();
+	}
+
+	@Test
+	public void updatesQueuedWhileBusyAreBatched() throws Exception {
+		RecordingApplier applier = new RecordingApplier(true);
+		this.writer = new KnowledgeBaseWriter(applier, 10, 3);
+		KnowledgeBaseUpdate first = this.writer.submit(update("1"));
+		assertTrue(applier.firstBatchStarted.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+		List<KnowledgeBaseUpdate> queued = new ArrayList<KnowledgeBaseUpdate>();
+		for(String clueText : new String[] {"2", "3", "4", "5", "6"})
+			queued.add(this.writer.submit(update(clueText)));
+		applier.release.countDown();
+
+		first.get(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+		for(KnowledgeBaseUpdate update : queued)
+			update.get(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+		assertEquals(Arrays.asList(Arrays.asList("1"), Arrays.asList("2", "3", "4"), Arrays.asList("5", "6")), applier.batches);
+	}
+
+	@Test
+	public void failedBatchFailsEveryUpdateInIt() throws Exception {
+		this.writer = new KnowledgeBaseWriter(new KnowledgeBaseWriter.BatchApplier() {
+			@Override
+			public void applyUpdates(List<KnowledgeBaseUpdate> updates) {
+				throw new IllegalStateException("write transaction failed");
+			}
+		}, 10, 3);
+		KnowledgeBaseUpdate update = this.writer.submit(update("1"));
+		try {
+			update.get(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+			fail("The update should have failed");
+		}
+		catch(ExecutionException e) {
+			assertTrue(e.getCause() instanceof IllegalStateException);
+		}
+	}
+
+	@Test
+	public void errorFailsEveryQueuedUpdateAndShutsTheWriterDown() throws Exception {
+		final CountDownLatch release = new CountDownLatch(1);
+		final CountDownLatch firstBatchStarted = new CountDownLatch(1);
+		this.writer = new KnowledgeBaseWriter(new KnowledgeBaseWriter.BatchApplier() {
+			@Override
+			public void applyUpdates(List<KnowledgeBaseUpdate> updates) {
+				firstBatchStarted.countDown();
+				try {
+					release.await();
+				}
+				catch(InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+				throw new OutOfMemoryError("reading a large model");
+			}
+		}, 10, 1);
+		List<KnowledgeBaseUpdate> updates = new ArrayList<KnowledgeBaseUpdate>();
+		updates.add(this.writer.submit(update("1")));
+		assertTrue(firstBatchStarted.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+		for(String clueText : new String[] {"2", "3"})
+			updates.add(this.writer.submit(update(clueText)));
+		release.countDown();
+
+		for(KnowledgeBaseUpdate update : updates) {
+			try {
+				update.get(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+				fail("The update should have failed");
+			}
+			catch(ExecutionException e) {
+				assertTrue(e.getCause() instanceof OutOfMemoryError);
+			}
+		}
+		assertTrue(this.writer.isShutdown());
+		try {
+			this.writer.submit(update("4"));
+			fail("An update submitted after the writer thread has exited should be refused");
+		}
+		catch(IllegalStateException e) {
+			// expected
+		}
+	}
+
+	@Test
+	public void shutdownWritesQueuedUpdatesAndRefusesNewOnes() throws Exception {
+		RecordingApplier applier = new RecordingApplier(true);
+		this.writer = new KnowledgeBaseWriter(applier, 10, 10);
+		this.writer.submit(update("1"));
+		assertTrue(applier.firstBatchStarted.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+		List<KnowledgeBaseUpdate> queued = new ArrayList<KnowledgeBaseUpdate>();
+		for(String clueText : new String[] {"2", "3"})
+			queued.add(this.writer.submit(update(clueText)));
+		applier.release.countDown();
+
+		this.writer.shutdown();
+		assertTrue(this.writer.isShutdown());
+		for(KnowledgeBaseUpdate update : queued)
+			assertTrue(update.isDone());
+		assertEquals(Arrays.asList(Arrays.asList("1"), Arrays.asList("2", "3")), applier.batches);
+		try {
+			this.writer.submit(update("4"));
+			fail("An update submitted after shutdown should be refused");
+		}
+		catch(IllegalStateException e) {
+			// expected
+		}
+		this.writer.shutdown(); // a second shutdown returns at once
+		assertEquals(2, applier.batches.size());
+	}
+}
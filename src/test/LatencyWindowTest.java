@@ -0,0 +1,68 @@
+package test;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+import app.LatencyWindow;
+
+/**
+ * @author Ben Griffiths
+ * LatencyWindowTest
+ * Checks that the latency window estimates percentiles by the nearest-rank method over only the latencies it holds, reports
+ * nothing until it holds enough of them, and forgets the oldest latencies, in its percentiles and its mean, once it is full.
+ */
+public class LatencyWindowTest {
+
+	/**
+	 * windowOf
+	 * @return a window just large enough to hold the latencies given, which are recorded in order
+	 */
+	private LatencyWindow windowOf(long... latencies) {
+		LatencyWindow window = new LatencyWindow(latencies.length, 1);
+		for(long latency : latencies)
+			window.record(latency);
+		return window;
+	}
+
+	@Test
+	public void percentilesByNearestRank() {
+		LatencyWindow window = this.windowOf(70, 10, 100, 40, 30, 90, 20, 60, 50, 80); // 10 to 100 in no order
+		assertEquals(10, window.percentile(0));
+		assertEquals(10, window.percentile(1));
+		assertEquals(10, window.percentile(10));
+		assertEquals(20, window.percentile(11));
+		assertEquals(50, window.percentile(50));
+		assertEquals(100, window.percentile(95));
+		assertEquals(90, window.percentile(90));
+		assertEquals(100, window.percentile(100));
+		assertEquals(55, window.mean());
+	}
+
+	@Test
+	public void nothingIsEstimatedFromTooFewLatencies() {
+		LatencyWindow window = new LatencyWindow(10, 3);
+		assertEquals(0, window.percentile(50));
+		assertEquals(0, window.mean());
+		window.record(100);
+		window.record(200);
+		assertEquals(0, window.percentile(50));
+		assertEquals(150, window.mean());
+		window.record(300);
+		assertEquals(200, window.percentile(50));
+	}
+
+	@Test
+	public void oldestLatenciesAreForgottenOnceFull() {
+		LatencyWindow window = new LatencyWindow(4, 1);
+		for(long latency : new long[] {1000, 1000, 1000, 1000, 10, 20, 30})
+			window.record(latency);
+		assertEquals(1000, window.percentile(100)); // one of the first four is still held
+		assertEquals(10, window.percentile(0));
+		assertEquals(265, window.mean());
+		window.record(40);
+		assertEquals(40, window.percentile(100));
+		assertEquals(20, window.percentile(50));
+		assertEquals(25, window.mean());
+	}
+}
@@ -0,0 +1,160 @@
+package test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.hp.hpl.jena.datatypes.xsd.XSDDatatype;
+import com.hp.hpl.jena.query.QuerySolution;
+import com.hp.hpl.jena.query.QuerySolutionMap;
+import com.hp.hpl.jena.rdf.model.Model;
+import com.hp.hpl.jena.rdf.model.ModelFactory;
+import com.hp.hpl.jena.rdf.model.Resource;
+import com.hp.hpl.jena.vocabulary.RDFS;
+
+import app.QueryArchive;
+import app.QueryArchive.ArchivedResponse;
+
+import framework.QueryClass;
+
+/**
+ * @author Ben Griffiths
+ * QueryArchiveTest
+ * Checks that the solutions of select queries and the graphs of construct queries read back from a query archive as they were
+ * written, across recording sessions, and that an archive whose last record was cut short by a killed recording still yields every
+ * record before it.
+ */
+public class QueryArchiveTest {
+	private final String ARCHIVE_FILE_NAME = "traffic.gz";
+	private final String DBPEDIA_RESOURCE = "http://dbpedia.org/resource/";
+	private final String SELECT_QUERY = "SELECT ?resource ?label WHERE { ?resource rdfs:label ?label }";
+	private final String CONSTRUCT_QUERY = "CONSTRUCT { <http://dbpedia.org/resource/Burl_Ives> ?p ?o } WHERE { ... }";
+	private final long LATENCY_NANOS = 123456789L;
+	@Rule public TemporaryFolder folder = new TemporaryFolder();
+
+	/**
+	 * newArchive
+	 * @return a query archive held in a file that does not yet exist
+	 */
+	private QueryArchive newArchive() {
+		return new QueryArchive(new File(this.folder.getRoot(), ARCHIVE_FILE_NAME));
+	}
+
+	/**
+	 * solutions
+	 * @return solutions of a select query binding URIs and literals of every kind, with one variable left unbound
+	 */
+	private List<QuerySolution> solutions() {
+		Model model = ModelFactory.createDefaultModel();
+		List<QuerySolution> solutions = new ArrayList<QuerySolution>();
+		QuerySolutionMap first = new QuerySolutionMap();
+		first.add("resource", model.createResource(DBPEDIA_RESOURCE + "Burl_Ives"));
+		first.add("label", model.createLiteral("Burl Ives", "en"));
+		solutions.add(first);
+		QuerySolutionMap second = new QuerySolutionMap();
+		second.add("resource", model.createResource(DBPEDIA_RESOURCE + "Caf\u00e9"));
+		second.add("label", model.createLiteral("tab\there, \"quoted\"\nand on a new line"));
+		solutions.add(second);
+		QuerySolutionMap third = new QuerySolutionMap();
+		third.add("label", model.createTypedLiteral("42", XSDDatatype.XSDinteger)); // no resource
+		solutions.add(third);
+		return solutions;
+	}
+
+	/**
+	 * model
+	 * @return the graph built by a construct query
+	 */
+	private Model model() {
+		Model model = ModelFactory.createDefaultModel();
+		Resource burlIves = model.createResource(DBPEDIA_RESOURCE + "Burl_Ives");
+		burlIves.addProperty(RDFS.label, "Burl Ives", "en");
+		burlIves.addProperty(RDFS.seeAlso, model.createResource(DBPEDIA_RESOURCE + "Folk_music"));
+		return model;
+	}
+
+	/**
+	 * assertSameSolutions - fails unless the solutions read back bind the same variables to the same values as those written
+	 */
+	private void assertSameSolutions(List<QuerySolution> expected, List<QuerySolution> actual) {
+		assertEquals(expected.size(), actual.size());
+		for(int i = 0; i < expected.size(); i++) {
+			for(String varName : Arrays.asList("resource", "label")) {
+				if(expected.get(i).get(varName) == null)
+					assertNull(actual.get(i).get(varName));
+				else
+					assertEquals(expected.get(i).get(varName).asNode(), actual.get(i).get(varName).asNode());
+			}
+		}
+	}
+
+	@Test
+	public void selectAndConstructResponsesRoundTrip() throws IOException {
+		QueryArchive archive = this.newArchive();
+		archive.appendSolutions(QueryClass.ENTITY_RECOGNITION, SELECT_QUERY, this.solutions(), LATENCY_NANOS);
+		archive.appendModel(QueryClass.NEIGHBOURHOOD, CONSTRUCT_QUERY, this.model(), LATENCY_NANOS + 1);
+		archive.close();
+
+		Map<String, ArchivedResponse> responses = this.newArchive().load();
+		assertEquals(2, responses.size());
+		ArchivedResponse selectResponse = responses.get(QueryArchive.keyOf(QueryClass.ENTITY_RECOGNITION, SELECT_QUERY));
+		assertFalse(selectResponse.isConstruct());
+		assertEquals(LATENCY_NANOS, selectResponse.getLatencyNanos());
+		this.assertSameSolutions(this.solutions(), selectResponse.getSolutions());
+		ArchivedResponse constructResponse = responses.get(QueryArchive.keyOf(QueryClass.NEIGHBOURHOOD, CONSTRUCT_QUERY));
+		assertTrue(constructResponse.isConstruct());
+		assertEquals(LATENCY_NANOS + 1, constructResponse.getLatencyNanos());
+		assertTrue(constructResponse.getModel().isIsomorphicWith(this.model()));
+		assertNull(responses.get(QueryArchive.keyOf(QueryClass.SCORING, SELECT_QUERY))); // keyed by class too
+	}
+
+	@Test
+	public void laterSessionsAppendAndTheLatestResponseIsKept() throws IOException {
+		QueryArchive firstSession = this.newArchive();
+		firstSession.appendSolutions(QueryClass.ENTITY_RECOGNITION, SELECT_QUERY, this.solutions(), LATENCY_NANOS);
+		firstSession.close();
+		QueryArchive secondSession = this.newArchive();
+		secondSession.appendSolutions(QueryClass.ENTITY_RECOGNITION, SELECT_QUERY, new ArrayList<QuerySolution>(), LATENCY_NANOS);
+		secondSession.appendModel(QueryClass.NEIGHBOURHOOD, CONSTRUCT_QUERY, this.model(), LATENCY_NANOS);
+		secondSession.close();
+
+		Map<String, ArchivedResponse> responses = this.newArchive().load();
+		assertEquals(2, responses.size());
+		assertTrue(responses.get(QueryArchive.keyOf(QueryClass.ENTITY_RECOGNITION, SELECT_QUERY)).getSolutions().isEmpty());
+	}
+
+	@Test
+	public void recordCutShortByAKilledRecordingIsIgnored() throws IOException {
+		QueryArchive archive = this.newArchive();
+		archive.appendSolutions(QueryClass.ENTITY_RECOGNITION, SELECT_QUERY, this.solutions(), LATENCY_NANOS);
+		long lengthAfterFirstRecord = archive.getFile().length(); // each record is flushed as it is written
+		archive.appendModel(QueryClass.NEIGHBOURHOOD, CONSTRUCT_QUERY, this.model(), LATENCY_NANOS);
+		long lengthAfterSecondRecord = archive.getFile().length();
+		assertTrue(lengthAfterSecondRecord > lengthAfterFirstRecord + 1);
+		RandomAccessFile file = new RandomAccessFile(archive.getFile(), "rw"); // as if killed part way through the second record
+		try {
+			file.setLength((lengthAfterFirstRecord + lengthAfterSecondRecord) / 2);
+		}
+		finally {
+			file.close();
+		}
+
+		Map<String, ArchivedResponse> responses = this.newArchive().load();
+		assertEquals(1, responses.size());
+		this.assertSameSolutions(this.solutions(),
+				responses.get(QueryArchive.keyOf(QueryClass.ENTITY_RECOGNITION, SELECT_QUERY)).getSolutions());
+	}
+}
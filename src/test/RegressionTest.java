@@ -0,0 +1,214 @@
+package test;
+
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.log4j.Level;
+import org.apache.log4j.Logger;
+import org.junit.AfterClass;
+import org.junit.Assume;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import exception.InvalidClueException;
+
+import app.ClueImpl;
+import app.ClueSolvingPipeline;
+import app.ClueSolvingResult;
+import app.KnowledgeBaseManager;
+import app.ModelLoader;
+import app.SolveContext;
+import app.SolvedClue;
+import app.SolverProperties;
+
+import framework.Clue;
+import framework.ProgressListener;
+import framework.Solution;
+
+/**
+ * @author Ben Griffiths
+ * RegressionTest
+ * Solves every clue held in the crossword knowledge base, answering the solver's queries from a recording of DBpedia's responses
+ * so that the results are the same on every run, and reports the accuracy of the solutions found, as recall at 1, 5 and 10 and
+ * mean reciprocal rank, beside the time taken by each stage of solving. Fails if accuracy falls, or latency rises, beyond the
+ * thresholds given by the semanticSolver.regression.* system properties, so that a change made for the sake of performance cannot
+ * silently make the solver worse.
+ * The recording is read from the file given by semanticSolver.regression.archive (by default data/regressionTraffic.gz); the test
+ * is skipped if it does not exist. To make or extend the recording, run the test against DBpedia with
+ * -DsemanticSolver.record.archive set to the same file, as described in the README. Clues are solved against a temporary knowledge base that starts empty, so that neither the solutions known
+ * to the corpus nor its clues, through similar clue lookups, can inflate the accuracy reported; solutions found are added to it,
+ * leaving the knowledge base in the data directory, and hence the corpus, unchanged.
+ */
+public class RegressionTest {
+	private static final String ARCHIVE = "semanticSolver.regression.archive";
+	private static final String MINIMUM_RECALL_AT_10 = "semanticSolver.regression.minimumRecallAt10";
+	private static final String MINIMUM_MRR = "semanticSolver.regression.minimumMrr";
+	private static final String MAXIMUM_P95_LATENCY_MILLIS = "semanticSolver.regression.maximumP95LatencyMillis";
+	private static final String DEFAULT_ARCHIVE = "data/regressionTraffic.gz";
+	private static final int[] RECALL_RANKS = {1, 5, 10};
+	private static final double NANOSECONDS_IN_ONE_MILLISECOND = 1000000.0;
+	private static ArrayList<SolvedClue> corpus;
+	private static ClueSolvingPipeline pipeline;
+
+	/**
+	 * StageTimer - records the time taken by each stage of solving a clue, as reported to a ProgressListener
+	 */
+	private static class StageTimer implements ProgressListener {
+		private final Map<String, Long> stageNanos = new LinkedHashMap<String, Long>();
+		private String stage;
+		private long stageStartTime;
+
+		@Override
+		public void stageStarted(String description) {
+			this.finish();
+			this.stage = description;
+			this.stageStartTime = System.nanoTime();
+		}
+
+		@Override
+		public void progressChanged(int progress) {
+
+		}
+
+		/**
+		 * finish - ends the current stage
+		 * @return the time taken by each stage so far
+		 */
+		private Map<String, Long> finish() {
+			if(this.stage != null)
+				this.stageNanos.put(this.stage, System.nanoTime() - this.stageStartTime);
+			this.stage = null;
+			return this.stageNanos;
+		}
+	}
+
+	@BeforeClass
+	public static void Before() throws IOException {
+		File archive = new File(SolverProperties.getString(ARCHIVE, DEFAULT_ARCHIVE));
+		boolean recording = SolverProperties.getString(SolverProperties.RECORD_ARCHIVE, null) != null;
+		Assume.assumeTrue("No recording of DBpedia's responses at " + archive.getPath() + "; make one by running the test against " +
+				"DBpedia with -D" + SolverProperties.RECORD_ARCHIVE + "=" + archive.getPath(), recording || archive.isFile());
+		if(!recording) {
+			System.setProperty(SolverProperties.DATA_SOURCE, SolverProperties.REPLAY_DATA_SOURCE);
+			System.setProperty(SolverProperties.DATA_SOURCE_LOCATION, archive.getPath());
+		}
+		corpus = KnowledgeBaseManager.gatherSolvedClues(ModelLoader.getKnowledgeBase());
+		File knowledgeBaseDirectory = File.createTempFile("crosswordKB", "-tdb");
+		knowledgeBaseDirectory.delete();
+		System.setProperty(SolverProperties.KB_BACKEND, SolverProperties.TDB_BACKEND);
+		System.setProperty(SolverProperties.KB_TDB_LOCATION, knowledgeBaseDirectory.getPath());
+		System.setProperty(SolverProperties.KB_TDB_IMPORT, Boolean.FALSE.toString());
+		Logger.getRootLogger().setLevel(Level.WARN); // debug logging would dominate the timings
+		ModelLoader.getReasoner();
+		KnowledgeBaseManager.getInstance();
+		pipeline = new ClueSolvingPipeline(null); // clues are solved on the calling thread
+	}
+
+	@AfterClass
+	public static void After() {
+		if(pipeline != null)
+			KnowledgeBaseManager.getInstance().persistKnowledgeBase();
+	}
+
+	/**
+	 * rankOfKnownSolution
+	 * @return the rank, from 1, of the first of the solutions found that is a known solution to the clue, ignoring case, or 0 if
+	 * none is
+	 */
+	private static int rankOfKnownSolution(ArrayList<Solution> solutions, SolvedClue solvedClue) {
+		for(int i = 0; i < solutions.size(); i++) {
+			for(String solutionText : solvedClue.getSolutionTexts()) {
+				if(solutions.get(i).getSolutionText().equalsIgnoreCase(solutionText))
+					return i + 1;
+			}
+		}
+		return 0;
+	}
+
+	/**
+	 * percentile
+	 * @return the value at the given percentile of the given values, by the nearest-rank method
+	 */
+	private static long percentile(List<Long> values, int percentile) {
+		Long[] sortedValues = values.toArray(new Long[values.size()]);
+		Arrays.sort(sortedValues);
+		int rank = (int)Math.ceil(percentile / 100.0 * sortedValues.length);
+		return sortedValues.length == 0 ? 0 : sortedValues[Math.max(0, rank - 1)];
+	}
+
+	/**
+	 * reportTimings - prints the number, mean, median and 95th percentile of the given times, in milliseconds
+	 */
+	private static void reportTimings(String description, List<Long> nanos) {
+		long totalNanos = 0;
+		for(long time : nanos)
+			totalNanos += time;
+		System.err.println(String.format("%s (ms, %d clues): mean %.1f, p50 %.1f, p95 %.1f", description, nanos.size(),
+				totalNanos / NANOSECONDS_IN_ONE_MILLISECOND / Math.max(1, nanos.size()),
+				percentile(nanos, 50) / NANOSECONDS_IN_ONE_MILLISECOND, percentile(nanos, 95) / NANOSECONDS_IN_ONE_MILLISECOND));
+	}
+
+	@Test
+	public void regressionTest() throws InterruptedException {
+		int[] recalled = new int[RECALL_RANKS.length];
+		double reciprocalRankSum = 0;
+		Map<String, List<Long>> stageTimings = new LinkedHashMap<String, List<Long>>();
+		List<Long> latencies = new ArrayList<Long>();
+		for(SolvedClue solvedClue : corpus) {
+			Clue clue;
+			try {
+				clue = new ClueImpl(solvedClue.getClueText(), ClueSolvingPipeline.parseSolutionStructure(
+						solvedClue.getSolutionStructure().replaceAll("[\\[\\]]", "")));
+			}
+			catch(InvalidClueException e) {
+				System.err.println("Invalid clue in the knowledge base: " + solvedClue.getClueText());
+				continue;
+			}
+			StageTimer stageTimer = new StageTimer();
+			ClueSolvingResult result = pipeline.solve(clue, stageTimer, new SolveContext());
+			for(Map.Entry<String, Long> timing : stageTimer.finish().entrySet()) {
+				if(!stageTimings.containsKey(timing.getKey()))
+					stageTimings.put(timing.getKey(), new ArrayList<Long>());
+				stageTimings.get(timing.getKey()).add(timing.getValue());
+			}
+			latencies.add(result.getLatencyNanos());
+			int rank = rankOfKnownSolution(result.getSolutions(), solvedClue);
+			if(rank > 0)
+				reciprocalRankSum += 1.0 / rank;
+			for(int i = 0; i < RECALL_RANKS.length; i++) {
+				if(rank > 0 && rank <= RECALL_RANKS[i])
+					recalled[i]++;
+			}
+		}
+
+		/* Report */
+		int clueCount = Math.max(1, corpus.size());
+		StringBuilder report = new StringBuilder("Clues: " + corpus.size() + ", recall");
+		for(int i = 0; i < RECALL_RANKS.length; i++)
+			report.append(String.format(" @%d %.3f", RECALL_RANKS[i], recalled[i] / (double)clueCount));
+		double meanReciprocalRank = reciprocalRankSum / clueCount;
+		report.append(String.format(", MRR %.3f", meanReciprocalRank));
+		System.err.println(report);
+		for(Map.Entry<String, List<Long>> timings : stageTimings.entrySet())
+			reportTimings(timings.getKey(), timings.getValue());
+		reportTimings("Total", latencies);
+
+		/* Compare with the thresholds */
+		double recallAt10 = recalled[RECALL_RANKS.length - 1] / (double)clueCount;
+		double minimumRecallAt10 = SolverProperties.getDouble(MINIMUM_RECALL_AT_10, 0.5);
+		assertTrue("Recall at 10 of " + recallAt10 + " is below " + minimumRecallAt10, recallAt10 >= minimumRecallAt10);
+		double minimumMrr = SolverProperties.getDouble(MINIMUM_MRR, 0.3);
+		assertTrue("MRR of " + meanReciprocalRank + " is below " + minimumMrr, meanReciprocalRank >= minimumMrr);
+		double p95LatencyMillis = percentile(latencies, 95) / NANOSECONDS_IN_ONE_MILLISECOND;
+		double maximumP95LatencyMillis = SolverProperties.getDouble(MAXIMUM_P95_LATENCY_MILLIS, 5000);
+		assertTrue("95th percentile latency of " + p95LatencyMillis + "ms is above " + maximumP95LatencyMillis + "ms",
+				p95LatencyMillis <= maximumP95LatencyMillis);
+	}
+}